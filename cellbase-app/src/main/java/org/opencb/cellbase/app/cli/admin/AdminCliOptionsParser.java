@@ -116,6 +116,12 @@ public class AdminCliOptionsParser extends CliOptionsParser {
                 + "requires more memory and is less efficient.", required = false, arity = 0)
         public boolean flexibleGTFParsing = false;
 
+        @Parameter(names = {"--pack-genome-sequence"}, description = "Store the genome sequence chunks packed with 2 or 4 bits "
+                + "per nucleotide instead of text, which is about 4 times smaller. Packed chunks can only be read by this "
+                + "version of CellBase or newer. **NOTE** this parameter will only be used when building the genome dataset.",
+                required = false, arity = 0)
+        public boolean packGenomeSequence = false;
+
     }
 
     @Parameters(commandNames = {"load"}, commandDescription = "Load the built data models into the database")
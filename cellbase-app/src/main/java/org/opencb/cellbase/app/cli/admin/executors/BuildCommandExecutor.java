@@ -240,7 +240,7 @@ public class BuildCommandExecutor extends CommandExecutor {
         copyVersionFiles(Collections.singletonList(downloadFolder.resolve("genome/genomeVersion.json")));
         Path fastaFile = getFastaReferenceGenome();
         CellBaseSerializer serializer = new CellBaseJsonFileSerializer(buildFolder, "genome_sequence");
-        return new GenomeSequenceFastaBuilder(fastaFile, serializer);
+        return new GenomeSequenceFastaBuilder(fastaFile, buildCommandOptions.packGenomeSequence, serializer);
     }
 
     private CellBaseBuilder buildGene() throws CellbaseException {
@@ -74,7 +74,7 @@ public class CellBaseCliOptionsParser extends CliOptionsParser {
         @Parameter(names = {"-l", "--local"}, description = "Database credentials for local annotation are read from configuration.json file", required = false, arity = 0)
         public boolean local;
 
-        @Parameter(names = {"--remote-url"}, description = "The URL of CellBase REST web services, this has no effect if --local is present", required = false, arity = 1)
+        @Parameter(names = {"--remote-url"}, description = "The URL of CellBase REST web services, or a comma separated list of URLs to balance the requests across them. This has no effect if --local is present", required = false, arity = 1)
         public String url = "https://bioinfo.hpc.cam.ac.uk:80/cellbase";
 
         @Parameter(names = {"--include"}, description = "Comma separated list of annotation types to be included. Available options are "
@@ -106,6 +106,12 @@ public class CellBaseCliOptionsParser extends CliOptionsParser {
         @Parameter(names = {"--max-open-files"}, description = "Integer containing the maximum number of files that can remain open at a certain time point. This option is just used when providing custom annotation files. Custom annotation indexation may create and keep hundreds of files open at the same time for efficiency purposes. This parameter limits that number of open files: -1 indicates no limit and may be OK in most cases.", required = false, arity = 1)
         public int maxOpenFiles = -1;
 
+        @Parameter(names = {"--block-cache-size"}, description = "Integer containing the size in MB of the RocksDB block cache used by the custom annotation and population frequency indexes.", required = false, arity = 1)
+        public int blockCacheSize = 64;
+
+        @Parameter(names = {"--bloom-filter-bits"}, description = "Integer containing the bits per key of the RocksDB bloom filter used by the custom annotation and population frequency indexes: 0 disables the bloom filter.", required = false, arity = 1)
+        public int bloomFilterBitsPerKey = 10;
+
         @Parameter(names = {"--output-format"}, description = "Variant annotation output format. Values: JSON, Avro, VEP", required = false, arity = 1)
         public String outputFormat = "JSON";
 
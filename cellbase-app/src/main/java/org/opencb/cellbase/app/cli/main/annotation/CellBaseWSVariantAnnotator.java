@@ -53,6 +53,7 @@ public class CellBaseWSVariantAnnotator implements VariantAnnotator {
     }
 
     public boolean close() {
+        logger.info("CellBase hosts stats: {}", variantClient.getHostStats().toJson());
         return false;
     }
 
@@ -16,19 +16,20 @@
 
 package org.opencb.cellbase.app.cli.main.annotation;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.PopulationFrequency;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.app.cli.main.annotation.indexers.VariantIndexCodec;
 import org.opencb.cellbase.core.variant.PopulationFrequencyPhasedQueryManager;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotator;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -47,21 +48,21 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
     private RocksDB dbIndex;
     private RandomAccessFile reader;
     private final QueryOptions queryOptions;
+    private final VariantIndexCodec variantIndexCodec;
 
-
-    private static ObjectMapper mapper = new ObjectMapper();
-    private static ObjectWriter jsonObjectWriter;
     private static PopulationFrequencyPhasedQueryManager phasedQueryManager
             = new PopulationFrequencyPhasedQueryManager();
+    private static Logger logger = LoggerFactory.getLogger(PopulationFrequenciesAnnotator.class);
 
-    static {
-        mapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-        jsonObjectWriter = mapper.writer();
+    public PopulationFrequenciesAnnotator(String fileName, RocksDB dbIndex, QueryOptions queryOptions) {
+        this(fileName, dbIndex, new VariantIndexCodec(), queryOptions);
     }
 
-    public PopulationFrequenciesAnnotator(String fileName, RocksDB dbIndex, QueryOptions queryOptions) {
+    public PopulationFrequenciesAnnotator(String fileName, RocksDB dbIndex, VariantIndexCodec variantIndexCodec,
+                                          QueryOptions queryOptions) {
         this.fileName = fileName;
         this.dbIndex = dbIndex;
+        this.variantIndexCodec = variantIndexCodec;
         this.queryOptions = queryOptions;
     }
 
@@ -82,10 +83,7 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
      */
     public void run(List<Variant> variantList) {
 
-        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = new ArrayList<>(variantList.size());
-        for (Variant variant: variantList) {
-            variantCellBaseDataResult.add(getPopulationFrequencies(variant));
-        }
+        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = getPopulationFrequencies(variantList);
 
         if (queryOptions.get(IGNORE_PHASE) != null && !queryOptions.getBoolean(IGNORE_PHASE)) {
             variantCellBaseDataResult = phasedQueryManager.run(variantList, variantCellBaseDataResult);
@@ -93,7 +91,7 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
 
         for (int i = 0; i < variantList.size(); i++) {
             if (variantCellBaseDataResult != null && variantCellBaseDataResult.get(i).getResults() != null
-                    && variantCellBaseDataResult.get(i).getResults().isEmpty()) {
+                    && !variantCellBaseDataResult.get(i).getResults().isEmpty()) {
                 // Assuming if it gets to this point the variant has VariantAnnotation
                 // Only one variant  can be returned per query to RocksDB
                 List<PopulationFrequency> populationFrequencies
@@ -115,42 +113,46 @@ public class PopulationFrequenciesAnnotator implements VariantAnnotator {
         }
     }
 
-    private CellBaseDataResult<Variant> getPopulationFrequencies(Variant variant) {
-        CellBaseDataResult<Variant> populationFrequencyCellBaseDataResult = new CellBaseDataResult<>();
-        populationFrequencyCellBaseDataResult.setId(variant.toString());
+    private List<CellBaseDataResult<Variant>> getPopulationFrequencies(List<Variant> variantList) {
+        List<CellBaseDataResult<Variant>> cellBaseDataResultList = new ArrayList<>(variantList.size());
+        List<byte[]> variantKeys = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            CellBaseDataResult<Variant> populationFrequencyCellBaseDataResult = new CellBaseDataResult<>();
+            populationFrequencyCellBaseDataResult.setId(variant.toString());
+            cellBaseDataResultList.add(populationFrequencyCellBaseDataResult);
+            variantKeys.add(variant.toString().getBytes());
+        }
+
         long start = System.currentTimeMillis();
-        try {
-            byte[] variantKey = variant.toString().getBytes();
-            byte[] dbContent = dbIndex.get(variantKey);
-            if (dbContent != null) {
-                Variant variant1 = mapper.readValue(dbContent, Variant.class);
-                flagVisitedVariant(variantKey, variant1);
-
-                populationFrequencyCellBaseDataResult.setResults(Collections.singletonList(variant1));
-                populationFrequencyCellBaseDataResult.setNumTotalResults(1);
-                populationFrequencyCellBaseDataResult.setNumResults(1);
+        // A single multiGet per batch, visited variants are flagged with a single write
+        try (WriteBatch visitedVariants = new WriteBatch(); WriteOptions writeOptions = new WriteOptions()) {
+            List<byte[]> dbContents = dbIndex.multiGetAsList(variantKeys);
+            for (int i = 0; i < dbContents.size(); i++) {
+                byte[] dbContent = dbContents.get(i);
+                if (dbContent != null) {
+                    Variant variant1 = variantIndexCodec.decode(dbContent);
+                    // The annotation.additionalAttributes field is initialized with an empty map to flag this variant
+                    // as already visited
+                    variant1.getAnnotation().setAdditionalAttributes(Collections.emptyMap());
+                    visitedVariants.put(variantKeys.get(i), variantIndexCodec.encode(variant1));
+
+                    CellBaseDataResult<Variant> populationFrequencyCellBaseDataResult = cellBaseDataResultList.get(i);
+                    populationFrequencyCellBaseDataResult.setResults(Collections.singletonList(variant1));
+                    populationFrequencyCellBaseDataResult.setNumTotalResults(1);
+                    populationFrequencyCellBaseDataResult.setNumResults(1);
+                }
             }
+            dbIndex.write(writeOptions, visitedVariants);
         } catch (RocksDBException | IOException e) {
-            e.printStackTrace();
+            logger.error("Error reading population frequencies from {}", fileName, e);
         }
 
-        long end = System.currentTimeMillis();
-        populationFrequencyCellBaseDataResult.setTime((int) (end - start));
-
-        return populationFrequencyCellBaseDataResult;
-    }
-
-    private void flagVisitedVariant(byte[] key, Variant variant) {
-        // The annotation.additionalAttributes field is initialized with an empty map to flag this variant as
-        // already visited
-        variant.getAnnotation().setAdditionalAttributes(Collections.emptyMap());
-        try {
-            dbIndex.put(key, jsonObjectWriter.writeValueAsBytes(variant));
-        } catch (RocksDBException e) {
-            e.printStackTrace();
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
+        int time = (int) (System.currentTimeMillis() - start);
+        for (CellBaseDataResult<Variant> cellBaseDataResult : cellBaseDataResultList) {
+            cellBaseDataResult.setTime(time);
         }
+
+        return cellBaseDataResultList;
     }
 
     public boolean close() {
@@ -16,18 +16,19 @@
 
 package org.opencb.cellbase.app.cli.main.annotation;
 
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.AdditionalAttribute;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.app.cli.main.annotation.indexers.VariantIndexCodec;
 import org.opencb.cellbase.core.variant.CustomAnnotationPhasedQueryManager;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotator;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -39,22 +40,24 @@ import java.util.*;
  */
 public class VcfVariantAnnotator implements VariantAnnotator {
 
-    private static ObjectMapper mapper = new ObjectMapper();
-
-    static {
-        mapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-    }
-
     private final QueryOptions queryOptions;
+    private final VariantIndexCodec variantIndexCodec;
     private String fileName;
     private RocksDB dbIndex;
     private String fileId;
     private RandomAccessFile reader;
     private static CustomAnnotationPhasedQueryManager phasedQueryManager = new CustomAnnotationPhasedQueryManager();
+    private static Logger logger = LoggerFactory.getLogger(VcfVariantAnnotator.class);
 
     public VcfVariantAnnotator(String fileName, RocksDB dbIndex, String fileId, QueryOptions queryOptions) {
+        this(fileName, dbIndex, new VariantIndexCodec(), fileId, queryOptions);
+    }
+
+    public VcfVariantAnnotator(String fileName, RocksDB dbIndex, VariantIndexCodec variantIndexCodec, String fileId,
+                               QueryOptions queryOptions) {
         this.fileName = fileName;
         this.dbIndex = dbIndex;
+        this.variantIndexCodec = variantIndexCodec;
         this.fileId = fileId;
         this.queryOptions = queryOptions;
     }
@@ -77,10 +80,7 @@ public class VcfVariantAnnotator implements VariantAnnotator {
      */
     public void run(List<Variant> variantList) {
 
-        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = new ArrayList<>(variantList.size());
-        for (Variant variant: variantList) {
-            variantCellBaseDataResult.add(getCustomAnnotation(variant));
-        }
+        List<CellBaseDataResult<Variant>> variantCellBaseDataResult = getCustomAnnotation(variantList);
 
         if (queryOptions.get(IGNORE_PHASE) != null && !queryOptions.getBoolean(IGNORE_PHASE)) {
             variantCellBaseDataResult = phasedQueryManager.run(variantList, variantCellBaseDataResult);
@@ -134,28 +134,38 @@ public class VcfVariantAnnotator implements VariantAnnotator {
         return null;
     }
 
-    private CellBaseDataResult<Variant> getCustomAnnotation(Variant variant) {
-        CellBaseDataResult<Variant> customAnnotationCellBaseDataResult = new CellBaseDataResult<>();
-        customAnnotationCellBaseDataResult.setId(variant.toString());
+    private List<CellBaseDataResult<Variant>> getCustomAnnotation(List<Variant> variantList) {
+        List<CellBaseDataResult<Variant>> cellBaseDataResultList = new ArrayList<>(variantList.size());
+        List<byte[]> variantKeys = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            CellBaseDataResult<Variant> customAnnotationCellBaseDataResult = new CellBaseDataResult<>();
+            customAnnotationCellBaseDataResult.setId(variant.toString());
+            cellBaseDataResultList.add(customAnnotationCellBaseDataResult);
+            variantKeys.add(variant.toString().getBytes());
+        }
+
         long start = System.currentTimeMillis();
         try {
-            byte[] variantKey = variant.toString().getBytes();
-            byte[] dbContent = dbIndex.get(variantKey);
-            if (dbContent != null) {
-                Variant variant1 = mapper.readValue(dbContent, Variant.class);
-
-                customAnnotationCellBaseDataResult.setResults(Collections.singletonList(variant1));
-                customAnnotationCellBaseDataResult.setNumTotalResults(1);
-                customAnnotationCellBaseDataResult.setNumResults(1);
+            List<byte[]> dbContents = dbIndex.multiGetAsList(variantKeys);
+            for (int i = 0; i < dbContents.size(); i++) {
+                if (dbContents.get(i) != null) {
+                    CellBaseDataResult<Variant> customAnnotationCellBaseDataResult = cellBaseDataResultList.get(i);
+                    customAnnotationCellBaseDataResult.setResults(
+                            Collections.singletonList(variantIndexCodec.decode(dbContents.get(i))));
+                    customAnnotationCellBaseDataResult.setNumTotalResults(1);
+                    customAnnotationCellBaseDataResult.setNumResults(1);
+                }
             }
         } catch (RocksDBException | IOException e) {
-            e.printStackTrace();
+            logger.error("Error reading custom annotation from {}", fileName, e);
         }
 
-        long end = System.currentTimeMillis();
-        customAnnotationCellBaseDataResult.setTime((int) (end - start));
+        int time = (int) (System.currentTimeMillis() - start);
+        for (CellBaseDataResult<Variant> cellBaseDataResult : cellBaseDataResultList) {
+            cellBaseDataResult.setTime(time);
+        }
 
-        return customAnnotationCellBaseDataResult;
+        return cellBaseDataResultList;
     }
 
     public boolean close() {
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.cli.main.annotation.indexers;
+
+import org.opencb.biodata.models.variant.Variant;
+
+import java.io.IOException;
+
+/**
+ * Implemented by the indexers whose index can be built with the parallel bulk load, i.e. the value stored for each
+ * variant does not depend on what is already in the index. Values are encoded concurrently from several threads.
+ */
+public interface BulkLoadSupport {
+
+    /**
+     * Encodes the value to be stored for a variant during the bulk load. Called concurrently from several threads.
+     *
+     * @param variant variant read from the input file
+     * @return encoded value, null if the variant must not be indexed
+     * @throws IOException if the variant cannot be encoded
+     */
+    byte[] getValueToIndex(Variant variant) throws IOException;
+
+    /**
+     * Whether the values of a variant present more than once are merged instead of replaced by the value read last.
+     * Merged values are merge operands, see VariantIndexCodec.encodeOperand.
+     *
+     * @return true if values are merge operands
+     */
+    default boolean isMergeValues() {
+        return false;
+    }
+}
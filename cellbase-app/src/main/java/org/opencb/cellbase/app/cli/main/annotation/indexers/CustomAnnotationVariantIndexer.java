@@ -25,7 +25,7 @@ import org.rocksdb.RocksDBException;
 import java.io.IOException;
 import java.util.*;
 
-public class CustomAnnotationVariantIndexer extends VariantIndexer {
+public class CustomAnnotationVariantIndexer extends VariantIndexer implements BulkLoadSupport {
     private final Set<String> fieldSet;
 
     public CustomAnnotationVariantIndexer(VariantReader variantReader, int maxOpenFiles, List<String> fields) {
@@ -42,13 +42,19 @@ public class CustomAnnotationVariantIndexer extends VariantIndexer {
     @Override
     protected void updateIndex(List<Variant> variantList) throws IOException, RocksDBException {
         for (Variant variant : variantList) {
-            if (variant.getType() != VariantType.NO_VARIATION) {
-                dbIndex.put(variant.toString().getBytes(),
-                        jsonObjectWriter.writeValueAsBytes(getVariantToIndex(variant)));
+            byte[] value = getValueToIndex(variant);
+            if (value != null) {
+                dbIndex.put(variant.toString().getBytes(), value);
             }
-
         }
+    }
 
+    @Override
+    public byte[] getValueToIndex(Variant variant) throws IOException {
+        if (variant.getType() == VariantType.NO_VARIATION) {
+            return null;
+        }
+        return variantIndexCodec.encode(getVariantToIndex(variant));
     }
 
     private Variant getVariantToIndex(Variant variant) {
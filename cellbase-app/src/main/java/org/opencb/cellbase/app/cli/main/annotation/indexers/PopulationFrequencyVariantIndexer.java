@@ -28,7 +28,7 @@ import org.rocksdb.RocksDBException;
 import java.io.IOException;
 import java.util.List;
 
-public class PopulationFrequencyVariantIndexer extends VariantIndexer {
+public class PopulationFrequencyVariantIndexer extends VariantIndexer implements BulkLoadSupport {
     private static final String EMPTY_ALLELE_STRING = "";
     private static final char SHIFTED_POSITION_CHARACTER = '-';
     private static final char UKNOWN_NUCLEOTIDE = 'n';
@@ -40,33 +40,29 @@ public class PopulationFrequencyVariantIndexer extends VariantIndexer {
     @Override
     protected void updateIndex(List<Variant> variantList) throws IOException, RocksDBException {
         for (Variant variant : variantList) {
-            // If MNV then edit alternate allele to include a string tha represents all variants forming the MNV
-            String haplotypeString = AnnotationBasedPhasedQueryManager.getSampleAttribute(variant,
-                    AnnotationBasedPhasedQueryManager.PHASE_SET_TAG);
-            if (StringUtils.isNotBlank(haplotypeString)) {
-                Pair<String, String> alleleAlignment = getAlleleAlignment(haplotypeString, variant);
-                for (PopulationFrequency populationFrequency : variant.getAnnotation().getPopulationFrequencies()) {
-                    populationFrequency.setRefAllele(alleleAlignment.getLeft());
-                    populationFrequency.setAltAllele(alleleAlignment.getRight());
-                }
-            }
-
-            byte[] dbContent = dbIndex.get(variant.toString().getBytes());
-            Variant variantToIndex;
-
-            if (dbContent == null) {
-                variantToIndex = variant;
-            } else {
-                variantToIndex = jsonObjectMapper.readValue(dbContent, Variant.class);
+            // Pop frequencies of a variant already indexed are added to the existing ones when read, see VariantIndexCodec
+            dbIndex.merge(variant.toString().getBytes(), getValueToIndex(variant));
+        }
+    }
 
-                // Add all pop frequencies from current variant
-                variantToIndex
-                        .getAnnotation()
-                        .getPopulationFrequencies().addAll(variant.getAnnotation().getPopulationFrequencies());
+    @Override
+    public byte[] getValueToIndex(Variant variant) throws IOException {
+        // If MNV then edit alternate allele to include a string tha represents all variants forming the MNV
+        String haplotypeString = AnnotationBasedPhasedQueryManager.getSampleAttribute(variant,
+                AnnotationBasedPhasedQueryManager.PHASE_SET_TAG);
+        if (StringUtils.isNotBlank(haplotypeString)) {
+            Pair<String, String> alleleAlignment = getAlleleAlignment(haplotypeString, variant);
+            for (PopulationFrequency populationFrequency : variant.getAnnotation().getPopulationFrequencies()) {
+                populationFrequency.setRefAllele(alleleAlignment.getLeft());
+                populationFrequency.setAltAllele(alleleAlignment.getRight());
             }
-
-            dbIndex.put(variantToIndex.toString().getBytes(), jsonObjectWriter.writeValueAsBytes(variantToIndex));
         }
+        return variantIndexCodec.encodeOperand(variant);
+    }
+
+    @Override
+    public boolean isMergeValues() {
+        return true;
     }
 
     private Pair<String, String> getAlleleAlignment(String haplotypeString, Variant variant) {
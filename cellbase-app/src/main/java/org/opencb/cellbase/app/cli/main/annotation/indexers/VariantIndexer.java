@@ -16,33 +16,51 @@
 
 package org.opencb.cellbase.app.cli.main.annotation.indexers;
 
-import com.fasterxml.jackson.databind.MapperFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.commons.io.FileUtils;
 import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.ProgressLogger;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.BloomFilter;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.IngestExternalFileOptions;
+import org.rocksdb.LRUCache;
 import org.rocksdb.Options;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.SstFileWriter;
+import org.rocksdb.StringAppendOperator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public abstract class VariantIndexer {
 
-    protected ObjectMapper jsonObjectMapper;
-    protected ObjectWriter jsonObjectWriter;
+    public static final long DEFAULT_BLOCK_CACHE_SIZE = 64L * 1024 * 1024;
+    public static final int DEFAULT_BLOOM_FILTER_BITS_PER_KEY = 10;
+    private static final int BULK_LOAD_CHUNK_SIZE = 200000;
+    private static final int PROGRESS_BATCH_SIZE = 100000;
+
+    protected VariantIndexCodec variantIndexCodec;
 
     private final Logger logger = LoggerFactory.getLogger(VariantIndexer.class);
 
     private final VariantReader variantReader;
     private final boolean forceCreate;
     private final int maxOpenFiles;
+    private long blockCacheSize;
+    private int bloomFilterBitsPerKey;
+    private int numThreads;
 
     protected RocksDB dbIndex;
     private Options dbOption;
@@ -53,21 +71,60 @@ public abstract class VariantIndexer {
         this.variantReader = variantReader;
         this.forceCreate = forceCreate;
         this.maxOpenFiles = maxOpenFiles;
+        this.blockCacheSize = DEFAULT_BLOCK_CACHE_SIZE;
+        this.bloomFilterBitsPerKey = DEFAULT_BLOOM_FILTER_BITS_PER_KEY;
+        this.numThreads = 1;
+
+        variantIndexCodec = new VariantIndexCodec();
+    }
 
-        jsonObjectMapper = new ObjectMapper();
-        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
-        jsonObjectWriter = jsonObjectMapper.writer();
+    /**
+     * Sets the size of the RocksDB block cache, must be called before open().
+     *
+     * @param blockCacheSize size in bytes, values lower than 1 keep the RocksDB default
+     * @return this object
+     */
+    public VariantIndexer setBlockCacheSize(long blockCacheSize) {
+        this.blockCacheSize = blockCacheSize;
+        return this;
+    }
 
+    /**
+     * Sets the bits per key of the RocksDB bloom filter, must be called before open(). Annotation looks up every input
+     * variant and most of them are not in the index, the bloom filter saves reading data blocks for those.
+     *
+     * @param bloomFilterBitsPerKey bits per key, values lower than 1 disable the bloom filter
+     * @return this object
+     */
+    public VariantIndexer setBloomFilterBitsPerKey(int bloomFilterBitsPerKey) {
+        this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+        return this;
     }
 
     public RocksDB getDbIndex() {
         return dbIndex;
     }
 
+    /**
+     * Sets the number of threads used to build the index, must be called before run(). With more than one thread
+     * indexers implementing BulkLoadSupport build the index by ingesting sorted SST files instead of individual puts.
+     *
+     * @param numThreads number of threads
+     * @return this object
+     */
+    public VariantIndexer setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
     public String getDbLocation() {
         return dbLocation;
     }
 
+    public VariantIndexCodec getVariantIndexCodec() {
+        return variantIndexCodec;
+    }
+
     public void open() {
         Object[] dbConnection = getDBConnection();
         dbIndex = (RocksDB) dbConnection[0];
@@ -91,6 +148,16 @@ public abstract class VariantIndexer {
         if (maxOpenFiles > 0) {
             options.setMaxOpenFiles(maxOpenFiles);
         }
+        BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
+        if (blockCacheSize > 0) {
+            tableConfig.setBlockCache(new LRUCache(blockCacheSize));
+        }
+        if (bloomFilterBitsPerKey > 0) {
+            tableConfig.setFilterPolicy(new BloomFilter(bloomFilterBitsPerKey, false));
+        }
+        options.setTableFormatConfig(tableConfig);
+        // Joins the merge operands of a variant with VariantIndexCodec.OPERAND_DELIMITER, see VariantIndexCodec.decode
+        options.setMergeOperator(new StringAppendOperator());
 
         RocksDB db = null;
         try {
@@ -113,30 +180,17 @@ public abstract class VariantIndexer {
 
     public void run() throws IOException, RocksDBException {
         if (indexingNeeded) {
-            int recordCounter = 0;
-            List<Variant> variantList = variantReader.read();
-            while (!variantList.isEmpty()) {
-                try {
-                    updateIndex(variantList);
-                } catch (IOException | RocksDBException e) {
-                    e.printStackTrace();
-                    throw e;
-                } catch (Exception e) {
-                    if (recordCounter >= 0 && variantList != null) {
-                        logger.error("Error fond while trying to parse {}",
-                                variantList.stream().map(Variant::toString).collect(Collectors.joining()));
-                    } else {
-                        logger.error("Error found while parsing {}", variantReader.getVariantFileMetadata().getPath());
-                    }
-                    throw e;
-                }
-
-                recordCounter++;
-                if (recordCounter % 100000 == 0) {
-                    logger.info("{} records indexed", recordCounter);
-                }
-                variantList = variantReader.read();
+            long startTime = System.currentTimeMillis();
+            long numIndexedVariants;
+            if (numThreads > 1 && this instanceof BulkLoadSupport) {
+                numIndexedVariants = runBulkLoad((BulkLoadSupport) this);
+            } else {
+                numIndexedVariants = runSequential();
             }
+            long elapsedTime = Math.max(1, System.currentTimeMillis() - startTime);
+            logger.info("{} variants indexed from {} in {}s ({} variants/s)", numIndexedVariants,
+                    variantReader.getVariantFileMetadata().getPath(), elapsedTime / 1000,
+                    numIndexedVariants * 1000 / elapsedTime);
         } else {
             logger.info("Index already present. Skipping index creation for {}",
                     variantReader.getVariantFileMetadata().getPath());
@@ -144,6 +198,160 @@ public abstract class VariantIndexer {
 
     }
 
+    private long runSequential() throws IOException, RocksDBException {
+        ProgressLogger progressLogger = new ProgressLogger("Indexed variants:").setBatchSize(PROGRESS_BATCH_SIZE);
+        long numIndexedVariants = 0;
+        List<Variant> variantList = variantReader.read();
+        while (!variantList.isEmpty()) {
+            try {
+                updateIndex(variantList);
+            } catch (IOException | RocksDBException e) {
+                logger.error("Error indexing variants: {}", e.getMessage(), e);
+                throw e;
+            } catch (Exception e) {
+                logger.error("Error found while trying to parse {}",
+                        variantList.stream().map(Variant::toString).collect(Collectors.joining(",")), e);
+                throw e;
+            }
+
+            numIndexedVariants += variantList.size();
+            progressLogger.increment(variantList.size());
+            variantList = variantReader.read();
+        }
+        return numIndexedVariants;
+    }
+
+    /**
+     * Bulk load: the calling thread reads the input in chunks of BULK_LOAD_CHUNK_SIZE variants, numThreads workers
+     * encode and sort each chunk into an SST file, and files are ingested in input order so that a variant present
+     * more than once keeps the value read last, as with individual puts, or gets all its values merged if the indexer
+     * merges values. At most numThreads chunks are in memory. The SST files are removed whether the load succeeds or not.
+     *
+     * @param bulkLoadSupport encodes the value of each variant
+     * @return number of variants indexed
+     * @throws IOException if the input cannot be read or the SST files cannot be written
+     * @throws RocksDBException if the SST files cannot be ingested
+     */
+    private long runBulkLoad(BulkLoadSupport bulkLoadSupport) throws IOException, RocksDBException {
+        Path sstDirectory = Files.createDirectories(Paths.get(dbLocation + ".sst"));
+        logger.info("Bulk loading {} using {} threads", variantReader.getVariantFileMetadata().getPath(), numThreads);
+        ProgressLogger progressLogger = new ProgressLogger("Indexed variants:").setBatchSize(PROGRESS_BATCH_SIZE);
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        Deque<Future<String>> pendingSstFiles = new ArrayDeque<>(numThreads);
+        long numIndexedVariants = 0;
+        int numSstFiles = 0;
+        long ingestTime = 0;
+        try (IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions().setMoveFiles(true)) {
+            List<Variant> chunk = readChunk();
+            while (!chunk.isEmpty()) {
+                if (pendingSstFiles.size() == numThreads) {
+                    ingestTime += ingest(pendingSstFiles.poll(), ingestOptions);
+                }
+                List<Variant> variantList = chunk;
+                String sstFile = sstDirectory.resolve(String.format("%06d.sst", numSstFiles++)).toString();
+                pendingSstFiles.add(executorService.submit(() -> writeSstFile(bulkLoadSupport, variantList, sstFile)));
+
+                numIndexedVariants += chunk.size();
+                progressLogger.increment(chunk.size());
+                chunk = readChunk();
+            }
+            while (!pendingSstFiles.isEmpty()) {
+                ingestTime += ingest(pendingSstFiles.poll(), ingestOptions);
+            }
+        } finally {
+            executorService.shutdownNow();
+            // Files already ingested were moved, the rest are not needed either if the load failed
+            FileUtils.deleteQuietly(sstDirectory.toFile());
+        }
+        logger.info("{} SST files ingested in {}s, compacting", numSstFiles, ingestTime / 1000);
+
+        // Chunks follow the input order, not the key order, so all files overlap and end up in level 0
+        long compactionStartTime = System.currentTimeMillis();
+        dbIndex.compactRange();
+        logger.info("Compaction done in {}s", (System.currentTimeMillis() - compactionStartTime) / 1000);
+        return numIndexedVariants;
+    }
+
+    private List<Variant> readChunk() {
+        List<Variant> chunk = new ArrayList<>(BULK_LOAD_CHUNK_SIZE);
+        List<Variant> variantList = variantReader.read();
+        while (!variantList.isEmpty()) {
+            chunk.addAll(variantList);
+            if (chunk.size() >= BULK_LOAD_CHUNK_SIZE) {
+                break;
+            }
+            variantList = variantReader.read();
+        }
+        return chunk;
+    }
+
+    private String writeSstFile(BulkLoadSupport bulkLoadSupport, List<Variant> variantList, String sstFile)
+            throws IOException, RocksDBException {
+        // RocksDB default comparator orders keys as unsigned bytes, later puts of the same key win. SST files cannot
+        // contain the same key twice, so merge operands of the same chunk are joined here
+        boolean mergeValues = bulkLoadSupport.isMergeValues();
+        TreeMap<byte[], byte[]> sortedValues = new TreeMap<>(VariantIndexer::compareKeys);
+        for (Variant variant : variantList) {
+            byte[] value = bulkLoadSupport.getValueToIndex(variant);
+            if (value != null) {
+                if (mergeValues) {
+                    sortedValues.merge(variant.toString().getBytes(), value, VariantIndexCodec::appendOperand);
+                } else {
+                    sortedValues.put(variant.toString().getBytes(), value);
+                }
+            }
+        }
+        if (sortedValues.isEmpty()) {
+            return null;
+        }
+
+        try (EnvOptions envOptions = new EnvOptions(); SstFileWriter sstFileWriter = new SstFileWriter(envOptions, dbOption)) {
+            sstFileWriter.open(sstFile);
+            for (Map.Entry<byte[], byte[]> entry : sortedValues.entrySet()) {
+                if (mergeValues) {
+                    sstFileWriter.merge(entry.getKey(), entry.getValue());
+                } else {
+                    sstFileWriter.put(entry.getKey(), entry.getValue());
+                }
+            }
+            sstFileWriter.finish();
+        }
+        return sstFile;
+    }
+
+    private long ingest(Future<String> sstFileFuture, IngestExternalFileOptions ingestOptions)
+            throws IOException, RocksDBException {
+        String sstFile;
+        try {
+            sstFile = sstFileFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing SST files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RocksDBException) {
+                throw (RocksDBException) e.getCause();
+            }
+            throw new IOException("Error writing SST file", e.getCause());
+        }
+        if (sstFile == null) {
+            return 0;
+        }
+        long startTime = System.currentTimeMillis();
+        dbIndex.ingestExternalFile(Collections.singletonList(sstFile), ingestOptions);
+        return System.currentTimeMillis() - startTime;
+    }
+
+    private static int compareKeys(byte[] key1, byte[] key2) {
+        int length = Math.min(key1.length, key2.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (key1[i] & 0xff) - (key2[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return key1.length - key2.length;
+    }
+
     protected abstract void updateIndex(List<Variant> variantList) throws IOException, RocksDBException;
 
     public void close() {
@@ -40,6 +40,7 @@ import org.opencb.cellbase.app.cli.main.CellBaseCliOptionsParser;
 import org.opencb.cellbase.app.cli.main.annotation.*;
 import org.opencb.cellbase.app.cli.main.annotation.indexers.CustomAnnotationVariantIndexer;
 import org.opencb.cellbase.app.cli.main.annotation.indexers.PopulationFrequencyVariantIndexer;
+import org.opencb.cellbase.app.cli.main.annotation.indexers.VariantIndexCodec;
 import org.opencb.cellbase.app.cli.main.annotation.indexers.VariantIndexer;
 import org.opencb.cellbase.client.config.ClientConfiguration;
 import org.opencb.cellbase.client.rest.CellBaseClient;
@@ -70,7 +71,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 import static java.nio.file.StandardOpenOption.APPEND;
@@ -107,6 +107,8 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
     private List<String> customFileIds;
     private List<List<String>> customFileFields;
     private int maxOpenFiles = -1;
+    private long blockCacheSize = VariantIndexer.DEFAULT_BLOCK_CACHE_SIZE;
+    private int bloomFilterBitsPerKey = VariantIndexer.DEFAULT_BLOOM_FILTER_BITS_PER_KEY;
     private FileFormat inputFormat;
     private FileFormat outputFormat;
 
@@ -304,16 +306,15 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
 
                 // Population frequencies rocks db will always be the last one in the list. DO NOT change the name of the
                 // rocksIterator variable - for some unexplainable reason Java VM crashes if it's named "iterator"
-                RocksIterator rocksIterator = variantIndexerList.get(variantIndexerList.size() - 1)
-                        .getDbIndex()
-                        .newIterator();
+                VariantIndexer variantIndexer = variantIndexerList.get(variantIndexerList.size() - 1);
+                RocksIterator rocksIterator = variantIndexer.getDbIndex().newIterator();
 
-                ObjectMapper mapper = new ObjectMapper();
+                VariantIndexCodec variantIndexCodec = variantIndexer.getVariantIndexCodec();
                 logger.info("Writing variants with frequencies that were not found within the input file {} to {}",
                         populationFrequenciesFile.toString(), output.toString());
                 int counter = 0;
                 for (rocksIterator.seekToFirst(); rocksIterator.isValid(); rocksIterator.next()) {
-                    Variant variant = mapper.readValue(rocksIterator.value(), Variant.class);
+                    Variant variant = variantIndexCodec.decode(rocksIterator.value());
                     // The additional attributes field initialized with an empty map is used as the flag to indicate that
                     // this variant was not visited during the annotation process
                     if (variant.getAnnotation().getAdditionalAttributes() == null) {
@@ -435,6 +436,7 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
                 if (customFiles.get(i).toString().endsWith(".vcf") || customFiles.get(i).toString().endsWith(".vcf.gz")) {
                     variantAnnotatorList.add(new VcfVariantAnnotator(customFiles.get(i).toString(),
                             variantIndexerList.get(i).getDbIndex(),
+                            variantIndexerList.get(i).getVariantIndexCodec(),
                             customFileIds.get(i),
                             serverQueryOptions));
                 }
@@ -446,7 +448,8 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             // Rocks db indexer for population frequencies  is always the last in the list
             int i = variantIndexerList.size() - 1;
             variantAnnotatorList.add(new PopulationFrequenciesAnnotator(populationFrequenciesFile.toString(),
-                    variantIndexerList.get(i).getDbIndex(), serverQueryOptions));
+                    variantIndexerList.get(i).getDbIndex(), variantIndexerList.get(i).getVariantIndexCodec(),
+                    serverQueryOptions));
 
         }
 
@@ -470,7 +473,8 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
                 ClientConfiguration clientConfiguration = ClientConfiguration.load(getClass()
                         .getResourceAsStream("/client-configuration.yml"));
                 if (url != null) {
-                    clientConfiguration.getRest().setHosts(Collections.singletonList(url));
+                    // Requests are balanced across all the hosts provided
+                    clientConfiguration.getRest().setHosts(Arrays.asList(url.split(",")));
                 }
                 clientConfiguration.setDefaultSpecies(species);
                 CellBaseClient cellBaseClient;
@@ -501,6 +505,7 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
                         = new CustomAnnotationVariantIndexer(getVariantReader(customFiles.get(i), true),
                         maxOpenFiles,
                         customFileFields.get(i));
+                variantIndexer.setBlockCacheSize(blockCacheSize).setBloomFilterBitsPerKey(bloomFilterBitsPerKey).setNumThreads(numThreads);
                 variantIndexer.open();
                 variantIndexer.run();
                 variantIndexerList.add(variantIndexer);
@@ -516,6 +521,7 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             VariantIndexer variantIndexer = new PopulationFrequencyVariantIndexer(variantReader,
                     maxOpenFiles,
                     true);
+            variantIndexer.setBlockCacheSize(blockCacheSize).setBloomFilterBitsPerKey(bloomFilterBitsPerKey).setNumThreads(numThreads);
             variantIndexer.open();
             variantIndexer.run();
             variantIndexerList.add(variantIndexer);
@@ -710,6 +716,9 @@ public class VariantAnnotationCommandExecutor extends CommandExecutor {
             // MaxOpenFiles parameter for RocksDB indexation of custom files
             maxOpenFiles = variantAnnotationCommandOptions.maxOpenFiles;
         }
+        // Block cache and bloom filter of the RocksDB indexes of custom and population frequency files
+        blockCacheSize = variantAnnotationCommandOptions.blockCacheSize * 1024L * 1024L;
+        bloomFilterBitsPerKey = variantAnnotationCommandOptions.bloomFilterBitsPerKey;
 
         // Semi-private build parameter for us to build the variation collection including population frequencies
         if (variantAnnotationCommandOptions.buildParams.get("population-frequencies") != null) {
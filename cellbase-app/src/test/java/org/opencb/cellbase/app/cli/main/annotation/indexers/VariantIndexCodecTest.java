@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.app.cli.main.annotation.indexers;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VariantIndexCodecTest {
+
+    private final VariantIndexCodec variantIndexCodec = new VariantIndexCodec();
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        Variant variant = createVariant();
+        byte[] value = variantIndexCodec.encode(variant);
+
+        Variant decodedVariant = variantIndexCodec.decode(value);
+        assertEquals(variant.toString(), decodedVariant.toString());
+        assertEquals(variant.getAnnotation().getPopulationFrequencies(),
+                decodedVariant.getAnnotation().getPopulationFrequencies());
+        assertNull(decodedVariant.getAnnotation().getAdditionalAttributes());
+    }
+
+    @Test
+    public void testDecodeJson() throws Exception {
+        // Indexes created by previous versions store JSON
+        ObjectMapper jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        Variant variant = createVariant();
+
+        Variant decodedVariant = variantIndexCodec.decode(jsonObjectMapper.writer().writeValueAsBytes(variant));
+        assertEquals(variant.toString(), decodedVariant.toString());
+        assertEquals(variant.getAnnotation().getPopulationFrequencies(),
+                decodedVariant.getAnnotation().getPopulationFrequencies());
+    }
+
+    @Test
+    public void testDecodeMergedOperands() throws Exception {
+        Variant amrVariant = createVariant("AMR");
+        Variant eurVariant = createVariant("EUR");
+        Variant afrVariant = createVariant("AFR");
+        byte[] value = VariantIndexCodec.appendOperand(variantIndexCodec.encodeOperand(amrVariant),
+                variantIndexCodec.encodeOperand(eurVariant));
+        value = VariantIndexCodec.appendOperand(value, variantIndexCodec.encodeOperand(afrVariant));
+
+        Variant decodedVariant = variantIndexCodec.decode(value);
+        assertEquals(amrVariant.toString(), decodedVariant.toString());
+        assertEquals(Arrays.asList(amrVariant.getAnnotation().getPopulationFrequencies().get(0),
+                eurVariant.getAnnotation().getPopulationFrequencies().get(0),
+                afrVariant.getAnnotation().getPopulationFrequencies().get(0)),
+                decodedVariant.getAnnotation().getPopulationFrequencies());
+    }
+
+    @Test
+    public void testDecodeSingleOperand() throws Exception {
+        Variant variant = createVariant();
+
+        Variant decodedVariant = variantIndexCodec.decode(variantIndexCodec.encodeOperand(variant));
+        assertEquals(variant.toString(), decodedVariant.toString());
+        assertEquals(variant.getAnnotation().getPopulationFrequencies(),
+                decodedVariant.getAnnotation().getPopulationFrequencies());
+    }
+
+    private Variant createVariant() {
+        return createVariant("AMR");
+    }
+
+    private Variant createVariant(String population) {
+        Variant variant = new Variant("1:62165739:T:G");
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setPopulationFrequencies(Collections.singletonList(new PopulationFrequency("GNOMAD_GENOMES",
+                population, "T", "G", 0.98062956f, 0.01937046f, null, null, null)));
+        variant.setAnnotation(variantAnnotation);
+        return variant;
+    }
+}
@@ -18,6 +18,7 @@ package org.opencb.cellbase.client.rest;
 
 import org.apache.commons.lang3.StringUtils;
 import org.opencb.cellbase.client.config.ClientConfiguration;
+import org.opencb.commons.datastore.core.ObjectMap;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -99,6 +100,16 @@ public class CellBaseClient {
         return getClient("GENERIC", () -> new GenericClient(species, assembly, clientConfiguration));
     }
 
+    /**
+     * Returns the number of requests, errors, ejections, outstanding requests and average latency of each of the
+     * configured hosts, requests are balanced across all of them.
+     *
+     * @return metrics by host
+     */
+    public ObjectMap getHostStats() {
+        return HostBalancer.getInstance(clientConfiguration.getRest().getHosts()).getStats();
+    }
+
     @SuppressWarnings("unchecked")
     private <T extends ParentRestClient> T getClient(String key, Supplier<T> constructorIfAbsent) {
         // Avoid concurrent modifications
@@ -16,6 +16,7 @@
 
 package org.opencb.cellbase.client.rest;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.cellbase.client.config.ClientConfiguration;
 import org.opencb.cellbase.core.result.CellBaseDataResponse;
@@ -62,4 +63,17 @@ public class ClinicalVariantClient extends ParentRestClient<Variant> {
     public CellBaseDataResponse<String> variantTypes() throws IOException {
         return execute("type", new Query(), new QueryOptions(), String.class);
     }
+
+    /**
+     * Streams all the clinical variants matching the query from the 'export' end point, without the paging and the
+     * limits of search. The iterator must be closed once consumed.
+     *
+     * @param query query, e.g. region or clinical significance
+     * @param queryOptions query options, e.g. include or exclude
+     * @return iterator over the clinical variants
+     * @throws IOException if the response can not be read
+     */
+    public MappingIterator<Variant> export(Query query, QueryOptions queryOptions) throws IOException {
+        return stream("export", query, queryOptions, Variant.class);
+    }
 }
@@ -16,6 +16,7 @@
 
 package org.opencb.cellbase.client.rest;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import org.opencb.biodata.formats.protein.uniprot.v202003jaxb.Entry;
 import org.opencb.biodata.models.core.Gene;
 import org.opencb.biodata.models.core.Transcript;
@@ -69,4 +70,16 @@ public class GeneClient extends FeatureClient<Gene> {
         return execute(id, "protein", queryOptions, Entry.class);
     }
 
+    /**
+     * Streams all the genes matching the query from the 'export' end point, without the paging and the limits of
+     * search. The iterator must be closed once consumed.
+     *
+     * @param query query, e.g. region or biotype
+     * @param queryOptions query options, e.g. include or exclude
+     * @return iterator over the genes
+     * @throws IOException if the response can not be read
+     */
+    public MappingIterator<Gene> export(Query query, QueryOptions queryOptions) throws IOException {
+        return stream("export", query, queryOptions, Gene.class);
+    }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side load balancer across the CellBase hosts of a configuration. Each request goes to the healthy host with
+ * the least outstanding requests, ties are broken round-robin. A host failing EJECTION_THRESHOLD consecutive requests
+ * is ejected for EJECTION_TIME_MS and requests go to the other hosts meanwhile; once that time has passed it gets
+ * requests again and a single success brings it back.
+ *
+ * There is one balancer per list of hosts in the JVM, shared by all the clients using them, so that all of them see
+ * the same load and health of each host.
+ */
+public final class HostBalancer {
+
+    public static final int EJECTION_THRESHOLD = 3;
+    public static final long EJECTION_TIME_MS = 30000;
+
+    private static final Map<List<String>, HostBalancer> BALANCERS = new HashMap<>();
+
+    private final List<String> hosts;
+    private final Map<String, HostStats> hostStatsMap;
+    private final AtomicInteger nextHost = new AtomicInteger();
+
+    private static Logger logger = LoggerFactory.getLogger(HostBalancer.class);
+
+    HostBalancer(List<String> hosts) {
+        this.hosts = new ArrayList<>(hosts);
+        this.hostStatsMap = new HashMap<>();
+        for (String host : hosts) {
+            hostStatsMap.put(host, new HostStats());
+        }
+    }
+
+    /**
+     * Returns the balancer shared by all the clients using these hosts, creating it on first use.
+     *
+     * @param hosts CellBase hosts
+     * @return shared balancer
+     */
+    public static synchronized HostBalancer getInstance(List<String> hosts) {
+        return BALANCERS.computeIfAbsent(new ArrayList<>(hosts), HostBalancer::new);
+    }
+
+    /**
+     * Selects the host for the next request: the one with the least outstanding requests among the healthy hosts not
+     * already tried. If all of them are ejected the one whose ejection expires first is returned.
+     *
+     * @param excludedHosts hosts already tried by the current request
+     * @return selected host, null if all the hosts have been tried
+     */
+    public String select(Collection<String> excludedHosts) {
+        if (hosts.size() == 1) {
+            return excludedHosts.contains(hosts.get(0)) ? null : hosts.get(0);
+        }
+
+        long now = System.currentTimeMillis();
+        int offset = Math.floorMod(nextHost.getAndIncrement(), hosts.size());
+        String selectedHost = null;
+        int selectedOutstanding = Integer.MAX_VALUE;
+        String ejectedHost = null;
+        long ejectedUntil = Long.MAX_VALUE;
+        for (int i = 0; i < hosts.size(); i++) {
+            String host = hosts.get((offset + i) % hosts.size());
+            if (excludedHosts.contains(host)) {
+                continue;
+            }
+            HostStats hostStats = hostStatsMap.get(host);
+            if (hostStats.ejectedUntil > now) {
+                if (hostStats.ejectedUntil < ejectedUntil) {
+                    ejectedHost = host;
+                    ejectedUntil = hostStats.ejectedUntil;
+                }
+            } else if (hostStats.outstanding.get() < selectedOutstanding) {
+                selectedHost = host;
+                selectedOutstanding = hostStats.outstanding.get();
+            }
+        }
+        return selectedHost != null ? selectedHost : ejectedHost;
+    }
+
+    /**
+     * Must be called right before sending a request to the host.
+     *
+     * @param host selected host
+     * @return start time of the request, to be passed to onSuccess or onFailure
+     */
+    public long onStart(String host) {
+        hostStatsMap.get(host).outstanding.incrementAndGet();
+        return System.currentTimeMillis();
+    }
+
+    public void onSuccess(String host, long startTime) {
+        HostStats hostStats = hostStatsMap.get(host);
+        hostStats.finish(startTime);
+        hostStats.consecutiveFailures.set(0);
+        hostStats.ejectedUntil = 0;
+    }
+
+    public void onFailure(String host, long startTime) {
+        HostStats hostStats = hostStatsMap.get(host);
+        hostStats.finish(startTime);
+        hostStats.errors.incrementAndGet();
+        if (hostStats.consecutiveFailures.incrementAndGet() >= EJECTION_THRESHOLD && hosts.size() > 1) {
+            hostStats.ejectedUntil = System.currentTimeMillis() + EJECTION_TIME_MS;
+            hostStats.ejections.incrementAndGet();
+            logger.warn("CellBase host {} ejected for {} ms after {} consecutive failures", host, EJECTION_TIME_MS,
+                    hostStats.consecutiveFailures.get());
+        }
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * Returns the metrics of each host: number of requests, errors and ejections, outstanding requests, average
+     * latency and whether it is currently ejected.
+     *
+     * @return metrics by host
+     */
+    public ObjectMap getStats() {
+        long now = System.currentTimeMillis();
+        ObjectMap stats = new ObjectMap();
+        for (String host : hosts) {
+            HostStats hostStats = hostStatsMap.get(host);
+            long requests = hostStats.requests.get();
+            stats.put(host, new ObjectMap()
+                    .append("requests", requests)
+                    .append("errors", hostStats.errors.get())
+                    .append("ejections", hostStats.ejections.get())
+                    .append("outstanding", hostStats.outstanding.get())
+                    .append("avgLatencyMs", requests > 0 ? hostStats.latency.get() / requests : 0)
+                    .append("ejected", hostStats.ejectedUntil > now));
+        }
+        return stats;
+    }
+
+    private static final class HostStats {
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong ejections = new AtomicLong();
+        private final AtomicLong latency = new AtomicLong();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile long ejectedUntil;
+
+        private void finish(long startTime) {
+            outstanding.decrementAndGet();
+            requests.incrementAndGet();
+            latency.addAndGet(System.currentTimeMillis() - startTime);
+        }
+    }
+}
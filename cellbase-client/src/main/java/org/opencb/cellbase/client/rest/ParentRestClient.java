@@ -19,9 +19,13 @@ package org.opencb.cellbase.client.rest;
 import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.commons.lang3.StringUtils;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.opencb.biodata.models.variant.avro.DrugResponseClassification;
 import org.opencb.cellbase.client.config.ClientConfiguration;
 import org.opencb.cellbase.client.rest.models.mixin.DrugResponseClassificationMixIn;
@@ -41,12 +45,11 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by imedina on 12/05/16.
@@ -77,6 +80,10 @@ public class ParentRestClient<T> {
     protected static final String WEBSERVICES = "webservices";
     protected static final String REST = "rest";
 
+    // Threads shared by all the clients to send the batches of large calls, daemon so that nobody needs to shut them down
+    private static final ExecutorService EXECUTOR;
+    private static final Map<Class<?>, ObjectReader> RESPONSE_READERS = new ConcurrentHashMap<>();
+
 
     @Deprecated
     public ParentRestClient(ClientConfiguration configuration) {
@@ -88,11 +95,26 @@ public class ParentRestClient<T> {
         this.assembly = assembly;
         this.configuration = configuration;
 
-        this.client = ClientBuilder.newClient();
+        // Responses are requested gzipped. Connections are kept alive and reused by the JDK connector as long as
+        // responses are fully read and closed, as done in restCall
+        this.client = ClientBuilder.newClient()
+                .register(GZipEncoder.class)
+                .register(EncodingFilter.class);
+        // Only the connection is bounded, so that unreachable hosts fail fast and the request goes to another host
+        if (configuration.getRest() != null && configuration.getRest().getTimeout() > 0) {
+            this.client.property(ClientProperties.CONNECT_TIMEOUT, configuration.getRest().getTimeout());
+        }
         logger = LoggerFactory.getLogger(this.getClass().toString());
     }
 
     static {
+        AtomicInteger threadCounter = new AtomicInteger();
+        EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "cellbase-client-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
         jsonObjectMapper = new ObjectMapper();
         jsonObjectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         jsonObjectMapper.addMixIn(DrugResponseClassification.class, DrugResponseClassificationMixIn.class);
@@ -168,47 +190,89 @@ public class ParentRestClient<T> {
         }
 
         // But if there are more than REST_CALL_BATCH_SIZE variants then we launch several threads to increase performance.
-        int numThreads = (options != null)
-                ? options.getInt("numThreads", DEFAULT_NUM_THREADS)
-                : DEFAULT_NUM_THREADS;
-
-        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
-        List<Future<CellBaseDataResponse<U>>> futureList = new ArrayList<>((idList.size() / REST_CALL_BATCH_SIZE) + 1);
-        for (int i = 0; i < idList.size(); i += REST_CALL_BATCH_SIZE) {
-            final int from = i;
-            final int to = (from + REST_CALL_BATCH_SIZE > idList.size())
-                    ? idList.size()
-                    : from + REST_CALL_BATCH_SIZE;
-            futureList.add(executorService.submit(() ->
-                    fetchData(idList.subList(from, to), resource, options, clazz, post)
-            ));
+        try {
+            return executeAsync(idList, resource, options, clazz, post).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for CellBase REST calls", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
         }
+    }
 
-        List<CellBaseDataResult<U>> cellBaseDataResults = new ArrayList<>(idList.size());
-        for (Future<CellBaseDataResponse<U>> responseFuture : futureList) {
-            try {
-                while (!responseFuture.isDone()) {
-                    Thread.sleep(5);
-                }
-                cellBaseDataResults.addAll(responseFuture.get().getResponses());
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Asynchronous version of {@link #execute(List, String, QueryOptions, Class, boolean)}. Ids are sent in batches of
+     * REST_CALL_BATCH_SIZE, up to 'numThreads' batches at a time (DEFAULT_NUM_THREADS by default), using the thread pool
+     * shared by all the clients.
+     *
+     * @param idList ids to be queried
+     * @param resource resource, e.g. 'annotation'
+     * @param options query options
+     * @param clazz class of the results
+     * @param post whether ids are sent in the body of a POST request
+     * @param <U> type of the results
+     * @return a CompletableFuture completed with the responses of all the ids, in the same order, or exceptionally with
+     * the first error found
+     */
+    protected <U> CompletableFuture<CellBaseDataResponse<U>> executeAsync(List<String> idList, String resource, QueryOptions options,
+                                                                       Class<U> clazz, boolean post) {
+        if (idList == null || idList.isEmpty()) {
+            return CompletableFuture.completedFuture(new CellBaseDataResponse<>());
         }
 
-        CellBaseDataResponse<U> finalResponse = new CellBaseDataResponse<>();
-        finalResponse.setResponses(cellBaseDataResults);
-        executorService.shutdown();
+        int numBatches = (idList.size() + REST_CALL_BATCH_SIZE - 1) / REST_CALL_BATCH_SIZE;
+        int numThreads = Math.min(numBatches, Math.max(1, (options != null)
+                ? options.getInt("numThreads", DEFAULT_NUM_THREADS)
+                : DEFAULT_NUM_THREADS));
+
+        // Each thread fetches every numThreads-th batch, responses are stored by batch to keep the order of the ids
+        List<CellBaseDataResponse<U>> responses = new ArrayList<>(Collections.nCopies(numBatches, null));
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[numThreads];
+        for (int thread = 0; thread < numThreads; thread++) {
+            final int firstBatch = thread;
+            futures[thread] = CompletableFuture.runAsync(() -> {
+                for (int batch = firstBatch; batch < numBatches; batch += numThreads) {
+                    int from = batch * REST_CALL_BATCH_SIZE;
+                    int to = Math.min(from + REST_CALL_BATCH_SIZE, idList.size());
+                    try {
+                        CellBaseDataResponse<U> response = fetchData(idList.subList(from, to), resource, options, clazz, post);
+                        synchronized (responses) {
+                            responses.set(batch, response);
+                        }
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }
+            }, EXECUTOR);
+        }
 
-        return finalResponse;
+        return CompletableFuture.allOf(futures).thenApply(v -> {
+            synchronized (responses) {
+                if (numBatches == 1) {
+                    return responses.get(0);
+                }
+                List<CellBaseDataResult<U>> cellBaseDataResults = new ArrayList<>(idList.size());
+                for (CellBaseDataResponse<U> response : responses) {
+                    cellBaseDataResults.addAll(response.getResponses());
+                }
+                CellBaseDataResponse<U> finalResponse = new CellBaseDataResponse<>();
+                finalResponse.setResponses(cellBaseDataResults);
+                return finalResponse;
+            }
+        });
     }
 
-    private <U> CellBaseDataResponse<U> fetchData(List<String> idList, String resource, QueryOptions options, Class<U> clazz,
-                                           boolean post) throws IOException {
+    // Package-private to be stubbed by the tests of executeAsync
+    <U> CellBaseDataResponse<U> fetchData(List<String> idList, String resource, QueryOptions options, Class<U> clazz,
+                                          boolean post) throws IOException {
 
-        if (options == null) {
-            options = new QueryOptions();
-        }
+        // Options are copied since 'skip' is modified below and the same options can be used by several threads
+        options = (options != null) ? new QueryOptions(options) : new QueryOptions();
         options.putIfAbsent("limit", LIMIT);
 
         Map<String, Integer> idMap = new HashMap<>();
@@ -346,8 +410,109 @@ public class ParentRestClient<T> {
 
     private <U> CellBaseDataResponse<U> restCall(List<String> hosts, String version, String ids, String resource, QueryOptions queryOptions,
                                           Class<U> clazz, boolean post) throws IOException {
+        return callWithFailover(hosts, host -> restCall(host, version, ids, resource, queryOptions, clazz, post));
+    }
 
-        WebTarget path = getBaseUrl(hosts, version);
+    @FunctionalInterface
+    private interface HostCall<R> {
+        R call(String host) throws IOException;
+    }
+
+    private <R> R callWithFailover(List<String> hosts, HostCall<R> hostCall) throws IOException {
+        HostBalancer hostBalancer = HostBalancer.getInstance(hosts);
+        List<String> triedHosts = new ArrayList<>(hosts.size());
+        String host = hostBalancer.select(triedHosts);
+        while (true) {
+            String currentHost = host;
+            triedHosts.add(currentHost);
+            long startTime = hostBalancer.onStart(currentHost);
+            boolean hostFailure = false;
+            try {
+                return hostCall.call(currentHost);
+            } catch (javax.ws.rs.ProcessingException | WebApplicationException e) {
+                // Client errors are not the host's fault, there is no point in trying another host
+                if (e instanceof WebApplicationException && ((WebApplicationException) e).getResponse().getStatus() < 500) {
+                    throw e;
+                }
+                hostFailure = true;
+                host = hostBalancer.select(triedHosts);
+                if (host == null) {
+                    throw e;
+                }
+                logger.warn("CellBase REST call to {} failed: {}. Retrying on {}", currentHost, e.getMessage(), host);
+            } finally {
+                if (hostFailure) {
+                    hostBalancer.onFailure(currentHost, startTime);
+                } else {
+                    hostBalancer.onSuccess(currentHost, startTime);
+                }
+            }
+        }
+    }
+
+    private <U> CellBaseDataResponse<U> restCall(String host, String version, String ids, String resource, QueryOptions queryOptions,
+                                                 Class<U> clazz, boolean post) throws IOException {
+        WebTarget callUrl = getCallUrl(host, version, ids, resource, queryOptions, post);
+
+        Response response;
+        if (post) {
+            logger.debug("Making POST call to REST URL: {}", callUrl.getUri().toURL());
+            response = callUrl.request().post(Entity.text(ids));
+        } else {
+            logger.debug("Making GET call to REST URL: {}", callUrl.getUri().toURL());
+            response = callUrl.request().get();
+        }
+
+        // The response is parsed as it is read, without keeping a copy of the whole JSON in memory
+        try {
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                throw new WebApplicationException(response);
+            }
+            try (InputStream inputStream = response.readEntity(InputStream.class)) {
+                return parseResult(inputStream, clazz);
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Streams all the results of a query from a newline-delimited JSON end point, e.g. 'export', instead of paging
+     * them. Results are parsed as they are read, the iterator must be closed to release the connection.
+     *
+     * @param resource resource, e.g. 'export'
+     * @param query query
+     * @param queryOptions query options, e.g. include or exclude
+     * @param clazz class of the results
+     * @param <U> type of the results
+     * @return iterator over the results
+     * @throws IOException if the response can not be read
+     */
+    protected <U> MappingIterator<U> stream(String resource, Query query, QueryOptions queryOptions, Class<U> clazz)
+            throws IOException {
+        QueryOptions options = (queryOptions != null) ? new QueryOptions(queryOptions) : new QueryOptions();
+        if (query != null) {
+            options.putAll(query);
+        }
+        return callWithFailover(configuration.getRest().getHosts(), host -> {
+            WebTarget callUrl = getCallUrl(host, configuration.getVersion(), "", resource, options, false);
+            logger.debug("Streaming REST URL: {}", callUrl.getUri().toURL());
+            Response response = callUrl.request().get();
+            try {
+                if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                    throw new WebApplicationException(response);
+                }
+                MappingIterator<U> iterator = jsonObjectMapper.readerFor(clazz).readValues(response.readEntity(InputStream.class));
+                return iterator;
+            } catch (IOException | RuntimeException e) {
+                response.close();
+                throw e;
+            }
+        });
+    }
+
+    private WebTarget getCallUrl(String host, String version, String ids, String resource, QueryOptions queryOptions, boolean post) {
+        WebTarget path = getBaseUrl(Collections.singletonList(host), version);
 
         WebTarget callUrl = path;
         if (ids != null && !ids.isEmpty() && !post) {
@@ -370,16 +535,16 @@ public class ParentRestClient<T> {
             }
         }
 
-        String jsonString;
-        if (post) {
-            logger.debug("Making POST call to REST URL: {}", callUrl.getUri().toURL());
-            jsonString = callUrl.request().post(Entity.text(ids), String.class);
-        } else {
-            logger.debug("Making GET call to REST URL: {}", callUrl.getUri().toURL());
-            jsonString = callUrl.request().get(String.class);
-        }
+        return callUrl;
+    }
 
-        return parseResult(jsonString, clazz);
+    /**
+     * Returns the metrics of each of the configured hosts, see {@link HostBalancer#getStats()}.
+     *
+     * @return metrics by host
+     */
+    public ObjectMap getHostStats() {
+        return HostBalancer.getInstance(configuration.getRest().getHosts()).getStats();
     }
 
     protected WebTarget getBaseUrl(List<String> hosts, String version) {
@@ -393,11 +558,11 @@ public class ParentRestClient<T> {
                     .path(subcategory);
     }
 
-    private static <U> CellBaseDataResponse<U> parseResult(String json, Class<U> clazz) throws IOException {
-        ObjectReader reader = jsonObjectMapper
+    private static <U> CellBaseDataResponse<U> parseResult(InputStream inputStream, Class<U> clazz) throws IOException {
+        ObjectReader reader = RESPONSE_READERS.computeIfAbsent(clazz, k -> jsonObjectMapper
                 .readerFor(jsonObjectMapper.getTypeFactory().constructParametrizedType(CellBaseDataResponse.class,
-                        CellBaseDataResult.class, clazz));
-        return reader.readValue(json);
+                        CellBaseDataResult.class, k)));
+        return reader.readValue(inputStream);
     }
 
 }
@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.opencb.cellbase.core.variant.AnnotationBasedPhasedQueryManager.GENOTYPE_TAG;
 import static org.opencb.cellbase.core.variant.AnnotationBasedPhasedQueryManager.PHASE_SET_TAG;
@@ -108,6 +109,24 @@ public final class VariantClient extends FeatureClient<Variant> {
         return initRequiredAnnotation(result);
     }
 
+    /**
+     * Asynchronous version of {@link #getAnnotation(List, QueryOptions, boolean)}, batches are sent using the thread pool
+     * shared by all the clients so that callers can overlap annotation requests with their own work.
+     *
+     * @param variants variants to be annotated
+     * @param options query options
+     * @param post whether variants are sent in the body of a POST request
+     * @return a CompletableFuture completed with the annotations, in the same order as the variants
+     */
+    public CompletableFuture<CellBaseDataResponse<VariantAnnotation>> getAnnotationAsync(List<Variant> variants, QueryOptions options,
+                                                                                         boolean post) {
+        return executeAsync(getVariantAnnotationIds(variants, options.getBoolean(IGNORE_PHASE)),
+                "annotation",
+                options,
+                VariantAnnotation.class, post)
+                .thenApply(this::initRequiredAnnotation);
+    }
+
 
     // FIXME Next two methods should be moved near the Variant Annotation tool
     public String getVariantAnnotationId(Variant variant, Boolean ignorePhase) {
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HostBalancerTest {
+
+    @Test
+    public void testLeastOutstandingRequests() {
+        HostBalancer hostBalancer = new HostBalancer(Arrays.asList("host1", "host2"));
+        String host = hostBalancer.select(Collections.emptyList());
+        hostBalancer.onStart(host);
+
+        // The busy host is not selected until its request finishes
+        String otherHost = hostBalancer.select(Collections.emptyList());
+        assertNotEquals(host, otherHost);
+        long startTime = hostBalancer.onStart(otherHost);
+        hostBalancer.onSuccess(otherHost, startTime);
+        assertEquals(otherHost, hostBalancer.select(Collections.emptyList()));
+        assertEquals(otherHost, hostBalancer.select(Collections.emptyList()));
+    }
+
+    @Test
+    public void testFailoverAndEjection() {
+        HostBalancer hostBalancer = new HostBalancer(Arrays.asList("host1", "host2"));
+        assertEquals("host2", hostBalancer.select(Collections.singletonList("host1")));
+        assertNull(hostBalancer.select(Arrays.asList("host1", "host2")));
+
+        for (int i = 0; i < HostBalancer.EJECTION_THRESHOLD; i++) {
+            hostBalancer.onFailure("host1", hostBalancer.onStart("host1"));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals("host2", hostBalancer.select(Collections.emptyList()));
+        }
+        // Ejected hosts are still used if no other host is left
+        assertEquals("host1", hostBalancer.select(Collections.singletonList("host2")));
+
+        ObjectMap stats = hostBalancer.getStats();
+        assertEquals(3L, ((ObjectMap) stats.get("host1")).getLong("errors"));
+        assertEquals(1L, ((ObjectMap) stats.get("host1")).getLong("ejections"));
+        assertTrue(((ObjectMap) stats.get("host1")).getBoolean("ejected"));
+        assertFalse(((ObjectMap) stats.get("host2")).getBoolean("ejected"));
+
+        // A single success brings the host back
+        hostBalancer.onSuccess("host1", hostBalancer.onStart("host1"));
+        Set<String> selectedHosts = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            selectedHosts.add(hostBalancer.select(Collections.emptyList()));
+        }
+        assertEquals(2, selectedHosts.size());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.client.rest;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.cellbase.client.config.ClientConfiguration;
+import org.opencb.cellbase.core.result.CellBaseDataResponse;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the batching of large calls, with fetchData stubbed so that no CellBase server is needed.
+ */
+public class ParentRestClientTest {
+
+    private static final int NUM_BATCHES = 6;
+
+    /**
+     * Returns one result per id, with the id as result. Later batches answer first, so that responses arrive out of order.
+     */
+    private static class StubRestClient extends ParentRestClient<String> {
+
+        private final String failingId;
+        private final AtomicInteger runningCalls = new AtomicInteger();
+        private final AtomicInteger maxRunningCalls = new AtomicInteger();
+        private final Set<String> threadNames = Collections.synchronizedSet(new HashSet<>());
+
+        StubRestClient(String failingId) {
+            super("hsapiens", "GRCh37", new ClientConfiguration());
+            this.failingId = failingId;
+        }
+
+        @Override
+        <U> CellBaseDataResponse<U> fetchData(List<String> idList, String resource, QueryOptions options, Class<U> clazz,
+                                              boolean post) throws IOException {
+            maxRunningCalls.accumulateAndGet(runningCalls.incrementAndGet(), Math::max);
+            threadNames.add(Thread.currentThread().getName());
+            try {
+                int batch = Integer.parseInt(idList.get(0)) / REST_CALL_BATCH_SIZE;
+                Thread.sleep(10L * (NUM_BATCHES - batch));
+                if (idList.contains(failingId)) {
+                    throw new IOException("batch " + batch + " failed");
+                }
+                List<CellBaseDataResult<U>> results = new ArrayList<>(idList.size());
+                for (String id : idList) {
+                    results.add(new CellBaseDataResult<>(id, 0, Collections.emptyList(), 1,
+                            Collections.singletonList(clazz.cast(id)), 1));
+                }
+                return new CellBaseDataResponse<U>().setResponses(results);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } finally {
+                runningCalls.decrementAndGet();
+            }
+        }
+    }
+
+    private static List<String> createIds(int numIds) {
+        return IntStream.range(0, numIds).mapToObj(String::valueOf).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        StubRestClient restClient = new StubRestClient(null);
+        // The last batch is not full
+        List<String> ids = createIds(NUM_BATCHES * ParentRestClient.REST_CALL_BATCH_SIZE - 10);
+
+        CellBaseDataResponse<String> response = restClient.executeAsync(ids, "annotation", new QueryOptions("numThreads", 3),
+                String.class, true).get(10, TimeUnit.SECONDS);
+
+        assertEquals(ids.size(), response.getResponses().size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), response.getResponses().get(i).getId());
+            assertEquals(ids.get(i), response.getResponses().get(i).first());
+        }
+    }
+
+    @Test
+    public void testNumThreads() throws Exception {
+        for (int numThreads : new int[]{1, 2, 4}) {
+            StubRestClient restClient = new StubRestClient(null);
+            List<String> ids = createIds(NUM_BATCHES * ParentRestClient.REST_CALL_BATCH_SIZE);
+
+            restClient.executeAsync(ids, "annotation", new QueryOptions("numThreads", numThreads), String.class, true)
+                    .get(10, TimeUnit.SECONDS);
+
+            assertTrue(restClient.maxRunningCalls.get() <= numThreads, "numThreads=" + numThreads);
+            assertEquals(numThreads, restClient.threadNames.size(), "numThreads=" + numThreads);
+        }
+
+        // Never more threads than batches
+        StubRestClient restClient = new StubRestClient(null);
+        restClient.executeAsync(createIds(ParentRestClient.REST_CALL_BATCH_SIZE + 1), "annotation",
+                new QueryOptions("numThreads", 8), String.class, true).get(10, TimeUnit.SECONDS);
+        assertEquals(2, restClient.threadNames.size());
+    }
+
+    @Test
+    public void testFailedBatch() {
+        // An id of the third batch fails
+        StubRestClient restClient = new StubRestClient(String.valueOf(2 * ParentRestClient.REST_CALL_BATCH_SIZE + 5));
+        List<String> ids = createIds(NUM_BATCHES * ParentRestClient.REST_CALL_BATCH_SIZE);
+
+        CompletableFuture<CellBaseDataResponse<String>> future = restClient.executeAsync(ids, "annotation",
+                new QueryOptions("numThreads", 2), String.class, true);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertTrue(future.isCompletedExceptionally());
+        assertTrue(e.getCause() instanceof IOException);
+        assertEquals("batch 2 failed", e.getCause().getMessage());
+    }
+}
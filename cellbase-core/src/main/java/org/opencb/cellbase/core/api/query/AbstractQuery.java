@@ -29,6 +29,9 @@ import org.opencb.commons.datastore.core.QueryOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.util.*;
 
@@ -37,23 +40,29 @@ import java.util.*;
 */
 public abstract class AbstractQuery extends CellBaseQueryOptions {
 
+    // ObjectMapper is thread-safe once configured, one is shared by all the queries
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // Reflection metadata is computed once per query class, instead of once per query object
+    private static final ClassValue<QueryMetadata> METADATA = new ClassValue<QueryMetadata>() {
+        @Override
+        protected QueryMetadata computeValue(Class<?> type) {
+            return new QueryMetadata(type);
+        }
+    };
+
     protected ObjectMapper objectMapper;
     protected Logger logger;
 
 //    public static final int DEFAULT_LIMIT = 50;
     public static final int DEFAULT_SKIP = 0;
 
-    // list of fields in this class
-    private Map<String, Field> classFields;
-    // key = transcripts.biotype, value = transcriptsBiotype
-    private Map<String, String> dotNotationToCamelCase;
-    // list of fields in this class, and associated type
-    private Map<String, Class<?>> classAttributesToType;
-    // key = camelCase name (transcriptsBiotype) to annotations
-    private Map<String, QueryParameter> annotations;
+    private final QueryMetadata metadata;
 
     public AbstractQuery() {
-        init();
+        metadata = METADATA.get(this.getClass());
+        objectMapper = OBJECT_MAPPER;
+        logger = metadata.logger;
     }
 
     public AbstractQuery(Map<String, String> params) throws QueryException {
@@ -62,9 +71,67 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
         updateParams(params);
     }
 
-    private void init() {
-        objectMapper = new ObjectMapper();
-        logger = LoggerFactory.getLogger(this.getClass());
+    /**
+     * Immutable description of the query parameters of a query class, i.e. the fields annotated with QueryParameter.
+     */
+    private static final class QueryMetadata {
+
+        private final Logger logger;
+        // key = camelCase name (transcriptsBiotype) to annotations
+        private final Map<String, QueryParameter> annotations;
+        // key = camelCase name, value = getter of the field, typed (Object) -> Object
+        private final Map<String, MethodHandle> getters;
+        // annotated properties of this class, and associated type
+        private final Map<String, Class<?>> classAttributesToType;
+        // key = transcripts.biotype, value = transcriptsBiotype
+        private final Map<String, String> dotNotationToCamelCase;
+
+        QueryMetadata(Class<?> queryClass) {
+            logger = LoggerFactory.getLogger(queryClass);
+
+            Map<String, QueryParameter> annotations = new LinkedHashMap<>();
+            Map<String, MethodHandle> getters = new HashMap<>();
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodType getterType = MethodType.methodType(Object.class, Object.class);
+            for (Field declaredField : FieldUtils.getAllFields(queryClass)) {
+                QueryParameter declaredAnnotation = declaredField.getDeclaredAnnotation(QueryParameter.class);
+                if (declaredAnnotation != null) {
+                    annotations.put(declaredField.getName(), declaredAnnotation);
+                    try {
+                        declaredField.setAccessible(true);
+                        getters.put(declaredField.getName(), lookup.unreflectGetter(declaredField).asType(getterType));
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException("Field '" + declaredField.getName() + "' of " + queryClass.getName()
+                                + " is not accessible", e);
+                    }
+                }
+            }
+
+            // Only annotated properties are used, the others are ignored when parsing and validating
+            BeanDescription beanDescription = OBJECT_MAPPER.getSerializationConfig().introspect(OBJECT_MAPPER.constructType(queryClass));
+            Map<String, Class<?>> classAttributesToType = new LinkedHashMap<>();
+            Map<String, String> dotNotationToCamelCase = new HashMap<>();
+            for (BeanPropertyDefinition property : beanDescription.findProperties()) {
+                QueryParameter queryParameter = annotations.get(property.getName());
+                if (queryParameter != null) {
+                    classAttributesToType.put(property.getName(), property.getRawPrimaryType());
+                    dotNotationToCamelCase.put(queryParameter.id(), property.getName());
+                }
+            }
+
+            this.annotations = Collections.unmodifiableMap(annotations);
+            this.getters = Collections.unmodifiableMap(getters);
+            this.classAttributesToType = Collections.unmodifiableMap(classAttributesToType);
+            this.dotNotationToCamelCase = Collections.unmodifiableMap(dotNotationToCamelCase);
+        }
+    }
+
+    private Object getFieldValue(String fieldNameCamelCase) {
+        try {
+            return metadata.getters.get(fieldNameCamelCase).invokeExact((Object) this);
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Error reading '" + fieldNameCamelCase + "' from " + getClass().getName(), throwable);
+        }
     }
 
     /**
@@ -75,16 +142,11 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
      * @throws IllegalAccessException if field is not accessible
      */
     public ObjectMap toObjectMap() throws IllegalAccessException {
-        annotations = getAnnotations();
-        classFields = getClassFields();
         QueryOptions queryOptions = toQueryOptions();
         ObjectMap queryMap = new ObjectMap();
-        for (Map.Entry<String, QueryParameter> entry : annotations.entrySet()) {
-            String fieldNameCamelCase = entry.getKey();
-            String dotNotationName = annotations.get(fieldNameCamelCase).id();
-            Field field = classFields.get(fieldNameCamelCase);
-            field.setAccessible(true);
-            Object value = field.get(this);
+        for (Map.Entry<String, QueryParameter> entry : metadata.annotations.entrySet()) {
+            String dotNotationName = entry.getValue().id();
+            Object value = getFieldValue(entry.getKey());
             // don't add query options to the actual query
             if (value != null && !queryOptions.containsKey(dotNotationName) && !"exclude".equals(dotNotationName)) {
                 queryMap.put(dotNotationName, value);
@@ -108,30 +170,19 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
      * @param uriParams map from the REST
      */
     public void updateParams(Map<String, String> uriParams) {
-        classAttributesToType = getClassAttributesToType();
-        annotations = getAnnotations();
         try {
             Map<String, Object> objectHashMap = new HashMap<>();
-            for (Map.Entry<String, Class<?>> entry : classAttributesToType.entrySet()) {
-                String fieldNameDotNotation = null;
-                String[] fieldAliases = new String[0];
+            for (Map.Entry<String, Class<?>> entry : metadata.classAttributesToType.entrySet()) {
                 String fieldNameCamelCase = entry.getKey();
                 Class fieldType = entry.getValue();
-                QueryParameter queryParameter = annotations.get(fieldNameCamelCase);
-                if (queryParameter != null) {
-                    fieldNameDotNotation = queryParameter.id();
-                    fieldAliases = queryParameter.alias();
-                }
-                if (fieldNameDotNotation == null) {
-                    // field has no annotation
-                    continue;
-                }
+                QueryParameter queryParameter = metadata.annotations.get(fieldNameCamelCase);
+                String fieldNameDotNotation = queryParameter.id();
                 String value = null;
                 String s = fieldNameDotNotation.replace("\\.", "\\\\.");
                 if (uriParams.containsKey(s)) {
                     value = uriParams.get(s);
                 } else {
-                    for (String alias : fieldAliases) {
+                    for (String alias : queryParameter.alias()) {
                         s = alias.replace("\\.", "\\\\.");
                         if (uriParams.containsKey(s)) {
                             value = uriParams.get(s);
@@ -165,43 +216,6 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
         }
     }
 
-    /**
-     * For this Query class, returns a map of class attributes and the types of those attributes.
-     *
-     *  key: fieldName, e.g. transcriptsBiotype
-     *  value: type, e.g. List<String>
-     *
-     * @return map of field names to type
-     */
-    private Map<String, Class<?>> loadPropertiesMap() {
-        final ObjectMapper objectMapper = new ObjectMapper();
-        BeanDescription beanDescription = objectMapper.getSerializationConfig().introspect(objectMapper.constructType(this.getClass()));
-        Map<String, Class<?>> internalPropertiesMap = new HashMap<>(beanDescription.findProperties().size() * 2);
-        for (BeanPropertyDefinition property : beanDescription.findProperties()) {
-            internalPropertiesMap.put(property.getName(), property.getRawPrimaryType());
-        }
-        return internalPropertiesMap;
-    }
-
-    /**
-     * For this Query Class, generates a map of all annotations.
-     *
-     *  key: fieldName, e.g. transcriptsBiotype
-     *  value: QueryParameter for transcriptsBiotype
-     *
-     * @return map of field names to annotations.
-     */
-    private Map<String, QueryParameter> loadAnnotationMap() {
-        Map<String, QueryParameter> annotations = new HashMap<>();
-        for (Field declaredField : FieldUtils.getAllFields(this.getClass())) {
-            QueryParameter declaredAnnotation = declaredField.getDeclaredAnnotation(QueryParameter.class);
-            if (declaredAnnotation != null) {
-                annotations.put(declaredField.getName(), declaredAnnotation);
-            }
-        }
-        return annotations;
-    }
-
     /**
      * Subclasses can optionally add custom validation if needed.
      *
@@ -228,65 +242,10 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
         this.validateQuery();
     }
 
-    private Map<String, Class<?>> getClassAttributesToType() {
-        if (classAttributesToType == null) {
-            classAttributesToType = loadPropertiesMap();
-        }
-        return classAttributesToType;
-    }
-
-    private Map<String, QueryParameter> getAnnotations() {
-        if (annotations == null) {
-            annotations = loadAnnotationMap();
-        }
-        return annotations;
-    }
-
-    private Map<String, Field> getClassFields() {
-        if (classFields == null) {
-            classFields = new HashMap<>();
-            for (Field declaredField : FieldUtils.getAllFields(this.getClass())) {
-                classFields.put(declaredField.getName(), declaredField);
-            }
-        }
-        return classFields;
-    }
-
-    /**
-     * Returns the map. If map is empty, generates map.
-     *
-     * - key: dot notation, e.g. transcripts.biotype
-     * - value: camel case, e.g. transcriptsBiotype
-     *
-     * @return the map from dot notation to camel case
-     */
-    private Map<String, String> getDotNotationToCamelCase() {
-        if (dotNotationToCamelCase == null) {
-            dotNotationToCamelCase = new HashMap<>();
-            for (Map.Entry<String, Class<?>> entry : getClassAttributesToType().entrySet()) {
-                String fieldNameCamelCase = entry.getKey();
-                QueryParameter queryParameter = annotations.get(fieldNameCamelCase);
-                if (queryParameter != null) {
-                    String fieldNameDotNotation = queryParameter.id();
-                    dotNotationToCamelCase.put(fieldNameDotNotation, fieldNameCamelCase);
-                }
-            }
-        }
-        return dotNotationToCamelCase;
-    }
-
     private void validateParams() throws QueryException, IllegalAccessException {
-        for (Map.Entry<String, Class<?>> classEntry : getClassAttributesToType().entrySet()) {
-            String fieldNameCamelCase = classEntry.getKey();
-            QueryParameter queryParameter = getAnnotations().get(fieldNameCamelCase);
-            if (queryParameter == null) {
-                // no annotation for this field, carry on
-                continue;
-            }
-
-            Field field = getClassFields().get(fieldNameCamelCase);
-            field.setAccessible(true);
-            Object value = field.get(this);
+        for (String fieldNameCamelCase : metadata.classAttributesToType.keySet()) {
+            QueryParameter queryParameter = metadata.annotations.get(fieldNameCamelCase);
+            Object value = getFieldValue(fieldNameCamelCase);
 
             if (value == null) {
                 if (queryParameter.required()) {
@@ -310,9 +269,8 @@ public abstract class AbstractQuery extends CellBaseQueryOptions {
 
     private void checkDependsOn(String fieldNameCamelCase, String requiredFieldDotNotation) throws IllegalAccessException, QueryException {
         if (StringUtils.isNotEmpty(requiredFieldDotNotation)) {
-            String requiredFieldCamelCase = getDotNotationToCamelCase().get(requiredFieldDotNotation);
-            Field requiredField = getClassFields().get(requiredFieldCamelCase);
-            if (requiredField.get(this) == null) {
+            String requiredFieldCamelCase = metadata.dotNotationToCamelCase.get(requiredFieldDotNotation);
+            if (getFieldValue(requiredFieldCamelCase) == null) {
                 throw new QueryException(requiredFieldCamelCase + " is required because " + fieldNameCamelCase + " has a value");
             }
         }
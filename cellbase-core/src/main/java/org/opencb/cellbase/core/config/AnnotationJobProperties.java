@@ -0,0 +1,129 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * Asynchronous annotation jobs submitted to the REST server.
+ */
+public class AnnotationJobProperties {
+
+    public static final int DEFAULT_NUM_THREADS = 2;
+    public static final int DEFAULT_MAX_QUEUED_JOBS = 100;
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    public static final int DEFAULT_RETENTION_MINUTES = 60;
+    public static final int DEFAULT_MAX_INPUT_SIZE_MB = 1024;
+
+    /**
+     * Number of jobs run at the same time, the variants of each job are annotated in batches one after the other.
+     */
+    private int numThreads;
+    /**
+     * Max number of jobs waiting to be run, new jobs are rejected once full.
+     */
+    private int maxQueuedJobs;
+    /**
+     * Number of variants annotated at a time, results are available to the client as each batch finishes.
+     */
+    private int batchSize;
+    /**
+     * Finished jobs and their results are deleted after this time.
+     */
+    private int retentionMinutes;
+    /**
+     * Max size of the input of a job as uploaded, i.e. compressed if gzipped. Larger inputs are rejected.
+     */
+    private int maxInputSizeMb;
+    /**
+     * Directory where the input and results of the jobs are written, the system temporary directory if empty.
+     */
+    private String directory;
+
+    public AnnotationJobProperties() {
+        this.numThreads = DEFAULT_NUM_THREADS;
+        this.maxQueuedJobs = DEFAULT_MAX_QUEUED_JOBS;
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.retentionMinutes = DEFAULT_RETENTION_MINUTES;
+        this.maxInputSizeMb = DEFAULT_MAX_INPUT_SIZE_MB;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AnnotationJobProperties{");
+        sb.append("numThreads=").append(numThreads);
+        sb.append(", maxQueuedJobs=").append(maxQueuedJobs);
+        sb.append(", batchSize=").append(batchSize);
+        sb.append(", retentionMinutes=").append(retentionMinutes);
+        sb.append(", maxInputSizeMb=").append(maxInputSizeMb);
+        sb.append(", directory='").append(directory).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public AnnotationJobProperties setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public int getMaxQueuedJobs() {
+        return maxQueuedJobs;
+    }
+
+    public AnnotationJobProperties setMaxQueuedJobs(int maxQueuedJobs) {
+        this.maxQueuedJobs = maxQueuedJobs;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public AnnotationJobProperties setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int getRetentionMinutes() {
+        return retentionMinutes;
+    }
+
+    public AnnotationJobProperties setRetentionMinutes(int retentionMinutes) {
+        this.retentionMinutes = retentionMinutes;
+        return this;
+    }
+
+    public int getMaxInputSizeMb() {
+        return maxInputSizeMb;
+    }
+
+    public AnnotationJobProperties setMaxInputSizeMb(int maxInputSizeMb) {
+        this.maxInputSizeMb = maxInputSizeMb;
+        return this;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public AnnotationJobProperties setDirectory(String directory) {
+        this.directory = directory;
+        return this;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * Variant annotation settings shared by the CLI annotator and the REST server.
+ */
+public class AnnotationProperties {
+
+    public static final int DEFAULT_NUM_THREADS = Math.max(5, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    /**
+     * Number of threads of the executor shared by all VariantAnnotationCalculator instances.
+     */
+    private int numThreads;
+    /**
+     * Max number of pending asynchronous annotation tasks, once full tasks run in the calling thread.
+     */
+    private int queueSize;
+    private GenomeSequenceProperties genomeSequence;
+    private GeneCacheProperties geneCache;
+    /**
+     * Load the coordinates and types of all the regulatory features in memory on first use, instead of fetching the
+     * ones overlapping each annotation batch.
+     */
+    private boolean preloadRegulatoryRegions;
+    private AnnotationJobProperties jobs;
+
+    public AnnotationProperties() {
+        this.numThreads = DEFAULT_NUM_THREADS;
+        this.queueSize = DEFAULT_QUEUE_SIZE;
+        this.genomeSequence = new GenomeSequenceProperties();
+        this.geneCache = new GeneCacheProperties();
+        this.preloadRegulatoryRegions = false;
+        this.jobs = new AnnotationJobProperties();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AnnotationProperties{");
+        sb.append("numThreads=").append(numThreads);
+        sb.append(", queueSize=").append(queueSize);
+        sb.append(", genomeSequence=").append(genomeSequence);
+        sb.append(", geneCache=").append(geneCache);
+        sb.append(", preloadRegulatoryRegions=").append(preloadRegulatoryRegions);
+        sb.append(", jobs=").append(jobs);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public AnnotationProperties setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public AnnotationProperties setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    public GenomeSequenceProperties getGenomeSequence() {
+        return genomeSequence;
+    }
+
+    public AnnotationProperties setGenomeSequence(GenomeSequenceProperties genomeSequence) {
+        this.genomeSequence = genomeSequence;
+        return this;
+    }
+
+    public GeneCacheProperties getGeneCache() {
+        return geneCache;
+    }
+
+    public AnnotationProperties setGeneCache(GeneCacheProperties geneCache) {
+        this.geneCache = geneCache;
+        return this;
+    }
+
+    public boolean isPreloadRegulatoryRegions() {
+        return preloadRegulatoryRegions;
+    }
+
+    public AnnotationProperties setPreloadRegulatoryRegions(boolean preloadRegulatoryRegions) {
+        this.preloadRegulatoryRegions = preloadRegulatoryRegions;
+        return this;
+    }
+
+    public AnnotationJobProperties getJobs() {
+        return jobs;
+    }
+
+    public AnnotationProperties setJobs(AnnotationJobProperties jobs) {
+        this.jobs = jobs;
+        return this;
+    }
+}
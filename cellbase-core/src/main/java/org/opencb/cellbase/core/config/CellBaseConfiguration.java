@@ -44,6 +44,9 @@ public class CellBaseConfiguration {
     private DownloadProperties download;
     private SpeciesProperties species;
     private ServerProperties server;
+    private AnnotationProperties annotation;
+    private QueryProperties query;
+    private FileProperties files;
 
     public static final String CELLBASE_PREFIX = "CELLBASE_";
     public static final String CELLBASE_DATABASES_MONGODB_HOST = "CELLBASE_DATABASES_MONGODB_HOST";
@@ -297,4 +300,31 @@ public class CellBaseConfiguration {
         this.logOutput = logOutput;
         return this;
     }
+
+    public AnnotationProperties getAnnotation() {
+        return annotation;
+    }
+
+    public CellBaseConfiguration setAnnotation(AnnotationProperties annotation) {
+        this.annotation = annotation;
+        return this;
+    }
+
+    public QueryProperties getQuery() {
+        return query;
+    }
+
+    public CellBaseConfiguration setQuery(QueryProperties query) {
+        this.query = query;
+        return this;
+    }
+
+    public FileProperties getFiles() {
+        return files;
+    }
+
+    public CellBaseConfiguration setFiles(FileProperties files) {
+        this.files = files;
+        return this;
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * MongoDB client settings, defined for all the databases in 'databases.mongodb.connectionPool' and overridden per
+ * species in 'databases.mongodb.speciesConnectionPools'. Settings left empty are taken from 'databases.mongodb.options'.
+ * Only settings read by commons-datastore MongoDataStoreManager are supported, other client settings use the driver defaults.
+ */
+public class ConnectionPoolProperties {
+
+    /**
+     * e.g. primary, primaryPreferred, secondary, secondaryPreferred or nearest.
+     */
+    private String readPreference;
+    /**
+     * Max number of connections per host.
+     */
+    private Integer maxPoolSize;
+
+    public ConnectionPoolProperties() {
+    }
+
+    /**
+     * Returns the settings of this object, taking the ones not set from the defaults.
+     *
+     * @param defaults default settings, can be null
+     * @return merged settings
+     */
+    public ConnectionPoolProperties merge(ConnectionPoolProperties defaults) {
+        if (defaults == null) {
+            return this;
+        }
+        return new ConnectionPoolProperties()
+                .setReadPreference(readPreference != null ? readPreference : defaults.readPreference)
+                .setMaxPoolSize(maxPoolSize != null ? maxPoolSize : defaults.maxPoolSize);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ConnectionPoolProperties{");
+        sb.append("readPreference='").append(readPreference).append('\'');
+        sb.append(", maxPoolSize=").append(maxPoolSize);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public String getReadPreference() {
+        return readPreference;
+    }
+
+    public ConnectionPoolProperties setReadPreference(String readPreference) {
+        this.readPreference = readPreference;
+        return this;
+    }
+
+    public Integer getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public ConnectionPoolProperties setMaxPoolSize(Integer maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+        return this;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * Open file handles kept by the '/files' queries, e.g. FASTA and BigWig readers, so that the index of a file is not
+ * read again on every request.
+ */
+public class FileProperties {
+
+    public static final int DEFAULT_MAX_OPEN_HANDLES = 32;
+    public static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 300;
+
+    /**
+     * Max number of handles open among all the files of each file type, idle or in use. Once reached, the least recently
+     * used idle handle is closed to open a new one, and if all of them are in use queries wait for one to be released.
+     */
+    private int maxOpenHandles;
+    /**
+     * Idle handles not used for this time are closed.
+     */
+    private int idleTimeoutSeconds;
+
+    public FileProperties() {
+        this.maxOpenHandles = DEFAULT_MAX_OPEN_HANDLES;
+        this.idleTimeoutSeconds = DEFAULT_IDLE_TIMEOUT_SECONDS;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("FileProperties{");
+        sb.append("maxOpenHandles=").append(maxOpenHandles);
+        sb.append(", idleTimeoutSeconds=").append(idleTimeoutSeconds);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public int getMaxOpenHandles() {
+        return maxOpenHandles;
+    }
+
+    public FileProperties setMaxOpenHandles(int maxOpenHandles) {
+        this.maxOpenHandles = maxOpenHandles;
+        return this;
+    }
+
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    public FileProperties setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+        return this;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * In-memory cache of the gene models fetched by variant annotation.
+ */
+public class GeneCacheProperties {
+
+    public static final long DEFAULT_MAX_SIZE_MB = 512;
+    public static final int DEFAULT_BIN_SIZE = 250000;
+
+    private boolean enabled;
+    /**
+     * Approximate memory budget, genes of the least recently used bins are evicted once exceeded.
+     */
+    private long maxSizeMb;
+    /**
+     * Genes are fetched and cached per chromosome bin of this size.
+     */
+    private int binSize;
+
+    public GeneCacheProperties() {
+        this.enabled = false;
+        this.maxSizeMb = DEFAULT_MAX_SIZE_MB;
+        this.binSize = DEFAULT_BIN_SIZE;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("GeneCacheProperties{");
+        sb.append("enabled=").append(enabled);
+        sb.append(", maxSizeMb=").append(maxSizeMb);
+        sb.append(", binSize=").append(binSize);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public GeneCacheProperties setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    public long getMaxSizeMb() {
+        return maxSizeMb;
+    }
+
+    public GeneCacheProperties setMaxSizeMb(long maxSizeMb) {
+        this.maxSizeMb = maxSizeMb;
+        return this;
+    }
+
+    public int getBinSize() {
+        return binSize;
+    }
+
+    public GeneCacheProperties setBinSize(int binSize) {
+        this.binSize = binSize;
+        return this;
+    }
+}
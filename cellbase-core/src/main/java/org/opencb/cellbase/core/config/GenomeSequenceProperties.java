@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Where reference genome sequences are read from.
+ */
+public class GenomeSequenceProperties {
+
+    public static final String MONGODB_SOURCE = "mongodb";
+    public static final String LOCAL_SOURCE = "local";
+
+    /**
+     * Either 'mongodb', the genome_sequence collection, or 'local', memory-mapped FASTA files.
+     */
+    private String source;
+    /**
+     * Uncompressed FASTA file per species and assembly, e.g. hsapiens_GRCh38. A samtools faidx index (.fai) must exist
+     * next to each file.
+     */
+    private Map<String, String> files;
+
+    public GenomeSequenceProperties() {
+        this.source = MONGODB_SOURCE;
+        this.files = new HashMap<>();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("GenomeSequenceProperties{");
+        sb.append("source='").append(source).append('\'');
+        sb.append(", files=").append(files);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public GenomeSequenceProperties setSource(String source) {
+        this.source = source;
+        return this;
+    }
+
+    public Map<String, String> getFiles() {
+        return files;
+    }
+
+    public GenomeSequenceProperties setFiles(Map<String, String> files) {
+        this.files = files;
+        return this;
+    }
+}
@@ -29,6 +29,11 @@ public class MongoDBDatabaseCredentials extends DatabaseCredentials {
     private String user;
     private String password;
     private Map<String, String> options;
+    private ConnectionPoolProperties connectionPool;
+    /**
+     * Connection pool settings of the databases of each species, e.g. hsapiens, taking precedence over connectionPool.
+     */
+    private Map<String, ConnectionPoolProperties> speciesConnectionPools;
 
     public MongoDBDatabaseCredentials() {
     }
@@ -46,6 +51,8 @@ public class MongoDBDatabaseCredentials extends DatabaseCredentials {
         sb.append(", password='").append(password).append('\'');
         sb.append(", replicaSets='").append(shards).append('\'');
         sb.append(", options=").append(options);
+        sb.append(", connectionPool=").append(connectionPool);
+        sb.append(", speciesConnectionPools=").append(speciesConnectionPools);
         sb.append('}');
         return sb.toString();
     }
@@ -59,6 +66,40 @@ public class MongoDBDatabaseCredentials extends DatabaseCredentials {
         return this;
     }
 
+    public ConnectionPoolProperties getConnectionPool() {
+        return connectionPool;
+    }
+
+    public MongoDBDatabaseCredentials setConnectionPool(ConnectionPoolProperties connectionPool) {
+        this.connectionPool = connectionPool;
+        return this;
+    }
+
+    public Map<String, ConnectionPoolProperties> getSpeciesConnectionPools() {
+        return speciesConnectionPools;
+    }
+
+    public MongoDBDatabaseCredentials setSpeciesConnectionPools(Map<String, ConnectionPoolProperties> speciesConnectionPools) {
+        this.speciesConnectionPools = speciesConnectionPools;
+        return this;
+    }
+
+    /**
+     * Returns the connection pool settings of a species.
+     *
+     * @param speciesId species id, e.g. hsapiens, null for the settings of all the databases
+     * @return settings of the species, merged with the ones of all the databases, never null
+     */
+    public ConnectionPoolProperties getConnectionPool(String speciesId) {
+        ConnectionPoolProperties speciesConnectionPool = (speciesId != null && speciesConnectionPools != null)
+                ? speciesConnectionPools.get(speciesId)
+                : null;
+        if (speciesConnectionPool != null) {
+            return speciesConnectionPool.merge(connectionPool);
+        }
+        return connectionPool != null ? connectionPool : new ConnectionPoolProperties();
+    }
+
     public static class ReplicaSet {
         private String id;
         private String nodes;
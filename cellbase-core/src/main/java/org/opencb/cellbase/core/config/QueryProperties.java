@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * Concurrent execution of the queries of multi-query requests, e.g. one query per region of '/genomic/region/{regions}/gene'.
+ */
+public class QueryProperties {
+
+    public static final int DEFAULT_NUM_THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_MAX_PARALLELISM = 8;
+
+    /**
+     * Number of threads of the executor shared by all the requests.
+     */
+    private int numThreads;
+    /**
+     * Max number of pending queries, once full queries run in the calling thread.
+     */
+    private int queueSize;
+    /**
+     * Max number of queries of one request run at the same time, so that a single large request does not take all the
+     * threads. 1 runs the queries one after the other.
+     */
+    private int maxParallelism;
+
+    public QueryProperties() {
+        this.numThreads = DEFAULT_NUM_THREADS;
+        this.queueSize = DEFAULT_QUEUE_SIZE;
+        this.maxParallelism = DEFAULT_MAX_PARALLELISM;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("QueryProperties{");
+        sb.append("numThreads=").append(numThreads);
+        sb.append(", queueSize=").append(queueSize);
+        sb.append(", maxParallelism=").append(maxParallelism);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public QueryProperties setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+        return this;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public QueryProperties setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    public QueryProperties setMaxParallelism(int maxParallelism) {
+        this.maxParallelism = maxParallelism;
+        return this;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+/**
+ * Settings of the REST server cache of GET responses.
+ */
+public class ResponseCacheProperties {
+
+    public static final int DEFAULT_MAX_SIZE_MB = 256;
+    public static final int DEFAULT_MAX_ENTRY_SIZE_KB = 1024;
+    public static final int DEFAULT_RELEASE_CHECK_INTERVAL_SECONDS = 60;
+
+    private boolean enabled;
+    /**
+     * Max total size of the cached responses, least recently used responses are evicted first.
+     */
+    private int maxSizeMb;
+    /**
+     * Responses larger than this are not cached.
+     */
+    private int maxEntrySizeKb;
+    /**
+     * How often the metadata of each database is checked, cached responses are dropped when the data loaded changes.
+     */
+    private int releaseCheckIntervalSeconds;
+
+    public ResponseCacheProperties() {
+        this.enabled = true;
+        this.maxSizeMb = DEFAULT_MAX_SIZE_MB;
+        this.maxEntrySizeKb = DEFAULT_MAX_ENTRY_SIZE_KB;
+        this.releaseCheckIntervalSeconds = DEFAULT_RELEASE_CHECK_INTERVAL_SECONDS;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ResponseCacheProperties{");
+        sb.append("enabled=").append(enabled);
+        sb.append(", maxSizeMb=").append(maxSizeMb);
+        sb.append(", maxEntrySizeKb=").append(maxEntrySizeKb);
+        sb.append(", releaseCheckIntervalSeconds=").append(releaseCheckIntervalSeconds);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public ResponseCacheProperties setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    public int getMaxSizeMb() {
+        return maxSizeMb;
+    }
+
+    public ResponseCacheProperties setMaxSizeMb(int maxSizeMb) {
+        this.maxSizeMb = maxSizeMb;
+        return this;
+    }
+
+    public int getMaxEntrySizeKb() {
+        return maxEntrySizeKb;
+    }
+
+    public ResponseCacheProperties setMaxEntrySizeKb(int maxEntrySizeKb) {
+        this.maxEntrySizeKb = maxEntrySizeKb;
+        return this;
+    }
+
+    public int getReleaseCheckIntervalSeconds() {
+        return releaseCheckIntervalSeconds;
+    }
+
+    public ResponseCacheProperties setReleaseCheckIntervalSeconds(int releaseCheckIntervalSeconds) {
+        this.releaseCheckIntervalSeconds = releaseCheckIntervalSeconds;
+        return this;
+    }
+}
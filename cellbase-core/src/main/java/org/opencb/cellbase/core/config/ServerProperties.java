@@ -19,6 +19,12 @@ package org.opencb.cellbase.core.config;
 public class ServerProperties {
 
     private Rest rest;
+    private ResponseCacheProperties cache;
+    /**
+     * Whether the database metrics, i.e. the connections and operation latencies reported by the MongoDB server and the
+     * query latencies per collection, are returned by the meta web services. Disabled by default since they are public.
+     */
+    private boolean databaseMetrics;
 
     public Rest getRest() {
         return rest;
@@ -27,4 +33,20 @@ public class ServerProperties {
     public void setRest(Rest rest) {
         this.rest = rest;
     }
+
+    public ResponseCacheProperties getCache() {
+        return cache;
+    }
+
+    public void setCache(ResponseCacheProperties cache) {
+        this.cache = cache;
+    }
+
+    public boolean isDatabaseMetrics() {
+        return databaseMetrics;
+    }
+
+    public void setDatabaseMetrics(boolean databaseMetrics) {
+        this.databaseMetrics = databaseMetrics;
+    }
 }
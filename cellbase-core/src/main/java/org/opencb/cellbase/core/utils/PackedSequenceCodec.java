@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.utils;
+
+import java.util.Arrays;
+
+/**
+ * Packs nucleotide sequences into bytes, 2 bits per base when the sequence only contains A, C, G and T, and 4 bits
+ * per base when it also contains N or other IUPAC codes, which is 4 or 2 times smaller than the text. Packed sequences
+ * start with a 5 bytes header: the number of bits per base and the number of bases as a big-endian int.
+ *
+ * Both encoding and decoding work on ranges so that no intermediate strings are created.
+ */
+public final class PackedSequenceCodec {
+
+    public static final int TWO_BIT = 2;
+    public static final int FOUR_BIT = 4;
+
+    private static final int HEADER_LENGTH = 5;
+    private static final char[] TWO_BIT_ALPHABET = {'A', 'C', 'G', 'T'};
+    private static final char[] FOUR_BIT_ALPHABET = {'A', 'C', 'G', 'T', 'N', 'R', 'Y', 'S', 'W', 'K', 'M', 'B', 'D', 'H',
+            'V', '-', };
+    private static final byte[] TWO_BIT_CODES = createCodes(TWO_BIT_ALPHABET);
+    private static final byte[] FOUR_BIT_CODES = createCodes(FOUR_BIT_ALPHABET);
+
+    private PackedSequenceCodec() {
+    }
+
+    private static byte[] createCodes(char[] alphabet) {
+        byte[] codes = new byte[128];
+        Arrays.fill(codes, (byte) -1);
+        for (int i = 0; i < alphabet.length; i++) {
+            codes[alphabet[i]] = (byte) i;
+        }
+        return codes;
+    }
+
+    /**
+     * Packs the bases of sequence from start (inclusive) to end (exclusive) with the smallest encoding possible.
+     *
+     * @param sequence sequence, e.g. the StringBuilder a chunk is read into
+     * @param start first base to pack
+     * @param end position after the last base to pack
+     * @return packed sequence, null if it contains characters that cannot be packed, e.g. soft-masked lowercase bases
+     */
+    public static byte[] encode(CharSequence sequence, int start, int end) {
+        int bits = TWO_BIT;
+        for (int i = start; i < end; i++) {
+            char base = sequence.charAt(i);
+            if (base >= 128 || FOUR_BIT_CODES[base] < 0) {
+                return null;
+            }
+            if (TWO_BIT_CODES[base] < 0) {
+                bits = FOUR_BIT;
+            }
+        }
+
+        int length = end - start;
+        int basesPerByte = 8 / bits;
+        byte[] codes = bits == TWO_BIT ? TWO_BIT_CODES : FOUR_BIT_CODES;
+        byte[] packed = new byte[HEADER_LENGTH + (length + basesPerByte - 1) / basesPerByte];
+        packed[0] = (byte) bits;
+        packed[1] = (byte) (length >>> 24);
+        packed[2] = (byte) (length >>> 16);
+        packed[3] = (byte) (length >>> 8);
+        packed[4] = (byte) length;
+        for (int i = 0; i < length; i++) {
+            int shift = 8 - bits * (i % basesPerByte + 1);
+            packed[HEADER_LENGTH + i / basesPerByte] |= codes[sequence.charAt(start + i)] << shift;
+        }
+        return packed;
+    }
+
+    /**
+     * Returns the number of bases of a packed sequence.
+     *
+     * @param packed packed sequence
+     * @return number of bases
+     */
+    public static int getLength(byte[] packed) {
+        return ((packed[1] & 0xFF) << 24) | ((packed[2] & 0xFF) << 16) | ((packed[3] & 0xFF) << 8) | (packed[4] & 0xFF);
+    }
+
+    /**
+     * Appends the bases of a packed sequence from start (inclusive) to end (exclusive) to a StringBuilder.
+     *
+     * @param packed packed sequence
+     * @param start first base to decode
+     * @param end position after the last base to decode, it must not be greater than the number of bases
+     * @param stringBuilder StringBuilder the bases are appended to
+     */
+    public static void decode(byte[] packed, int start, int end, StringBuilder stringBuilder) {
+        int bits = packed[0];
+        if (bits != TWO_BIT && bits != FOUR_BIT) {
+            throw new IllegalArgumentException("Unknown sequence encoding: " + bits + " bits per base");
+        }
+        if (start < 0 || end > getLength(packed) || start > end) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of a sequence of "
+                    + getLength(packed) + " bases");
+        }
+        int basesPerByte = 8 / bits;
+        int mask = (1 << bits) - 1;
+        char[] alphabet = bits == TWO_BIT ? TWO_BIT_ALPHABET : FOUR_BIT_ALPHABET;
+        stringBuilder.ensureCapacity(stringBuilder.length() + end - start);
+        for (int i = start; i < end; i++) {
+            int shift = 8 - bits * (i % basesPerByte + 1);
+            stringBuilder.append(alphabet[(packed[HEADER_LENGTH + i / basesPerByte] >>> shift) & mask]);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.api.query;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.opencb.cellbase.core.api.GeneQuery;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Micro benchmark of query construction and validation, the REST layer and the variant annotation build several
+ * queries per request. Reflection metadata is shared by all the queries of the same class. The throughput test only
+ * runs with -Dcellbase.benchmark=true.
+ */
+public class QueryBenchmarkTest {
+
+    private final Logger logger = LoggerFactory.getLogger(QueryBenchmarkTest.class);
+
+    private static final int WARM_UP_QUERIES = 20000;
+    private static final int BENCHMARK_QUERIES = 100000;
+
+    @Test
+    public void testSharedMetadata() throws Exception {
+        GeneQuery geneQuery = new GeneQuery(createParams());
+        geneQuery.validate();
+        ObjectMap objectMap = geneQuery.toObjectMap();
+        assertEquals("ENSG00000223972", ((List) objectMap.get("id")).get(0));
+        assertEquals(2, ((List) objectMap.get("transcripts.biotype")).size());
+        // query options are not part of the query
+        assertNull(objectMap.get("limit"));
+
+        // a second query of the same class must not see the values of the first one
+        GeneQuery otherGeneQuery = new GeneQuery();
+        assertTrue(otherGeneQuery.toObjectMap().isEmpty());
+
+        // 'order' depends on 'sort'
+        Map<String, String> params = createParams();
+        params.put("order", "ASCENDING");
+        GeneQuery invalidGeneQuery = new GeneQuery(params);
+        assertThrows(QueryException.class, invalidGeneQuery::validate);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "cellbase.benchmark", matches = "true")
+    public void testThroughput() throws Exception {
+        Map<String, String> params = createParams();
+        run(params, WARM_UP_QUERIES);
+
+        long start = System.nanoTime();
+        int numParams = run(params, BENCHMARK_QUERIES);
+        long elapsedNanos = System.nanoTime() - start;
+
+        assertEquals(BENCHMARK_QUERIES * 4, numParams);
+        logger.info("GeneQuery construction + validation + toObjectMap: {} queries/s",
+                BENCHMARK_QUERIES * 1_000_000_000L / Math.max(1, elapsedNanos));
+    }
+
+    private int run(Map<String, String> params, int numQueries) throws Exception {
+        int numParams = 0;
+        for (int i = 0; i < numQueries; i++) {
+            GeneQuery geneQuery = new GeneQuery(params);
+            geneQuery.setDefaults();
+            geneQuery.validate();
+            numParams += geneQuery.toObjectMap().size();
+        }
+        return numParams;
+    }
+
+    private Map<String, String> createParams() {
+        Map<String, String> params = new HashMap<>();
+        params.put("id", "ENSG00000223972");
+        params.put("biotype", "protein_coding");
+        params.put("region", "1:11869-14409");
+        params.put("transcripts.biotype", "protein_coding,lncRNA");
+        params.put("limit", "10");
+        return params;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class ConnectionPoolPropertiesTest {
+
+    @Test
+    public void testMerge() {
+        ConnectionPoolProperties defaults = new ConnectionPoolProperties().setReadPreference("primary").setMaxPoolSize(20);
+
+        ConnectionPoolProperties merged = new ConnectionPoolProperties().setMaxPoolSize(100).merge(defaults);
+        assertEquals("primary", merged.getReadPreference());
+        assertEquals(100, merged.getMaxPoolSize().intValue());
+
+        merged = new ConnectionPoolProperties().setReadPreference("secondaryPreferred").merge(defaults);
+        assertEquals("secondaryPreferred", merged.getReadPreference());
+        assertEquals(20, merged.getMaxPoolSize().intValue());
+
+        ConnectionPoolProperties connectionPool = new ConnectionPoolProperties().setMaxPoolSize(100);
+        assertSame(connectionPool, connectionPool.merge(null));
+    }
+
+    @Test
+    public void testSpeciesConnectionPool() {
+        MongoDBDatabaseCredentials credentials = new MongoDBDatabaseCredentials()
+                .setConnectionPool(new ConnectionPoolProperties().setReadPreference("primary").setMaxPoolSize(20))
+                .setSpeciesConnectionPools(Collections.singletonMap("hsapiens", new ConnectionPoolProperties().setMaxPoolSize(100)));
+
+        // Species settings take precedence, the ones not set are taken from connectionPool
+        ConnectionPoolProperties hsapiens = credentials.getConnectionPool("hsapiens");
+        assertEquals("primary", hsapiens.getReadPreference());
+        assertEquals(100, hsapiens.getMaxPoolSize().intValue());
+
+        // Species without settings and databases of no species, e.g. admin, use connectionPool
+        assertEquals(20, credentials.getConnectionPool("mmusculus").getMaxPoolSize().intValue());
+        assertEquals(20, credentials.getConnectionPool(null).getMaxPoolSize().intValue());
+    }
+
+    @Test
+    public void testNoConnectionPool() {
+        MongoDBDatabaseCredentials credentials = new MongoDBDatabaseCredentials();
+        ConnectionPoolProperties connectionPool = credentials.getConnectionPool("hsapiens");
+        assertNotNull(connectionPool);
+        assertNull(connectionPool.getReadPreference());
+        assertNull(connectionPool.getMaxPoolSize());
+
+        // Species settings are used as they are when connectionPool is not set, e.g. an empty 'connectionPool: {}'
+        credentials.setSpeciesConnectionPools(Collections.singletonMap("hsapiens", new ConnectionPoolProperties().setMaxPoolSize(100)));
+        assertEquals(100, credentials.getConnectionPool("hsapiens").getMaxPoolSize().intValue());
+        assertNull(credentials.getConnectionPool("hsapiens").getReadPreference());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.core.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackedSequenceCodecTest {
+
+    @Test
+    public void testTwoBit() {
+        String sequence = "NNACGTTGCAACGTA";
+        byte[] packed = PackedSequenceCodec.encode(sequence, 2, sequence.length());
+        assertEquals(PackedSequenceCodec.TWO_BIT, packed[0]);
+        assertEquals(13, PackedSequenceCodec.getLength(packed));
+        // 5 bytes header + 13 bases at 4 bases per byte
+        assertEquals(5 + 4, packed.length);
+
+        StringBuilder stringBuilder = new StringBuilder();
+        PackedSequenceCodec.decode(packed, 0, 13, stringBuilder);
+        assertEquals(sequence.substring(2), stringBuilder.toString());
+
+        stringBuilder.setLength(0);
+        PackedSequenceCodec.decode(packed, 3, 7, stringBuilder);
+        assertEquals(sequence.substring(5, 9), stringBuilder.toString());
+    }
+
+    @Test
+    public void testFourBit() {
+        String sequence = "ACGTNRYSWKMBDHV-NNNNA";
+        byte[] packed = PackedSequenceCodec.encode(sequence, 0, sequence.length());
+        assertEquals(PackedSequenceCodec.FOUR_BIT, packed[0]);
+        assertEquals(5 + 11, packed.length);
+
+        StringBuilder stringBuilder = new StringBuilder("prefix:");
+        PackedSequenceCodec.decode(packed, 0, sequence.length(), stringBuilder);
+        assertEquals("prefix:" + sequence, stringBuilder.toString());
+    }
+
+    @Test
+    public void testNotPackable() {
+        // Soft-masked bases are kept as text
+        assertNull(PackedSequenceCodec.encode("ACGTacgt", 0, 8));
+        assertNull(PackedSequenceCodec.encode("ACGT\u00C1", 0, 5));
+        assertNotNull(PackedSequenceCodec.encode("ACGTacgt", 0, 4));
+    }
+
+    @Test
+    public void testOutOfRange() {
+        byte[] packed = PackedSequenceCodec.encode("ACGT", 0, 4);
+        assertThrows(IndexOutOfBoundsException.class, () -> PackedSequenceCodec.decode(packed, 2, 5, new StringBuilder()));
+    }
+}
@@ -16,50 +16,63 @@
 
 package org.opencb.cellbase.lib.builders;
 
+import org.bson.Document;
 import org.opencb.biodata.models.core.GenomeSequenceChunk;
 import org.opencb.cellbase.core.serializer.CellBaseSerializer;
+import org.opencb.cellbase.core.utils.PackedSequenceCodec;
 import org.opencb.commons.utils.FileUtils;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Base64;
 
+/**
+ * Splits the sequences of a FASTA file into chunks of CHUNK_SIZE nucleotides as they are read, so only one chunk is
+ * held in memory whatever the length of the chromosome. The first chunk of a sequence contains the positions 1 to
+ * CHUNK_SIZE - 1 and the following ones the positions from chunk * CHUNK_SIZE to (chunk + 1) * CHUNK_SIZE - 1.
+ *
+ * When packing is enabled chunks store a 'packedSequence' binary, see PackedSequenceCodec, instead of the 'sequence'
+ * text. Chunks containing characters that cannot be packed, e.g. soft-masked lowercase bases, are stored as text.
+ */
 public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
 
     private Path genomeReferenceFastaFile;
+    private boolean packSequence;
 
     private static final int CHUNK_SIZE = 2000;
+    private static final String CHUNK_ID_SUFFIX = CHUNK_SIZE / 1000 + "k";
+
+    private String sequenceName;
+    private String sequenceType = "";
+    private String sequenceAssembly;
+    private int chunk;
+    private final StringBuilder chunkSequence = new StringBuilder(CHUNK_SIZE);
 
     public GenomeSequenceFastaBuilder(Path genomeReferenceFastaFile, CellBaseSerializer serializer) {
+        this(genomeReferenceFastaFile, false, serializer);
+    }
+
+    public GenomeSequenceFastaBuilder(Path genomeReferenceFastaFile, boolean packSequence, CellBaseSerializer serializer) {
         super(serializer);
         this.genomeReferenceFastaFile = genomeReferenceFastaFile;
+        this.packSequence = packSequence;
     }
 
     @Override
     public void parse() {
-
-        try {
-            String sequenceName = null;
-            String sequenceType = "";
-            String sequenceAssembly = null;
+        try (BufferedReader br = FileUtils.newBufferedReader(genomeReferenceFastaFile)) {
+            boolean skipSequence = true;
             String line;
-            StringBuilder sequenceStringBuilder = new StringBuilder();
-
-            // Preparing input and output files
-            BufferedReader br;
-            br = FileUtils.newBufferedReader(genomeReferenceFastaFile);
-
             while ((line = br.readLine()) != null) {
-
                 if (!line.startsWith(">")) {
-                    sequenceStringBuilder.append(line);
+                    if (!skipSequence) {
+                        appendSequence(line);
+                    }
                 } else {
-                    // new chromosome, save data
-                    if (sequenceStringBuilder.length() > 0) {
-                        if (!sequenceName.contains("PATCH") && !sequenceName.contains("HSCHR") && !sequenceName.contains("contig")) {
-                            System.out.println(sequenceName);
-                            serializeGenomeSequence(sequenceName, sequenceType, sequenceAssembly, sequenceStringBuilder.toString());
-                        }
+                    // new chromosome, save the last chunk
+                    if (!skipSequence) {
+                        serializeChunk();
                     }
 
                     // initialize data structures
@@ -67,74 +80,69 @@ public class GenomeSequenceFastaBuilder extends CellBaseBuilder {
                     sequenceName = lineParts[0];
                     // Non ENSEMBL fasta files may not contain this extra info in the sequence header, e.g. the Ebola
                     // virus file: >KM034562v1
-                    if (lineParts.length > 1) {
+                    if (lineParts.length > 2) {
                         sequenceType = lineParts[2].split(":")[0];
                         sequenceAssembly = lineParts[2].split(":")[1];
                     }
-                    sequenceStringBuilder.delete(0, sequenceStringBuilder.length());
+                    skipSequence = sequenceName.contains("PATCH") || sequenceName.contains("HSCHR") || sequenceName.contains("contig");
+                    if (!skipSequence) {
+                        logger.info("Building sequence {}", sequenceName);
+                    }
+                    chunk = 0;
+                    chunkSequence.setLength(0);
                 }
             }
             // Last chromosome must be processed
-            if (!sequenceName.contains("PATCH") && !sequenceName.contains("HSCHR") && !sequenceName.contains("contig")) {
-                serializeGenomeSequence(sequenceName, sequenceType, sequenceAssembly, sequenceStringBuilder.toString());
+            if (!skipSequence) {
+                serializeChunk();
             }
-
-            br.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private void serializeGenomeSequence(String chromosome, String sequenceType, String sequenceAssembly, String sequence)
-            throws IOException {
-        int chunk = 0;
-        int start = 1;
-        int end = CHUNK_SIZE - 1;
-        String chunkSequence;
-
-        String chunkIdSuffix = CHUNK_SIZE / 1000 + "k";
-        GenomeSequenceChunk genomeSequenceChunk;
+    private void appendSequence(String line) {
+        int offset = 0;
+        while (offset < line.length()) {
+            int chunkLength = chunk == 0 ? CHUNK_SIZE - 1 : CHUNK_SIZE;
+            int length = Math.min(chunkLength - chunkSequence.length(), line.length() - offset);
+            chunkSequence.append(line, offset, offset + length);
+            offset += length;
+            if (chunkSequence.length() == chunkLength) {
+                serializeChunk();
+            }
+        }
+    }
 
-        if (sequence.length() < CHUNK_SIZE) { //chromosome sequence length can be less than CHUNK_SIZE
-            chunkSequence = sequence;
-            genomeSequenceChunk = new GenomeSequenceChunk(chromosome, chromosome + "_" + 0 + "_" + chunkIdSuffix, start,
-                    sequence.length() - 1, sequenceType, sequenceAssembly, chunkSequence);
-            serializer.serialize(genomeSequenceChunk);
-            start += CHUNK_SIZE - 1;
+    private void serializeChunk() {
+        if (chunkSequence.length() == 0) {
+            return;
+        }
+        if (chunk % 10000 == 0) {
+            logger.debug("Chr: {} chunkId: {}", sequenceName, chunk);
+        }
+        int start = chunk == 0 ? 1 : chunk * CHUNK_SIZE;
+        int end = start + chunkSequence.length() - 1;
+        String chunkId = sequenceName + "_" + chunk + "_" + CHUNK_ID_SUFFIX;
+
+        byte[] packedSequence = packSequence ? PackedSequenceCodec.encode(chunkSequence, 0, chunkSequence.length()) : null;
+        if (packedSequence != null) {
+            // MongoDB extended JSON, loaded as a binary field
+            Document binary = new Document("$binary", Base64.getEncoder().encodeToString(packedSequence))
+                    .append("$type", "00");
+            serializer.serialize(new Document("chromosome", sequenceName)
+                    .append("id", chunkId)
+                    .append("start", start)
+                    .append("end", end)
+                    .append("sequenceType", sequenceType)
+                    .append("sequenceAssembly", sequenceAssembly)
+                    .append("packedSequence", binary));
         } else {
-            while (start < sequence.length()) {
-                if (chunk % 10000 == 0) {
-                    System.out.println("Chr:" + chromosome + " chunkId:" + chunk);
-                }
-                // First chunk of the chromosome
-                if (start == 1) {
-                    // First chunk contains CHUNK_SIZE-1 nucleotides as index start at position 1 but must end at 1999
-                    chunkSequence = sequence.substring(start - 1, CHUNK_SIZE - 1);
-                    genomeSequenceChunk = new GenomeSequenceChunk(chromosome, chromosome + "_" + chunk + "_" + chunkIdSuffix, start,
-                            end, sequenceType, sequenceAssembly, chunkSequence);
-                    serializer.serialize(genomeSequenceChunk);
-                    start += CHUNK_SIZE - 1;
-
-                } else {
-                    // Regular chunk
-                    if ((start + CHUNK_SIZE) < sequence.length()) {
-                        chunkSequence = sequence.substring(start - 1, start + CHUNK_SIZE - 1);
-                        genomeSequenceChunk = new GenomeSequenceChunk(chromosome, chromosome + "_" + chunk + "_" + chunkIdSuffix, start,
-                                end, sequenceType, sequenceAssembly, chunkSequence);
-                        serializer.serialize(genomeSequenceChunk);
-                        start += CHUNK_SIZE;
-                    } else {
-                        // Last chunk of the chromosome
-                        chunkSequence = sequence.substring(start - 1, sequence.length());
-                        genomeSequenceChunk = new GenomeSequenceChunk(chromosome, chromosome + "_" + chunk + "_" + chunkIdSuffix, start,
-                                sequence.length(), sequenceType, sequenceAssembly, chunkSequence);
-                        serializer.serialize(genomeSequenceChunk);
-                        start = sequence.length();
-                    }
-                }
-                end = start + CHUNK_SIZE - 1;
-                chunk++;
-            }
+            serializer.serialize(new GenomeSequenceChunk(sequenceName, chunkId, start, end, sequenceType, sequenceAssembly,
+                    chunkSequence.toString()));
         }
+
+        chunk++;
+        chunkSequence.setLength(0);
     }
 }
@@ -43,6 +43,7 @@ public interface CellBaseCoreDBAdaptor<Q extends AbstractQuery, T> extends Itera
         iterator.close();
 
         time = System.currentTimeMillis() - time;
+        QueryLatencyMetrics.getInstance().record(getClass(), time);
 
         CellBaseDataResult<T> result = new CellBaseDataResult<>();
         result.setTime((int) time);
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small thread-safe LRU cache of decoded chunks, keyed by chunk id, e.g. "10_130862_1k". Sorted annotation batches
+ * hit the same few chunks again and again, caching them avoids fetching and decoding the same documents per variant.
+ *
+ * @param <V> decoded chunk type
+ */
+public class ChunkCache<V> {
+
+    private final int maxChunks;
+    private final LinkedHashMap<String, V> chunks;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ChunkCache(int maxChunks) {
+        this.maxChunks = maxChunks;
+        this.chunks = new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > ChunkCache.this.maxChunks;
+            }
+        };
+    }
+
+    /**
+     * Looks up the chunks requested.
+     *
+     * @param chunkIds chunk ids to look up
+     * @return map with the chunks found, missing chunk ids are not present in the map
+     */
+    public synchronized Map<String, V> getAll(Iterable<String> chunkIds) {
+        Map<String, V> found = new HashMap<>();
+        for (String chunkId : chunkIds) {
+            V chunk = chunks.get(chunkId);
+            if (chunk != null) {
+                found.put(chunkId, chunk);
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+            }
+        }
+        return found;
+    }
+
+    public synchronized void putAll(Map<String, V> newChunks) {
+        chunks.putAll(newChunks);
+    }
+
+    public synchronized int size() {
+        return chunks.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
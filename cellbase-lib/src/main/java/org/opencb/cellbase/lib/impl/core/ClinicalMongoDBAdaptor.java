@@ -46,6 +46,7 @@ import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Created by fjlopez on 06/12/16.
@@ -57,6 +58,10 @@ public class ClinicalMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCo
     private static final String SEPARATOR = ",";
     // TODO: watch out this prefix only works for ENSMBL hgvs strings!!
     private static final String PROTEIN_HGVS_PREFIX = "ENSP";
+    // Max number of positions or protein HGVS per batched query
+    static final int CLINICAL_BATCH_QUERY_SIZE = 1000;
+    private static final List<String> CLINICAL_MATCHING_FIELDS = Arrays.asList("chromosome", "start", "reference",
+            "alternate", "annotation.hgvs");
     private static ClinicalPhasedQueryManager phasedQueryManager = new ClinicalPhasedQueryManager();
     private GenomeManager genomeManager;
 
@@ -333,45 +338,14 @@ public class ClinicalMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCo
         return executeAggregation2("", pipeline, queryOptions);
     }
 
-    private CellBaseDataResult<Variant> getClinicalVariant(Variant variant,
-                                                    GenomeManager genomeManager,
-                                                    List<Gene> geneList,
-                                                    QueryOptions options) {
-        Query query;
-        if (VariantType.CNV.equals(variant.getType())) {
-            query = new Query(ParamConstants.QueryParams.CHROMOSOME.key(), variant.getChromosome())
-                    .append(ParamConstants.QueryParams.CI_START_LEFT.key(), variant.getSv().getCiStartLeft())
-                    .append(ParamConstants.QueryParams.CI_START_RIGHT.key(), variant.getSv().getCiStartRight())
-                    .append(ParamConstants.QueryParams.CI_END_LEFT.key(), variant.getSv().getCiEndLeft())
-                    .append(ParamConstants.QueryParams.CI_END_RIGHT.key(), variant.getSv().getCiEndRight())
-                    .append(ParamConstants.QueryParams.REFERENCE.key(), variant.getReference())
-                    .append(ParamConstants.QueryParams.ALTERNATE.key(), variant.getAlternate());
-        } else {
-            query = new Query();
-            if (options.get(ParamConstants.QueryParams.CHECK_AMINO_ACID_CHANGE.key()) != null
-                    && (Boolean) options.get(ParamConstants.QueryParams.CHECK_AMINO_ACID_CHANGE.key())
-                    && genomeManager != null
-                    && geneList != null
-                    && !geneList.isEmpty()) {
-                HgvsCalculator hgvsCalculator = new HgvsCalculator(genomeManager);
-                List<String> proteinHgvsList = getProteinHgvs(hgvsCalculator.run(variant, geneList));
-                // Only add the protein HGVS query if it's a protein coding variant
-                if (!proteinHgvsList.isEmpty()) {
-                    query.append(ParamConstants.QueryParams.HGVS.key(), proteinHgvsList);
-                }
-            }
-
-            // If checkAminoAcidChange IS enabled but it's not a protein coding variant we still MUST raise the
-            // genomic query. However, the protein hgvs query must be enough to solve the variant match if it is a
-            // protein coding variant and we therefore would not need the specific genomic query
-            if (query.isEmpty()) {
-                query = new Query(ParamConstants.QueryParams.CHROMOSOME.key(), variant.getChromosome())
-                        .append(ParamConstants.QueryParams.START.key(), variant.getStart())
-                        .append(ParamConstants.QueryParams.REFERENCE.key(), variant.getReference())
-                        .append(ParamConstants.QueryParams.ALTERNATE.key(), variant.getAlternate());
-            }
-
-        }
+    private CellBaseDataResult<Variant> getClinicalVariant(Variant variant, QueryOptions options) {
+        Query query = new Query(ParamConstants.QueryParams.CHROMOSOME.key(), variant.getChromosome())
+                .append(ParamConstants.QueryParams.CI_START_LEFT.key(), variant.getSv().getCiStartLeft())
+                .append(ParamConstants.QueryParams.CI_START_RIGHT.key(), variant.getSv().getCiStartRight())
+                .append(ParamConstants.QueryParams.CI_END_LEFT.key(), variant.getSv().getCiEndLeft())
+                .append(ParamConstants.QueryParams.CI_END_RIGHT.key(), variant.getSv().getCiEndRight())
+                .append(ParamConstants.QueryParams.REFERENCE.key(), variant.getReference())
+                .append(ParamConstants.QueryParams.ALTERNATE.key(), variant.getAlternate());
 
         CellBaseDataResult<Variant> queryResult = get(query, options);
         queryResult.setId(variant.toString());
@@ -396,18 +370,180 @@ public class ClinicalMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCo
 
     public List<CellBaseDataResult<Variant>> getByVariant(List<Variant> variants, List<Gene> geneList,
                                                    QueryOptions queryOptions) {
+        QueryOptions batchOptions = getBatchQueryOptions(queryOptions);
+        boolean checkAminoAcidChange = queryOptions.get(ParamConstants.QueryParams.CHECK_AMINO_ACID_CHANGE.key()) != null
+                && (Boolean) queryOptions.get(ParamConstants.QueryParams.CHECK_AMINO_ACID_CHANGE.key())
+                && genomeManager != null
+                && geneList != null
+                && !geneList.isEmpty();
+        HgvsCalculator hgvsCalculator = checkAminoAcidChange ? new HgvsCalculator(genomeManager) : null;
+
         List<CellBaseDataResult<Variant>> results = new ArrayList<>(variants.size());
-        for (Variant variant: variants) {
-            results.add(getClinicalVariant(variant, genomeManager, geneList, queryOptions));
+        // Join indexes: protein HGVS -> positions and chromosome -> positions of the variants in the batch
+        Map<String, List<Integer>> hgvsPositions = new LinkedHashMap<>();
+        Map<String, List<Integer>> genomicPositions = new LinkedHashMap<>();
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            if (VariantType.CNV.equals(variant.getType())) {
+                results.add(getClinicalVariant(variant, queryOptions));
+                continue;
+            }
+
+            results.add(new CellBaseDataResult<>(variant.toString(), 0, new ArrayList<>(), 0, new ArrayList<>(), -1));
+            List<String> proteinHgvsList = checkAminoAcidChange
+                    ? getProteinHgvs(hgvsCalculator.run(variant, geneList))
+                    : Collections.emptyList();
+            // If checkAminoAcidChange IS enabled but it's not a protein coding variant we still MUST raise the
+            // genomic query. However, the protein hgvs query must be enough to solve the variant match if it is a
+            // protein coding variant and we therefore would not need the specific genomic query
+            if (!proteinHgvsList.isEmpty()) {
+                for (String proteinHgvs : proteinHgvsList) {
+                    hgvsPositions.computeIfAbsent(proteinHgvs, k -> new ArrayList<>(1)).add(i);
+                }
+            } else {
+                genomicPositions.computeIfAbsent(variant.getChromosome(), k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (List<Integer> positions : genomicPositions.values()) {
+            for (int i = 0; i < positions.size(); i += CLINICAL_BATCH_QUERY_SIZE) {
+                getClinicalVariantsByPosition(variants, positions.subList(i, Math.min(i + CLINICAL_BATCH_QUERY_SIZE,
+                        positions.size())), batchOptions, results);
+            }
+        }
+        getClinicalVariantsByHgvs(hgvsPositions, results, hgvsBatch -> mongoDBCollection.find(
+                Filters.in("annotation.hgvs", hgvsBatch), null, Variant.class, batchOptions).getResults());
+
+        // Limit cannot be pushed down to the batched queries, it is applied per variant as the single queries did.
+        // Number of matches is only known if count was requested, as with the single queries
+        int limit = queryOptions.getInt(QueryOptions.LIMIT, 0);
+        boolean count = queryOptions.getBoolean(QueryOptions.COUNT, false);
+        for (int i = 0; i < variants.size(); i++) {
+            if (!VariantType.CNV.equals(variants.get(i).getType())) {
+                CellBaseDataResult<Variant> result = results.get(i);
+                int numMatches = result.getResults().size();
+                if (limit > 0 && result.getResults().size() > limit) {
+                    result.setResults(new ArrayList<>(result.getResults().subList(0, limit)));
+                }
+                result.setNumResults(result.getResults().size());
+                result.setNumMatches(count ? numMatches : -1);
+            }
         }
+
         if (queryOptions.get(ParamConstants.QueryParams.PHASE.key()) != null
                 && (Boolean) queryOptions.get(ParamConstants.QueryParams.PHASE.key())) {
             results = phasedQueryManager.run(variants, results);
 
         }
+        // Matching fields are needed by the phased query manager too
+        removeUnrequestedMatchingFields(results, CLINICAL_MATCHING_FIELDS, queryOptions);
         return results;
     }
 
+    private QueryOptions getBatchQueryOptions(QueryOptions options) {
+        QueryOptions batchOptions = addPrivateExcludeOptions(parseQueryOptions(options, new Query()),
+                PRIVATE_CLINICAL_FIELDS);
+        batchOptions.remove(QueryOptions.LIMIT);
+        batchOptions.remove(QueryOptions.SKIP);
+        // Fields needed to assign each returned document to the variants it matches
+        if (batchOptions.containsKey(QueryOptions.INCLUDE)) {
+            Set<String> includeSet = new LinkedHashSet<>(batchOptions.getAsStringList(QueryOptions.INCLUDE));
+            includeSet.addAll(CLINICAL_MATCHING_FIELDS);
+            batchOptions.put(QueryOptions.INCLUDE, new ArrayList<>(includeSet));
+        }
+        return batchOptions;
+    }
+
+    private void getClinicalVariantsByPosition(List<Variant> variants, List<Integer> positions, QueryOptions options,
+                                               List<CellBaseDataResult<Variant>> results) {
+        String chromosome = variants.get(positions.get(0)).getChromosome();
+        Set<Integer> starts = new HashSet<>();
+        Set<String> references = new HashSet<>();
+        Set<String> alternates = new HashSet<>();
+        Map<String, List<Integer>> positionsByKey = new HashMap<>();
+        for (int position : positions) {
+            Variant variant = variants.get(position);
+            starts.add(variant.getStart());
+            references.add(StringUtils.defaultString(variant.getReference()));
+            alternates.add(StringUtils.defaultString(variant.getAlternate()));
+            positionsByKey.computeIfAbsent(getVariantKey(variant), k -> new ArrayList<>(1)).add(position);
+        }
+
+        Bson bson = Filters.and(Filters.eq("chromosome", chromosome), Filters.in("start", starts),
+                Filters.in("reference", references), Filters.in("alternate", alternates));
+        long dbTimeStart = System.currentTimeMillis();
+        List<Variant> clinicalVariants = mongoDBCollection.find(bson, null, Variant.class, options).getResults();
+        int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+        for (Variant clinicalVariant : clinicalVariants) {
+            List<Integer> matchedPositions = positionsByKey.get(getVariantKey(clinicalVariant));
+            if (matchedPositions != null) {
+                for (int position : matchedPositions) {
+                    results.get(position).getResults().add(clinicalVariant);
+                }
+            }
+        }
+        for (int position : positions) {
+            results.get(position).setTime(dbTime);
+        }
+    }
+
+    /**
+     * Queries the protein HGVS in batches of CLINICAL_BATCH_QUERY_SIZE and adds each clinical variant returned to the
+     * results of the input variants it matches. A clinical variant is added once per input variant even if several of
+     * its HGVS match, also when those HGVS are queried in different batches.
+     *
+     * @param hgvsPositions protein HGVS to query and positions of the input variants they belong to
+     * @param results results of the input variants
+     * @param hgvsQuery returns the clinical variants matching any HGVS of a batch
+     */
+    static void getClinicalVariantsByHgvs(Map<String, List<Integer>> hgvsPositions, List<CellBaseDataResult<Variant>> results,
+                                          Function<List<String>, List<Variant>> hgvsQuery) {
+        List<String> hgvsList = new ArrayList<>(hgvsPositions.keySet());
+        Set<String> queriedHgvs = new HashSet<>();
+        for (int i = 0; i < hgvsList.size(); i += CLINICAL_BATCH_QUERY_SIZE) {
+            List<String> hgvsBatch = hgvsList.subList(i, Math.min(i + CLINICAL_BATCH_QUERY_SIZE, hgvsList.size()));
+            Set<String> batchHgvs = new HashSet<>(hgvsBatch);
+            long dbTimeStart = System.currentTimeMillis();
+            List<Variant> clinicalVariants = hgvsQuery.apply(hgvsBatch);
+            int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+            for (Variant clinicalVariant : clinicalVariants) {
+                if (clinicalVariant.getAnnotation() == null || clinicalVariant.getAnnotation().getHgvs() == null) {
+                    continue;
+                }
+                // Input variants already matched by an HGVS of a previous batch got this clinical variant then
+                Set<Integer> matchedPositions = new LinkedHashSet<>();
+                Set<Integer> previouslyMatchedPositions = new HashSet<>();
+                for (String hgvs : clinicalVariant.getAnnotation().getHgvs()) {
+                    List<Integer> positions = hgvsPositions.get(hgvs);
+                    if (positions != null) {
+                        if (batchHgvs.contains(hgvs)) {
+                            matchedPositions.addAll(positions);
+                        } else if (queriedHgvs.contains(hgvs)) {
+                            previouslyMatchedPositions.addAll(positions);
+                        }
+                    }
+                }
+                matchedPositions.removeAll(previouslyMatchedPositions);
+                for (int position : matchedPositions) {
+                    results.get(position).getResults().add(clinicalVariant);
+                }
+            }
+            for (String hgvs : hgvsBatch) {
+                for (int position : hgvsPositions.get(hgvs)) {
+                    results.get(position).setTime(dbTime);
+                }
+            }
+            queriedHgvs.addAll(hgvsBatch);
+        }
+    }
+
+    private static String getVariantKey(Variant variant) {
+        return variant.getChromosome() + ":" + variant.getStart() + ":" + StringUtils.defaultString(variant.getReference())
+                + ":" + StringUtils.defaultString(variant.getAlternate());
+    }
+
     @Override
     public CellBaseIterator iterator(ClinicalVariantQuery query) {
         Bson bson = parseQuery(query);
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.opencb.biodata.models.core.Exon;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Transcript;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.config.GeneCacheProperties;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gene models fetched by variant annotation, cached per chromosome bin. Sorted VCF files hit the same few bins again
+ * and again, serving them from memory avoids querying and deserializing the same gene documents for every batch.
+ *
+ * Entries are keyed by species, assembly, source, chromosome, bin and the included fields, and evicted in LRU order
+ * once the approximate size of the cached genes exceeds the configured budget. There is one cache per JVM, shared by
+ * all species and assemblies. Cached genes are shared, callers must not modify them.
+ */
+public final class GeneModelCache {
+
+    private static GeneModelCache instance;
+
+    private final int binSize;
+    private final long maxSize;
+    private final LinkedHashMap<String, Bin> bins;
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(GeneModelCache.class);
+
+    GeneModelCache(int binSize, long maxSize) {
+        this.binSize = binSize;
+        this.maxSize = maxSize;
+        this.bins = new LinkedHashMap<>(1024, 0.75f, true);
+    }
+
+    /**
+     * Returns the cache shared by the whole JVM, creating it on first use.
+     *
+     * @param configuration CellBase configuration, the 'annotation.geneCache' section is used. Only the configuration
+     *                      provided on first use is taken into account.
+     * @return shared cache, null if the cache is not enabled
+     */
+    public static synchronized GeneModelCache getInstance(CellBaseConfiguration configuration) {
+        if (instance == null) {
+            if (configuration == null || configuration.getAnnotation() == null
+                    || configuration.getAnnotation().getGeneCache() == null
+                    || !configuration.getAnnotation().getGeneCache().isEnabled()) {
+                return null;
+            }
+            GeneCacheProperties geneCacheProperties = configuration.getAnnotation().getGeneCache();
+            int binSize = geneCacheProperties.getBinSize() > 0
+                    ? geneCacheProperties.getBinSize() : GeneCacheProperties.DEFAULT_BIN_SIZE;
+            long maxSizeMb = geneCacheProperties.getMaxSizeMb() > 0
+                    ? geneCacheProperties.getMaxSizeMb() : GeneCacheProperties.DEFAULT_MAX_SIZE_MB;
+            instance = new GeneModelCache(binSize, maxSizeMb * 1024 * 1024);
+            logger.info("Gene model cache created with bins of {} nts and a budget of {} MB", binSize, maxSizeMb);
+        }
+        return instance;
+    }
+
+    public int getBinSize() {
+        return binSize;
+    }
+
+    public static String getKey(String species, String assembly, String source, String chromosome, int bin,
+                                List<String> includes) {
+        return species + "_" + assembly + "_" + source + "_" + chromosome + "_" + bin + "_"
+                + (includes == null ? "" : String.join(",", includes));
+    }
+
+    /**
+     * Looks up the bins requested.
+     *
+     * @param keys bin keys, see getKey
+     * @return map with the genes of the bins found, missing bins are not present in the map
+     */
+    public synchronized Map<String, List<Gene>> getAll(Collection<String> keys) {
+        Map<String, List<Gene>> found = new HashMap<>();
+        for (String key : keys) {
+            Bin bin = bins.get(key);
+            if (bin != null) {
+                found.put(key, bin.genes);
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+            }
+        }
+        return found;
+    }
+
+    public synchronized void putAll(Map<String, List<Gene>> newBins) {
+        for (Map.Entry<String, List<Gene>> entry : newBins.entrySet()) {
+            Bin bin = new Bin(entry.getValue(), estimateSize(entry.getValue()));
+            Bin previousBin = bins.put(entry.getKey(), bin);
+            size += bin.size - (previousBin == null ? 0 : previousBin.size);
+        }
+
+        Iterator<Bin> iterator = bins.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().size;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized void clear() {
+        bins.clear();
+        size = 0;
+    }
+
+    public synchronized ObjectMap getStats() {
+        return new ObjectMap()
+                .append("bins", bins.size())
+                .append("sizeBytes", size)
+                .append("maxSizeBytes", maxSize)
+                .append("binSize", binSize)
+                .append("hits", hits.get())
+                .append("misses", misses.get())
+                .append("evictions", evictions.get());
+    }
+
+    /**
+     * Rough estimate of the heap used by the genes, dominated by the transcript and exon sequences.
+     *
+     * @param genes genes
+     * @return estimated size in bytes
+     */
+    static long estimateSize(List<Gene> genes) {
+        long size = 64;
+        for (Gene gene : genes) {
+            size += 512;
+            if (gene.getTranscripts() != null) {
+                for (Transcript transcript : gene.getTranscripts()) {
+                    size += 512 + 2L * (length(transcript.getCdnaSequence()) + length(transcript.getProteinSequence()));
+                    if (transcript.getExons() != null) {
+                        for (Exon exon : transcript.getExons()) {
+                            size += 128 + 2L * length(exon.getSequence());
+                        }
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static int length(String string) {
+        return string == null ? 0 : string.length();
+    }
+
+    private static class Bin {
+        private final List<Gene> genes;
+        private final long size;
+
+        Bin(List<Gene> genes, long size) {
+            this.genes = genes;
+            this.size = size;
+        }
+    }
+}
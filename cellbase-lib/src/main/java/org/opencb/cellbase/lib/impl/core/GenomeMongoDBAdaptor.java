@@ -23,6 +23,7 @@ import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.bson.types.Binary;
 import org.opencb.biodata.models.core.Chromosome;
 import org.opencb.biodata.models.core.GenomeSequenceFeature;
 import org.opencb.biodata.models.core.GenomicScoreRegion;
@@ -33,6 +34,7 @@ import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.api.GenomeQuery;
 import org.opencb.cellbase.core.api.query.ProjectionQueryOptions;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.core.utils.PackedSequenceCodec;
 import org.opencb.cellbase.lib.MongoDBCollectionConfiguration;
 import org.opencb.cellbase.lib.iterator.CellBaseIterator;
 import org.opencb.cellbase.lib.iterator.CellBaseMongoDBIterator;
@@ -50,7 +52,8 @@ import java.util.*;
 /**
  * Created by imedina on 07/12/15.
  */
-public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCoreDBAdaptor<GenomeQuery, Chromosome> {
+public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCoreDBAdaptor<GenomeQuery, Chromosome>,
+        GenomeSequenceAdaptor {
 
     private MongoDBCollection genomeInfoMongoDBCollection;
     private MongoDBCollection conservationMongoDBCollection;
@@ -59,8 +62,14 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
     private static final String END = "end";
     private static final String STAIN = "stain";
     private static final String NAME = "name";
+    private static final String PACKED_SEQUENCE = "packedSequence";
     private static final Object CHROMOSOMES = "chromosomes";
     private Document genomeInfo = null;
+    private static final int CONSERVATION_BATCH_QUERY_SIZE = 500;
+    // ~24KB per chunk: 2000 positions for each of the conservation sources
+    private static final int CONSERVATION_CHUNK_CACHE_SIZE = 1024;
+    private static final List<String> CONSERVATION_FIELDS = Arrays.asList("_chunkIds", "source", "start", "values");
+    private ChunkCache<List<ConservationChunk>> conservationChunkCache;
 
     public GenomeMongoDBAdaptor(String species, String assembly, MongoDataStore mongoDataStore) {
         super(species, assembly, mongoDataStore);
@@ -68,6 +77,7 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
         genomeInfoMongoDBCollection = mongoDataStore.getCollection("genome_info");
         mongoDBCollection = mongoDataStore.getCollection("genome_sequence");
         conservationMongoDBCollection = mongoDataStore.getCollection("conservation");
+        conservationChunkCache = new ChunkCache<>(CONSERVATION_CHUNK_CACHE_SIZE);
 
         logger.debug("GenomeMongoDBAdaptor: in 'constructor'");
     }
@@ -164,6 +174,7 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
         return getSequence(Region.parseRegion(query.getString("region")), queryOptions);
     }
 
+    @Override
     public CellBaseDataResult<GenomeSequenceFeature> getSequence(Region region, QueryOptions queryOptions) {
         Query query = new Query("region", region.toString());
         CellBaseDataResult<Document> cellBaseDataResult = nativeGet(query, queryOptions);
@@ -174,7 +185,7 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
         if (cellBaseDataResultList != null && !cellBaseDataResultList.isEmpty()) {
             StringBuilder stringBuilder = new StringBuilder();
             for (Document document : cellBaseDataResult.getResults()) {
-                stringBuilder.append(document.getString("sequence"));
+                appendChunkSequence(document, stringBuilder);
             }
 
             // The first chunk does contain 1 nt less than the rest and is 0-indexed - The rest of chunks contain
@@ -209,6 +220,30 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
         return result;
     }
 
+    /**
+     * Appends the sequence of a genome_sequence chunk, either stored as text or packed, see PackedSequenceCodec.
+     *
+     * @param document genome_sequence chunk
+     * @param stringBuilder StringBuilder the sequence is appended to
+     */
+    private void appendChunkSequence(Document document, StringBuilder stringBuilder) {
+        Object packedSequence = document.get(PACKED_SEQUENCE);
+        if (packedSequence == null) {
+            stringBuilder.append(document.getString("sequence"));
+            return;
+        }
+        byte[] packed;
+        if (packedSequence instanceof Binary) {
+            packed = ((Binary) packedSequence).getData();
+        } else if (packedSequence instanceof byte[]) {
+            packed = (byte[]) packedSequence;
+        } else {
+            // Loaded from JSON without extended JSON support
+            packed = Base64.getDecoder().decode(packedSequence.toString());
+        }
+        PackedSequenceCodec.decode(packed, 0, PackedSequenceCodec.getLength(packed), stringBuilder);
+    }
+
     public List<CellBaseDataResult<GenomicScoreRegion<Float>>> getConservation(List<Region> regionList, QueryOptions options) {
         //TODO not finished yet
         List<Document> queries = new ArrayList<>();
@@ -299,16 +334,9 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
     }
 
     public List<CellBaseDataResult<Score>> getAllScoresByRegionList(List<Region> regionList, QueryOptions options) {
-        //TODO not finished yet
-        List<Document> queries = new ArrayList<>();
-        List<String> ids = new ArrayList<>(regionList.size());
-        List<Integer> integerChunkIds;
-
-        List<CellBaseDataResult<Score>> allScoresByRegionList = new ArrayList();
-
-        List<Region> regions = regionList;
-        for (Region region : regions) {
-            integerChunkIds = new ArrayList<>();
+        int chunkSize = MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE;
+        Set<String> chunkIds = new LinkedHashSet<>();
+        for (Region region : regionList) {
             // positions below 1 are not allowed
             if (region.getStart() < 1) {
                 region.setStart(1);
@@ -316,95 +344,69 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
             if (region.getEnd() < 1) {
                 region.setEnd(1);
             }
-
-            /****/
-            QueryBuilder builder;
-            int regionChunkStart = getChunkId(region.getStart(), MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE);
-            int regionChunkEnd = getChunkId(region.getEnd(), MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE);
-            if (regionChunkStart == regionChunkEnd) {
-                builder = QueryBuilder.start("_chunkIds")
-                        .is(getChunkIdPrefix(region.getChromosome(), region.getStart(),
-                                MongoDBCollectionConfiguration.CONSERVATION_CHUNK_SIZE));
-            } else {
-//                for (int chunkId = regionChunkStart; chunkId <= regionChunkEnd; chunkId++) {
-//                    integerChunkIds.add(chunkId);
-//                }
-//    //            QueryBuilder builder = QueryBuilder.start("chromosome").is(region.getChromosomeInfo()).and("chunkId").in(hunkIds);
-//                builder = QueryBuilder.start("chromosome").is(region.getChromosomeInfo()).and("chunkId").in(integerChunkIds);
-                builder = QueryBuilder.start("chromosome").is(region.getChromosome()).and("end")
-                        .greaterThanEquals(region.getStart()).and("start").lessThanEquals(region.getEnd());
+            for (int chunkId = getChunkId(region.getStart(), chunkSize); chunkId <= getChunkId(region.getEnd(), chunkSize);
+                 chunkId++) {
+                chunkIds.add(getChunkIdPrefix(region.getChromosome(), chunkId * chunkSize, chunkSize));
             }
-            /****/
-
-
-            queries.add(new Document(builder.get().toMap()));
-            ids.add(region.toString());
-
-//            logger.debug(builder.get().toString());
-
         }
-        List<CellBaseDataResult> queryResults = executeQueryList2(ids, queries, options, conservationMongoDBCollection);
-//        List<QueryResult> queryResults = executeQueryList(ids, queries, options);
-
-        for (int i = 0; i < regions.size(); i++) {
-            Region region = regions.get(i);
-            CellBaseDataResult queryResult = queryResults.get(i);
-            List<Document> list = (List<Document>) queryResult.getResults();
-            Map<String, List<Float>> typeMap = new HashMap();
-
-
-//            int start = region.getStart();
 
+        // Chunks shared by neighbouring regions, or already used by previous batches, are fetched and decoded once
+        Map<String, List<ConservationChunk>> chunkMap = conservationChunkCache.getAll(chunkIds);
+        List<String> missingChunkIds = new ArrayList<>(chunkIds.size() - chunkMap.size());
+        for (String chunkId : chunkIds) {
+            if (!chunkMap.containsKey(chunkId)) {
+                missingChunkIds.add(chunkId);
+            }
+        }
+        for (int i = 0; i < missingChunkIds.size(); i += CONSERVATION_BATCH_QUERY_SIZE) {
+            Map<String, List<ConservationChunk>> fetchedChunkMap = getConservationChunks(missingChunkIds.subList(i,
+                    Math.min(i + CONSERVATION_BATCH_QUERY_SIZE, missingChunkIds.size())), options);
+            conservationChunkCache.putAll(fetchedChunkMap);
+            chunkMap.putAll(fetchedChunkMap);
+        }
 
-            for (int j = 0; j < list.size(); j++) {
-                Document chunk = list.get(j);
-                if (!chunk.isEmpty()) {
-//                    BasicDBList valuesChunk = (BasicDBList) chunk.get("values");
-                    ArrayList valuesChunk = chunk.get("values", ArrayList.class);
-
-
-                    String source = chunk.getString("source");
-                    List<Float> valuesList;
-                    if (!typeMap.containsKey(source)) {
-                        valuesList = new ArrayList<>(region.getEnd() - region.getStart() + 1);
-                        for (int val = 0; val < region.getEnd() - region.getStart() + 1; val++) {
-                            valuesList.add(null);
-                        }
-                        typeMap.put(source, valuesList);
-                    } else {
-                        valuesList = typeMap.get(source);
+        List<CellBaseDataResult<Score>> allScoresByRegionList = new ArrayList<>(regionList.size());
+        for (Region region : regionList) {
+            int regionLength = region.getEnd() - region.getStart() + 1;
+            Map<String, float[]> valuesBySource = new HashMap<>();
+            Map<String, BitSet> presentBySource = new HashMap<>();
+            // Documents spanning several chunks are listed under all of them, visited ones are skipped
+            Set<ConservationChunk> visitedChunks = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int chunkId = getChunkId(region.getStart(), chunkSize); chunkId <= getChunkId(region.getEnd(), chunkSize);
+                 chunkId++) {
+                List<ConservationChunk> chunkList = chunkMap.get(getChunkIdPrefix(region.getChromosome(), chunkId * chunkSize,
+                        chunkSize));
+                if (chunkList == null) {
+                    continue;
+                }
+                for (ConservationChunk chunk : chunkList) {
+                    if (!visitedChunks.add(chunk)) {
+                        continue;
                     }
-
-//                        valuesChunk = (BasicDBList) chunk.get("values");
-                    valuesChunk = chunk.get("values", ArrayList.class);
-                    int pos = 0;
-                    if (region.getStart() > chunk.getInteger("start")) {
-                        pos = region.getStart() - chunk.getInteger("start");
+                    int pos = Math.max(0, region.getStart() - chunk.start);
+                    if (pos >= chunk.values.length || chunk.start + pos > region.getEnd()) {
+                        continue;
                     }
-
-                    for (; pos < valuesChunk.size() && (pos + chunk.getInteger("start") <= region.getEnd()); pos++) {
-                        valuesList.set(pos + chunk.getInteger("start") - region.getStart(), new Float((Double) valuesChunk.get(pos)));
+                    float[] values = valuesBySource.computeIfAbsent(chunk.source, k -> new float[regionLength]);
+                    BitSet present = presentBySource.computeIfAbsent(chunk.source, k -> new BitSet(regionLength));
+                    for (; pos < chunk.values.length && (pos + chunk.start <= region.getEnd()); pos++) {
+                        values[pos + chunk.start - region.getStart()] = chunk.values[pos];
+                        present.set(pos + chunk.start - region.getStart());
                     }
-                } else {
-                    logger.error("values field not present in conservation chunk document. This "
-                            + "should not be happening - every conservation chunk must have a list of values."
-                            + " Please check. Chunk id: " + chunk.get("_chunkIds"));
-                    continue;
                 }
-
-
             }
+
             List<Score> resultList = new ArrayList<>();
-            for (Map.Entry<String, List<Float>> elem : typeMap.entrySet()) {
-                for (Float score : elem.getValue()) {
-                    if (score != null) {
-                        resultList.add(new Score(new Double(score), elem.getKey(), null));
-                    }
+            for (Map.Entry<String, float[]> elem : valuesBySource.entrySet()) {
+                BitSet present = presentBySource.get(elem.getKey());
+                for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+                    resultList.add(new Score((double) elem.getValue()[i], elem.getKey(), null));
                 }
             }
-            CellBaseDataResult<Score> result = new CellBaseDataResult<>();
+            CellBaseDataResult<Score> result = new CellBaseDataResult<>(region.toString());
             if (!resultList.isEmpty()) {
                 result.setResults(resultList);
+                result.setNumResults(resultList.size());
             } else {
                 result.setResults(null);
             }
@@ -414,6 +416,56 @@ public class GenomeMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCore
         return allScoresByRegionList;
     }
 
+    private Map<String, List<ConservationChunk>> getConservationChunks(List<String> chunkIds, QueryOptions options) {
+        Map<String, List<ConservationChunk>> chunkMap = new HashMap<>();
+        // Chunk ids without documents are cached too, conservation scores do not cover the whole genome
+        for (String chunkId : chunkIds) {
+            chunkMap.put(chunkId, new ArrayList<>(3));
+        }
+
+        Document query = new Document("_chunkIds", new Document("$in", chunkIds));
+        QueryOptions queryOptions = new QueryOptions(options);
+        queryOptions.remove(QueryOptions.LIMIT);
+        queryOptions.put(QueryOptions.INCLUDE, CONSERVATION_FIELDS);
+        MongoDBIterator<Document> iterator = conservationMongoDBCollection.nativeQuery().find(query, queryOptions);
+        while (iterator.hasNext()) {
+            Document document = iterator.next();
+            if (document.get("values") == null) {
+                logger.error("values field not present in conservation chunk document. This "
+                        + "should not be happening - every conservation chunk must have a list of values."
+                        + " Please check. Chunk id: " + document.get("_chunkIds"));
+                continue;
+            }
+            ConservationChunk chunk = new ConservationChunk(document);
+            for (Object chunkId : document.get("_chunkIds", List.class)) {
+                List<ConservationChunk> chunkList = chunkMap.get(chunkId.toString());
+                if (chunkList != null) {
+                    chunkList.add(chunk);
+                }
+            }
+        }
+        return chunkMap;
+    }
+
+    /**
+     * Conservation document with its values decoded into a primitive array.
+     */
+    private static class ConservationChunk {
+        private final String source;
+        private final int start;
+        private final float[] values;
+
+        ConservationChunk(Document document) {
+            this.source = document.getString("source");
+            this.start = document.getInteger("start");
+            List<?> valueList = document.get("values", List.class);
+            this.values = new float[valueList.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = ((Number) valueList.get(i)).floatValue();
+            }
+        }
+    }
+
     @Deprecated
     public CellBaseDataResult nativeGet(Query query, QueryOptions options) {
         Bson bson = parseQuery(query);
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.opencb.biodata.models.core.GenomeSequenceFeature;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+/**
+ * Source of reference genome sequences used by GenomeManager.
+ */
+public interface GenomeSequenceAdaptor {
+
+    /**
+     * Returns the reference sequence of a region. If the region end is out of the right bound of the chromosome the
+     * available nucleotides are returned; no results are returned if the chromosome does not exist or the region
+     * start is out of bounds.
+     *
+     * @param region region, 1-based and both inclusive
+     * @param queryOptions query options
+     * @return CellBaseDataResult with one GenomeSequenceFeature, or no results
+     */
+    CellBaseDataResult<GenomeSequenceFeature> getSequence(Region region, QueryOptions queryOptions);
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.opencb.biodata.models.core.GenomeSequenceFeature;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads reference sequences from an uncompressed FASTA file indexed with samtools faidx. Every sequence is
+ * memory-mapped once, so queries are served from the page cache without any database round trip. Sequences are
+ * returned as stored in the FASTA file, same as the genome_sequence collection built from it.
+ */
+public class LocalGenomeSequenceAdaptor implements GenomeSequenceAdaptor {
+
+    // Enough for any FASTA header line, only used to read sequence type and assembly
+    private static final int MAX_HEADER_LENGTH = 1024;
+
+    private final Map<String, FastaSequence> sequences;
+
+    private Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public LocalGenomeSequenceAdaptor(Path fastaPath) throws IOException {
+        this.sequences = new HashMap<>();
+
+        Path faiPath = Paths.get(fastaPath.toString() + ".fai");
+        if (!Files.exists(faiPath)) {
+            throw new IOException("FASTA index not found: " + faiPath + ". Please, run 'samtools faidx " + fastaPath + "'");
+        }
+        try (FileChannel fileChannel = FileChannel.open(fastaPath, StandardOpenOption.READ);
+             BufferedReader bufferedReader = Files.newBufferedReader(faiPath)) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                // name, length, offset, line bases, line width
+                String[] fields = line.split("\t");
+                FastaSequence sequence = new FastaSequence(Integer.parseInt(fields[1]), Long.parseLong(fields[2]),
+                        Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+                if (sequence.getByteLength() > Integer.MAX_VALUE) {
+                    throw new IOException("Sequence " + fields[0] + " is too long to be memory-mapped");
+                }
+                // Mappings remain valid once the channel is closed
+                sequence.buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, sequence.offset, sequence.getByteLength());
+                readHeader(fileChannel, sequence);
+                sequences.put(fields[0], sequence);
+            }
+        }
+        logger.info("{} sequences memory-mapped from {}", sequences.size(), fastaPath);
+    }
+
+    @Override
+    public CellBaseDataResult<GenomeSequenceFeature> getSequence(Region region, QueryOptions queryOptions) {
+        CellBaseDataResult<GenomeSequenceFeature> result = new CellBaseDataResult<>(region.toString());
+        FastaSequence fastaSequence = getFastaSequence(region.getChromosome());
+        if (fastaSequence == null || region.getStart() < 1 || region.getStart() > fastaSequence.length
+                || region.getEnd() < region.getStart()) {
+            return result;
+        }
+
+        // If end is out of the right boundary the available nucleotides are returned
+        int end = Math.min(region.getEnd(), fastaSequence.length);
+        byte[] bases = new byte[end - region.getStart() + 1];
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = fastaSequence.buffer.get(fastaSequence.getBufferIndex(region.getStart() - 1 + i));
+        }
+
+        result.setResults(Collections.singletonList(new GenomeSequenceFeature(region.getChromosome(), region.getStart(),
+                region.getEnd(), 1, fastaSequence.sequenceType, fastaSequence.assembly,
+                new String(bases, StandardCharsets.US_ASCII))));
+        result.setNumMatches(1);
+        result.setNumResults(1);
+        return result;
+    }
+
+    private FastaSequence getFastaSequence(String chromosome) {
+        FastaSequence fastaSequence = sequences.get(chromosome);
+        if (fastaSequence == null) {
+            // UCSC style FASTA files, e.g. chr1 instead of 1
+            fastaSequence = chromosome.startsWith("chr") ? sequences.get(chromosome.substring(3)) : sequences.get("chr" + chromosome);
+        }
+        return fastaSequence;
+    }
+
+    // Ensembl headers look like '>1 dna:chromosome chromosome:GRCh38:1:1:248956422:1 REF'
+    private void readHeader(FileChannel fileChannel, FastaSequence sequence) throws IOException {
+        int length = (int) Math.min(MAX_HEADER_LENGTH, sequence.offset);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(length);
+        fileChannel.read(byteBuffer, sequence.offset - length);
+        String text = new String(byteBuffer.array(), 0, byteBuffer.position(), StandardCharsets.US_ASCII).trim();
+        String header = text.substring(text.lastIndexOf('>') + 1);
+        String[] headerParts = header.split(" ");
+        if (headerParts.length > 2 && headerParts[2].contains(":")) {
+            sequence.sequenceType = headerParts[2].split(":")[0];
+            sequence.assembly = headerParts[2].split(":")[1];
+        } else {
+            sequence.sequenceType = "";
+        }
+    }
+
+    private static class FastaSequence {
+        private final int length;
+        private final long offset;
+        private final int lineBases;
+        private final int lineWidth;
+        private MappedByteBuffer buffer;
+        private String sequenceType;
+        private String assembly;
+
+        FastaSequence(int length, long offset, int lineBases, int lineWidth) {
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineWidth = lineWidth;
+        }
+
+        long getByteLength() {
+            return getBufferIndex(length - 1) + 1L;
+        }
+
+        /**
+         * @param position 0-based position within the sequence
+         * @return index within the mapped buffer, line breaks skipped
+         */
+        int getBufferIndex(int position) {
+            return (position / lineBases) * lineWidth + position % lineBases;
+        }
+    }
+}
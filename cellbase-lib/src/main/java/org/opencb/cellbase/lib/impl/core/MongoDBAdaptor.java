@@ -24,11 +24,13 @@ import org.apache.commons.collections.CollectionUtils;
 import org.bson.*;
 import org.bson.conversions.Bson;
 import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
 import org.opencb.cellbase.core.api.query.AbstractQuery;
 import org.opencb.cellbase.core.api.query.LogicalList;
 import org.opencb.cellbase.core.api.query.ProjectionQueryOptions;
 import org.opencb.cellbase.core.common.IntervalFeatureFrequency;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.DataResult;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
@@ -41,6 +43,7 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MongoDBAdaptor {
 
@@ -492,45 +495,78 @@ public class MongoDBAdaptor {
         return executeQueryList2(ids, queries, options, mongoDBCollection);
     }
 
+    /*
+     * Queries are run concurrently by the executor shared with FeatureApi.search(List), 'query.maxParallelism' at a
+     * time. As when they were run one after the other, the first query failing fails the whole list.
+     */
     protected List<CellBaseDataResult> executeQueryList2(List<? extends Object> ids, List<Document> queries, QueryOptions options,
                                                   MongoDBCollection mongoDBCollection2) {
-        List<CellBaseDataResult> cellBaseDataResults = new ArrayList<>(ids.size());
-        long dbTimeStart, dbTimeEnd;
-
+        if (queries.size() == 1) {
+            return new ArrayList<>(Collections.singletonList(executeQuery2(ids.get(0), queries.get(0), options,
+                    mongoDBCollection2)));
+        }
+        List<Integer> positions = new ArrayList<>(queries.size());
         for (int i = 0; i < queries.size(); i++) {
-            Document query = queries.get(i);
-            CellBaseDataResult cellBaseDataResult = new CellBaseDataResult();
-            cellBaseDataResult.setId(ids.get(i).toString());
+            positions.add(i);
+        }
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<CellBaseDataResult> cellBaseDataResults = MongoDBAdaptorFactory.getQueryExecutor().<Integer, CellBaseDataResult>map(positions,
+                i -> executeQuery2(ids.get(i), queries.get(i), options, mongoDBCollection2),
+                (i, e) -> {
+                    failure.compareAndSet(null, e);
+                    return null;
+                });
+        if (failure.get() != null) {
+            if (failure.get() instanceof RuntimeException) {
+                throw (RuntimeException) failure.get();
+            }
+            throw new RuntimeException(failure.get());
+        }
+        return cellBaseDataResults;
+    }
+
+    private CellBaseDataResult executeQuery2(Object id, Document query, QueryOptions options, MongoDBCollection mongoDBCollection2) {
+        CellBaseDataResult cellBaseDataResult;
+        if (logger.isDebugEnabled()) {
             logger.debug("query: {}", query.toJson());
             logger.debug("QueryOptions: {}", options.toJson());
-            // Execute query and calculate time
-            dbTimeStart = System.currentTimeMillis();
-            if (options.containsKey("count") && options.getBoolean("count")) {
-                cellBaseDataResult = new CellBaseDataResult(mongoDBCollection2.count(query));
-            } else {
-                MongoDBIterator<Document> iterator = mongoDBCollection2.nativeQuery().find(query, options);
-                List<Document> dbObjectList = new LinkedList<>();
-                while (iterator.hasNext()) {
-                    dbObjectList.add(iterator.next());
-                }
-                cellBaseDataResult.setNumResults(dbObjectList.size());
-                cellBaseDataResult.setResults(dbObjectList);
-
-                // Limit is set in queryOptions, count number of total results
-                if (options != null && options.getInt("limit", 0) > 0
-                        && mongoDBCollection2.count(query).getResults().size() > 0) {
-                    cellBaseDataResult.setNumMatches(mongoDBCollection2.count(query).first());
+        }
+        // Execute query and calculate time
+        long dbTimeStart = System.currentTimeMillis();
+        if (options.containsKey("count") && options.getBoolean("count")) {
+            cellBaseDataResult = new CellBaseDataResult(mongoDBCollection2.count(query));
+        } else {
+            cellBaseDataResult = new CellBaseDataResult();
+            int limit = options.getInt(QueryOptions.LIMIT, 0);
+            int skip = options.getInt(QueryOptions.SKIP, 0);
+            MongoDBIterator<Document> iterator = mongoDBCollection2.nativeQuery().find(query, options);
+            List<Document> dbObjectList = new ArrayList<>(limit > 0 ? limit : 10);
+            while (iterator.hasNext()) {
+                dbObjectList.add(iterator.next());
+            }
+            cellBaseDataResult.setNumResults(dbObjectList.size());
+            cellBaseDataResult.setResults(dbObjectList);
+
+            // Total number of matches is only unknown when the limit was reached or everything was skipped. It is
+            // counted once then, unless count=false was explicitly requested
+            if (limit > 0 && (dbObjectList.size() >= limit || (skip > 0 && dbObjectList.isEmpty()))) {
+                if (options.containsKey("count")) {
+                    cellBaseDataResult.setNumMatches(-1);
                 } else {
-                    cellBaseDataResult.setNumMatches(dbObjectList.size());
+                    DataResult<Long> countResult = mongoDBCollection2.count(query);
+                    cellBaseDataResult.setNumMatches(countResult.getResults().isEmpty() ? -1 : countResult.first());
                 }
+            } else if (limit > 0) {
+                // The last page was returned, all the matches were either skipped or returned
+                cellBaseDataResult.setNumMatches(skip + dbObjectList.size());
+            } else {
+                // Without a limit only the documents returned are reported, as it has always been done
+                cellBaseDataResult.setNumMatches(dbObjectList.size());
             }
-            dbTimeEnd = System.currentTimeMillis();
-            cellBaseDataResult.setTime(Long.valueOf(dbTimeEnd - dbTimeStart).intValue());
-
-            cellBaseDataResults.add(cellBaseDataResult);
         }
-
-        return cellBaseDataResults;
+        cellBaseDataResult.setId(id.toString());
+        cellBaseDataResult.setTime((int) (System.currentTimeMillis() - dbTimeStart));
+        return cellBaseDataResult;
     }
 
     protected CellBaseDataResult executeAggregation2(Object id, List<Bson> pipeline, QueryOptions options) {
@@ -633,6 +669,92 @@ public class MongoDBAdaptor {
         return returnFields;
     }
 
+    /**
+     * Clears the matching fields added to the include list of the caller to assign the documents of a batched query to
+     * the variants queried, unless the caller included them. Must be called once the matching fields are not needed
+     * anymore, e.g. by the phased query managers.
+     *
+     * @param results results of the batched query
+     * @param matchingFields fields added to the include list of the caller
+     * @param options query options of the caller, nothing is cleared if they do not restrict the fields returned
+     */
+    protected static void removeUnrequestedMatchingFields(List<CellBaseDataResult<Variant>> results, List<String> matchingFields,
+                                                          QueryOptions options) {
+        List<String> unrequestedFields = getUnrequestedMatchingFields(matchingFields, options);
+        if (unrequestedFields.isEmpty()) {
+            return;
+        }
+        for (CellBaseDataResult<Variant> result : results) {
+            for (Variant variant : result.getResults()) {
+                for (String field : unrequestedFields) {
+                    removeMatchingField(variant, field);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the matching fields not included by the caller. A nested field, e.g. annotation.hgvs, is returned as its
+     * whole parent if the caller did not include any field under it.
+     *
+     * @param matchingFields fields added to the include list of the caller
+     * @param options query options of the caller
+     * @return matching fields not included by the caller, empty if the caller does not restrict the fields returned
+     */
+    static List<String> getUnrequestedMatchingFields(List<String> matchingFields, QueryOptions options) {
+        if (options == null || !options.containsKey(QueryOptions.INCLUDE)) {
+            return Collections.emptyList();
+        }
+        List<String> includes = options.getAsStringList(QueryOptions.INCLUDE);
+        List<String> unrequestedFields = new ArrayList<>(matchingFields.size());
+        for (String field : matchingFields) {
+            if (includes.stream().noneMatch(include -> include.equals(field) || include.startsWith(field + ".")
+                    || field.startsWith(include + "."))) {
+                int dot = field.indexOf('.');
+                String parent = dot > 0 ? field.substring(0, dot) : null;
+                if (parent != null && includes.stream().noneMatch(include -> include.startsWith(parent + "."))) {
+                    if (!unrequestedFields.contains(parent)) {
+                        unrequestedFields.add(parent);
+                    }
+                } else {
+                    unrequestedFields.add(field);
+                }
+            }
+        }
+        return unrequestedFields;
+    }
+
+    private static void removeMatchingField(Variant variant, String field) {
+        // start and end are primitive in VariantAvro and cannot be cleared, they are returned as read
+        switch (field) {
+            case "chromosome":
+                variant.getImpl().setChromosome(null);
+                break;
+            case "reference":
+                variant.getImpl().setReference(null);
+                break;
+            case "alternate":
+                variant.getImpl().setAlternate(null);
+                break;
+            case "type":
+                variant.getImpl().setType(null);
+                break;
+            case "sv":
+                variant.getImpl().setSv(null);
+                break;
+            case "annotation":
+                variant.setAnnotation(null);
+                break;
+            case "annotation.hgvs":
+                if (variant.getAnnotation() != null) {
+                    variant.getAnnotation().setHgvs(null);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
     /*
      * For histograms
      */
@@ -16,6 +16,9 @@
 
 package org.opencb.cellbase.lib.impl.core;
 
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCompressor;
+import com.mongodb.MongoException;
 import com.mongodb.MongoTimeoutException;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
@@ -23,11 +26,13 @@ import org.bson.Document;
 import org.opencb.biodata.models.core.Gene;
 import org.opencb.cellbase.core.api.GeneQuery;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
-import org.opencb.cellbase.core.config.DatabaseCredentials;
+import org.opencb.cellbase.core.config.ConnectionPoolProperties;
+import org.opencb.cellbase.core.config.MongoDBDatabaseCredentials;
 import org.opencb.cellbase.core.config.SpeciesConfiguration;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.commons.datastore.core.DataStoreServerAddress;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.mongodb.MongoDBConfiguration;
 import org.opencb.commons.datastore.mongodb.MongoDataStore;
 import org.opencb.commons.datastore.mongodb.MongoDataStoreManager;
@@ -59,18 +64,42 @@ public class MongoDBAdaptorFactory {
     private static final String REPLICA_SET = "replica_set";
     private static final String HOST = "host";
     private static final String ADMIN_DATABASE = "admin";
+    private static final String CONNECTIONS = "connections";
+    private static final String OP_LATENCIES = "opLatencies";
     /**
      * MongoDataStoreManager acts as singleton by keeping a reference to all databases connections created.
      */
     private static MongoDataStoreManager mongoDataStoreManager;
+    /**
+     * Runs the queries of multi-query requests, shared by all the adaptors and managers of the JVM.
+     */
+    private static ParallelQueryExecutor queryExecutor;
 
 //    private MongoDBAdaptorFactory mongoDBAdaptorFactory;
 
     public MongoDBAdaptorFactory(CellBaseConfiguration cellBaseConfiguration) {
         this.cellBaseConfiguration = cellBaseConfiguration;
+        initQueryExecutor(cellBaseConfiguration);
         init();
     }
 
+    private static synchronized void initQueryExecutor(CellBaseConfiguration cellBaseConfiguration) {
+        if (queryExecutor == null) {
+            queryExecutor = ParallelQueryExecutor.create(cellBaseConfiguration);
+        }
+    }
+
+    /**
+     * Returns the query executor shared by the JVM, sized by the configuration of the first factory created. Defaults
+     * are used if no factory has been created, e.g. adaptors created directly.
+     *
+     * @return shared query executor
+     */
+    public static ParallelQueryExecutor getQueryExecutor() {
+        initQueryExecutor(null);
+        return queryExecutor;
+    }
+
 //    public static MongoDBAdaptorFactory getInstance(CellBaseConfiguration cellBaseConfiguration) {
 //        if (mongoDataStoreManager == null) {
 //            String[] hosts = cellBaseConfiguration.getDatabases().getMongodb().getHost().split(",");
@@ -187,7 +216,7 @@ public class MongoDBAdaptorFactory {
                 // Database name is built following the above pattern
                 String database = getDatabaseName(species, cellbaseAssembly);
                 logger.debug("Database for the species is '{}'", database);
-                return createMongoDBDatastore(database);
+                return createDatabaseDatastore(database, species);
             } else {
                 logger.error("Assembly is not valid, assembly '{}'. Valid assemblies: {}", assembly,
                         String.join(",", speciesObject.getAssemblies().stream().map((assemblyObject)
@@ -224,8 +253,8 @@ public class MongoDBAdaptorFactory {
         return "cellbase" + "_" + species.toLowerCase() + "_" + cleanAssembly.toLowerCase() + "_" + cellBaseConfiguration.getVersion();
     }
 
-    private MongoDataStore createMongoDBDatastore(String database) {
-        DatabaseCredentials mongodbCredentials = cellBaseConfiguration.getDatabases().getMongodb();
+    private MongoDataStore createDatabaseDatastore(String database, String speciesId) {
+        MongoDBDatabaseCredentials mongodbCredentials = cellBaseConfiguration.getDatabases().getMongodb();
         MongoDBConfiguration mongoDBConfiguration;
         MongoDBConfiguration.Builder builder = MongoDBConfiguration.builder();
 
@@ -247,6 +276,15 @@ public class MongoDBAdaptorFactory {
             }
         }
 
+        // Typed connection pool settings take precedence over the raw options
+        ConnectionPoolProperties connectionPool = mongodbCredentials.getConnectionPool(speciesId);
+        if (StringUtils.isNotEmpty(connectionPool.getReadPreference())) {
+            builder.add(MongoDBConfiguration.READ_PREFERENCE, connectionPool.getReadPreference());
+        }
+        if (connectionPool.getMaxPoolSize() != null && connectionPool.getMaxPoolSize() > 0) {
+            builder.add(MongoDBConfiguration.CONNECTIONS_PER_HOST, String.valueOf(connectionPool.getMaxPoolSize()));
+        }
+
         mongoDBConfiguration = builder.build();
 
         logger.debug("*************************************************************************************");
@@ -293,6 +331,43 @@ public class MongoDBAdaptorFactory {
         }
     }
 
+    /**
+     * Reports the client settings in effect for the database of a species, which may differ from the configuration if
+     * a setting is not supported by the MongoDB driver, the connections and operation latencies reported by the server,
+     * and the query latency histograms per collection of this JVM.
+     *
+     * @param species species
+     * @param assembly assembly, null for the default one
+     * @return database metrics
+     */
+    public ObjectMap getDatabaseMetrics(String species, String assembly) {
+        MongoDataStore mongoDatastore = createMongoDBDatastore(species, assembly);
+        ObjectMap metrics = new ObjectMap("database", mongoDatastore.getDatabaseName());
+
+        MongoClientOptions options = mongoDatastore.getMongoClient().getMongoClientOptions();
+        metrics.put("connectionPool", new ObjectMap()
+                .append("readPreference", options.getReadPreference().getName())
+                .append("maxPoolSize", options.getConnectionsPerHost())
+                .append("minPoolSize", options.getMinConnectionsPerHost())
+                .append("maxWaitTimeMs", options.getMaxWaitTime())
+                .append("compressors", options.getCompressorList().stream().map(MongoCompressor::getName)
+                        .collect(Collectors.toList())));
+
+        try {
+            Document serverStatus = mongoDatastore.getServerStatus();
+            // Connections of all the clients of the server, current + available is the server limit
+            metrics.put("serverConnections", serverStatus.get(CONNECTIONS));
+            metrics.put("serverOpLatencies", serverStatus.get(OP_LATENCIES));
+        } catch (MongoException e) {
+            // e.g. the user is not allowed to run serverStatus
+            logger.warn("Server status of database '{}' could not be read: {}", mongoDatastore.getDatabaseName(), e.getMessage());
+            metrics.put("serverStatusError", e.getMessage());
+        }
+
+        metrics.put("queryLatency", QueryLatencyMetrics.getInstance().getStats());
+        return metrics;
+    }
+
     private Map<String, DatastoreStatus> getSingleMachineDBStatus(MongoDataStore mongoDatastore, String species, String assembly) {
         Document statusDocument = mongoDatastore.getServerStatus();
         Map<String, DatastoreStatus> statusMap = new HashMap<>(1);
@@ -303,7 +378,7 @@ public class MongoDBAdaptorFactory {
     }
 
     private Map<String, DatastoreStatus> getReplSetStatus(String species, String assembly) {
-        MongoDataStore mongoDatastore = createMongoDBDatastore(ADMIN_DATABASE);
+        MongoDataStore mongoDatastore = createDatabaseDatastore(ADMIN_DATABASE, null);
         Document statusDocument = mongoDatastore.getReplSetStatus();
         Map<String, DatastoreStatus> statusMap = new HashMap<>(4);
 
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.config.QueryProperties;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Bounded thread pool shared by all the managers and MongoDB adaptors of the JVM to run the queries of multi-query
+ * requests concurrently, see FeatureApi.search(List) and MongoDBAdaptor.executeQueryList2. It is owned by
+ * MongoDBAdaptorFactory, see MongoDBAdaptorFactory.getQueryExecutor(). The calling thread always takes part in running
+ * its own queries, so a request never waits for a free thread and nested multi-query calls cannot deadlock; when the
+ * pool is busy the queries simply run with less parallelism. Threads are daemon so that neither the CLI nor the server
+ * need to shut it down.
+ */
+public final class ParallelQueryExecutor {
+
+    private final ThreadPoolExecutor threadPoolExecutor;
+    private final int maxParallelism;
+
+    private final AtomicLong executedTasks = new AtomicLong();
+    private final AtomicLong failedTasks = new AtomicLong();
+    private final AtomicLong rejectedWorkers = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(ParallelQueryExecutor.class);
+
+    /**
+     * Task run for each input, it may throw any exception.
+     *
+     * @param <I> input type
+     * @param <R> result type
+     */
+    @FunctionalInterface
+    public interface Task<I, R> {
+        R run(I input) throws Exception;
+    }
+
+    ParallelQueryExecutor(int numThreads, int queueSize, int maxParallelism) {
+        this.maxParallelism = maxParallelism;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.threadPoolExecutor = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "cellbase-query-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.threadPoolExecutor.allowCoreThreadTimeOut(true);
+        logger.info("Query executor created with {} threads, a queue of {} tasks and a max parallelism of {} per call",
+                numThreads, queueSize, maxParallelism);
+    }
+
+    /**
+     * Creates an executor sized by the 'query' section of the configuration.
+     *
+     * @param configuration CellBase configuration, defaults are used if the 'query' section is absent
+     * @return new executor
+     */
+    static ParallelQueryExecutor create(CellBaseConfiguration configuration) {
+        QueryProperties queryProperties = (configuration != null && configuration.getQuery() != null)
+                ? configuration.getQuery()
+                : new QueryProperties();
+        return new ParallelQueryExecutor(
+                queryProperties.getNumThreads() > 0 ? queryProperties.getNumThreads() : QueryProperties.DEFAULT_NUM_THREADS,
+                queryProperties.getQueueSize() > 0 ? queryProperties.getQueueSize() : QueryProperties.DEFAULT_QUEUE_SIZE,
+                queryProperties.getMaxParallelism() > 0 ? queryProperties.getMaxParallelism() : 1);
+    }
+
+    /**
+     * Runs the task for every input, at most maxParallelism of them at the same time, one of them in the calling
+     * thread. A failing task does not stop the others, onError builds the result of the failed input instead.
+     *
+     * @param inputs inputs, e.g. queries
+     * @param task task run for each input
+     * @param onError builds the result of an input whose task threw an exception
+     * @param <I> input type
+     * @param <R> result type
+     * @return results in the same order as the inputs
+     */
+    public <I, R> List<R> map(List<I> inputs, Task<I, R> task, BiFunction<I, Exception, R> onError) {
+        int numInputs = inputs.size();
+        Object[] results = new Object[numInputs];
+        AtomicInteger nextInput = new AtomicInteger();
+        CountDownLatch finishedInputs = new CountDownLatch(numInputs);
+        Runnable worker = () -> {
+            int i;
+            while ((i = nextInput.getAndIncrement()) < numInputs) {
+                I input = inputs.get(i);
+                try {
+                    results[i] = task.run(input);
+                } catch (Exception e) {
+                    failedTasks.incrementAndGet();
+                    results[i] = onError.apply(input, e);
+                } finally {
+                    executedTasks.incrementAndGet();
+                    finishedInputs.countDown();
+                }
+            }
+        };
+
+        int numWorkers = Math.min(maxParallelism, numInputs) - 1;
+        List<Future<?>> futures = new ArrayList<>(Math.max(numWorkers, 0));
+        for (int i = 0; i < numWorkers; i++) {
+            try {
+                futures.add(threadPoolExecutor.submit(worker));
+            } catch (RejectedExecutionException e) {
+                // Pool busy, the calling thread runs the remaining inputs
+                rejectedWorkers.incrementAndGet();
+                break;
+            }
+        }
+        worker.run();
+
+        // Workers that have not started yet would find nothing left to do
+        for (Future<?> future : futures) {
+            threadPoolExecutor.remove((Runnable) future);
+        }
+        try {
+            // Workers still running are finishing their last input
+            finishedInputs.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the queries to finish", e);
+        }
+
+        List<R> resultList = new ArrayList<>(numInputs);
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            R typedResult = (R) result;
+            resultList.add(typedResult);
+        }
+        return resultList;
+    }
+
+    public ObjectMap getStats() {
+        return new ObjectMap()
+                .append("poolSize", threadPoolExecutor.getPoolSize())
+                .append("maxPoolSize", threadPoolExecutor.getMaximumPoolSize())
+                .append("activeThreads", threadPoolExecutor.getActiveCount())
+                .append("queuedTasks", threadPoolExecutor.getQueue().size())
+                .append("maxParallelism", maxParallelism)
+                .append("executedQueries", executedTasks.get())
+                .append("failedQueries", failedTasks.get())
+                .append("rejectedWorkers", rejectedWorkers.get());
+    }
+}
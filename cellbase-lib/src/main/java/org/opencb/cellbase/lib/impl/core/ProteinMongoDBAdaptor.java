@@ -16,7 +16,6 @@
 
 package org.opencb.cellbase.lib.impl.core;
 
-import com.mongodb.BasicDBList;
 import com.mongodb.MongoClient;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Projections;
@@ -34,6 +33,7 @@ import org.opencb.cellbase.core.api.TranscriptQuery;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.iterator.CellBaseMongoDBIterator;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
+import org.opencb.commons.datastore.core.DataResult;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryParam;
@@ -49,6 +49,10 @@ public class ProteinMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
     private MongoDBCollection proteinSubstitutionMongoDBCollection;
 
     private static final int NUM_PROTEIN_SUBSTITUTION_SCORE_METHODS = 2;
+    // Number of transcripts whose decoded SIFT/PolyPhen matrices are kept in memory, a few hundred KB each
+    private static final int SUBSTITUTION_SCORE_CACHE_SIZE = 250;
+
+    private final ChunkCache<SubstitutionScoreMatrix> substitutionScoreCache = new ChunkCache<>(SUBSTITUTION_SCORE_CACHE_SIZE);
 
     private static Map<String, String> aaShortNameMap = new HashMap<>();
 
@@ -208,69 +212,177 @@ public class ProteinMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
 
     public CellBaseDataResult<ProteinVariantAnnotation> getVariantAnnotation(String ensemblTranscriptId, int position, String aaReference,
                                                                       String aaAlternate, QueryOptions options) {
-        CellBaseDataResult<ProteinVariantAnnotation> cellBaseDataResult = new CellBaseDataResult<>();
-        cellBaseDataResult.setId(ensemblTranscriptId + "/" + position + "/" + aaAlternate);
+        return getVariantAnnotation(Collections.singletonList(ensemblTranscriptId), Collections.singletonList(position),
+                Collections.singletonList(aaReference), Collections.singletonList(aaAlternate), options).get(0);
+    }
+
+    /**
+     * Annotates a batch of amino acid changes. SIFT and PolyPhen matrices are fetched once per transcript and kept
+     * decoded in a bounded cache, UniProt entries are fetched once per accession and their features are matched in
+     * memory, instead of running one query and one aggregation per amino acid change.
+     *
+     * @param ensemblTranscriptIds Ensembl transcript ids
+     * @param positions protein positions
+     * @param aaReferences reference amino acids
+     * @param aaAlternates alternate amino acids
+     * @param options query options
+     * @return one result per amino acid change, in the same order
+     */
+    public List<CellBaseDataResult<ProteinVariantAnnotation>> getVariantAnnotation(List<String> ensemblTranscriptIds,
+                                                                                 List<Integer> positions, List<String> aaReferences,
+                                                                                 List<String> aaAlternates, QueryOptions options) {
         long dbTimeStart = System.currentTimeMillis();
 
-        ProteinVariantAnnotation proteinVariantAnnotation = new ProteinVariantAnnotation();
-        proteinVariantAnnotation.setPosition(position);
-        proteinVariantAnnotation.setReference(aaReference);
-        proteinVariantAnnotation.setAlternate(aaAlternate);
-//        Query query = new Query("transcript", ensemblTranscriptId).append("position", position).append("aa", aaAlternate);
-        // Stop_gain/lost variants do not have SIFT/POLYPHEN scores
-        if (!aaAlternate.equals("STOP") && !aaReference.equals("STOP")) {
-            TranscriptQuery query = new TranscriptQuery();
-            query.setTranscriptsId(Collections.singletonList(ensemblTranscriptId));
-            proteinVariantAnnotation.setSubstitutionScores(getSubstitutionScores(query, position, aaAlternate).getResults());
+        Set<String> scoreTranscriptIds = new HashSet<>();
+        Set<String> featureTranscriptIds = new HashSet<>();
+        for (int i = 0; i < ensemblTranscriptIds.size(); i++) {
+            String transcriptId = ensemblTranscriptIds.get(i);
+            if (transcriptId != null) {
+                // Stop_gain/lost variants do not have SIFT/POLYPHEN scores
+                if (!"STOP".equals(aaAlternates.get(i)) && !"STOP".equals(aaReferences.get(i))) {
+                    scoreTranscriptIds.add(transcriptId.split("\\.")[0]);
+                }
+                if (aaShortNameMap.containsKey(aaAlternates.get(i))) {
+                    featureTranscriptIds.add(transcriptId);
+                }
+            }
+        }
+        Map<String, SubstitutionScoreMatrix> substitutionScoreMatrices = getSubstitutionScoreMatrices(scoreTranscriptIds);
+        Map<String, List<Document>> proteinsByTranscript = getProteinsByTranscript(featureTranscriptIds);
+        int time = Long.valueOf(System.currentTimeMillis() - dbTimeStart).intValue();
+
+        List<CellBaseDataResult<ProteinVariantAnnotation>> cellBaseDataResults = new ArrayList<>(ensemblTranscriptIds.size());
+        for (int i = 0; i < ensemblTranscriptIds.size(); i++) {
+            String transcriptId = ensemblTranscriptIds.get(i);
+            int position = positions.get(i);
+            String aaReference = aaReferences.get(i);
+            String aaAlternate = aaAlternates.get(i);
+
+            ProteinVariantAnnotation proteinVariantAnnotation = new ProteinVariantAnnotation();
+            proteinVariantAnnotation.setPosition(position);
+            proteinVariantAnnotation.setReference(aaReference);
+            proteinVariantAnnotation.setAlternate(aaAlternate);
+            if (!"STOP".equals(aaAlternate) && !"STOP".equals(aaReference)) {
+                SubstitutionScoreMatrix substitutionScoreMatrix = transcriptId != null
+                        ? substitutionScoreMatrices.get(transcriptId.split("\\.")[0])
+                        : null;
+                proteinVariantAnnotation.setSubstitutionScores(substitutionScoreMatrix != null
+                        ? substitutionScoreMatrix.getScores(position, aaAlternate)
+                        : new ArrayList<>(NUM_PROTEIN_SUBSTITUTION_SCORE_METHODS));
+            }
+
+            String shortAlternativeAa = aaShortNameMap.get(aaAlternate);
+            if (shortAlternativeAa != null && proteinsByTranscript.containsKey(transcriptId)) {
+                // Same as the former aggregation, the first UniProt entry with features at this position is used
+                for (Document proteinDocument : proteinsByTranscript.get(transcriptId)) {
+                    List<Document> featureList = getPositionFeatures(proteinDocument, position, shortAlternativeAa);
+                    if (!featureList.isEmpty()) {
+                        processProteinVariantData(proteinVariantAnnotation, shortAlternativeAa, proteinDocument, featureList);
+                        break;
+                    }
+                }
+            }
+
+            CellBaseDataResult<ProteinVariantAnnotation> cellBaseDataResult = new CellBaseDataResult<>();
+            cellBaseDataResult.setId(transcriptId + "/" + position + "/" + aaAlternate);
+            cellBaseDataResult.setTime(time);
+            cellBaseDataResult.setNumResults(1);
+            cellBaseDataResult.setResults(Collections.singletonList(proteinVariantAnnotation));
+            cellBaseDataResults.add(cellBaseDataResult);
+        }
+        return cellBaseDataResults;
+    }
+
+    private Map<String, SubstitutionScoreMatrix> getSubstitutionScoreMatrices(Set<String> transcriptIds) {
+        Map<String, SubstitutionScoreMatrix> substitutionScoreMatrices = substitutionScoreCache.getAll(transcriptIds);
+        List<String> missingTranscriptIds = new ArrayList<>();
+        for (String transcriptId : transcriptIds) {
+            if (!substitutionScoreMatrices.containsKey(transcriptId)) {
+                missingTranscriptIds.add(transcriptId);
+            }
+        }
+
+        if (!missingTranscriptIds.isEmpty()) {
+            Map<String, SubstitutionScoreMatrix> fetchedMatrices = new HashMap<>();
+            DataResult<Document> dataResult = proteinSubstitutionMongoDBCollection.find(Filters.in("transcriptId", missingTranscriptIds),
+                    Projections.include("transcriptId", "aaPositions"), QueryOptions.empty());
+            for (Document document : dataResult.getResults()) {
+                fetchedMatrices.putIfAbsent(document.getString("transcriptId"),
+                        new SubstitutionScoreMatrix((Document) document.get("aaPositions")));
+            }
+            // Transcripts without scores are cached too, so they are not queried again
+            for (String transcriptId : missingTranscriptIds) {
+                fetchedMatrices.putIfAbsent(transcriptId, SubstitutionScoreMatrix.EMPTY);
+            }
+            substitutionScoreCache.putAll(fetchedMatrices);
+            substitutionScoreMatrices.putAll(fetchedMatrices);
+        }
+        return substitutionScoreMatrices;
+    }
+
+    private Map<String, List<Document>> getProteinsByTranscript(Set<String> transcriptIds) {
+        Map<String, List<Document>> proteinsByTranscript = new HashMap<>();
+        if (transcriptIds.isEmpty()) {
+            return proteinsByTranscript;
+        }
+
+        // Each UniProt entry is fetched once even if several transcripts of the batch reference it
+        DataResult<Document> dataResult = mongoDBCollection.find(Filters.in("dbReference.id", transcriptIds),
+                Projections.include("accession", "keyword", "feature", "dbReference.id"), QueryOptions.empty());
+        for (Document proteinDocument : dataResult.getResults()) {
+            List<Document> dbReferenceList = (List<Document>) proteinDocument.get("dbReference");
+            if (dbReferenceList != null) {
+                for (Document dbReference : dbReferenceList) {
+                    Object id = dbReference.get("id");
+                    if (id != null && transcriptIds.contains(id)) {
+                        List<Document> proteinList = proteinsByTranscript.computeIfAbsent((String) id, k -> new ArrayList<>());
+                        if (proteinList.isEmpty() || proteinList.get(proteinList.size() - 1) != proteinDocument) {
+                            proteinList.add(proteinDocument);
+                        }
+                    }
+                }
+            }
         }
+        return proteinsByTranscript;
+    }
 
-        CellBaseDataResult proteinVariantData = null;
-        String shortAlternativeAa = aaShortNameMap.get(aaAlternate);
-        if (shortAlternativeAa != null) {
-            List<Bson> pipeline = new ArrayList<>();
-            pipeline.add(new Document("$match", new Document("dbReference.id", ensemblTranscriptId)));
-
-            Document projection = new Document();
-            projection.put("accession", 1);
-            projection.put("keyword", 1);
-            projection.put("feature", 1);
-            pipeline.add(new Document("$project", projection));
-
-            pipeline.add(new Document("$unwind", "$feature"));
-
-            BasicDBList andDBList2 = new BasicDBList();
-            andDBList2.add(new Document("feature.location.position.position", position));
-            andDBList2.add(new Document("feature.variation", shortAlternativeAa));
-            Document firstOr = new Document("$and", andDBList2);
-            BasicDBList andDBList3 = new BasicDBList();
-            andDBList3.add(new Document("feature.location.end.position", new Document("$gte", position)));
-            andDBList3.add(new Document("feature.location.begin.position", new Document("$lte", position)));
-            Document secondOr = new Document();
-            secondOr.put("$and", andDBList3);
-            BasicDBList orList = new BasicDBList();
-            orList.add(firstOr);
-            orList.add(secondOr);
-            pipeline.add(new Document("$match", new Document("$or", orList)));
-
-            Document groupFields = new Document();
-            groupFields.put("_id", "$accession");
-            groupFields.put("keyword", new Document("$addToSet", "$keyword"));
-            groupFields.put("feature", new Document("$addToSet", "$feature"));
-            pipeline.add(new Document("$group", groupFields));
-
-            proteinVariantData = executeAggregation2(ensemblTranscriptId + "_" + String.valueOf(position) + "_"
-                    + aaAlternate, pipeline, new QueryOptions());
-            if (proteinVariantData.getNumResults() > 0) {
-                proteinVariantAnnotation = processProteinVariantData(proteinVariantAnnotation, shortAlternativeAa,
-                        (Document) proteinVariantData.getResults().get(0));
+    /*
+     * Features reporting this very change or overlapping the position, i.e. the ones matched by the former $match
+     * stage: (location.position == position AND variation == alternate) OR (location.begin <= position <= location.end)
+     */
+    private List<Document> getPositionFeatures(Document proteinDocument, int position, String shortAlternativeAa) {
+        List<Document> featureList = new ArrayList<>();
+        List<Document> proteinFeatureList = (List<Document>) proteinDocument.get("feature");
+        if (proteinFeatureList != null) {
+            for (Document featureDocument : proteinFeatureList) {
+                Document locationDocument = (Document) featureDocument.get("location");
+                if (locationDocument == null) {
+                    continue;
+                }
+                Integer featurePosition = getLocationPosition(locationDocument, "position");
+                Integer begin = getLocationPosition(locationDocument, "begin");
+                Integer end = getLocationPosition(locationDocument, "end");
+
+                Object variation = featureDocument.get("variation");
+                boolean variationFound = variation instanceof List
+                        ? ((List) variation).contains(shortAlternativeAa)
+                        : shortAlternativeAa.equals(variation);
+                if (((featurePosition != null && featurePosition == position && variationFound)
+                        || (begin != null && end != null && begin <= position && end >= position))
+                        && !featureList.contains(featureDocument)) {
+                    featureList.add(featureDocument);
+                }
             }
         }
+        return featureList;
+    }
 
-        long dbTimeEnd = System.currentTimeMillis();
-        cellBaseDataResult.setTime(Long.valueOf(dbTimeEnd - dbTimeStart).intValue());
-        cellBaseDataResult.setNumResults(1);
-        cellBaseDataResult.setResults(Collections.singletonList(proteinVariantAnnotation));
-        return cellBaseDataResult;
+    private Integer getLocationPosition(Document locationDocument, String key) {
+        Object positionDocument = locationDocument.get(key);
+        if (positionDocument instanceof Document && ((Document) positionDocument).get("position") instanceof Number) {
+            return ((Number) ((Document) positionDocument).get("position")).intValue();
+        }
+        return null;
     }
 
     @Override
@@ -409,20 +521,21 @@ public class ProteinMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
 //    }
 
     private ProteinVariantAnnotation processProteinVariantData(ProteinVariantAnnotation proteinVariantAnnotation,
-                                                               String shortAlternativeAa, Document proteinVariantData) {
+                                                               String shortAlternativeAa, Document proteinDocument,
+                                                               List<Document> featureList) {
 
-        proteinVariantAnnotation.setUniprotAccession(proteinVariantData.get("_id", ArrayList.class).get(0).toString());
+        proteinVariantAnnotation.setUniprotAccession(proteinDocument.get("accession", List.class).get(0).toString());
 
         proteinVariantAnnotation.setKeywords(new ArrayList<>());
-        ArrayList keywordList = (ArrayList) proteinVariantData.get("keyword", ArrayList.class).get(0);
-        for (Object keywordObject : keywordList) {
-            proteinVariantAnnotation.getKeywords().add((String) ((Document) keywordObject).get("value"));
+        List keywordList = proteinDocument.get("keyword", List.class);
+        if (keywordList != null) {
+            for (Object keywordObject : keywordList) {
+                proteinVariantAnnotation.getKeywords().add((String) ((Document) keywordObject).get("value"));
+            }
         }
 
         proteinVariantAnnotation.setFeatures(new ArrayList<>());
-        ArrayList featureList = proteinVariantData.get("feature", ArrayList.class);
-        for (Object featureObject : featureList) {
-            Document featureDocument = (Document) featureObject;
+        for (Document featureDocument : featureList) {
             String type = (String) featureDocument.get("type");
 
 
@@ -464,5 +577,75 @@ public class ProteinMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
         return proteinVariantAnnotation;
     }
 
+    /**
+     * SIFT and PolyPhen scores of all the amino acid substitutions of a transcript, decoded into flat arrays indexed by
+     * position and amino acid. Much smaller and faster to look up than the nested documents stored in the database.
+     */
+    private static final class SubstitutionScoreMatrix {
+
+        private static final SubstitutionScoreMatrix EMPTY = new SubstitutionScoreMatrix(null);
+        private static final String AMINO_ACIDS = "ARNDCQEGHILKMFPSTWYV";
+
+        private final int maxPosition;
+        // Missing scores are NaN
+        private final double[] siftScores;
+        private final double[] polyphenScores;
+        private final String[] siftDescriptions;
+        private final String[] polyphenDescriptions;
+
+        SubstitutionScoreMatrix(Document aaPositionsDocument) {
+            int maxPosition = 0;
+            if (aaPositionsDocument != null) {
+                for (String position : aaPositionsDocument.keySet()) {
+                    maxPosition = Math.max(maxPosition, Integer.parseInt(position));
+                }
+            }
+            this.maxPosition = maxPosition;
+            int size = aaPositionsDocument != null ? (maxPosition + 1) * AMINO_ACIDS.length() : 0;
+            this.siftScores = new double[size];
+            this.polyphenScores = new double[size];
+            this.siftDescriptions = new String[size];
+            this.polyphenDescriptions = new String[size];
+            Arrays.fill(siftScores, Double.NaN);
+            Arrays.fill(polyphenScores, Double.NaN);
+
+            if (aaPositionsDocument != null) {
+                for (Map.Entry<String, Object> positionEntry : aaPositionsDocument.entrySet()) {
+                    int position = Integer.parseInt(positionEntry.getKey());
+                    Document positionDocument = (Document) positionEntry.getValue();
+                    for (Map.Entry<String, Object> aaEntry : positionDocument.entrySet()) {
+                        int aaIndex = AMINO_ACIDS.indexOf(aaEntry.getKey());
+                        if (aaIndex < 0 || aaEntry.getKey().length() != 1) {
+                            continue;
+                        }
+                        int index = position * AMINO_ACIDS.length() + aaIndex;
+                        Document aaDocument = (Document) aaEntry.getValue();
+                        if (aaDocument.get("ss") != null) {
+                            siftScores[index] = Double.parseDouble("" + aaDocument.get("ss"));
+                            siftDescriptions[index] = VariantAnnotationUtils.SIFT_DESCRIPTIONS.get(aaDocument.get("se"));
+                        }
+                        if (aaDocument.get("ps") != null) {
+                            polyphenScores[index] = Double.parseDouble("" + aaDocument.get("ps"));
+                            polyphenDescriptions[index] = VariantAnnotationUtils.POLYPHEN_DESCRIPTIONS.get(aaDocument.get("pe"));
+                        }
+                    }
+                }
+            }
+        }
 
+        List<Score> getScores(int position, String aa) {
+            List<Score> scoreList = new ArrayList<>(NUM_PROTEIN_SUBSTITUTION_SCORE_METHODS);
+            String aaShortName = StringUtils.isNotEmpty(aa) ? aaShortNameMap.get(aa.toUpperCase()) : null;
+            if (aaShortName != null && position >= 0 && position <= maxPosition && siftScores.length > 0) {
+                int index = position * AMINO_ACIDS.length() + AMINO_ACIDS.indexOf(aaShortName);
+                if (!Double.isNaN(siftScores[index])) {
+                    scoreList.add(new Score(siftScores[index], "sift", siftDescriptions[index]));
+                }
+                if (!Double.isNaN(polyphenScores[index])) {
+                    scoreList.add(new Score(polyphenScores[index], "polyphen", polyphenDescriptions[index]));
+                }
+            }
+            return scoreList;
+        }
+    }
 }
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms of the queries run by the DB adaptors of the JVM, per collection, e.g. 'gene' or 'variation'.
+ * Collections are named after the adaptor, see CellBaseCoreDBAdaptor.query. Used to size the MongoDB connection pools.
+ */
+public final class QueryLatencyMetrics {
+
+    // Upper bounds of the histogram buckets, the last bucket has no upper bound
+    private static final long[] BUCKET_LIMITS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+    private static final String ADAPTOR_SUFFIX = "MongoDBAdaptor";
+
+    private static final QueryLatencyMetrics INSTANCE = new QueryLatencyMetrics();
+
+    private final Map<String, CollectionMetrics> collections = new ConcurrentHashMap<>();
+    private final ClassValue<String> collectionNames = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> adaptorClass) {
+            String name = adaptorClass.getSimpleName();
+            if (name.endsWith(ADAPTOR_SUFFIX) && name.length() > ADAPTOR_SUFFIX.length()) {
+                name = name.substring(0, name.length() - ADAPTOR_SUFFIX.length());
+            }
+            return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+        }
+    };
+
+    QueryLatencyMetrics() {
+    }
+
+    public static QueryLatencyMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private static final class CollectionMetrics {
+        private final LongAdder[] buckets = new LongAdder[BUCKET_LIMITS_MS.length + 1];
+        private final LongAdder queries = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        private CollectionMetrics() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Records a query.
+     *
+     * @param adaptorClass class of the adaptor that ran the query, e.g. GeneMongoDBAdaptor for the 'gene' collection
+     * @param millis query time, including the time to read the results
+     */
+    public void record(Class<?> adaptorClass, long millis) {
+        CollectionMetrics metrics = collections.computeIfAbsent(collectionNames.get(adaptorClass), k -> new CollectionMetrics());
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_MS.length && millis > BUCKET_LIMITS_MS[bucket]) {
+            bucket++;
+        }
+        metrics.buckets[bucket].increment();
+        metrics.queries.increment();
+        metrics.totalMillis.add(millis);
+        metrics.maxMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    public ObjectMap getStats() {
+        ObjectMap stats = new ObjectMap();
+        for (Map.Entry<String, CollectionMetrics> entry : new TreeMap<>(collections).entrySet()) {
+            CollectionMetrics metrics = entry.getValue();
+            long queries = metrics.queries.sum();
+            ObjectMap histogram = new ObjectMap();
+            for (int i = 0; i < metrics.buckets.length; i++) {
+                String bucket = i < BUCKET_LIMITS_MS.length
+                        ? "<=" + BUCKET_LIMITS_MS[i] + "ms"
+                        : ">" + BUCKET_LIMITS_MS[BUCKET_LIMITS_MS.length - 1] + "ms";
+                histogram.put(bucket, metrics.buckets[i].sum());
+            }
+            stats.put(entry.getKey(), new ObjectMap()
+                    .append("queries", queries)
+                    .append("avgTimeMs", queries > 0 ? (double) metrics.totalMillis.sum() / queries : 0)
+                    .append("maxTimeMs", metrics.maxMillis.get())
+                    .append("histogram", histogram));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.opencb.biodata.models.core.RegulatoryFeature;
+import org.opencb.cellbase.core.ParamConstants;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Compact in-memory interval index over the coordinates and types of a set of regulatory features, used by variant
+ * annotation to know whether a variant overlaps any regulatory region and whether it overlaps a transcription factor
+ * binding site without querying the database for every variant.
+ *
+ * Features are stored per chromosome in primitive arrays sorted by start, along with a running maximum of their end
+ * coordinates, so that an overlap lookup is a binary search followed by a short backwards sweep. Each feature takes
+ * about 13 bytes, so that all the regulatory features of a genome can be kept in memory if needed.
+ *
+ * An index built from the features of some regions only answers lookups within those regions, a complete index holds
+ * all the features of the genome and answers any lookup.
+ */
+public class RegulatoryOverlapIndex {
+
+    private static final byte OTHER = 0;
+    private static final byte TF_BINDING_SITE = 1;
+    private static final byte TF_BINDING_SITE_MOTIF = 2;
+
+    private final Map<String, ChromosomeIndex> chromosomeIndexMap;
+    private final int size;
+    private final boolean complete;
+
+    public RegulatoryOverlapIndex(Iterator<RegulatoryFeature> iterator) {
+        this(iterator, false);
+    }
+
+    public RegulatoryOverlapIndex(Iterator<RegulatoryFeature> iterator, boolean complete) {
+        Map<String, ChromosomeIndexBuilder> builders = new HashMap<>();
+        int size = 0;
+        while (iterator.hasNext()) {
+            RegulatoryFeature regulatoryFeature = iterator.next();
+            if (regulatoryFeature.getChromosome() != null) {
+                builders.computeIfAbsent(regulatoryFeature.getChromosome(), k -> new ChromosomeIndexBuilder())
+                        .add(regulatoryFeature.getStart(), regulatoryFeature.getEnd(), getType(regulatoryFeature.getFeatureType()));
+                size++;
+            }
+        }
+
+        this.chromosomeIndexMap = new HashMap<>();
+        for (Map.Entry<String, ChromosomeIndexBuilder> entry : builders.entrySet()) {
+            chromosomeIndexMap.put(entry.getKey(), entry.getValue().build());
+        }
+        this.size = size;
+        this.complete = complete;
+    }
+
+    /**
+     * Checks the regulatory features overlapping the region, i.e. those with start &lt;= end and end &gt;= start.
+     *
+     * @param chromosome chromosome
+     * @param start region start
+     * @param end region end
+     * @param includeMotifs whether TF_binding_site_motif features count as transcription factor binding sites
+     * @return two flags: 0, the region overlaps any regulatory feature; 1, the region overlaps a transcription factor
+     * binding site
+     */
+    public boolean[] getOverlaps(String chromosome, int start, int end, boolean includeMotifs) {
+        // 0: overlaps any regulatory region type
+        // 1: overlaps transcription factor binding site
+        boolean[] overlapsRegulatoryRegion = {false, false};
+
+        ChromosomeIndex chromosomeIndex = chromosomeIndexMap.get(chromosome);
+        if (chromosomeIndex == null) {
+            return overlapsRegulatoryRegion;
+        }
+
+        // Last feature starting at or before the region end
+        int i = upperBound(chromosomeIndex.starts, end) - 1;
+        for (; i >= 0 && chromosomeIndex.maxEnds[i] >= start; i--) {
+            if (chromosomeIndex.ends[i] >= start) {
+                overlapsRegulatoryRegion[0] = true;
+                byte type = chromosomeIndex.types[i];
+                if (type == TF_BINDING_SITE || (includeMotifs && type == TF_BINDING_SITE_MOTIF)) {
+                    overlapsRegulatoryRegion[1] = true;
+                    break;
+                }
+            }
+        }
+        return overlapsRegulatoryRegion;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private static byte getType(String featureType) {
+        if (ParamConstants.FeatureType.TF_binding_site.name().equals(featureType)) {
+            return TF_BINDING_SITE;
+        } else if (ParamConstants.FeatureType.TF_binding_site_motif.name().equals(featureType)) {
+            return TF_BINDING_SITE_MOTIF;
+        } else {
+            return OTHER;
+        }
+    }
+
+    private static int upperBound(int[] starts, int position) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class ChromosomeIndex {
+
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] maxEnds;
+        private final byte[] types;
+
+        private ChromosomeIndex(int[] starts, int[] ends, int[] maxEnds, byte[] types) {
+            this.starts = starts;
+            this.ends = ends;
+            this.maxEnds = maxEnds;
+            this.types = types;
+        }
+    }
+
+    private static final class ChromosomeIndexBuilder {
+
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private byte[] types = new byte[64];
+        private int size;
+
+        private void add(int start, int end, byte type) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                types = Arrays.copyOf(types, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            types[size] = type;
+            size++;
+        }
+
+        private ChromosomeIndex build() {
+            // Sort by start keeping track of the original positions: start in the high 32 bits, position in the low ones
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) starts[i] << 32) | i;
+            }
+            Arrays.sort(order);
+
+            int[] sortedStarts = new int[size];
+            int[] sortedEnds = new int[size];
+            int[] maxEnds = new int[size];
+            byte[] sortedTypes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                int position = (int) order[i];
+                sortedStarts[i] = starts[position];
+                sortedEnds[i] = ends[position];
+                sortedTypes[i] = types[position];
+                maxEnds[i] = i > 0 ? Math.max(maxEnds[i - 1], sortedEnds[i]) : sortedEnds[i];
+            }
+            return new ChromosomeIndex(sortedStarts, sortedEnds, maxEnds, sortedTypes);
+        }
+    }
+}
@@ -18,7 +18,6 @@ package org.opencb.cellbase.lib.impl.core;
 
 import com.mongodb.BulkWriteException;
 import com.mongodb.MongoClient;
-import com.mongodb.QueryBuilder;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.model.Filters;
 import org.apache.commons.lang3.StringUtils;
@@ -28,6 +27,7 @@ import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.Score;
 import org.opencb.biodata.models.variant.avro.StructuralVariantType;
+import org.opencb.biodata.models.variant.avro.StructuralVariation;
 import org.opencb.biodata.models.variant.avro.VariantType;
 import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.lib.iterator.CellBaseIterator;
@@ -60,16 +60,26 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
     private static final float DECIMAL_RESOLUTION = 100f;
     private static final String ENSEMBL_GENE_ID_PATTERN = "ENSG00";
     private static final String ENSEMBL_TRANSCRIPT_ID_PATTERN = "ENST00";
+    private static final int VARIANT_BATCH_QUERY_SIZE = 1000;
+    private static final List<String> VARIANT_MATCHING_FIELDS = Arrays.asList("chromosome", "start", "end", "reference",
+            "alternate", "type", "sv");
+    private static final int FUNCTIONAL_SCORE_BATCH_QUERY_SIZE = 500;
+    // ~16KB per chunk: 1000 positions for both cadd_raw and cadd_scaled
+    private static final int FUNCTIONAL_SCORE_CHUNK_CACHE_SIZE = 1024;
+    private static final List<String> FUNCTIONAL_SCORE_FIELDS = Arrays.asList("_chunkIds", "source", "start", "end",
+            "values");
     private static PopulationFrequencyPhasedQueryManager populationFrequencyPhasedQueryManager
             = new PopulationFrequencyPhasedQueryManager();
 
 
     private MongoDBCollection caddDBCollection;
+    private ChunkCache<List<FunctionalScoreChunk>> functionalScoreChunkCache;
 
     public VariantMongoDBAdaptor(String species, String assembly, MongoDataStore mongoDataStore) {
         super(species, assembly, mongoDataStore);
         mongoDBCollection = mongoDataStore.getCollection("variation");
         caddDBCollection = mongoDataStore.getCollection("variation_functional_score");
+        functionalScoreChunkCache = new ChunkCache<>(FUNCTIONAL_SCORE_CHUNK_CACHE_SIZE);
 
         logger.debug("VariationMongoDBAdaptor: in 'constructor'");
     }
@@ -527,100 +537,142 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
     }
 
     public CellBaseDataResult<Score> getFunctionalScoreVariant(Variant variant, QueryOptions queryOptions) {
-        String chromosome = variant.getChromosome();
-        int position = variant.getStart();
-        String reference = variant.getReference();
-        String alternate = variant.getAlternate();
-
-        String chunkId = getChunkIdPrefix(chromosome, position, MongoDBCollectionConfiguration.VARIATION_FUNCTIONAL_SCORE_CHUNK_SIZE);
-        QueryBuilder builder = QueryBuilder.start("_chunkIds").is(chunkId);
-//                .and("chromosome").is(chromosome)
-//                .and("start").is(position);
-//        System.out.println(chunkId);
-        CellBaseDataResult result = executeQuery(chromosome + "_" + position + "_" + reference + "_" + alternate,
-                new Document(builder.get().toMap()), queryOptions, caddDBCollection);
-
-//        System.out.println("result = " + result);
-
-        List<Score> scores = new ArrayList<>();
-        for (Object object : result.getResults()) {
-//            System.out.println("object = " + object);
-            Document dbObject = (Document) object;
-            int chunkStart = dbObject.getInteger("start");
-            int chunkEnd = dbObject.getInteger("end");
-            // CADD positions are not continuous through the whole chromosome. Several documents may be associated with
-            // the same chunk id: we have to be sure that current document contains queried position. Only two documents
-            // will contain queried position - one for raw and one for scaled values
-            if (position >= chunkStart && position <= chunkEnd) {
-                int offset = (position - chunkStart);
-                ArrayList basicDBList = dbObject.get("values", ArrayList.class);
-
-//                long l1 = 0L; // TODO: delete
-//                try { // TODO: delete
-                long l1 = Long.parseLong(basicDBList.get(offset).toString());
-//                                 l1 = (Long) basicDBList.get(offset);
-//                } catch (Exception e) {  // TODO: delete
-//                    logger.error("problematic variant: {}", variant.toString());
-//                    throw e;
-//                }
-
-                if (dbObject.getString("source").equalsIgnoreCase("cadd_raw")) {
-                    float value = 0f;
-                    switch (alternate.toLowerCase()) {
-                        case "a":
-//                            value = ((short) (l1 >> 48) - 10000) / DECIMAL_RESOLUTION;
-                            value = (((short) (l1 >> 48)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        case "c":
-                            value = (((short) (l1 >> 32)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        case "g":
-                            value = (((short) (l1 >> 16)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        case "t":
-                            value = (((short) (l1 >> 0)) / DECIMAL_RESOLUTION) - 10;
-                            break;
-                        default:
-                            break;
-                    }
-                    scores.add(Score.newBuilder()
-                            .setScore(value)
-                            .setSource(dbObject.getString("source"))
-                            .setDescription(null)
-                            //                        .setDescription("")
-                            .build());
+        return getFunctionalScoreVariant(Collections.singletonList(variant), queryOptions).get(0);
+    }
+
+    /**
+     * Fetches CADD scores for a batch of variants. Each distinct chunk is read once per batch, or taken from the chunk
+     * cache, and all the positions requested within it are decoded from the same values array.
+     * @param variants list of Variant objects to query
+     * @param queryOptions query options
+     * @return list of CellBaseDataResult of Score objects, one per input variant and in the same order
+     */
+    public List<CellBaseDataResult<Score>> getFunctionalScoreVariant(List<Variant> variants, QueryOptions queryOptions) {
+        int chunkSize = MongoDBCollectionConfiguration.VARIATION_FUNCTIONAL_SCORE_CHUNK_SIZE;
+        Set<String> chunkIds = new LinkedHashSet<>();
+        for (Variant variant : variants) {
+            chunkIds.add(getChunkIdPrefix(variant.getChromosome(), variant.getStart(), chunkSize));
+        }
+
+        long dbTimeStart = System.currentTimeMillis();
+        Map<String, List<FunctionalScoreChunk>> chunkMap = functionalScoreChunkCache.getAll(chunkIds);
+        List<String> missingChunkIds = new ArrayList<>(chunkIds.size() - chunkMap.size());
+        for (String chunkId : chunkIds) {
+            if (!chunkMap.containsKey(chunkId)) {
+                missingChunkIds.add(chunkId);
+            }
+        }
+        for (int i = 0; i < missingChunkIds.size(); i += FUNCTIONAL_SCORE_BATCH_QUERY_SIZE) {
+            Map<String, List<FunctionalScoreChunk>> fetchedChunkMap = getFunctionalScoreChunks(missingChunkIds.subList(i,
+                    Math.min(i + FUNCTIONAL_SCORE_BATCH_QUERY_SIZE, missingChunkIds.size())), queryOptions);
+            functionalScoreChunkCache.putAll(fetchedChunkMap);
+            chunkMap.putAll(fetchedChunkMap);
+        }
+        int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+        List<CellBaseDataResult<Score>> results = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            String chunkId = getChunkIdPrefix(variant.getChromosome(), variant.getStart(), chunkSize);
+            List<Score> scores = getFunctionalScores(chunkMap.get(chunkId), variant.getStart(), variant.getAlternate());
+            results.add(new CellBaseDataResult<>(variant.getChromosome() + "_" + variant.getStart() + "_"
+                    + variant.getReference() + "_" + variant.getAlternate(), dbTime, new ArrayList<>(), scores.size(),
+                    scores, scores.size()));
+        }
+        return results;
+    }
+
+    private Map<String, List<FunctionalScoreChunk>> getFunctionalScoreChunks(List<String> chunkIds, QueryOptions queryOptions) {
+        Map<String, List<FunctionalScoreChunk>> chunkMap = new HashMap<>();
+        // Chunk ids without documents are cached too, CADD positions are not continuous through the whole chromosome
+        for (String chunkId : chunkIds) {
+            chunkMap.put(chunkId, new ArrayList<>(2));
+        }
+
+        Document query = new Document("_chunkIds", new Document("$in", chunkIds));
+        QueryOptions options = new QueryOptions(queryOptions);
+        options.remove(QueryOptions.LIMIT);
+        options.put(QueryOptions.INCLUDE, FUNCTIONAL_SCORE_FIELDS);
+        MongoDBIterator<Document> iterator = caddDBCollection.nativeQuery().find(query, options);
+        while (iterator.hasNext()) {
+            Document document = iterator.next();
+            FunctionalScoreChunk chunk = new FunctionalScoreChunk(document);
+            // Several documents may be associated with the same chunk id - one for raw and one for scaled values at least
+            for (Object chunkId : document.get("_chunkIds", List.class)) {
+                List<FunctionalScoreChunk> chunkList = chunkMap.get(chunkId.toString());
+                if (chunkList != null) {
+                    chunkList.add(chunk);
                 }
+            }
+        }
+        return chunkMap;
+    }
 
-                if (dbObject.getString("source").equalsIgnoreCase("cadd_scaled")) {
-                    float value = 0f;
-                    switch (alternate.toLowerCase()) {
-                        case "a":
-                            value = ((short) (l1 >> 48)) / DECIMAL_RESOLUTION;
-                            break;
-                        case "c":
-                            value = ((short) (l1 >> 32)) / DECIMAL_RESOLUTION;
-                            break;
-                        case "g":
-                            value = ((short) (l1 >> 16)) / DECIMAL_RESOLUTION;
-                            break;
-                        case "t":
-                            value = ((short) (l1 >> 0)) / DECIMAL_RESOLUTION;
-                            break;
-                        default:
-                            break;
-                    }
-                    scores.add(Score.newBuilder()
-                            .setScore(value)
-                            .setSource(dbObject.getString("source"))
-                            .setDescription(null)
-                            //                        .setDescription("")
-                            .build());
+    private List<Score> getFunctionalScores(List<FunctionalScoreChunk> chunkList, int position, String alternate) {
+        List<Score> scores = new ArrayList<>(2);
+        if (chunkList == null) {
+            return scores;
+        }
+        for (FunctionalScoreChunk chunk : chunkList) {
+            // We have to be sure that current document contains queried position. Only two documents will contain
+            // queried position - one for raw and one for scaled values
+            if (position >= chunk.start && position <= chunk.end) {
+                long l1 = chunk.values[position - chunk.start];
+                // cadd_raw values are shifted by 10 so that they fit into positive shorts
+                float shift;
+                if (chunk.source.equalsIgnoreCase("cadd_raw")) {
+                    shift = 10;
+                } else if (chunk.source.equalsIgnoreCase("cadd_scaled")) {
+                    shift = 0;
+                } else {
+                    continue;
+                }
+
+                float value = 0f;
+                switch (alternate.toLowerCase()) {
+                    case "a":
+                        value = (((short) (l1 >> 48)) / DECIMAL_RESOLUTION) - shift;
+                        break;
+                    case "c":
+                        value = (((short) (l1 >> 32)) / DECIMAL_RESOLUTION) - shift;
+                        break;
+                    case "g":
+                        value = (((short) (l1 >> 16)) / DECIMAL_RESOLUTION) - shift;
+                        break;
+                    case "t":
+                        value = (((short) (l1 >> 0)) / DECIMAL_RESOLUTION) - shift;
+                        break;
+                    default:
+                        break;
                 }
+                scores.add(Score.newBuilder()
+                        .setScore(value)
+                        .setSource(chunk.source)
+                        .setDescription(null)
+                        .build());
             }
         }
+        return scores;
+    }
 
-        result.setResults(scores);
-        return result;
+    /**
+     * CADD document with its packed values decoded into a long array, see getFunctionalScores for the encoding.
+     */
+    private static class FunctionalScoreChunk {
+        private final String source;
+        private final int start;
+        private final int end;
+        private final long[] values;
+
+        FunctionalScoreChunk(Document document) {
+            this.source = document.getString("source");
+            this.start = document.getInteger("start");
+            this.end = document.getInteger("end");
+            List<?> valueList = document.get("values", List.class);
+            this.values = new long[valueList.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Long.parseLong(valueList.get(i).toString());
+            }
+        }
     }
 
     /**
@@ -632,16 +684,15 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
      * objects occupy in the "variants" query list.
      */
     public List<CellBaseDataResult<Variant>> getPopulationFrequencyByVariant(List<Variant> variants, QueryOptions queryOptions) {
-        List<CellBaseDataResult<Variant>> results = new ArrayList<>(variants.size());
-        for (Variant variant: variants) {
-            results.add(getByVariant(variant, queryOptions));
-        }
+        List<CellBaseDataResult<Variant>> results = queryByVariant(variants, queryOptions);
 
         if (queryOptions.get(ParamConstants.QueryParams.PHASE.key()) != null && queryOptions.getBoolean(
                 ParamConstants.QueryParams.PHASE.key())) {
             results = populationFrequencyPhasedQueryManager.run(variants, results);
 
         }
+        // The phased query manager needs the position of the matched variants
+        removeUnrequestedMatchingFields(results, VARIANT_MATCHING_FIELDS, queryOptions);
         return results;
     }
 
@@ -650,34 +701,8 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
 //        if (VariantType.CNV.equals(variant.getType())) {
 
         // Queries for CNVs,SVs are different from simple short variants queries
-        if (variant.getSv() != null
-                && variant.getSv().getCiStartLeft() != null
-                && variant.getSv().getCiStartRight() != null
-                && variant.getSv().getCiEndLeft() != null
-                && variant.getSv().getCiEndRight() != null) {
-            query = new Query(ParamConstants.QueryParams.CHROMOSOME.key(), variant.getChromosome());
-            // Imprecise queries can just be enabled for structural variants providing CIPOS positions. Imprecise queries
-            // can be disabled by using the imprecise=false query option
-            if (options.get(ParamConstants.QueryParams.IMPRECISE.key()) == null || (Boolean) options.get(
-                    ParamConstants.QueryParams.IMPRECISE.key())) {
-                int ciStartLeft = variant.getSv().getCiStartLeft();
-                int ciStartRight = variant.getSv().getCiStartRight();
-                int ciEndLeft = variant.getSv().getCiEndLeft();
-                int ciEndRight = variant.getSv().getCiEndRight();
-                query.append(ParamConstants.QueryParams.CI_START_LEFT.key(), ciStartLeft)
-                        .append(ParamConstants.QueryParams.CI_START_RIGHT.key(), ciStartRight)
-                        .append(ParamConstants.QueryParams.CI_END_LEFT.key(), ciEndLeft)
-                        .append(ParamConstants.QueryParams.CI_END_RIGHT.key(), ciEndRight);
-                // Exact query for start/end
-            } else {
-                query.append(ParamConstants.QueryParams.START.key(), variant.getStart());
-                query.append(ParamConstants.QueryParams.END.key(), variant.getStart());
-            }
-            // CNVs must always be matched against COPY_NUMBER_GAIN/COPY_NUMBER_LOSS when searching - if provided
-            if (VariantType.CNV.equals(variant.getType()) && variant.getSv().getType() != null) {
-                query.append(ParamConstants.QueryParams.SV_TYPE.key(), variant.getSv().getType().toString());
-            }
-            query.append(ParamConstants.QueryParams.TYPE.key(), variant.getType().toString());
+        if (isStructuralVariantQuery(variant)) {
+            query = getStructuralVariantQuery(variant, isImpreciseQuery(options));
             // simple short variant query; This will be the query run in more than 99% of the cases
         } else {
             query = new Query(ParamConstants.QueryParams.CHROMOSOME.key(), variant.getChromosome())
@@ -688,14 +713,221 @@ public class VariantMongoDBAdaptor extends MongoDBAdaptor implements CellBaseCor
         return get(query, options);
     }
 
-    private List<CellBaseDataResult> getByVariant(List<Variant> variants, QueryOptions options) {
-        List<CellBaseDataResult> results = new ArrayList<>(variants.size());
-        for (Variant variant: variants) {
-            results.add(getByVariant(variant, options));
+    private static boolean isStructuralVariantQuery(Variant variant) {
+        return variant.getSv() != null
+                && variant.getSv().getCiStartLeft() != null
+                && variant.getSv().getCiStartRight() != null
+                && variant.getSv().getCiEndLeft() != null
+                && variant.getSv().getCiEndRight() != null;
+    }
+
+    // Imprecise queries can just be enabled for structural variants providing CIPOS positions. Imprecise queries
+    // can be disabled by using the imprecise=false query option
+    private static boolean isImpreciseQuery(QueryOptions options) {
+        return options.get(ParamConstants.QueryParams.IMPRECISE.key()) == null || (Boolean) options.get(
+                ParamConstants.QueryParams.IMPRECISE.key());
+    }
+
+    private static Query getStructuralVariantQuery(Variant variant, boolean imprecise) {
+        Query query = new Query(ParamConstants.QueryParams.CHROMOSOME.key(), variant.getChromosome());
+        if (imprecise) {
+            int ciStartLeft = variant.getSv().getCiStartLeft();
+            int ciStartRight = variant.getSv().getCiStartRight();
+            int ciEndLeft = variant.getSv().getCiEndLeft();
+            int ciEndRight = variant.getSv().getCiEndRight();
+            query.append(ParamConstants.QueryParams.CI_START_LEFT.key(), ciStartLeft)
+                    .append(ParamConstants.QueryParams.CI_START_RIGHT.key(), ciStartRight)
+                    .append(ParamConstants.QueryParams.CI_END_LEFT.key(), ciEndLeft)
+                    .append(ParamConstants.QueryParams.CI_END_RIGHT.key(), ciEndRight);
+            // Exact query for start/end
+        } else {
+            query.append(ParamConstants.QueryParams.START.key(), variant.getStart());
+            query.append(ParamConstants.QueryParams.END.key(), variant.getStart());
+        }
+        // CNVs must always be matched against COPY_NUMBER_GAIN/COPY_NUMBER_LOSS when searching - if provided
+        if (VariantType.CNV.equals(variant.getType()) && variant.getSv().getType() != null) {
+            query.append(ParamConstants.QueryParams.SV_TYPE.key(), variant.getSv().getType().toString());
+        }
+        query.append(ParamConstants.QueryParams.TYPE.key(), variant.getType().toString());
+        return query;
+    }
+
+    /**
+     * Queries a batch of variants with a few round trips. Short variants are grouped per chromosome in queries on
+     * chromosome + start/reference/alternate, SVs/CNVs providing confidence intervals are queried with one $or of the
+     * filters getByVariant(Variant, QueryOptions) would use for each of them. Returned documents are then assigned to
+     * the input variants they match.
+     * @param variants list of Variant objects to query
+     * @param options query options, e.g. imprecise={true, false}
+     * @return list of CellBaseDataResult of Variant objects, one per input variant and in the same order
+     */
+    List<CellBaseDataResult<Variant>> getByVariant(List<Variant> variants, QueryOptions options) {
+        List<CellBaseDataResult<Variant>> results = queryByVariant(variants, options);
+        removeUnrequestedMatchingFields(results, VARIANT_MATCHING_FIELDS, options);
+        return results;
+    }
+
+    private List<CellBaseDataResult<Variant>> queryByVariant(List<Variant> variants, QueryOptions options) {
+        QueryOptions batchOptions = getBatchQueryOptions(options);
+
+        List<CellBaseDataResult<Variant>> results = new ArrayList<>(variants.size());
+        Map<String, List<Integer>> shortVariantPositions = new LinkedHashMap<>();
+        List<Integer> structuralVariantPositions = new ArrayList<>();
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            results.add(new CellBaseDataResult<>(variant.toString(), 0, new ArrayList<>(), 0, new ArrayList<>(), -1));
+            if (isStructuralVariantQuery(variant)) {
+                structuralVariantPositions.add(i);
+            } else {
+                shortVariantPositions.computeIfAbsent(variant.getChromosome(), k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (List<Integer> positions : shortVariantPositions.values()) {
+            for (int i = 0; i < positions.size(); i += VARIANT_BATCH_QUERY_SIZE) {
+                getShortVariants(variants, positions.subList(i, Math.min(i + VARIANT_BATCH_QUERY_SIZE, positions.size())),
+                        batchOptions, results);
+            }
+        }
+        if (!structuralVariantPositions.isEmpty()) {
+            getStructuralVariants(variants, structuralVariantPositions, batchOptions, results);
+        }
+
+        // Limit and skip cannot be pushed down to the batched queries, limit is applied per variant as getByVariant did
+        int limit = options != null ? options.getInt(QueryOptions.LIMIT, 0) : 0;
+        for (CellBaseDataResult<Variant> result : results) {
+            if (limit > 0 && result.getResults().size() > limit) {
+                result.setResults(new ArrayList<>(result.getResults().subList(0, limit)));
+            }
+            result.setNumResults(result.getResults().size());
         }
         return results;
     }
 
+    private QueryOptions getBatchQueryOptions(QueryOptions options) {
+        QueryOptions batchOptions = addVariantPrivateExcludeOptions(new QueryOptions(options));
+        batchOptions.remove(QueryOptions.LIMIT);
+        batchOptions.remove(QueryOptions.SKIP);
+        // Fields needed to assign each returned document to the variants it matches
+        if (batchOptions.containsKey(QueryOptions.INCLUDE)) {
+            Set<String> includeSet = new LinkedHashSet<>(batchOptions.getAsStringList(QueryOptions.INCLUDE));
+            includeSet.addAll(VARIANT_MATCHING_FIELDS);
+            batchOptions.put(QueryOptions.INCLUDE, new ArrayList<>(includeSet));
+        }
+        return batchOptions;
+    }
+
+    private void getShortVariants(List<Variant> variants, List<Integer> positions, QueryOptions options,
+                                  List<CellBaseDataResult<Variant>> results) {
+        String chromosome = variants.get(positions.get(0)).getChromosome();
+        Set<Integer> starts = new HashSet<>();
+        Set<String> references = new HashSet<>();
+        Set<String> alternates = new HashSet<>();
+        Map<String, List<Integer>> positionsByKey = new HashMap<>();
+        for (int position : positions) {
+            Variant variant = variants.get(position);
+            starts.add(variant.getStart());
+            references.add(variant.getReference());
+            alternates.add(variant.getAlternate());
+            positionsByKey.computeIfAbsent(getVariantKey(variant), k -> new ArrayList<>(1)).add(position);
+        }
+
+        // Same filters as the single variant query, with the chromosome/start index resolving the start list
+        Bson bson = Filters.and(Filters.eq("chromosome", chromosome), Filters.in("start", starts),
+                Filters.in("reference", references), Filters.in("alternate", alternates));
+        long dbTimeStart = System.currentTimeMillis();
+        CellBaseDataResult<Variant> queryResult = new CellBaseDataResult<>(mongoDBCollection.find(bson, null, Variant.class,
+                options));
+        int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+        for (Variant variant : queryResult.getResults()) {
+            List<Integer> matchedPositions = positionsByKey.get(getVariantKey(variant));
+            if (matchedPositions != null) {
+                for (int position : matchedPositions) {
+                    results.get(position).getResults().add(variant);
+                }
+            }
+        }
+        for (int position : positions) {
+            results.get(position).setTime(dbTime);
+        }
+    }
+
+    private void getStructuralVariants(List<Variant> variants, List<Integer> positions, QueryOptions options,
+                                       List<CellBaseDataResult<Variant>> results) {
+        boolean imprecise = isImpreciseQuery(options);
+        List<Bson> orBsonList = new ArrayList<>(positions.size());
+        for (int position : positions) {
+            orBsonList.add(parseQuery(getStructuralVariantQuery(variants.get(position), imprecise)));
+        }
+
+        long dbTimeStart = System.currentTimeMillis();
+        CellBaseDataResult<Variant> queryResult = new CellBaseDataResult<>(mongoDBCollection.find(Filters.or(orBsonList), null,
+                Variant.class, options));
+        int dbTime = (int) (System.currentTimeMillis() - dbTimeStart);
+
+        for (Variant variant : queryResult.getResults()) {
+            for (int position : positions) {
+                if (matchesStructuralVariant(variants.get(position), variant, imprecise)) {
+                    results.get(position).getResults().add(variant);
+                }
+            }
+        }
+        for (int position : positions) {
+            results.get(position).setTime(dbTime);
+        }
+    }
+
+    private static String getVariantKey(Variant variant) {
+        return variant.getChromosome() + ":" + variant.getStart() + ":" + StringUtils.defaultString(variant.getReference())
+                + ":" + StringUtils.defaultString(variant.getAlternate());
+    }
+
+    /**
+     * In memory version of the filters created by parseQuery for getStructuralVariantQuery queries.
+     * @param queryVariant variant being annotated
+     * @param variant variant returned by the database
+     * @param imprecise whether confidence intervals are used
+     * @return true if the variant would have been returned by the single variant query
+     */
+    static boolean matchesStructuralVariant(Variant queryVariant, Variant variant, boolean imprecise) {
+        if (!queryVariant.getChromosome().equals(variant.getChromosome())) {
+            return false;
+        }
+        if (imprecise) {
+            StructuralVariation sv = variant.getSv();
+            if (sv == null || sv.getCiStartLeft() == null || sv.getCiStartRight() == null || sv.getCiEndLeft() == null
+                    || sv.getCiEndRight() == null
+                    || sv.getCiStartLeft() > queryVariant.getSv().getCiStartRight()
+                    || sv.getCiStartRight() < queryVariant.getSv().getCiStartLeft()
+                    || sv.getCiEndLeft() > queryVariant.getSv().getCiEndRight()
+                    || sv.getCiEndRight() < queryVariant.getSv().getCiEndLeft()) {
+                return false;
+            }
+        } else if (!queryVariant.getStart().equals(variant.getStart()) || !queryVariant.getStart().equals(variant.getEnd())) {
+            return false;
+        }
+
+        String svType = VariantType.CNV.equals(queryVariant.getType()) && queryVariant.getSv().getType() != null
+                ? queryVariant.getSv().getType().toString()
+                : null;
+        String variantType = variant.getType() != null ? variant.getType().toString() : null;
+        String variantSvType = variant.getSv() != null && variant.getSv().getType() != null
+                ? variant.getSv().getType().toString()
+                : null;
+        String type = queryVariant.getType().toString();
+        if (type.equals(VariantType.DELETION.toString()) || StructuralVariantType.COPY_NUMBER_LOSS.toString().equals(svType)) {
+            return VariantType.DELETION.toString().equals(variantType)
+                    || StructuralVariantType.COPY_NUMBER_LOSS.toString().equals(variantSvType);
+        } else if (type.equals(VariantType.INSERTION.toString()) || type.equals(VariantType.DUPLICATION.toString())
+                || StructuralVariantType.COPY_NUMBER_GAIN.toString().equals(svType)) {
+            return VariantType.INSERTION.toString().equals(variantType) || VariantType.DUPLICATION.toString().equals(variantType)
+                    || StructuralVariantType.COPY_NUMBER_GAIN.toString().equals(variantSvType);
+        } else {
+            return type.equals(variantType);
+        }
+    }
+
     @Override
     public CellBaseIterator<Variant> iterator(VariantQuery query) {
         Bson bson = parseQuery(query);
@@ -18,6 +18,7 @@ package org.opencb.cellbase.lib.managers;
 
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.lib.impl.core.MongoDBAdaptorFactory;
+import org.opencb.cellbase.lib.impl.core.ParallelQueryExecutor;
 import org.opencb.commons.datastore.core.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +61,10 @@ public class AbstractManager {
         logger = LoggerFactory.getLogger(this.getClass());
     }
 
+    public ParallelQueryExecutor getQueryExecutor() {
+        return MongoDBAdaptorFactory.getQueryExecutor();
+    }
+
     @Deprecated
     protected List<Query> createQueries(Query query, String csvField, String queryKey, String... args) {
         String[] ids = csvField.split(",");
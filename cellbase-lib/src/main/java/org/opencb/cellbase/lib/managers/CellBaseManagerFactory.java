@@ -63,6 +63,10 @@ public class CellBaseManagerFactory {
         ontologyManagers = new HashMap<>();
     }
 
+    public CellBaseConfiguration getConfiguration() {
+        return configuration;
+    }
+
     private String getMultiKey(String species, String assembly) {
         return species + "_" + assembly;
     }
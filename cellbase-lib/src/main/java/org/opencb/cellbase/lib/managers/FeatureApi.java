@@ -17,13 +17,16 @@
 package org.opencb.cellbase.lib.managers;
 
 import org.opencb.cellbase.lib.impl.core.CellBaseCoreDBAdaptor;
+import org.opencb.cellbase.lib.impl.core.ParallelQueryExecutor;
 import org.opencb.cellbase.core.api.query.AbstractQuery;
 import org.opencb.cellbase.lib.iterator.CellBaseIterator;
 import org.opencb.cellbase.core.api.query.CellBaseQueryOptions;
 import org.opencb.cellbase.core.api.query.QueryException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.Event;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public interface FeatureApi<Q extends AbstractQuery, T> {
@@ -36,12 +39,31 @@ public interface FeatureApi<Q extends AbstractQuery, T> {
         return getDBAdaptor().query(query);
     }
 
+    /**
+     * Executor running the queries of search(List) concurrently, shared by all the managers.
+     *
+     * @return shared query executor
+     */
+    ParallelQueryExecutor getQueryExecutor();
+
+    /**
+     * Runs the queries concurrently, see ParallelQueryExecutor. Results are returned in the same order as the queries.
+     * Invalid queries fail the whole call before any query is run, while a query failing in the database does not stop
+     * the others: its result is empty, has the query as id and an ERROR event with the exception.
+     *
+     * @param queries queries to run
+     * @return one result per query
+     * @throws QueryException if any query is not valid
+     * @throws IllegalAccessException if any query could not be validated
+     */
     default List<CellBaseDataResult<T>> search(List<Q> queries) throws QueryException, IllegalAccessException {
-        List<CellBaseDataResult<T>> results = new ArrayList<>();
         for (Q query : queries) {
-            results.add(getDBAdaptor().query(query));
+            query.setDefaults();
+            query.validate();
         }
-        return results;
+        return getQueryExecutor().<Q, CellBaseDataResult<T>>map(queries, query -> getDBAdaptor().query(query),
+                (query, e) -> new CellBaseDataResult<>(query.toString(), 0,
+                        new ArrayList<>(Collections.singletonList(new Event(Event.Type.ERROR, e.toString()))), 0));
     }
 
     default List<CellBaseDataResult<T>> info(List<String> ids, CellBaseQueryOptions queryOptions) {
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.managers;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Pool of open read handles keyed by file, e.g. FastaIndex or BigWigManager, so that the index of a file is read once
+ * and not on every query. Handles are not thread-safe, each one is used by a single thread at a time: a thread takes
+ * an idle handle of the file or opens a new one, and gives it back once done. At most maxOpenHandles handles, idle or
+ * in use, are open among all the files: once reached, the least recently used idle handle is closed to open a new one,
+ * and if all of them are in use the thread waits for one to be given back. Tasks must not run other tasks of the same
+ * pool, they could wait for their own handle. Idle handles are also closed once the idle timeout expires, and handles
+ * of a file modified since they were opened are not reused.
+ *
+ * @param <T> handle type, handles implementing Closeable are closed when evicted
+ */
+public final class FileHandlePool<T> {
+
+    private static ScheduledExecutorService evictionExecutor;
+
+    private final String name;
+    private final Opener<T> opener;
+    private final int maxOpenHandles;
+    private final long idleTimeoutMs;
+    private final LongSupplier clock;
+
+    private final Map<Path, Deque<PooledHandle<T>>> idleHandlesByFile = new HashMap<>();
+    // All the idle handles, least recently released first
+    private final LinkedHashSet<PooledHandle<T>> idleHandles = new LinkedHashSet<>();
+    private int handlesInUse;
+
+    private final AtomicLong openedHandles = new AtomicLong();
+    private final AtomicLong reusedHandles = new AtomicLong();
+    private final AtomicLong closedHandles = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(FileHandlePool.class);
+
+    /**
+     * Opens a new handle of a file.
+     *
+     * @param <T> handle type
+     */
+    @FunctionalInterface
+    public interface Opener<T> {
+        T open(Path path) throws IOException;
+    }
+
+    /**
+     * Task run with a handle of the file, the handle must not be used once the task is done.
+     *
+     * @param <T> handle type
+     * @param <R> result type
+     */
+    @FunctionalInterface
+    public interface Task<T, R> {
+        R run(T handle) throws IOException;
+    }
+
+    private static final class PooledHandle<T> {
+        private final Path path;
+        private final T handle;
+        private final long lastModified;
+        private long releaseTime;
+
+        private PooledHandle(Path path, T handle, long lastModified) {
+            this.path = path;
+            this.handle = handle;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Creates a pool whose idle handles are also closed in the background once the idle timeout expires.
+     *
+     * @param name pool name, used in the logs
+     * @param opener opens a new handle of a file
+     * @param maxOpenHandles max number of handles open among all the files, idle or in use
+     * @param idleTimeoutMs idle handles not used for this time are closed
+     */
+    public FileHandlePool(String name, Opener<T> opener, int maxOpenHandles, long idleTimeoutMs) {
+        this(name, opener, maxOpenHandles, idleTimeoutMs, System::currentTimeMillis);
+        long evictionIntervalMs = Math.max(idleTimeoutMs / 2, 1000);
+        getEvictionExecutor().scheduleWithFixedDelay(this::evictIdleHandles, evictionIntervalMs, evictionIntervalMs,
+                TimeUnit.MILLISECONDS);
+        logger.info("File handle pool '{}' created with {} max open handles and an idle timeout of {} ms", name,
+                maxOpenHandles, idleTimeoutMs);
+    }
+
+    FileHandlePool(String name, Opener<T> opener, int maxOpenHandles, long idleTimeoutMs, LongSupplier clock) {
+        this.name = name;
+        this.opener = opener;
+        this.maxOpenHandles = Math.max(maxOpenHandles, 1);
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.clock = clock;
+    }
+
+    private static synchronized ScheduledExecutorService getEvictionExecutor() {
+        if (evictionExecutor == null) {
+            evictionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "file-handle-eviction");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return evictionExecutor;
+    }
+
+    /**
+     * Runs the task with a handle of the file, either an idle one or a new one, waiting for a handle to be given back
+     * if maxOpenHandles are in use. The handle is given back to the pool when the task succeeds and closed when it fails,
+     * since it may be left in an inconsistent state.
+     *
+     * @param path file path
+     * @param task task run with the handle, e.g. querying all the regions of a request
+     * @param <R> result type
+     * @return the task result
+     * @throws IOException if the file cannot be opened, the task fails or the thread is interrupted while waiting
+     */
+    public <R> R execute(Path path, Task<T, R> task) throws IOException {
+        Path file = path.toAbsolutePath().normalize();
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        PooledHandle<T> pooledHandle = take(file, lastModified);
+        if (pooledHandle == null) {
+            try {
+                pooledHandle = new PooledHandle<>(file, opener.open(file), lastModified);
+                openedHandles.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                discard();
+                throw e;
+            }
+        } else {
+            reusedHandles.incrementAndGet();
+        }
+
+        boolean succeeded = false;
+        try {
+            R result = task.run(pooledHandle.handle);
+            succeeded = true;
+            return result;
+        } finally {
+            if (succeeded) {
+                release(pooledHandle);
+            } else {
+                discard();
+                close(pooledHandle);
+            }
+        }
+    }
+
+    /**
+     * Takes an idle handle of the file, or a slot to open a new one if null is returned.
+     */
+    private PooledHandle<T> take(Path file, long lastModified) throws InterruptedIOException {
+        List<PooledHandle<T>> evictedHandles = new ArrayList<>();
+        PooledHandle<T> pooledHandle = null;
+        try {
+            synchronized (this) {
+                Deque<PooledHandle<T>> fileHandles = idleHandlesByFile.get(file);
+                while (fileHandles != null && !fileHandles.isEmpty() && pooledHandle == null) {
+                    // Most recently released first, so that the least used handles of a file expire
+                    PooledHandle<T> candidate = fileHandles.pollLast();
+                    idleHandles.remove(candidate);
+                    if (candidate.lastModified == lastModified) {
+                        pooledHandle = candidate;
+                    } else {
+                        evictedHandles.add(candidate);
+                    }
+                }
+                if (fileHandles != null && fileHandles.isEmpty()) {
+                    idleHandlesByFile.remove(file);
+                }
+                if (pooledHandle == null) {
+                    boolean waited = false;
+                    while (idleHandles.size() + handlesInUse >= maxOpenHandles) {
+                        if (!idleHandles.isEmpty()) {
+                            // The least recently used idle handle, of another file, is closed to open a new one
+                            PooledHandle<T> eldest = idleHandles.iterator().next();
+                            removeIdleHandle(eldest);
+                            evictedHandles.add(eldest);
+                        } else {
+                            if (!waited) {
+                                waits.incrementAndGet();
+                                waited = true;
+                            }
+                            wait();
+                        }
+                    }
+                }
+                handlesInUse++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a handle of file '" + file + "' in pool '"
+                    + name + "'");
+        } finally {
+            evictedHandles.forEach(this::close);
+        }
+        return pooledHandle;
+    }
+
+    private void removeIdleHandle(PooledHandle<T> pooledHandle) {
+        idleHandles.remove(pooledHandle);
+        Deque<PooledHandle<T>> fileHandles = idleHandlesByFile.get(pooledHandle.path);
+        fileHandles.remove(pooledHandle);
+        if (fileHandles.isEmpty()) {
+            idleHandlesByFile.remove(pooledHandle.path);
+        }
+    }
+
+    /**
+     * Gives back the slot of a handle in use that is closed, or that failed to open.
+     */
+    private synchronized void discard() {
+        handlesInUse--;
+        notifyAll();
+    }
+
+    private void release(PooledHandle<T> pooledHandle) {
+        synchronized (this) {
+            handlesInUse--;
+            pooledHandle.releaseTime = clock.getAsLong();
+            idleHandlesByFile.computeIfAbsent(pooledHandle.path, key -> new ArrayDeque<>()).addLast(pooledHandle);
+            idleHandles.add(pooledHandle);
+            notifyAll();
+        }
+        evictIdleHandles();
+    }
+
+    /**
+     * Closes the handles idle for longer than the idle timeout.
+     */
+    public void evictIdleHandles() {
+        List<PooledHandle<T>> evictedHandles = new ArrayList<>();
+        synchronized (this) {
+            long minReleaseTime = clock.getAsLong() - idleTimeoutMs;
+            Iterator<PooledHandle<T>> iterator = idleHandles.iterator();
+            while (iterator.hasNext()) {
+                PooledHandle<T> pooledHandle = iterator.next();
+                if (pooledHandle.releaseTime > minReleaseTime) {
+                    break;
+                }
+                iterator.remove();
+                Deque<PooledHandle<T>> fileHandles = idleHandlesByFile.get(pooledHandle.path);
+                fileHandles.remove(pooledHandle);
+                if (fileHandles.isEmpty()) {
+                    idleHandlesByFile.remove(pooledHandle.path);
+                }
+                evictedHandles.add(pooledHandle);
+            }
+        }
+        // Closed outside the lock, closing a handle may take a while
+        evictedHandles.forEach(this::close);
+    }
+
+    /**
+     * Closes all the idle handles, handles in use are closed when given back.
+     */
+    public void clear() {
+        List<PooledHandle<T>> evictedHandles;
+        synchronized (this) {
+            evictedHandles = new ArrayList<>(idleHandles);
+            idleHandles.clear();
+            idleHandlesByFile.clear();
+        }
+        evictedHandles.forEach(this::close);
+    }
+
+    private void close(PooledHandle<T> pooledHandle) {
+        closedHandles.incrementAndGet();
+        if (pooledHandle.handle instanceof Closeable) {
+            try {
+                ((Closeable) pooledHandle.handle).close();
+            } catch (IOException e) {
+                logger.warn("Error closing a handle of file '{}' in pool '{}': {}", pooledHandle.path, name, e.getMessage());
+            }
+        }
+    }
+
+    public synchronized ObjectMap getStats() {
+        return new ObjectMap()
+                .append("idleHandles", idleHandles.size())
+                .append("handlesInUse", handlesInUse)
+                .append("maxOpenHandles", maxOpenHandles)
+                .append("files", idleHandlesByFile.size())
+                .append("openedHandles", openedHandles.get())
+                .append("reusedHandles", reusedHandles.get())
+                .append("closedHandles", closedHandles.get())
+                .append("waits", waits.get());
+    }
+}
@@ -16,15 +16,15 @@
 
 package org.opencb.cellbase.lib.managers;
 
-
 import org.apache.commons.lang.StringUtils;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.tools.feature.BigWigManager;
 import org.opencb.biodata.tools.sequence.FastaIndex;
 import org.opencb.cellbase.core.api.FileQuery;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.config.FileProperties;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
-import org.opencb.commons.datastore.core.Event;
+import org.opencb.commons.datastore.core.ObjectMap;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -35,65 +35,105 @@ import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class FileManager extends AbstractManager {
 
+    // Shared by all the FileManager instances, a new one is created per request
+    private static FileHandlePool<FastaIndex> fastaIndexPool;
+    private static FileHandlePool<BigWigManager> bigWigPool;
+
     public FileManager(CellBaseConfiguration configuration) {
         super(configuration);
+        initFileHandlePools(configuration);
+    }
+
+    private static synchronized void initFileHandlePools(CellBaseConfiguration configuration) {
+        if (fastaIndexPool == null) {
+            FileProperties fileProperties = (configuration != null && configuration.getFiles() != null)
+                    ? configuration.getFiles()
+                    : new FileProperties();
+            int maxOpenHandles = fileProperties.getMaxOpenHandles() > 0
+                    ? fileProperties.getMaxOpenHandles() : FileProperties.DEFAULT_MAX_OPEN_HANDLES;
+            long idleTimeoutMs = TimeUnit.SECONDS.toMillis(fileProperties.getIdleTimeoutSeconds() > 0
+                    ? fileProperties.getIdleTimeoutSeconds() : FileProperties.DEFAULT_IDLE_TIMEOUT_SECONDS);
+            fastaIndexPool = new FileHandlePool<>("fasta", FastaIndex::new, maxOpenHandles, idleTimeoutMs);
+            bigWigPool = new FileHandlePool<>("bigwig", BigWigManager::new, maxOpenHandles, idleTimeoutMs);
+        }
     }
 
-    public List<CellBaseDataResult<String>> search(FileQuery query) throws IOException {
+    public List<? extends CellBaseDataResult<?>> search(FileQuery query) throws IOException {
         Path dataFile = new File(query.getFilePath()).toPath();
         if (!Files.exists(dataFile)) {
             throw new FileNotFoundException("Can't file file: " + query.getFilePath());
         }
         switch(query.getFileType()) {
             case "fasta":
-                return getFasta(dataFile, query);
-//            case "bigwig":
-//                return getBigWig(dataFile, query);
+                return getSequences(dataFile, query.getRegions());
+            case "bigwig":
+                return getCoverage(dataFile, query.getRegions());
             default:
                 throw new InvalidParameterException("File type not found:" + query.getFileType());
         }
     }
 
-    private List<CellBaseDataResult<String>> getBigWig(Path dataFile, FileQuery query) throws IOException {
-        BigWigManager bigWigManager = new BigWigManager(dataFile);
-        List<CellBaseDataResult<String>> results = new ArrayList<>();
-        List<Region> regions = query.getRegions();
-        for (Region region : regions) {
-            double[] coverage = bigWigManager.query(region);
-            String id = region.toString();
-            int time = 0;
-            List<Event> events = new ArrayList<>();
-            int numResults = 1;
-            long numMatches = 1;
-            CellBaseDataResult<String> result = new CellBaseDataResult(id, time, events, numResults, Collections.singletonList(coverage),
-                    numMatches);
-            results.add(result);
-        }
-        return results;
+    /**
+     * Fetches the coverage of the regions from a BigWig file, all of them with the same file handle.
+     *
+     * @param dataFile BigWig file
+     * @param regions regions
+     * @return one result per region with the coverage of each position
+     * @throws IOException if the file cannot be read
+     */
+    public List<CellBaseDataResult<float[]>> getCoverage(Path dataFile, List<Region> regions) throws IOException {
+        return bigWigPool.execute(dataFile, bigWigManager -> {
+            List<CellBaseDataResult<float[]>> results = new ArrayList<>(regions.size());
+            for (Region region : regions) {
+                long startTime = System.currentTimeMillis();
+                double[] values = bigWigManager.query(region);
+                // Halves the size of the response, BigWig files store 32-bit floats anyway
+                float[] coverage = new float[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    coverage[i] = (float) values[i];
+                }
+                results.add(new CellBaseDataResult<>(region.toString(), (int) (System.currentTimeMillis() - startTime),
+                        new ArrayList<>(), 1, Collections.singletonList(coverage), 1));
+            }
+            return results;
+        });
     }
 
-    private List<CellBaseDataResult<String>> getFasta(Path dataFile, FileQuery query) throws IOException {
-        FastaIndex fastaIndex = new FastaIndex(dataFile);
-        List<CellBaseDataResult<String>> results = new ArrayList<>();
-        List<Region> regions = query.getRegions();
-        for (Region region : regions) {
-            String sequence = fastaIndex.query(region.getChromosome(), region.getStart(), region.getEnd());
-            String id = region.toString();
-            int time = 0;
-            List<Event> events = new ArrayList<>();
-            int numResults = 1;
-            long numMatches = 1;
-            if (StringUtils.isEmpty(sequence)) {
-                numResults = 0;
-                numMatches = 0;
+    /**
+     * Fetches the sequence of the regions from a bgzip FASTA file, all of them with the same file handle.
+     *
+     * @param dataFile FASTA file, the .fai and .gzi indexes must be next to it
+     * @param regions regions
+     * @return one result per region, empty if the region is not found
+     * @throws IOException if the file cannot be read
+     */
+    public List<CellBaseDataResult<String>> getSequences(Path dataFile, List<Region> regions) throws IOException {
+        return fastaIndexPool.execute(dataFile, fastaIndex -> {
+            List<CellBaseDataResult<String>> results = new ArrayList<>(regions.size());
+            for (Region region : regions) {
+                long startTime = System.currentTimeMillis();
+                String sequence = fastaIndex.query(region.getChromosome(), region.getStart(), region.getEnd());
+                int numResults = 1;
+                long numMatches = 1;
+                if (StringUtils.isEmpty(sequence)) {
+                    numResults = 0;
+                    numMatches = 0;
+                }
+                results.add(new CellBaseDataResult<>(region.toString(), (int) (System.currentTimeMillis() - startTime),
+                        new ArrayList<>(), numResults, Collections.singletonList(sequence), numMatches));
             }
-            CellBaseDataResult<String> result = new CellBaseDataResult<>(id, time, events, numResults, Collections.singletonList(sequence),
-                    numMatches);
-            results.add(result);
-        }
-        return results;
+            return results;
+        });
+    }
+
+    public static ObjectMap getFileHandleStats(CellBaseConfiguration configuration) {
+        initFileHandlePools(configuration);
+        return new ObjectMap()
+                .append("fasta", fastaIndexPool.getStats())
+                .append("bigwig", bigWigPool.getStats());
     }
 }
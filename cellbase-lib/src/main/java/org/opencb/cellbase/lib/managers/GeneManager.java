@@ -23,18 +23,21 @@ import org.opencb.biodata.models.core.TranscriptTfbs;
 import org.opencb.cellbase.lib.impl.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.GeneQuery;
 import org.opencb.cellbase.core.api.query.ProjectionQueryOptions;
+import org.opencb.cellbase.core.api.query.QueryException;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.impl.core.GeneModelCache;
 import org.opencb.cellbase.lib.impl.core.GeneMongoDBAdaptor;
 import org.opencb.cellbase.lib.impl.core.GenomeMongoDBAdaptor;
+import org.opencb.commons.datastore.core.ObjectMap;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 public class GeneManager extends AbstractManager implements AggregationApi<GeneQuery, Gene> {
 
     private GeneMongoDBAdaptor geneDBAdaptor;
     private GenomeMongoDBAdaptor genomeDBAdaptor;
+    private GeneModelCache geneModelCache;
 
     public GeneManager(String species, String assembly, CellBaseConfiguration configuration) {
         super(species, assembly, configuration);
@@ -44,6 +47,7 @@ public class GeneManager extends AbstractManager implements AggregationApi<GeneQ
     private void init() {
         geneDBAdaptor = dbAdaptorFactory.getGeneDBAdaptor(species, assembly);
         genomeDBAdaptor = dbAdaptorFactory.getGenomeDBAdaptor(species, assembly);
+        geneModelCache = GeneModelCache.getInstance(configuration);
     }
 
     @Override
@@ -86,4 +90,85 @@ public class GeneManager extends AbstractManager implements AggregationApi<GeneQ
         return geneQueryResults;
     }
 
+    /**
+     * Genes overlapping any of the regions, each gene is returned once. Served from the gene model cache when it is
+     * enabled in the configuration, genes returned must not be modified then.
+     *
+     * @param regions regions
+     * @param source gene source, e.g. ensembl or refseq
+     * @param includes gene fields to be returned, must contain id, chromosome, start and end. Null to return all
+     * @return genes overlapping the regions
+     * @throws QueryException if the query is not valid
+     * @throws IllegalAccessException if the query is not valid
+     */
+    public List<Gene> search(List<Region> regions, String source, List<String> includes)
+            throws QueryException, IllegalAccessException {
+        if (geneModelCache == null) {
+            return search(createRegionQuery(regions, source, includes)).getResults();
+        }
+
+        // Chromosome bins covering the regions
+        int binSize = geneModelCache.getBinSize();
+        Map<String, Region> binRegions = new LinkedHashMap<>();
+        for (Region region : regions) {
+            for (int bin = (region.getStart() - 1) / binSize; bin <= (region.getEnd() - 1) / binSize; bin++) {
+                binRegions.putIfAbsent(getBinKey(source, region.getChromosome(), bin, includes),
+                        new Region(region.getChromosome(), bin * binSize + 1, (bin + 1) * binSize));
+            }
+        }
+
+        Map<String, List<Gene>> bins = geneModelCache.getAll(binRegions.keySet());
+        if (bins.size() < binRegions.size()) {
+            // A single query for all missing bins, genes are then assigned to every bin they overlap
+            Map<String, List<Gene>> fetchedBins = new HashMap<>();
+            List<Region> missingRegions = new ArrayList<>();
+            for (Map.Entry<String, Region> entry : binRegions.entrySet()) {
+                if (!bins.containsKey(entry.getKey())) {
+                    fetchedBins.put(entry.getKey(), new ArrayList<>());
+                    missingRegions.add(entry.getValue());
+                }
+            }
+            for (Gene gene : search(createRegionQuery(missingRegions, source, includes)).getResults()) {
+                for (int bin = (gene.getStart() - 1) / binSize; bin <= (gene.getEnd() - 1) / binSize; bin++) {
+                    List<Gene> binGenes = fetchedBins.get(getBinKey(source, gene.getChromosome(), bin, includes));
+                    if (binGenes != null) {
+                        binGenes.add(gene);
+                    }
+                }
+            }
+            geneModelCache.putAll(fetchedBins);
+            bins.putAll(fetchedBins);
+        }
+
+        Map<String, Gene> genes = new LinkedHashMap<>();
+        for (Region region : regions) {
+            for (int bin = (region.getStart() - 1) / binSize; bin <= (region.getEnd() - 1) / binSize; bin++) {
+                for (Gene gene : bins.get(getBinKey(source, region.getChromosome(), bin, includes))) {
+                    if (gene.getStart() <= region.getEnd() && gene.getEnd() >= region.getStart()) {
+                        genes.putIfAbsent(gene.getId(), gene);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(genes.values());
+    }
+
+    /**
+     * @return hit, miss, eviction and size metrics of the gene model cache, null if it is not enabled
+     */
+    public ObjectMap getGeneModelCacheStats() {
+        return geneModelCache != null ? geneModelCache.getStats() : null;
+    }
+
+    private String getBinKey(String source, String chromosome, int bin, List<String> includes) {
+        return GeneModelCache.getKey(species, assembly, source, chromosome, bin, includes);
+    }
+
+    private GeneQuery createRegionQuery(List<Region> regions, String source, List<String> includes) {
+        GeneQuery geneQuery = new GeneQuery();
+        geneQuery.setIncludes(includes);
+        geneQuery.setRegions(regions);
+        geneQuery.setSource(Collections.singletonList(source));
+        return geneQuery;
+    }
 }
@@ -26,18 +26,25 @@ import org.opencb.biodata.models.variant.avro.Score;
 import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.api.GenomeQuery;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.config.GenomeSequenceProperties;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.impl.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.lib.impl.core.GenomeMongoDBAdaptor;
+import org.opencb.cellbase.lib.impl.core.GenomeSequenceAdaptor;
+import org.opencb.cellbase.lib.impl.core.LocalGenomeSequenceAdaptor;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class GenomeManager extends AbstractManager implements AggregationApi<GenomeQuery, Chromosome> {
 
     private GenomeMongoDBAdaptor genomeDBAdaptor;
+    private GenomeSequenceAdaptor genomeSequenceAdaptor;
 
     public GenomeManager(String species, String assembly, CellBaseConfiguration configuration) {
         super(species, assembly, configuration);
@@ -51,6 +58,37 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
 
     private void init() {
         genomeDBAdaptor = dbAdaptorFactory.getGenomeDBAdaptor(species, assembly);
+        genomeSequenceAdaptor = genomeDBAdaptor;
+
+        GenomeSequenceProperties genomeSequenceProperties = configuration.getAnnotation() != null
+                ? configuration.getAnnotation().getGenomeSequence()
+                : null;
+        if (genomeSequenceProperties != null
+                && GenomeSequenceProperties.LOCAL_SOURCE.equalsIgnoreCase(genomeSequenceProperties.getSource())) {
+            String fastaFile = getFastaFile(genomeSequenceProperties);
+            if (fastaFile != null) {
+                try {
+                    genomeSequenceAdaptor = new LocalGenomeSequenceAdaptor(Paths.get(fastaFile));
+                } catch (IOException e) {
+                    logger.error("Local genome sequence file {} could not be opened, genome_sequence collection will be used",
+                            fastaFile, e);
+                }
+            } else {
+                logger.warn("No local genome sequence file configured for {} {}, genome_sequence collection will be used",
+                        species, assembly);
+            }
+        }
+    }
+
+    private String getFastaFile(GenomeSequenceProperties genomeSequenceProperties) {
+        if (genomeSequenceProperties.getFiles() != null) {
+            for (Map.Entry<String, String> entry : genomeSequenceProperties.getFiles().entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(species + "_" + assembly)) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return null;
     }
 
     public CellBaseDataResult getGenomeInfo(QueryOptions queryOptions) {
@@ -77,7 +115,7 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
     public List<CellBaseDataResult<GenomeSequenceFeature>> getByRegions(GenomeQuery query) {
         List<CellBaseDataResult<GenomeSequenceFeature>> queryResults = new ArrayList<>();
         for (Region region : query.getRegions()) {
-            queryResults.add(genomeDBAdaptor.getSequence(region, query.toQueryOptions()));
+            queryResults.add(genomeSequenceAdaptor.getSequence(region, query.toQueryOptions()));
         }
 
         for (int i = 0; i < query.getRegions().size(); i++) {
@@ -91,7 +129,7 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
         List<Region> regionList = Region.parseRegions(regions);
         List<CellBaseDataResult<GenomeSequenceFeature>> queryResults = new ArrayList<>();
         for (Region region : regionList) {
-            queryResults.add(genomeDBAdaptor.getSequence(region, queryOptions));
+            queryResults.add(genomeSequenceAdaptor.getSequence(region, queryOptions));
         }
 
         for (int i = 0; i < regionList.size(); i++) {
@@ -104,7 +142,7 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
     public CellBaseDataResult<GenomeSequenceFeature> getByRegion(Query query, QueryOptions queryOptions, String regions, String strand) {
         query.put(ParamConstants.QueryParams.REGION.key(), regions);
         query.put("strand", strand);
-        CellBaseDataResult queryResult = genomeDBAdaptor.getGenomicSequence(query, queryOptions);
+        CellBaseDataResult queryResult = getGenomicSequence(query, queryOptions);
         queryResult.setId(regions);
         return queryResult;
     }
@@ -128,11 +166,11 @@ public class GenomeManager extends AbstractManager implements AggregationApi<Gen
     }
 
     public CellBaseDataResult<GenomeSequenceFeature> getSequence(Region region, QueryOptions queryOptions) {
-        return genomeDBAdaptor.getSequence(region, queryOptions);
+        return genomeSequenceAdaptor.getSequence(region, queryOptions);
     }
 
     public CellBaseDataResult<GenomeSequenceFeature> getGenomicSequence(Query query, QueryOptions queryOptions) {
-        return genomeDBAdaptor.getGenomicSequence(query, queryOptions);
+        return genomeSequenceAdaptor.getSequence(Region.parseRegion(query.getString("region")), queryOptions);
     }
 
     public CellBaseDataResult<Cytoband> getCytobands(Region region, QueryOptions queryOptions) {
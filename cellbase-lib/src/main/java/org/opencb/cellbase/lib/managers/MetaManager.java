@@ -19,6 +19,7 @@ package org.opencb.cellbase.lib.managers;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.impl.core.MetaMongoDBAdaptor;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.monitor.DatastoreStatus;
 
 import java.util.Map;
@@ -47,4 +48,8 @@ public class MetaManager extends AbstractManager {
     public Map<String, DatastoreStatus> getDatabaseStatus(String species, String assembly) {
         return dbAdaptorFactory.getDatabaseStatus(species, assembly);
     }
+
+    public ObjectMap getDatabaseMetrics(String species, String assembly) {
+        return dbAdaptorFactory.getDatabaseMetrics(species, assembly);
+    }
 }
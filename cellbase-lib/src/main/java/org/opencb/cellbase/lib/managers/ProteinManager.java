@@ -94,17 +94,41 @@ public class ProteinManager extends AbstractManager implements AggregationApi<Pr
 
     public CellBaseDataResult<ProteinVariantAnnotation> getVariantAnnotation(Variant variant, String ensemblTranscriptId, int aaPosition,
                                                                              String aaReference, String aaAlternate, QueryOptions options) {
-        CellBaseDataResult<ProteinVariantAnnotation> proteinVariantAnnotation = proteinDBAdaptor.getVariantAnnotation(ensemblTranscriptId,
-                aaPosition, aaReference, aaAlternate, options);
-        CellBaseDataResult<TranscriptMissenseVariantFunctionalScore> revelResults =
-                missenseVariationFunctionalScoreMongoDBAdaptor.getScores(
-                        variant.getChromosome(), variant.getStart(), variant.getReference(), variant.getAlternate(),
-                        aaReference, aaAlternate);
-        if (proteinVariantAnnotation.getResults() != null && revelResults.getResults() != null) {
-            proteinVariantAnnotation.getResults().get(0).getSubstitutionScores().add(
-                    new Score(revelResults.first().getScore(), "revel", ""));
+        return getVariantAnnotation(Collections.singletonList(variant), Collections.singletonList(ensemblTranscriptId),
+                Collections.singletonList(aaPosition), Collections.singletonList(aaReference), Collections.singletonList(aaAlternate),
+                options).get(0);
+    }
+
+    /**
+     * Annotates a batch of amino acid changes with a few queries, see
+     * {@link ProteinMongoDBAdaptor#getVariantAnnotation(List, List, List, List, QueryOptions)}.
+     *
+     * @param variants variants causing the amino acid changes
+     * @param ensemblTranscriptIds Ensembl transcript ids
+     * @param aaPositions protein positions
+     * @param aaReferences reference amino acids
+     * @param aaAlternates alternate amino acids
+     * @param options query options
+     * @return one result per amino acid change, in the same order
+     */
+    public List<CellBaseDataResult<ProteinVariantAnnotation>> getVariantAnnotation(List<Variant> variants,
+                                                                                   List<String> ensemblTranscriptIds,
+                                                                                   List<Integer> aaPositions, List<String> aaReferences,
+                                                                                   List<String> aaAlternates, QueryOptions options) {
+        List<CellBaseDataResult<ProteinVariantAnnotation>> proteinVariantAnnotations = proteinDBAdaptor.getVariantAnnotation(
+                ensemblTranscriptIds, aaPositions, aaReferences, aaAlternates, options);
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            CellBaseDataResult<TranscriptMissenseVariantFunctionalScore> revelResults =
+                    missenseVariationFunctionalScoreMongoDBAdaptor.getScores(
+                            variant.getChromosome(), variant.getStart(), variant.getReference(), variant.getAlternate(),
+                            aaReferences.get(i), aaAlternates.get(i));
+            if (proteinVariantAnnotations.get(i).getResults() != null && revelResults.getResults() != null) {
+                proteinVariantAnnotations.get(i).getResults().get(0).getSubstitutionScores().add(
+                        new Score(revelResults.first().getScore(), "revel", ""));
+            }
         }
-        return proteinVariantAnnotation;
+        return proteinVariantAnnotations;
     }
 }
 
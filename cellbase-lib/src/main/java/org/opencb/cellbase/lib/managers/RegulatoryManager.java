@@ -16,14 +16,29 @@
 
 package org.opencb.cellbase.lib.managers;
 
+import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.core.RegulatoryFeature;
 import org.opencb.cellbase.lib.impl.core.CellBaseCoreDBAdaptor;
 import org.opencb.cellbase.core.api.RegulationQuery;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.lib.impl.core.RegulationMongoDBAdaptor;
+import org.opencb.cellbase.lib.impl.core.RegulatoryOverlapIndex;
+import org.opencb.cellbase.lib.iterator.CellBaseIterator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RegulatoryManager extends AbstractManager implements AggregationApi<RegulationQuery, RegulatoryFeature>  {
 
+    // Regions of a batch closer than this are fetched as a single region
+    private static final int OVERLAP_INDEX_MAX_GAP = 1000;
+    private static final List<String> OVERLAP_INDEX_INCLUDES = Arrays.asList("chromosome", "start", "end", "featureType");
+
+    // Indexes of all the regulatory features of each species and assembly, when preloading is enabled
+    private static final Map<String, RegulatoryOverlapIndex> PRELOADED_OVERLAP_INDEXES = new ConcurrentHashMap<>();
+    // Species and assemblies whose index is being preloaded
+    private static final Set<String> PRELOADING_OVERLAP_INDEXES = ConcurrentHashMap.newKeySet();
+
     private RegulationMongoDBAdaptor regulationDBAdaptor;
 
     public RegulatoryManager(String species, String assembly, CellBaseConfiguration configuration) {
@@ -39,4 +54,80 @@ public class RegulatoryManager extends AbstractManager implements AggregationApi
     public CellBaseCoreDBAdaptor getDBAdaptor() {
         return regulationDBAdaptor;
     }
+
+    /**
+     * Builds an overlap index over the regulatory features overlapping the regions, fetching only their coordinates and
+     * feature type in a single query. If 'annotation.preloadRegulatoryRegions' is enabled the index of all the
+     * regulatory features of the species and assembly is returned instead, it is loaded by the first caller and then
+     * shared. Other callers get an index of their regions while it is being loaded.
+     *
+     * @param regions regions to be looked up later in the index
+     * @return overlap index
+     */
+    public RegulatoryOverlapIndex getOverlapIndex(List<Region> regions) {
+        if (configuration.getAnnotation() != null && configuration.getAnnotation().isPreloadRegulatoryRegions()) {
+            RegulatoryOverlapIndex regulatoryOverlapIndex = getPreloadedOverlapIndex();
+            if (regulatoryOverlapIndex != null) {
+                return regulatoryOverlapIndex;
+            }
+        }
+
+        List<Region> mergedRegions = mergeRegions(regions);
+        if (mergedRegions.isEmpty()) {
+            return new RegulatoryOverlapIndex(Collections.emptyIterator());
+        }
+        RegulationQuery query = new RegulationQuery();
+        query.setIncludes(OVERLAP_INDEX_INCLUDES);
+        query.setRegions(mergedRegions);
+        try (CellBaseIterator<RegulatoryFeature> iterator = regulationDBAdaptor.iterator(query)) {
+            return new RegulatoryOverlapIndex(iterator);
+        }
+    }
+
+    /*
+     * Returns null while another thread is loading the index, no lock is held during the load.
+     */
+    private RegulatoryOverlapIndex getPreloadedOverlapIndex() {
+        String key = species + "_" + assembly;
+        RegulatoryOverlapIndex regulatoryOverlapIndex = PRELOADED_OVERLAP_INDEXES.get(key);
+        if (regulatoryOverlapIndex != null || !PRELOADING_OVERLAP_INDEXES.add(key)) {
+            return regulatoryOverlapIndex;
+        }
+        try {
+            // Loaded by another thread since checked above
+            regulatoryOverlapIndex = PRELOADED_OVERLAP_INDEXES.get(key);
+            if (regulatoryOverlapIndex == null) {
+                long startTime = System.currentTimeMillis();
+                RegulationQuery query = new RegulationQuery();
+                query.setIncludes(OVERLAP_INDEX_INCLUDES);
+                try (CellBaseIterator<RegulatoryFeature> iterator = regulationDBAdaptor.iterator(query)) {
+                    regulatoryOverlapIndex = new RegulatoryOverlapIndex(iterator, true);
+                }
+                PRELOADED_OVERLAP_INDEXES.put(key, regulatoryOverlapIndex);
+                logger.info("{} regulatory features of {} {} loaded in memory in {} ms", regulatoryOverlapIndex.size(), species,
+                        assembly, System.currentTimeMillis() - startTime);
+            }
+            return regulatoryOverlapIndex;
+        } finally {
+            PRELOADING_OVERLAP_INDEXES.remove(key);
+        }
+    }
+
+    private List<Region> mergeRegions(List<Region> regions) {
+        List<Region> sortedRegions = new ArrayList<>(regions);
+        sortedRegions.sort(Comparator.comparing(Region::getChromosome).thenComparingInt(Region::getStart));
+
+        List<Region> mergedRegions = new ArrayList<>(sortedRegions.size());
+        Region current = null;
+        for (Region region : sortedRegions) {
+            if (current != null && current.getChromosome().equals(region.getChromosome())
+                    && region.getStart() <= current.getEnd() + OVERLAP_INDEX_MAX_GAP) {
+                current.setEnd(Math.max(current.getEnd(), region.getEnd()));
+            } else {
+                current = new Region(region.getChromosome(), region.getStart(), region.getEnd());
+                mergedRegions.add(current);
+            }
+        }
+        return mergedRegions;
+    }
 }
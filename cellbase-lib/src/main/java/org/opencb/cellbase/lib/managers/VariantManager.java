@@ -33,14 +33,21 @@ import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.core.variant.AnnotationBasedPhasedQueryManager;
 import org.opencb.cellbase.lib.impl.core.VariantMongoDBAdaptor;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationJob;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationJobManager;
+import org.opencb.cellbase.lib.variant.annotation.BatchGeneIndex;
 import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationCalculator;
+import org.opencb.cellbase.lib.variant.annotation.VariantAnnotationResources;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 import org.opencb.cellbase.lib.variant.hgvs.HgvsCalculator;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
@@ -54,7 +61,6 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
             + ":[(alt)|(left_ins_seq)...(right_ins_seq)]";
     private VariantMongoDBAdaptor variantDBAdaptor;
     private CellBaseManagerFactory cellbaseManagerFactory;
-    private GenomeManager genomeManager;
 
     public VariantManager(String species, String assembly, CellBaseConfiguration configuration) throws CellbaseException {
         super(species, assembly, configuration);
@@ -64,7 +70,6 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
     private void init() throws CellbaseException {
         variantDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor(species, assembly);
         cellbaseManagerFactory = new CellBaseManagerFactory(configuration);
-        genomeManager = cellbaseManagerFactory.getGenomeManager(species, assembly);
     }
 
     @Override
@@ -79,13 +84,13 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
     public List<CellBaseDataResult<String>> getHgvsByVariant(String variants)
             throws CellbaseException, QueryException, IllegalAccessException {
         List<Variant> variantList = parseVariants(variants);
-        HgvsCalculator hgvsCalculator = new HgvsCalculator(genomeManager);
+        VariantAnnotationResources resources = getAnnotationResources();
+        HgvsCalculator hgvsCalculator = resources.getHgvsCalculator();
         List<CellBaseDataResult<String>> results = new ArrayList<>();
-        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
-                cellbaseManagerFactory);
-        List<Gene> batchGeneList = variantAnnotationCalculator.getBatchGeneList(variantList);
+        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(resources);
+        BatchGeneIndex batchGeneIndex = new BatchGeneIndex(variantAnnotationCalculator.getBatchGeneList(variantList));
         for (Variant variant : variantList) {
-            List<Gene> variantGeneList = variantAnnotationCalculator.getAffectedGenes(batchGeneList, variant);
+            List<Gene> variantGeneList = variantAnnotationCalculator.getAffectedGenes(batchGeneIndex, variant);
             List<String> hgvsStrings = hgvsCalculator.run(variant, variantGeneList, false);
             results.add(new CellBaseDataResult<>(variant.getId(), 0, new ArrayList<>(), hgvsStrings.size(), hgvsStrings, -1));
         }
@@ -101,8 +106,7 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
      */
     public CellBaseDataResult<Variant> getNormalizationByVariant(String variants) throws CellbaseException {
         List<Variant> variantList = parseVariants(variants);
-        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
-                cellbaseManagerFactory);
+        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(getAnnotationResources());
         List<Variant> normalisedVariants = variantAnnotationCalculator.normalizer(variantList);
         return new CellBaseDataResult<>(variants, 0, new ArrayList<>(), normalisedVariants.size(), normalisedVariants, -1);
     }
@@ -121,7 +125,51 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
             throws ExecutionException, InterruptedException, CellbaseException, QueryException, IllegalAccessException {
         List<Variant> variantList = parseVariants(variants);
         logger.debug("queryOptions: " + queryOptions);
+        setAnnotationOptions(queryOptions, normalize, skipDecompose, ignorePhase, phased, imprecise, svExtraPadding,
+                cnvExtraPadding, checkAminoAcidChange, consequenceTypeSource);
 
+        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(getAnnotationResources());
+        List<CellBaseDataResult<VariantAnnotation>> queryResults =
+                variantAnnotationCalculator.getAnnotationByVariantList(variantList, queryOptions);
+        return queryResults;
+    }
+
+    /**
+     * Queues the annotation of a VCF file or a list of variants, see AnnotationJobManager. Options are the same as
+     * getAnnotationByVariant, variants with phase data are not supported.
+     *
+     * @param queryOptions annotation options, e.g. include and exclude
+     * @param input VCF or list of variants, gzipped or not. It is fully read before returning
+     * @param normalize whether variants are normalised
+     * @param skipDecompose whether MNVs are not decomposed
+     * @param ignorePhase whether phase is ignored
+     * @param phased deprecated, see ignorePhase
+     * @param imprecise whether imprecise search is used for structural variants
+     * @param svExtraPadding extra padding of structural variants
+     * @param cnvExtraPadding extra padding of CNVs
+     * @param checkAminoAcidChange whether clinical variants are also matched by amino acid change
+     * @param consequenceTypeSource gene set, ensembl or refseq
+     * @return queued job
+     * @throws IOException if the input could not be stored
+     * @throws CellbaseException if the species or the assembly are not valid, or too many jobs are queued
+     */
+    public AnnotationJob submitAnnotationJob(QueryOptions queryOptions, InputStream input, Boolean normalize, Boolean skipDecompose,
+                                             Boolean ignorePhase, @Deprecated Boolean phased, Boolean imprecise,
+                                             Integer svExtraPadding, Integer cnvExtraPadding, Boolean checkAminoAcidChange,
+                                             String consequenceTypeSource) throws IOException, CellbaseException {
+        setAnnotationOptions(queryOptions, normalize, skipDecompose, ignorePhase, phased, imprecise, svExtraPadding,
+                cnvExtraPadding, checkAminoAcidChange, consequenceTypeSource);
+        return AnnotationJobManager.getInstance(configuration).submit(species, assembly, input, queryOptions,
+                new VariantAnnotationCalculator(getAnnotationResources()));
+    }
+
+    public AnnotationJob getAnnotationJob(String jobId) {
+        return AnnotationJobManager.getInstance(configuration).get(jobId);
+    }
+
+    private void setAnnotationOptions(QueryOptions queryOptions, Boolean normalize, Boolean skipDecompose, Boolean ignorePhase,
+                                      Boolean phased, Boolean imprecise, Integer svExtraPadding, Integer cnvExtraPadding,
+                                      Boolean checkAminoAcidChange, String consequenceTypeSource) {
         // If ignorePhase (new parameter) is present, then overrides presence of "phased"
         if (ignorePhase != null) {
             queryOptions.put("ignorePhase", ignorePhase);
@@ -155,12 +203,17 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
         if (consequenceTypeSource != null) {
             queryOptions.put("consequenceTypeSource", consequenceTypeSource);
         }
+    }
 
-        VariantAnnotationCalculator variantAnnotationCalculator = new VariantAnnotationCalculator(species, assembly,
-                cellbaseManagerFactory);
-        List<CellBaseDataResult<VariantAnnotation>> queryResults =
-                variantAnnotationCalculator.getAnnotationByVariantList(variantList, queryOptions);
-        return queryResults;
+    /**
+     * Managers, normalisers and HGVS calculator used by the annotation are built once per species and assembly and
+     * shared by all the requests, each request only creates a light VariantAnnotationCalculator with its options.
+     *
+     * @return shared annotation resources
+     * @throws CellbaseException if the species or the assembly are not valid
+     */
+    private VariantAnnotationResources getAnnotationResources() throws CellbaseException {
+        return VariantAnnotationResources.getInstance(species, assembly, cellbaseManagerFactory);
     }
 
     private List<Variant> parseVariants(String variantsString) {
@@ -255,10 +308,19 @@ public class VariantManager extends AbstractManager implements AggregationApi<Va
     }
 
     public List<CellBaseDataResult<Score>> getFunctionalScoreVariant(List<Variant> variants, QueryOptions options) {
+        // Only SNVs are scored, all of them are fetched in one batch so that CADD chunks are read once
+        List<Variant> snvList = new ArrayList<>(variants.size());
+        for (Variant variant: variants) {
+            if (variant.getType() == VariantType.SNV) {
+                snvList.add(variant);
+            }
+        }
+        Iterator<CellBaseDataResult<Score>> snvResults = variantDBAdaptor.getFunctionalScoreVariant(snvList, options).iterator();
+
         List<CellBaseDataResult<Score>> cellBaseDataResults = new ArrayList<>(variants.size());
         for (Variant variant: variants) {
             if (variant.getType() == VariantType.SNV) {
-                cellBaseDataResults.add(getFunctionalScoreVariant(variant, options));
+                cellBaseDataResults.add(snvResults.next());
             } else {
                 cellBaseDataResults.add(new CellBaseDataResult<>(variant.toString(), 0, Collections.emptyList(), 0));
             }
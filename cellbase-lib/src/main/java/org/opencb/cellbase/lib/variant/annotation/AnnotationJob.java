@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.commons.io.FileUtils;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.cellbase.core.exception.CellbaseException;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Asynchronous annotation of a VCF file or a list of variants, see AnnotationJobManager. Variants are annotated in
+ * batches and the annotations of each batch are appended as newline-delimited JSON to the results file, which clients
+ * can read while the job is still running.
+ */
+public class AnnotationJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, ERROR
+    }
+
+    private static final ObjectWriter JSON_OBJECT_WRITER;
+    private static final byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final long WAIT_MILLIS = 1000;
+
+    static {
+        ObjectMapper jsonObjectMapper = new ObjectMapper();
+        jsonObjectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
+        // Annotations are appended to the same buffered stream, which is flushed once per batch
+        JSON_OBJECT_WRITER = jsonObjectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .without(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+    }
+
+    private final String id;
+    private final String species;
+    private final String assembly;
+    private final Path directory;
+    private final QueryOptions queryOptions;
+    private final long creationTime;
+
+    private volatile Status status;
+    private volatile String error;
+    private volatile long numVariants;
+    private volatile long numAnnotations;
+    private volatile long startTime;
+    private volatile long finishTime;
+    // Bytes of the results file that are complete and can be read
+    private long resultsLength;
+
+    AnnotationJob(String id, String species, String assembly, Path directory, QueryOptions queryOptions) {
+        this.id = id;
+        this.species = species;
+        this.assembly = assembly;
+        this.directory = directory;
+        this.queryOptions = queryOptions;
+        this.creationTime = System.currentTimeMillis();
+        this.status = Status.QUEUED;
+    }
+
+    Path getInputFile() {
+        return directory.resolve("input");
+    }
+
+    private Path getResultsFile() {
+        return directory.resolve("results.ndjson");
+    }
+
+    /**
+     * Annotates the input file, batch after batch. The job always ends DONE or ERROR, also if an Error is thrown, so
+     * that clients waiting for the results are released.
+     *
+     * @param calculator calculator of the species and assembly of the job
+     * @param batchSize number of variants annotated at a time
+     */
+    void run(VariantAnnotationCalculator calculator, int batchSize) {
+        status = Status.RUNNING;
+        startTime = System.currentTimeMillis();
+        Status finalStatus = Status.ERROR;
+        String errorMessage = "Unexpected error";
+        try (BufferedReader reader = openInput(getInputFile());
+             FileOutputStream fileOutputStream = new FileOutputStream(getResultsFile().toFile());
+             OutputStream outputStream = new BufferedOutputStream(fileOutputStream, COPY_BUFFER_SIZE)) {
+            List<Variant> batch = readBatch(reader, batchSize);
+            while (!batch.isEmpty()) {
+                List<CellBaseDataResult<VariantAnnotation>> results = calculator.getAnnotationByVariantList(batch,
+                        new QueryOptions(queryOptions));
+                for (CellBaseDataResult<VariantAnnotation> result : results) {
+                    for (VariantAnnotation variantAnnotation : result.getResults()) {
+                        JSON_OBJECT_WRITER.writeValue(outputStream, variantAnnotation);
+                        outputStream.write(NEW_LINE);
+                        numAnnotations++;
+                    }
+                }
+                numVariants += batch.size();
+                outputStream.flush();
+                synchronized (this) {
+                    resultsLength = fileOutputStream.getChannel().position();
+                    notifyAll();
+                }
+                batch = readBatch(reader, batchSize);
+            }
+            finalStatus = Status.DONE;
+            errorMessage = null;
+        } catch (Exception e) {
+            errorMessage = e.getMessage() != null ? e.getMessage() : e.toString();
+        } finally {
+            finish(finalStatus, errorMessage);
+        }
+    }
+
+    private synchronized void finish(Status finalStatus, String errorMessage) {
+        error = errorMessage;
+        finishTime = System.currentTimeMillis();
+        status = finalStatus;
+        notifyAll();
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.ERROR;
+    }
+
+    /**
+     * Copies the results to the output stream as batches are annotated, returns once the job has finished and all
+     * the results have been written.
+     *
+     * @param outputStream stream the NDJSON results are written to, it is not closed
+     * @throws IOException if the results could not be written, or the job failed
+     */
+    public void writeResults(OutputStream outputStream) throws IOException {
+        long position = 0;
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        InputStream inputStream = null;
+        try {
+            while (true) {
+                long available;
+                boolean finished;
+                synchronized (this) {
+                    while (resultsLength == position && !isFinished()) {
+                        wait(WAIT_MILLIS);
+                    }
+                    available = resultsLength;
+                    finished = isFinished();
+                }
+                if (available > position) {
+                    if (inputStream == null) {
+                        inputStream = new BufferedInputStream(Files.newInputStream(getResultsFile()), COPY_BUFFER_SIZE);
+                    }
+                    while (position < available) {
+                        int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, available - position));
+                        if (read < 0) {
+                            throw new EOFException("Results of annotation job " + id + " have been deleted");
+                        }
+                        outputStream.write(buffer, 0, read);
+                        position += read;
+                    }
+                    // Clients get each batch as soon as it is annotated
+                    outputStream.flush();
+                }
+                if (finished && position == available) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for annotation job " + id);
+        } finally {
+            if (inputStream != null) {
+                inputStream.close();
+            }
+        }
+        if (status == Status.ERROR) {
+            throw new IOException("Annotation job " + id + " failed: " + error);
+        }
+    }
+
+    void delete() {
+        FileUtils.deleteQuietly(directory.toFile());
+    }
+
+    public ObjectMap getStats() {
+        return new ObjectMap()
+                .append("id", id)
+                .append("species", species)
+                .append("assembly", assembly)
+                .append("status", status.name())
+                .append("error", error)
+                .append("numVariants", numVariants)
+                .append("numAnnotations", numAnnotations)
+                .append("creationTime", creationTime)
+                .append("startTime", startTime)
+                .append("finishTime", finishTime);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    long getFinishTime() {
+        return finishTime;
+    }
+
+    /**
+     * Copies the input of a job to a file, failing as soon as it is larger than the max size.
+     *
+     * @param input input as uploaded
+     * @param file file the input is copied to
+     * @param maxSize max size of the input in bytes
+     * @return size of the input in bytes
+     * @throws IOException if the input could not be copied
+     * @throws CellbaseException if the input is larger than the max size
+     */
+    static long copyInput(InputStream input, Path file, long maxSize) throws IOException, CellbaseException {
+        long size = 0;
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                size += read;
+                if (size > maxSize) {
+                    throw new CellbaseException("Input of the annotation job larger than the max size of " + maxSize + " bytes");
+                }
+                outputStream.write(buffer, 0, read);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Opens the input of a job, gzipped or not.
+     *
+     * @param input input file
+     * @return reader of the input lines
+     * @throws IOException if the file could not be read
+     */
+    static BufferedReader openInput(Path input) throws IOException {
+        InputStream inputStream = new BufferedInputStream(Files.newInputStream(input), COPY_BUFFER_SIZE);
+        inputStream.mark(2);
+        int magic = inputStream.read() | (inputStream.read() << 8);
+        inputStream.reset();
+        if (magic == GZIPInputStream.GZIP_MAGIC) {
+            inputStream = new GZIPInputStream(inputStream, COPY_BUFFER_SIZE);
+        }
+        return new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the next variants of the input, either VCF lines, one variant per alternate allele, or variants in the
+     * 'chr:pos:ref:alt' format separated by commas or new lines. Header lines are skipped.
+     *
+     * @param reader input reader
+     * @param batchSize number of variants to read, one more line is read if the batch is not full
+     * @return variants read, empty once the input is exhausted
+     * @throws IOException if the input could not be read
+     */
+    static List<Variant> readBatch(BufferedReader reader, int batchSize) throws IOException {
+        List<Variant> variants = new ArrayList<>(batchSize);
+        String line;
+        while (variants.size() < batchSize && (line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.indexOf('\t') >= 0) {
+                String[] fields = line.split("\t", 6);
+                if (fields.length < 5) {
+                    throw new IllegalArgumentException("Malformed VCF line, at least 5 columns expected: " + line);
+                }
+                int position = Integer.parseInt(fields[1]);
+                for (String alternate : fields[4].split(",")) {
+                    // No variant or overlapping deletion
+                    if (!alternate.equals(".") && !alternate.equals("*")) {
+                        variants.add(new Variant(fields[0], position, fields[3], alternate));
+                    }
+                }
+            } else {
+                for (String variant : line.split(",")) {
+                    if (!variant.trim().isEmpty()) {
+                        variants.add(new Variant(variant.trim()));
+                    }
+                }
+            }
+        }
+        return variants.isEmpty() ? Collections.emptyList() : variants;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.cellbase.core.config.AnnotationJobProperties;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.exception.CellbaseException;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the asynchronous annotation jobs of the JVM in a bounded pool, so that a large VCF is submitted once and
+ * annotated in batches by the server instead of being split by the client into many small synchronous requests.
+ * Jobs are kept in memory, finished jobs and their files are deleted once the retention time has passed, checked
+ * every minute. When the queue is full new jobs are rejected.
+ */
+public final class AnnotationJobManager {
+
+    private static final long EXPIRY_CHECK_MINUTES = 1;
+
+    private static AnnotationJobManager instance;
+
+    private final ThreadPoolExecutor threadPoolExecutor;
+    private final ScheduledExecutorService expiryExecutor;
+    private final Path directory;
+    private final int batchSize;
+    private final long retentionMillis;
+    private final long maxInputSize;
+    private final Map<String, AnnotationJob> jobs = new ConcurrentHashMap<>();
+
+    private final AtomicLong submittedJobs = new AtomicLong();
+    private final AtomicLong rejectedJobs = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(AnnotationJobManager.class);
+
+    private AnnotationJobManager(AnnotationJobProperties properties) {
+        int numThreads = properties.getNumThreads() > 0 ? properties.getNumThreads() : AnnotationJobProperties.DEFAULT_NUM_THREADS;
+        int maxQueuedJobs = properties.getMaxQueuedJobs() > 0
+                ? properties.getMaxQueuedJobs() : AnnotationJobProperties.DEFAULT_MAX_QUEUED_JOBS;
+        this.batchSize = properties.getBatchSize() > 0 ? properties.getBatchSize() : AnnotationJobProperties.DEFAULT_BATCH_SIZE;
+        this.retentionMillis = TimeUnit.MINUTES.toMillis(properties.getRetentionMinutes());
+        this.maxInputSize = (properties.getMaxInputSizeMb() > 0
+                ? properties.getMaxInputSizeMb() : AnnotationJobProperties.DEFAULT_MAX_INPUT_SIZE_MB) * 1024L * 1024L;
+        this.directory = StringUtils.isNotEmpty(properties.getDirectory())
+                ? Paths.get(properties.getDirectory())
+                : Paths.get(System.getProperty("java.io.tmpdir"), "cellbase-annotation-jobs");
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.threadPoolExecutor = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs), runnable -> {
+                    Thread thread = new Thread(runnable, "annotation-job-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.threadPoolExecutor.allowCoreThreadTimeOut(true);
+        this.expiryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "annotation-job-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.expiryExecutor.scheduleWithFixedDelay(this::deleteExpiredJobs, EXPIRY_CHECK_MINUTES, EXPIRY_CHECK_MINUTES,
+                TimeUnit.MINUTES);
+        logger.info("Annotation job manager created with {} threads, a queue of {} jobs and directory {}", numThreads,
+                maxQueuedJobs, directory);
+    }
+
+    /**
+     * Returns the job manager shared by the whole JVM, creating it on first use.
+     *
+     * @param configuration CellBase configuration, the 'annotation.jobs' section is used, defaults are used if absent.
+     *                      Only the configuration provided on first use is taken into account.
+     * @return shared job manager
+     */
+    public static synchronized AnnotationJobManager getInstance(CellBaseConfiguration configuration) {
+        if (instance == null) {
+            AnnotationJobProperties properties = (configuration != null && configuration.getAnnotation() != null
+                    && configuration.getAnnotation().getJobs() != null)
+                    ? configuration.getAnnotation().getJobs()
+                    : new AnnotationJobProperties();
+            instance = new AnnotationJobManager(properties);
+        }
+        return instance;
+    }
+
+    /**
+     * Stores the input and queues the job. The input is fully read before returning.
+     *
+     * @param species species of the variants
+     * @param assembly assembly of the variants
+     * @param input VCF or list of variants, gzipped or not
+     * @param queryOptions annotation options, as for VariantAnnotationCalculator.getAnnotationByVariantList
+     * @param calculator calculator of the species and assembly
+     * @return queued job
+     * @throws IOException if the input could not be stored
+     * @throws CellbaseException if the input is larger than 'annotation.jobs.maxInputSizeMb' or the queue of jobs is full
+     */
+    public AnnotationJob submit(String species, String assembly, InputStream input, QueryOptions queryOptions,
+                                VariantAnnotationCalculator calculator) throws IOException, CellbaseException {
+        String id = UUID.randomUUID().toString();
+        Path jobDirectory = Files.createDirectories(directory.resolve(id));
+        AnnotationJob job = new AnnotationJob(id, species, assembly, jobDirectory, queryOptions);
+        try {
+            AnnotationJob.copyInput(input, job.getInputFile(), maxInputSize);
+            threadPoolExecutor.execute(() -> job.run(calculator, batchSize));
+        } catch (IOException | CellbaseException | RuntimeException e) {
+            job.delete();
+            if (e instanceof RejectedExecutionException) {
+                rejectedJobs.incrementAndGet();
+                throw new CellbaseException("Too many annotation jobs queued, please try again later");
+            }
+            throw e;
+        }
+        jobs.put(id, job);
+        submittedJobs.incrementAndGet();
+        logger.info("Annotation job {} queued for {} {}", id, species, assembly);
+        return job;
+    }
+
+    /**
+     * Returns a job.
+     *
+     * @param id job id
+     * @return job, null if it does not exist or has already been deleted
+     */
+    public AnnotationJob get(String id) {
+        return jobs.get(id);
+    }
+
+    private void deleteExpiredJobs() {
+        // Exceptions would cancel the scheduled checks
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<AnnotationJob> iterator = jobs.values().iterator();
+            while (iterator.hasNext()) {
+                AnnotationJob job = iterator.next();
+                if (job.isFinished() && now - job.getFinishTime() > retentionMillis) {
+                    iterator.remove();
+                    job.delete();
+                    logger.debug("Annotation job {} expired", job.getId());
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Error deleting expired annotation jobs", e);
+        }
+    }
+
+    public ObjectMap getStats() {
+        return new ObjectMap()
+                .append("activeJobs", threadPoolExecutor.getActiveCount())
+                .append("queuedJobs", threadPoolExecutor.getQueue().size())
+                .append("submittedJobs", submittedJobs.get())
+                .append("completedJobs", threadPoolExecutor.getCompletedTaskCount())
+                .append("rejectedJobs", rejectedJobs.get())
+                .append("retainedJobs", jobs.size());
+    }
+}
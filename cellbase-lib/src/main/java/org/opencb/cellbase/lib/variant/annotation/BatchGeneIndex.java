@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Region;
+
+import java.util.*;
+
+/**
+ * Per-chromosome index over the genes fetched for an annotation batch. Genes are sorted by start and a running
+ * maximum of their end coordinates is kept so that overlap lookups are a binary search followed by a short backwards
+ * sweep, rather than a scan of the whole batch gene list for every variant.
+ *
+ * Overlap semantics are those of the former linear scan: a gene is affected by a region if the gene span padded
+ * GENE_PADDING nts on both sides overlaps the region. Results are returned in batch order.
+ */
+public class BatchGeneIndex {
+
+    public static final int GENE_PADDING = 5000;
+
+    private final List<Gene> geneList;
+    private final Map<String, ChromosomeIndex> chromosomeIndexMap;
+
+    public BatchGeneIndex(List<Gene> geneList) {
+        this.geneList = geneList;
+        this.chromosomeIndexMap = new HashMap<>();
+
+        Map<String, List<Integer>> positionsByChromosome = new HashMap<>();
+        for (int i = 0; i < geneList.size(); i++) {
+            Gene gene = geneList.get(i);
+            if (gene.getChromosome() != null) {
+                positionsByChromosome.computeIfAbsent(gene.getChromosome(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> entry : positionsByChromosome.entrySet()) {
+            chromosomeIndexMap.put(entry.getKey(), new ChromosomeIndex(geneList, entry.getValue()));
+        }
+    }
+
+    public List<Gene> getGeneList() {
+        return geneList;
+    }
+
+    /**
+     * Returns the genes affected by any of the regions. A gene will appear once per region it is affected by, as in
+     * the former linear scan, so that breakends whose two breakpoints fall on the same gene behave as before.
+     *
+     * @param regionList regions, typically obtained from a single variant
+     * @return list of affected genes in the order they were provided to the index
+     */
+    public List<Gene> getAffectedGenes(List<Region> regionList) {
+        int[] hits = new int[8];
+        int numHits = 0;
+        for (Region region : regionList) {
+            ChromosomeIndex chromosomeIndex = chromosomeIndexMap.get(region.getChromosome());
+            if (chromosomeIndex != null) {
+                int queryStart = Math.max(1, region.getStart() - GENE_PADDING);
+                int queryEnd = region.getEnd() + GENE_PADDING;
+                // Last gene starting before the padded region end
+                int i = chromosomeIndex.upperBound(queryEnd) - 1;
+                while (i >= 0 && chromosomeIndex.maxEnds[i] >= queryStart) {
+                    if (chromosomeIndex.ends[i] >= queryStart) {
+                        if (numHits == hits.length) {
+                            hits = Arrays.copyOf(hits, hits.length * 2);
+                        }
+                        hits[numHits++] = chromosomeIndex.positions[i];
+                    }
+                    i--;
+                }
+            }
+        }
+
+        // Keep the original batch order
+        Arrays.sort(hits, 0, numHits);
+        List<Gene> affectedGeneList = new ArrayList<>(numHits);
+        for (int i = 0; i < numHits; i++) {
+            affectedGeneList.add(geneList.get(hits[i]));
+        }
+        return affectedGeneList;
+    }
+
+    private static class ChromosomeIndex {
+        private final int[] starts;
+        private final int[] ends;
+        // maxEnds[i] is the greatest end coordinate among genes 0..i
+        private final int[] maxEnds;
+        // positions[i] is the position of the gene within the batch gene list
+        private final int[] positions;
+
+        ChromosomeIndex(List<Gene> geneList, List<Integer> geneListPositions) {
+            geneListPositions.sort(Comparator.comparingInt(position -> geneList.get(position).getStart()));
+
+            int size = geneListPositions.size();
+            starts = new int[size];
+            ends = new int[size];
+            maxEnds = new int[size];
+            positions = new int[size];
+            int maxEnd = Integer.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                Gene gene = geneList.get(geneListPositions.get(i));
+                positions[i] = geneListPositions.get(i);
+                starts[i] = gene.getStart();
+                ends[i] = gene.getEnd();
+                maxEnd = Math.max(maxEnd, gene.getEnd());
+                maxEnds[i] = maxEnd;
+            }
+        }
+
+        /**
+         * @param position genomic coordinate
+         * @return index of the first gene starting after position
+         */
+        private int upperBound(int position) {
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] <= position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.ProteinVariantAnnotation;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.managers.ProteinManager;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the non-synonymous consequence types of an annotation batch so that their protein annotation (SIFT,
+ * PolyPhen, REVEL and UniProt features) is fetched with a few queries per batch instead of a few queries per
+ * consequence type.
+ *
+ * When the batch is run each consequence type gets the protein annotation of the amino acid change it holds at that
+ * moment, unless its protein annotation has been replaced in the meantime, e.g. by the phased variants adjustment.
+ */
+public class ProteinAnnotationBatch {
+
+    private final List<Variant> variants;
+    private final List<ConsequenceType> consequenceTypes;
+    private final List<ProteinVariantAnnotation> pendingProteinVariantAnnotations;
+
+    public ProteinAnnotationBatch() {
+        this.variants = new ArrayList<>();
+        this.consequenceTypes = new ArrayList<>();
+        this.pendingProteinVariantAnnotations = new ArrayList<>();
+    }
+
+    public void add(Variant variant, ConsequenceType consequenceType) {
+        if (consequenceType.getProteinVariantAnnotation() != null) {
+            variants.add(variant);
+            consequenceTypes.add(consequenceType);
+            pendingProteinVariantAnnotations.add(consequenceType.getProteinVariantAnnotation());
+        }
+    }
+
+    public int size() {
+        return consequenceTypes.size();
+    }
+
+    /**
+     * Fetches the protein annotation of all the pending consequence types and sets it. The batch is empty afterwards.
+     *
+     * @param proteinManager protein manager used to fetch the annotation
+     */
+    public void run(ProteinManager proteinManager) {
+        List<Variant> variantList = new ArrayList<>(consequenceTypes.size());
+        List<ConsequenceType> consequenceTypeList = new ArrayList<>(consequenceTypes.size());
+        List<String> transcriptIds = new ArrayList<>(consequenceTypes.size());
+        List<Integer> positions = new ArrayList<>(consequenceTypes.size());
+        List<String> aaReferences = new ArrayList<>(consequenceTypes.size());
+        List<String> aaAlternates = new ArrayList<>(consequenceTypes.size());
+        for (int i = 0; i < consequenceTypes.size(); i++) {
+            ConsequenceType consequenceType = consequenceTypes.get(i);
+            ProteinVariantAnnotation proteinVariantAnnotation = consequenceType.getProteinVariantAnnotation();
+            if (proteinVariantAnnotation != null && proteinVariantAnnotation == pendingProteinVariantAnnotations.get(i)) {
+                String transcriptId = consequenceType.getTranscriptId();
+                // transcript may contain version, e.g. ENST00000382011.9. sift/polyphen do NOT contain version, so remove version
+                if (transcriptId != null && transcriptId.contains(".")) {
+                    transcriptId = transcriptId.split("\\.")[0];
+                }
+                variantList.add(variants.get(i));
+                consequenceTypeList.add(consequenceType);
+                transcriptIds.add(transcriptId);
+                positions.add(proteinVariantAnnotation.getPosition());
+                aaReferences.add(proteinVariantAnnotation.getReference());
+                aaAlternates.add(proteinVariantAnnotation.getAlternate());
+            }
+        }
+        variants.clear();
+        consequenceTypes.clear();
+        pendingProteinVariantAnnotations.clear();
+
+        if (!consequenceTypeList.isEmpty()) {
+            List<CellBaseDataResult<ProteinVariantAnnotation>> results = proteinManager.getVariantAnnotation(variantList,
+                    transcriptIds, positions, aaReferences, aaAlternates, new QueryOptions());
+            for (int i = 0; i < consequenceTypeList.size(); i++) {
+                consequenceTypeList.get(i).setProteinVariantAnnotation(results.get(i).getNumResults() > 0
+                        ? results.get(i).getResults().get(0)
+                        : null);
+            }
+        }
+    }
+}
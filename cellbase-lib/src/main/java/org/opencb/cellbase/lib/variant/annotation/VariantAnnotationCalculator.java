@@ -30,6 +30,7 @@ import org.opencb.cellbase.core.api.query.QueryException;
 import org.opencb.cellbase.core.api.query.LogicalList;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.impl.core.RegulatoryOverlapIndex;
 import org.opencb.cellbase.lib.managers.*;
 import org.opencb.cellbase.lib.variant.VariantAnnotationUtils;
 import org.opencb.cellbase.lib.variant.hgvs.HgvsCalculator;
@@ -56,17 +57,23 @@ import static org.opencb.cellbase.core.variant.PhasedQueryManager.*;
 public class VariantAnnotationCalculator {
     private static final String EMPTY_STRING = "";
     private static final String ALTERNATE = "1";
-    private GenomeManager genomeManager;
-    private GeneManager geneManager;
-    private RegulatoryManager regulationManager;
-    private VariantManager variantManager;
-    private ClinicalManager clinicalManager;
-    private RepeatsManager repeatsManager;
-    private ProteinManager proteinManager;
+    // Shared by all the calculators of the same species and assembly
+    private final GenomeManager genomeManager;
+    private final GeneManager geneManager;
+    private final RegulatoryManager regulationManager;
+    private final VariantManager variantManager;
+    private final ClinicalManager clinicalManager;
+    private final RepeatsManager repeatsManager;
+    private final ProteinManager proteinManager;
+    private final VariantAnnotationExecutor executor;
+    private final HgvsCalculator hgvsCalculator;
+    private final VariantAnnotationResources resources;
+
+    // Options of the request, set at parseQueryParam
     private Set<String> annotatorSet;
     private List<String> includeGeneFields;
 
-    private final VariantNormalizer normalizer;
+    private VariantNormalizer normalizer;
     private boolean normalize = false;
     private boolean decompose = true;
     private boolean phased = true;
@@ -77,36 +84,37 @@ public class VariantAnnotationCalculator {
     private String consequenceTypeSource = null;
 
     private static Logger logger = LoggerFactory.getLogger(VariantAnnotationCalculator.class);
-    private static HgvsCalculator hgvsCalculator;
 
     private static final String REGULATORY_REGION_FEATURE_TYPE_ATTRIBUTE = "featureType";
     private static final String TF_BINDING_SITE = ParamConstants.FeatureType.TF_binding_site.name();
+    // Longer variants, e.g. large SVs and CNVs, are probed in the database instead of loading all their features
+    private static final int REGULATORY_OVERLAP_INDEX_MAX_REGION_LENGTH = 10000;
 
     public VariantAnnotationCalculator(String species, String assembly, CellBaseManagerFactory cellbaseManagerFactory)
             throws CellbaseException {
-        this.genomeManager = cellbaseManagerFactory.getGenomeManager(species, assembly);
-        this.variantManager = cellbaseManagerFactory.getVariantManager(species, assembly);
-        this.geneManager = cellbaseManagerFactory.getGeneManager(species, assembly);
-        this.regulationManager = cellbaseManagerFactory.getRegulatoryManager(species, assembly);
-        this.proteinManager = cellbaseManagerFactory.getProteinManager(species, assembly);
-        this.clinicalManager = cellbaseManagerFactory.getClinicalManager(species, assembly);
-        this.repeatsManager = cellbaseManagerFactory.getRepeatsManager(species, assembly);
-
-        // Initialises normaliser configuration with default values. HEADS UP: configuration might be updated
-        // at parseQueryParam
-        this.normalizer = new VariantNormalizer(getNormalizerConfig());
-
-         hgvsCalculator = new HgvsCalculator(genomeManager);
-
-        logger.debug("VariantAnnotationMongoDBAdaptor: in 'constructor'");
+        this(VariantAnnotationResources.getInstance(species, assembly, cellbaseManagerFactory));
     }
 
-    private VariantNormalizer.VariantNormalizerConfig getNormalizerConfig() {
-        return (new VariantNormalizer.VariantNormalizerConfig())
-                .setReuseVariants(false)
-                .setNormalizeAlleles(false)
-                .setDecomposeMNVs(decompose)
-                .enableLeftAlign(new CellBaseNormalizerSequenceAdaptor(genomeManager));
+    /**
+     * Creates a calculator for a single request, or for a sequence of requests from the same thread. Calculators are
+     * cheap to create, all the heavy state is shared through the resources.
+     *
+     * @param resources resources of the species and assembly, see VariantAnnotationResources.getInstance
+     */
+    public VariantAnnotationCalculator(VariantAnnotationResources resources) {
+        this.resources = resources;
+        this.genomeManager = resources.getGenomeManager();
+        this.variantManager = resources.getVariantManager();
+        this.geneManager = resources.getGeneManager();
+        this.regulationManager = resources.getRegulationManager();
+        this.proteinManager = resources.getProteinManager();
+        this.clinicalManager = resources.getClinicalManager();
+        this.repeatsManager = resources.getRepeatsManager();
+        this.executor = resources.getExecutor();
+        this.hgvsCalculator = resources.getHgvsCalculator();
+
+        // Default normaliser configuration, might be changed at parseQueryParam
+        this.normalizer = resources.getNormalizer(decompose);
     }
 
     @Deprecated
@@ -115,8 +123,8 @@ public class VariantAnnotationCalculator {
         long dbTimeStart = System.currentTimeMillis();
 
         parseQueryParam(queryOptions);
-        List<Gene> batchGeneList = getBatchGeneList(Collections.singletonList(variant));
-        List<Gene> geneList = getAffectedGenes(batchGeneList, variant);
+        BatchGeneIndex batchGeneIndex = new BatchGeneIndex(getBatchGeneList(Collections.singletonList(variant)));
+        List<Gene> geneList = getAffectedGenes(batchGeneIndex, variant);
 
         // TODO the last 'true' parameter needs to be changed by annotatorSet.contains("regulatory") once is ready
         List<ConsequenceType> consequenceTypeList = getConsequenceTypeList(variant, geneList, true,
@@ -241,9 +249,10 @@ public class VariantAnnotationCalculator {
         return variantCellBaseDataResult.first();
     }
 
-    private List<Gene> setGeneAnnotation(List<Gene> batchGeneList, Variant variant) throws QueryException, IllegalAccessException {
+    private List<Gene> setGeneAnnotation(BatchGeneIndex batchGeneIndex, Variant variant)
+            throws QueryException, IllegalAccessException {
         // Fetch overlapping genes for this variant
-        List<Gene> geneList = getAffectedGenes(batchGeneList, variant);
+        List<Gene> geneList = getAffectedGenes(batchGeneIndex, variant);
         VariantAnnotation variantAnnotation = variant.getAnnotation();
 
         /*
@@ -350,87 +359,90 @@ public class VariantAnnotationCalculator {
         long globalStartTime = System.currentTimeMillis();
         long startTime;
 
-        // Object to be returned
-        List<VariantAnnotation> variantAnnotationList = new ArrayList<>(normalizedVariantList.size());
+        // Object to be returned. VariantAnnotation objects are created before launching the asynchronous annotators
+        // so that these can write their results as soon as they finish
+        List<VariantAnnotation> variantAnnotationList = initVariantAnnotationList(normalizedVariantList);
 
-        /*
-         * Next three async blocks calculate annotations using Futures, this will be calculated in a different thread.
-         * Once the main loop has finished then they will be stored. This provides a ~30% of performance improvement.
-         */
-        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(5);
-        FutureVariationAnnotator futureVariationAnnotator = null;
-        Future<List<CellBaseDataResult<Variant>>> variationFuture = null;
         List<Gene> batchGeneList = getBatchGeneList(normalizedVariantList);
+        // Genes are indexed once per batch; all per-variant gene lookups below query this index
+        BatchGeneIndex batchGeneIndex = new BatchGeneIndex(batchGeneList);
 
+        /*
+         * Next async blocks calculate annotations in the shared executor while the main loop below runs. Each of them
+         * stores its results into the VariantAnnotation objects as soon as its queries have finished. Fields written
+         * by these annotators are not written by the main loop, except for additionalAttributes which is accessed
+         * synchronizing on the VariantAnnotation object.
+         */
+        List<CompletableFuture<Void>> futureList = new ArrayList<>(6);
         if (annotatorSet.contains("variation") || annotatorSet.contains("populationFrequencies")) {
-            futureVariationAnnotator = new FutureVariationAnnotator(normalizedVariantList, new QueryOptions("include",
-                    "id,annotation.populationFrequencies,annotation.additionalAttributes.dgvSpecificAttributes")
+            FutureVariationAnnotator futureVariationAnnotator = new FutureVariationAnnotator(normalizedVariantList,
+                    new QueryOptions("include",
+                            "id,annotation.populationFrequencies,annotation.additionalAttributes.dgvSpecificAttributes")
                     .append("imprecise", imprecise));
-            variationFuture = fixedThreadPool.submit(futureVariationAnnotator);
+            Set<String> variationAnnotatorSet = annotatorSet;
+            futureList.add(executor.supplyAsync(futureVariationAnnotator)
+                    .thenAccept(results -> futureVariationAnnotator.processResults(results, variantAnnotationList,
+                            variationAnnotatorSet)));
         }
 
-        FutureConservationAnnotator futureConservationAnnotator = null;
-        Future<List<CellBaseDataResult<Score>>> conservationFuture = null;
         if (annotatorSet.contains("conservation")) {
-            futureConservationAnnotator = new FutureConservationAnnotator(normalizedVariantList, QueryOptions.empty());
-            conservationFuture = fixedThreadPool.submit(futureConservationAnnotator);
+            FutureConservationAnnotator futureConservationAnnotator = new FutureConservationAnnotator(normalizedVariantList,
+                    QueryOptions.empty());
+            futureList.add(executor.supplyAsync(futureConservationAnnotator)
+                    .thenAccept(results -> futureConservationAnnotator.processResults(results, variantAnnotationList)));
         }
 
-        FutureVariantFunctionalScoreAnnotator futureVariantFunctionalScoreAnnotator = null;
-        Future<List<CellBaseDataResult<Score>>> variantFunctionalScoreFuture = null;
         if (annotatorSet.contains("functionalScore")) {
-            futureVariantFunctionalScoreAnnotator = new FutureVariantFunctionalScoreAnnotator(normalizedVariantList, QueryOptions.empty());
-            variantFunctionalScoreFuture = fixedThreadPool.submit(futureVariantFunctionalScoreAnnotator);
+            FutureVariantFunctionalScoreAnnotator futureVariantFunctionalScoreAnnotator
+                    = new FutureVariantFunctionalScoreAnnotator(normalizedVariantList, QueryOptions.empty());
+            futureList.add(executor.supplyAsync(futureVariantFunctionalScoreAnnotator)
+                    .thenAccept(results -> futureVariantFunctionalScoreAnnotator.processResults(results, variantAnnotationList)));
         }
 
-        FutureClinicalAnnotator futureClinicalAnnotator = null;
-        Future<List<CellBaseDataResult<Variant>>> clinicalFuture = null;
         // "clinical" is deprecated, replaced with traitAssociation
         if (annotatorSet.contains("clinical") || annotatorSet.contains("traitAssociation")) {
             QueryOptions queryOptions = new QueryOptions();
             queryOptions.add(ParamConstants.QueryParams.PHASE.key(), phased);
             queryOptions.add(ParamConstants.QueryParams.CHECK_AMINO_ACID_CHANGE.key(), checkAminoAcidChange);
-            futureClinicalAnnotator = new FutureClinicalAnnotator(normalizedVariantList, batchGeneList, queryOptions);
-            clinicalFuture = fixedThreadPool.submit(futureClinicalAnnotator);
+            FutureClinicalAnnotator futureClinicalAnnotator = new FutureClinicalAnnotator(normalizedVariantList, batchGeneList,
+                    queryOptions);
+            futureList.add(executor.supplyAsync(futureClinicalAnnotator)
+                    .thenAccept(results -> futureClinicalAnnotator.processResults(results, variantAnnotationList)));
         }
 
-        FutureRepeatsAnnotator futureRepeatsAnnotator = null;
-        Future<List<CellBaseDataResult<Repeat>>> repeatsFuture = null;
         if (annotatorSet.contains("repeats")) {
-            futureRepeatsAnnotator = new FutureRepeatsAnnotator(normalizedVariantList);
-            repeatsFuture = fixedThreadPool.submit(futureRepeatsAnnotator);
+            FutureRepeatsAnnotator futureRepeatsAnnotator = new FutureRepeatsAnnotator(normalizedVariantList);
+            futureList.add(executor.supplyAsync(futureRepeatsAnnotator)
+                    .thenAccept(results -> futureRepeatsAnnotator.processResults(results, variantAnnotationList)));
         }
 
-        FutureCytobandAnnotator futureCytobandAnnotator = null;
-        Future<List<CellBaseDataResult<Cytoband>>> cytobandFuture = null;
         if (annotatorSet.contains("cytoband")) {
-            futureCytobandAnnotator = new FutureCytobandAnnotator(normalizedVariantList, QueryOptions.empty());
-            cytobandFuture = fixedThreadPool.submit(futureCytobandAnnotator);
+            FutureCytobandAnnotator futureCytobandAnnotator = new FutureCytobandAnnotator(normalizedVariantList,
+                    QueryOptions.empty());
+            futureList.add(executor.supplyAsync(futureCytobandAnnotator)
+                    .thenAccept(results -> futureCytobandAnnotator.processResults(results, variantAnnotationList)));
         }
 
         /*
-         * We iterate over all variants to get the rest of the annotations and to create the VariantAnnotation objects
+         * We iterate over all variants to get the rest of the annotations
          */
         Queue<Variant> variantBuffer = new LinkedList<>();
+        // Protein annotation of the non-synonymous consequence types is fetched at once after the main loop
+        ProteinAnnotationBatch proteinAnnotationBatch = new ProteinAnnotationBatch();
+        RegulatoryOverlapIndex regulatoryOverlapIndex = null;
+        if (annotatorSet.contains("consequenceType")) {
+            try {
+                regulatoryOverlapIndex = getRegulatoryOverlapIndex(normalizedVariantList);
+            } catch (Exception e) {
+                // Each variant is then probed in the database within its own error handling
+                logger.warn("Unable to index the regulatory features of the batch, querying them for each variant: {}",
+                        e.getMessage());
+            }
+        }
         startTime = System.currentTimeMillis();
         for (int i = 0; i < normalizedVariantList.size(); i++) {
-            // normalizedVariantList is the passed by reference argument - modifying normalizedVariantList will
-            // modify user-provided Variant objects. If there's no annotation - just set it; if there's an annotation
-            // object already created, let's only overwrite those fields created by the annotator
-            VariantAnnotation variantAnnotation;
-            if (normalizedVariantList.get(i).getAnnotation() == null) {
-                variantAnnotation = new VariantAnnotation();
-                normalizedVariantList.get(i).setAnnotation(variantAnnotation);
-            } else {
-                variantAnnotation = normalizedVariantList.get(i).getAnnotation();
-            }
-
-            variantAnnotation.setChromosome(normalizedVariantList.get(i).getChromosome());
-            variantAnnotation.setStart(normalizedVariantList.get(i).getStart());
-            variantAnnotation.setReference(normalizedVariantList.get(i).getReference());
-            variantAnnotation.setAlternate(normalizedVariantList.get(i).getAlternate());
-
-            List<Gene> variantGeneList = setGeneAnnotation(batchGeneList, normalizedVariantList.get(i));
+            VariantAnnotation variantAnnotation = variantAnnotationList.get(i);
+            List<Gene> variantGeneList = setGeneAnnotation(batchGeneIndex, normalizedVariantList.get(i));
 
             // Better not run hgvs calculation with a Future for the following reasons:
             //   * geneList is needed in order to calculate the hgvs for ALL VARIANTS
@@ -470,7 +482,7 @@ public class VariantAnnotationCalculator {
             if (annotatorSet.contains("consequenceType")) {
                 try {
                     List<ConsequenceType> consequenceTypeList = getConsequenceTypeList(normalizedVariantList.get(i),
-                        variantGeneList, true, QueryOptions.empty());
+                        variantGeneList, true, regulatoryOverlapIndex, QueryOptions.empty(), proteinAnnotationBatch);
                     variantAnnotation.setConsequenceTypes(consequenceTypeList);
                     if (phased) {
                         checkAndAdjustPhasedConsequenceTypes(normalizedVariantList.get(i), variantBuffer);
@@ -490,8 +502,6 @@ public class VariantAnnotationCalculator {
                 }
             }
 
-            variantAnnotationList.add(variantAnnotation);
-
         }
 
         // Adjust phase of two last variants - if still anything remaining to adjust. This can happen if the two last
@@ -500,70 +510,80 @@ public class VariantAnnotationCalculator {
             adjustPhasedConsequenceTypes(variantBuffer.toArray());
         }
 
+        if (proteinAnnotationBatch.size() > 0) {
+            try {
+                proteinAnnotationBatch.run(proteinManager);
+            } catch (Exception e) {
+                logger.error("Unhandled error when calculating protein annotation. Leaving protein annotations without scores"
+                        + " nor features.", e);
+            }
+        }
+
         logger.debug("Main loop iteration annotation performance is {}ms for {} variants", System.currentTimeMillis()
                 - startTime, normalizedVariantList.size());
 
         /*
-         * Now, hopefully the other annotations have finished and we can store the results.
-         * Method 'processResults' has been implemented in the same class for sanity.
+         * Results of the asynchronous annotators are stored as soon as each finishes, just wait for all of them
          */
-        if (futureVariationAnnotator != null) {
-            futureVariationAnnotator.processResults(variationFuture, variantAnnotationList, annotatorSet);
+        CompletableFuture.allOf(futureList.toArray(new CompletableFuture[0])).get();
+        logger.debug("Variant annotation executor stats: {}", executor.getStats());
+        if (logger.isDebugEnabled() && geneManager.getGeneModelCacheStats() != null) {
+            logger.debug("Gene model cache stats: {}", geneManager.getGeneModelCacheStats());
         }
-        if (futureConservationAnnotator != null) {
-            futureConservationAnnotator.processResults(conservationFuture, variantAnnotationList);
-        }
-        if (futureVariantFunctionalScoreAnnotator != null) {
-            futureVariantFunctionalScoreAnnotator.processResults(variantFunctionalScoreFuture, variantAnnotationList);
-        }
-        if (futureClinicalAnnotator != null) {
-            futureClinicalAnnotator.processResults(clinicalFuture, variantAnnotationList);
-        }
-        if (futureRepeatsAnnotator != null) {
-            futureRepeatsAnnotator.processResults(repeatsFuture, variantAnnotationList);
-        }
-        if (futureCytobandAnnotator != null) {
-            futureCytobandAnnotator.processResults(cytobandFuture, variantAnnotationList);
-        }
-        fixedThreadPool.shutdown();
-
 
         logger.debug("Total batch annotation performance is {}ms for {} variants", System.currentTimeMillis()
                 - globalStartTime, normalizedVariantList.size());
         return variantAnnotationList;
     }
 
+    private List<VariantAnnotation> initVariantAnnotationList(List<Variant> normalizedVariantList) {
+        List<VariantAnnotation> variantAnnotationList = new ArrayList<>(normalizedVariantList.size());
+        for (Variant variant : normalizedVariantList) {
+            // normalizedVariantList is the passed by reference argument - modifying normalizedVariantList will
+            // modify user-provided Variant objects. If there's no annotation - just set it; if there's an annotation
+            // object already created, let's only overwrite those fields created by the annotator
+            VariantAnnotation variantAnnotation;
+            if (variant.getAnnotation() == null) {
+                variantAnnotation = new VariantAnnotation();
+                variant.setAnnotation(variantAnnotation);
+            } else {
+                variantAnnotation = variant.getAnnotation();
+            }
+
+            variantAnnotation.setChromosome(variant.getChromosome());
+            variantAnnotation.setStart(variant.getStart());
+            variantAnnotation.setReference(variant.getReference());
+            variantAnnotation.setAlternate(variant.getAlternate());
+
+            variantAnnotationList.add(variantAnnotation);
+        }
+        return variantAnnotationList;
+    }
+
     public List<Gene> getBatchGeneList(List<Variant> variantList)
             throws QueryException, IllegalAccessException {
         List<Region> regionList = variantListToRegionList(variantList);
         // Add +-5Kb for gene search
         for (Region region : regionList) {
-            region.setStart(Math.max(1, region.getStart() - 5000));
-            region.setEnd(region.getEnd() + 5000);
+            region.setStart(Math.max(1, region.getStart() - BatchGeneIndex.GENE_PADDING));
+            region.setEnd(region.getEnd() + BatchGeneIndex.GENE_PADDING);
         }
 
         List<Gene> geneList = new ArrayList<>();
-        GeneQuery geneQuery = new GeneQuery();
-        geneQuery.setIncludes(includeGeneFields);
-        geneQuery.setRegions(regionList);
-
         if (StringUtils.isNotEmpty(consequenceTypeSource)) {
             // sources can be "ensembl" and/or "refseq". query is validated before execution, will fail if invalid value
             String[] sources = consequenceTypeSource.split(",");
             for (String source : sources) {
                 if (source.equalsIgnoreCase(ParamConstants.QueryParams.ENSEMBL.key())) {
-                    geneQuery.setSource(Collections.singletonList(ParamConstants.QueryParams.ENSEMBL.key()));
-                    geneList.addAll(new CellBaseDataResult<>(geneManager.search(geneQuery)).getResults());
+                    geneList.addAll(geneManager.search(regionList, ParamConstants.QueryParams.ENSEMBL.key(), includeGeneFields));
                 }
                 if (source.equalsIgnoreCase(ParamConstants.QueryParams.REFSEQ.key())) {
-                    geneQuery.setSource(Collections.singletonList(ParamConstants.QueryParams.REFSEQ.key()));
-                    geneList.addAll(new CellBaseDataResult<>(geneManager.search(geneQuery)).getResults());
+                    geneList.addAll(geneManager.search(regionList, ParamConstants.QueryParams.REFSEQ.key(), includeGeneFields));
                 }
             }
         } else {
             // if no source specified, default to ensembl
-            geneQuery.setSource(Collections.singletonList(ParamConstants.QueryParams.ENSEMBL.key()));
-            geneList.addAll(new CellBaseDataResult<>(geneManager.search(geneQuery)).getResults());
+            geneList.addAll(geneManager.search(regionList, ParamConstants.QueryParams.ENSEMBL.key(), includeGeneFields));
         }
         return geneList;
     }
@@ -584,8 +604,8 @@ public class VariantAnnotationCalculator {
         // Default behaviour decompose
         decompose = (queryOptions.get("skipDecompose") == null || !queryOptions.getBoolean("skipDecompose"));
         logger.debug("decompose = {}", decompose);
-        // Must update normaliser configuration since normaliser was created on constructor
-        normalizer.getConfig().setDecomposeMNVs(decompose);
+        // Normalisers are shared, the one matching the configuration is used instead of changing it
+        normalizer = resources.getNormalizer(decompose);
 
         // New parameter "ignorePhase" present overrides presence of old "phased" parameter
         if (queryOptions.get("ignorePhase") != null) {
@@ -823,6 +843,13 @@ public class VariantAnnotationCalculator {
     }
 
     private void flagTranscriptAnnotationUpdated(Variant variant, String ensemblTranscriptId) {
+        // FutureVariationAnnotator may be writing additional attributes of this same annotation
+        synchronized (variant.getAnnotation()) {
+            doFlagTranscriptAnnotationUpdated(variant, ensemblTranscriptId);
+        }
+    }
+
+    private void doFlagTranscriptAnnotationUpdated(Variant variant, String ensemblTranscriptId) {
         Map<String, AdditionalAttribute> additionalAttributesMap = variant.getAnnotation().getAdditionalAttributes();
         if (additionalAttributesMap == null) {
             additionalAttributesMap = new HashMap<>();
@@ -844,13 +871,15 @@ public class VariantAnnotationCalculator {
     }
 
     private boolean transcriptAnnotationUpdated(Variant variant, String ensemblTranscriptId) {
-        if (variant.getAnnotation().getAdditionalAttributes() != null
-                && variant.getAnnotation().getAdditionalAttributes().get("phasedTranscripts") != null
-                && variant.getAnnotation().getAdditionalAttributes().get("phasedTranscripts")
-                    .getAttribute().containsKey(ensemblTranscriptId)) {
-            return true;
+        synchronized (variant.getAnnotation()) {
+            if (variant.getAnnotation().getAdditionalAttributes() != null
+                    && variant.getAnnotation().getAdditionalAttributes().get("phasedTranscripts") != null
+                    && variant.getAnnotation().getAdditionalAttributes().get("phasedTranscripts")
+                        .getAttribute().containsKey(ensemblTranscriptId)) {
+                return true;
+            }
+            return false;
         }
-        return false;
     }
 
     private int getUpperCaseLetterPosition(String string) {
@@ -1085,11 +1114,13 @@ public class VariantAnnotationCalculator {
     }
 
     public List<Gene> getAffectedGenes(List<Gene> batchGeneList, Variant variant) {
+        List<Region> regionList = variantToRegionList(variant);
         List<Gene> geneList = new ArrayList<>(batchGeneList.size());
         for (Gene gene : batchGeneList) {
-            for (Region region : variantToRegionList(variant)) {
-                if (region.getChromosome().equals(gene.getChromosome()) && gene.getStart() <= (region.getEnd() + 5000)
-                        && gene.getEnd() >= Math.max(1, region.getStart() - 5000)) {
+            for (Region region : regionList) {
+                if (region.getChromosome().equals(gene.getChromosome())
+                        && gene.getStart() <= (region.getEnd() + BatchGeneIndex.GENE_PADDING)
+                        && gene.getEnd() >= Math.max(1, region.getStart() - BatchGeneIndex.GENE_PADDING)) {
                     geneList.add(gene);
                 }
             }
@@ -1097,6 +1128,10 @@ public class VariantAnnotationCalculator {
         return geneList;
     }
 
+    public List<Gene> getAffectedGenes(BatchGeneIndex batchGeneIndex, Variant variant) {
+        return batchGeneIndex.getAffectedGenes(variantToRegionList(variant));
+    }
+
 //    private List<Gene> getGenesInRange(String chromosome, int start, int end, String includeFields) {
 //        QueryOptions queryOptions = new QueryOptions("include", includeFields);
 //
@@ -1169,23 +1204,25 @@ public class VariantAnnotationCalculator {
         }
     }
 
-    private boolean[] getRegulatoryRegionOverlaps(Variant variant) throws QueryException, IllegalAccessException {
-        // 0: overlaps any regulatory region type
-        // 1: overlaps transcription factor binding site
+    private boolean[] getRegulatoryRegionOverlaps(Variant variant, RegulatoryOverlapIndex regulatoryOverlapIndex)
+            throws QueryException, IllegalAccessException {
         boolean[] overlapsRegulatoryRegion = {false, false};
 
         // Variant type checked in expected order of frequency of occurrence to minimize number of checks
         // Most queries will be SNVs - it's worth implementing an special case for them
         if (VariantType.SNV.equals(variant.getType())) {
-            return getRegulatoryRegionOverlaps(variant.getChromosome(), variant.getStart());
+            return getRegulatoryRegionOverlaps(regulatoryOverlapIndex, variant.getChromosome(), variant.getStart());
         } else if (VariantType.INDEL.equals(variant.getType()) && StringUtils.isBlank(variant.getReference())) {
-            return getRegulatoryRegionOverlaps(variant.getChromosome(), variant.getStart() - 1, variant.getEnd());
+            return getRegulatoryRegionOverlaps(regulatoryOverlapIndex, variant.getChromosome(), variant.getStart() - 1,
+                    variant.getEnd());
         // Short deletions and symbolic variants except breakends
         } else if (!VariantType.BREAKEND.equals(variant.getType())) {
-            return getRegulatoryRegionOverlaps(variant.getChromosome(), variant.getStart(), variant.getEnd());
+            return getRegulatoryRegionOverlaps(regulatoryOverlapIndex, variant.getChromosome(), variant.getStart(),
+                    variant.getEnd());
         // Breakend "variants" only annotate features overlapping the exact positions
         } else  {
-            overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(variant.getChromosome(), Math.max(1, variant.getStart()));
+            overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(regulatoryOverlapIndex, variant.getChromosome(),
+                    Math.max(1, variant.getStart()));
             // If already found one overlapping regulatory region there's no need to keep checking
             if (overlapsRegulatoryRegion[0]) {
                 return overlapsRegulatoryRegion;
@@ -1193,7 +1230,8 @@ public class VariantAnnotationCalculator {
             } else {
                 if (variant.getSv() != null && variant.getSv().getBreakend() != null
                     && variant.getSv().getBreakend().getMate() != null) {
-                    return getRegulatoryRegionOverlaps(variant.getSv().getBreakend().getMate().getChromosome(),
+                    return getRegulatoryRegionOverlaps(regulatoryOverlapIndex,
+                            variant.getSv().getBreakend().getMate().getChromosome(),
                             Math.max(1, variant.getSv().getBreakend().getMate().getPosition()));
                 } else {
                     return overlapsRegulatoryRegion;
@@ -1202,7 +1240,12 @@ public class VariantAnnotationCalculator {
         }
     }
 
-    private boolean[] getRegulatoryRegionOverlaps(String chromosome, Integer position) throws QueryException, IllegalAccessException {
+    private boolean[] getRegulatoryRegionOverlaps(RegulatoryOverlapIndex regulatoryOverlapIndex, String chromosome,
+                                                  int position) throws QueryException, IllegalAccessException {
+        if (regulatoryOverlapIndex != null) {
+            return regulatoryOverlapIndex.getOverlaps(chromosome, position, position, true);
+        }
+
         // 0: overlaps any regulatory region type
         // 1: overlaps transcription factor binding site
         boolean[] overlapsRegulatoryRegion = {false, false};
@@ -1219,8 +1262,7 @@ public class VariantAnnotationCalculator {
                 String regulatoryRegionType = cellBaseDataResult.getResults().get(i).getFeatureType();
                 tfbsFound = regulatoryRegionType != null
                         && (regulatoryRegionType.equals(ParamConstants.FeatureType.TF_binding_site.name())
-                        || cellBaseDataResult.getResults().get(i).getFeatureType()
-                            .equals(ParamConstants.FeatureType.TF_binding_site_motif.name()));
+                        || regulatoryRegionType.equals(ParamConstants.FeatureType.TF_binding_site_motif.name()));
             }
             overlapsRegulatoryRegion[1] = tfbsFound;
         }
@@ -1228,8 +1270,12 @@ public class VariantAnnotationCalculator {
         return overlapsRegulatoryRegion;
     }
 
-    private boolean[] getRegulatoryRegionOverlaps(String chromosome, Integer start, Integer end)
-            throws QueryException, IllegalAccessException {
+    private boolean[] getRegulatoryRegionOverlaps(RegulatoryOverlapIndex regulatoryOverlapIndex, String chromosome, int start,
+                                                  int end) throws QueryException, IllegalAccessException {
+        if (regulatoryOverlapIndex != null && isInRegulatoryOverlapIndex(regulatoryOverlapIndex, start, end)) {
+            return regulatoryOverlapIndex.getOverlaps(chromosome, start, end, false);
+        }
+
         // 0: overlaps any regulatory region type
         // 1: overlaps transcription factor binding site
         boolean[] overlapsRegulatoryRegion = {false, false};
@@ -1260,6 +1306,39 @@ public class VariantAnnotationCalculator {
         return overlapsRegulatoryRegion;
     }
 
+    private static boolean isInRegulatoryOverlapIndex(RegulatoryOverlapIndex regulatoryOverlapIndex, int start, int end) {
+        return regulatoryOverlapIndex.isComplete() || end - start + 1 <= REGULATORY_OVERLAP_INDEX_MAX_REGION_LENGTH;
+    }
+
+    /*
+     * Regulatory features of the whole batch are fetched at once, only their coordinates and type, for the same regions
+     * getRegulatoryRegionOverlaps looks up. Regions longer than REGULATORY_OVERLAP_INDEX_MAX_REGION_LENGTH are left out,
+     * getRegulatoryRegionOverlaps probes them in the database.
+     */
+    private RegulatoryOverlapIndex getRegulatoryOverlapIndex(List<Variant> variantList) {
+        List<Region> regionList = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            if (VariantType.SNV.equals(variant.getType())) {
+                regionList.add(new Region(variant.getChromosome(), variant.getStart(), variant.getStart()));
+            } else if (VariantType.INDEL.equals(variant.getType()) && StringUtils.isBlank(variant.getReference())) {
+                regionList.add(new Region(variant.getChromosome(), variant.getStart() - 1, variant.getEnd()));
+            } else if (!VariantType.BREAKEND.equals(variant.getType())) {
+                if (variant.getEnd() - variant.getStart() + 1 <= REGULATORY_OVERLAP_INDEX_MAX_REGION_LENGTH) {
+                    regionList.add(new Region(variant.getChromosome(), variant.getStart(), variant.getEnd()));
+                }
+            } else {
+                int start = Math.max(1, variant.getStart());
+                regionList.add(new Region(variant.getChromosome(), start, start));
+                if (variant.getSv() != null && variant.getSv().getBreakend() != null
+                        && variant.getSv().getBreakend().getMate() != null) {
+                    int mateStart = Math.max(1, variant.getSv().getBreakend().getMate().getPosition());
+                    regionList.add(new Region(variant.getSv().getBreakend().getMate().getChromosome(), mateStart, mateStart));
+                }
+            }
+        }
+        return regulationManager.getOverlapIndex(regionList);
+    }
+
     private String toRegionString(String chromosome, Integer position) {
         return toRegionString(chromosome, position, position);
     }
@@ -1276,9 +1355,24 @@ public class VariantAnnotationCalculator {
     private List<ConsequenceType> getConsequenceTypeList(Variant variant, List<Gene> geneList,
                                                          boolean regulatoryAnnotation, QueryOptions queryOptions)
             throws QueryException, IllegalAccessException {
+        ProteinAnnotationBatch proteinAnnotationBatch = new ProteinAnnotationBatch();
+        List<ConsequenceType> consequenceTypeList = getConsequenceTypeList(variant, geneList, regulatoryAnnotation,
+                regulatoryAnnotation ? getRegulatoryOverlapIndex(Collections.singletonList(variant)) : null, queryOptions,
+                proteinAnnotationBatch);
+        proteinAnnotationBatch.run(proteinManager);
+        return consequenceTypeList;
+    }
+
+    /*
+     * Regulatory overlaps are looked up in the index if given and covering the variant, otherwise they are queried.
+     */
+    private List<ConsequenceType> getConsequenceTypeList(Variant variant, List<Gene> geneList, boolean regulatoryAnnotation,
+                                                         RegulatoryOverlapIndex regulatoryOverlapIndex, QueryOptions queryOptions,
+                                                         ProteinAnnotationBatch proteinAnnotationBatch)
+            throws QueryException, IllegalAccessException {
         boolean[] overlapsRegulatoryRegion = {false, false};
         if (regulatoryAnnotation) {
-            overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(variant);
+            overlapsRegulatoryRegion = getRegulatoryRegionOverlaps(variant, regulatoryOverlapIndex);
         }
         ConsequenceTypeCalculator consequenceTypeCalculator = getConsequenceTypeCalculator(variant);
         List<ConsequenceType> consequenceTypeList = consequenceTypeCalculator.run(variant, geneList,
@@ -1287,7 +1381,7 @@ public class VariantAnnotationCalculator {
                 || Variant.inferType(variant.getReference(), variant.getAlternate()) == VariantType.SNV) {
             for (ConsequenceType consequenceType : consequenceTypeList) {
                 if (nonSynonymous(consequenceType, variant.getChromosome().equals("MT"))) {
-                    consequenceType.setProteinVariantAnnotation(getProteinAnnotation(variant, consequenceType));
+                    proteinAnnotationBatch.add(variant, consequenceType);
                 }
             }
         }
@@ -1431,15 +1525,9 @@ public class VariantAnnotationCalculator {
             return variationCellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Variant>>> variationFuture,
+        public void processResults(List<CellBaseDataResult<Variant>> variationCellBaseDataResults,
                                    List<VariantAnnotation> variantAnnotationList,
-                                   Set<String> annotatorSet) throws InterruptedException, ExecutionException {
-
-            while (!variationFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Variant>> variationCellBaseDataResults = variationFuture.get();
+                                   Set<String> annotatorSet) {
             if (variationCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
                     Variant preferredVariant = getPreferredVariant(variationCellBaseDataResults.get(i));
@@ -1450,8 +1538,8 @@ public class VariantAnnotationCalculator {
                         if (preferredVariant.getAnnotation() != null
                                 && preferredVariant.getAnnotation().getAdditionalAttributes() != null
                                 && preferredVariant.getAnnotation().getAdditionalAttributes().size() > 0) {
-                            variantAnnotationList.get(i)
-                                    .setAdditionalAttributes(preferredVariant.getAnnotation().getAdditionalAttributes());
+                            addAdditionalAttributes(variantAnnotationList.get(i),
+                                    preferredVariant.getAnnotation().getAdditionalAttributes());
                         }
                     }
 
@@ -1462,6 +1550,18 @@ public class VariantAnnotationCalculator {
                 }
             }
         }
+
+        private void addAdditionalAttributes(VariantAnnotation variantAnnotation,
+                                             Map<String, AdditionalAttribute> additionalAttributes) {
+            // The main loop may be flagging phased transcripts in this same map
+            synchronized (variantAnnotation) {
+                if (variantAnnotation.getAdditionalAttributes() == null) {
+                    variantAnnotation.setAdditionalAttributes(new HashMap<>(additionalAttributes));
+                } else {
+                    variantAnnotation.getAdditionalAttributes().putAll(additionalAttributes);
+                }
+            }
+        }
     }
 
     class FutureConservationAnnotator implements Callable<List<CellBaseDataResult<Score>>> {
@@ -1481,7 +1581,9 @@ public class VariantAnnotationCalculator {
             List<CellBaseDataResult<Score>> cellBaseDataResultList = new ArrayList<>(variantList.size());
 
             logger.debug("Query conservation");
-            // Want to return only one CellBaseDataResult object per Variant
+            // Regions of the whole batch are queried at once so that conservation chunks are fetched once
+            List<Region> batchRegionList = new ArrayList<>(variantList.size());
+            List<Integer> numRegionsList = new ArrayList<>(variantList.size());
             for (Variant variant : variantList) {
 
                 // Truncate region size of SVs to avoid server collapse
@@ -1491,9 +1593,18 @@ public class VariantAnnotationCalculator {
                         .map(region -> region.size() > 50
                                 ? (new Region(region.getChromosome(), region.getStart(), region.getStart() + 49))
                                 : region).collect(Collectors.toList());
+                batchRegionList.addAll(regionList);
+                numRegionsList.add(regionList.size());
+            }
+            List<CellBaseDataResult<Score>> batchCellBaseDataResultList = genomeManager.getAllScoresByRegionList(batchRegionList,
+                    queryOptions);
 
-                List<CellBaseDataResult<Score>> tmpCellBaseDataResultList = genomeManager.getAllScoresByRegionList(regionList,
-                        queryOptions);
+            // Want to return only one CellBaseDataResult object per Variant
+            int regionIndex = 0;
+            for (int numRegions : numRegionsList) {
+                List<CellBaseDataResult<Score>> tmpCellBaseDataResultList = batchCellBaseDataResultList.subList(regionIndex,
+                        regionIndex + numRegions);
+                regionIndex += numRegions;
 
                 // There may be more than one CellBaseDataResult per variant for breakends
                 // Reuse one of the CellBaseDataResult objects returned by the adaptor
@@ -1513,14 +1624,8 @@ public class VariantAnnotationCalculator {
             return cellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Score>>> conservationFuture,
-                                   List<VariantAnnotation> variantAnnotationList)
-                throws InterruptedException, ExecutionException {
-            while (!conservationFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Score>> conservationCellBaseDataResults = conservationFuture.get();
+        public void processResults(List<CellBaseDataResult<Score>> conservationCellBaseDataResults,
+                                   List<VariantAnnotation> variantAnnotationList) {
             if (conservationCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
                     variantAnnotationList.get(i).setConservation(conservationCellBaseDataResults.get(i).getResults());
@@ -1553,15 +1658,8 @@ public class VariantAnnotationCalculator {
             return variantFunctionalScoreCellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Score>>> variantFunctionalScoreFuture,
-                                   List<VariantAnnotation> variantAnnotationList)
-                throws InterruptedException, ExecutionException {
-
-            while (!variantFunctionalScoreFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Score>> variantFunctionalScoreCellBaseDataResults = variantFunctionalScoreFuture.get();
+        public void processResults(List<CellBaseDataResult<Score>> variantFunctionalScoreCellBaseDataResults,
+                                   List<VariantAnnotation> variantAnnotationList) {
             if (variantFunctionalScoreCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
                     if (variantFunctionalScoreCellBaseDataResults.get(i).getNumResults() > 0) {
@@ -1600,15 +1698,8 @@ public class VariantAnnotationCalculator {
             return clinicalCellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Variant>>> clinicalFuture,
-                                   List<VariantAnnotation> variantAnnotationList)
-                throws InterruptedException, ExecutionException {
-//            try {
-            while (!clinicalFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Variant>> clinicalCellBaseDataResults = clinicalFuture.get();
+        public void processResults(List<CellBaseDataResult<Variant>> clinicalCellBaseDataResults,
+                                   List<VariantAnnotation> variantAnnotationList) {
             if (clinicalCellBaseDataResults != null) {
                 for (int i = 0; i < variantAnnotationList.size(); i++) {
                     CellBaseDataResult<Variant> clinicalCellBaseDataResult = clinicalCellBaseDataResults.get(i);
@@ -1759,15 +1850,8 @@ public class VariantAnnotationCalculator {
 
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Repeat>>> repeatsFuture,
-                                   List<VariantAnnotation> variantAnnotationResults)
-                throws InterruptedException, ExecutionException {
-//            try {
-            while (!repeatsFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Repeat>> cellBaseDataResultList = repeatsFuture.get();
+        public void processResults(List<CellBaseDataResult<Repeat>> cellBaseDataResultList,
+                                   List<VariantAnnotation> variantAnnotationResults) {
             if (cellBaseDataResultList != null) {
                 for (int i = 0; i < variantAnnotationResults.size(); i++) {
                     CellBaseDataResult<Repeat> cellBaseDataResult = cellBaseDataResultList.get(i);
@@ -1820,14 +1904,8 @@ public class VariantAnnotationCalculator {
             return cellBaseDataResultList;
         }
 
-        public void processResults(Future<List<CellBaseDataResult<Cytoband>>> cytobandFuture,
-                                   List<VariantAnnotation> variantAnnotationList)
-                throws InterruptedException, ExecutionException {
-            while (!cytobandFuture.isDone()) {
-                Thread.sleep(1);
-            }
-
-            List<CellBaseDataResult<Cytoband>> cellBaseDataResultList = cytobandFuture.get();
+        public void processResults(List<CellBaseDataResult<Cytoband>> cellBaseDataResultList,
+                                   List<VariantAnnotation> variantAnnotationList) {
             if (cellBaseDataResultList != null) {
                 if (cellBaseDataResultList.isEmpty()) {
                     StringBuilder stringbuilder = new StringBuilder(variantList.get(0).toString());
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.cellbase.core.config.AnnotationProperties;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded thread pool shared by all VariantAnnotationCalculator instances of the JVM to run the asynchronous
+ * annotators. Threads are daemon so that neither the CLI nor the server need to shut it down. When the queue is full
+ * tasks run in the calling thread, which throttles callers instead of failing the annotation.
+ */
+public final class VariantAnnotationExecutor {
+
+    private static VariantAnnotationExecutor instance;
+
+    private final ThreadPoolExecutor threadPoolExecutor;
+
+    private final AtomicLong submittedTasks = new AtomicLong();
+    private final AtomicLong failedTasks = new AtomicLong();
+    private final AtomicLong queueTime = new AtomicLong();
+    private final AtomicLong runTime = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(VariantAnnotationExecutor.class);
+
+    private VariantAnnotationExecutor(int numThreads, int queueSize) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.threadPoolExecutor = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "variant-annotation-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.threadPoolExecutor.allowCoreThreadTimeOut(true);
+        logger.info("Variant annotation executor created with {} threads and a queue of {} tasks", numThreads, queueSize);
+    }
+
+    /**
+     * Returns the executor shared by the whole JVM, creating it on first use.
+     *
+     * @param configuration CellBase configuration, the 'annotation' section is used to size the executor, defaults
+     *                      are used if absent. Only the configuration provided on first use is taken into account.
+     * @return shared executor
+     */
+    public static synchronized VariantAnnotationExecutor getInstance(CellBaseConfiguration configuration) {
+        if (instance == null) {
+            AnnotationProperties annotationProperties = (configuration != null && configuration.getAnnotation() != null)
+                    ? configuration.getAnnotation()
+                    : new AnnotationProperties();
+            instance = new VariantAnnotationExecutor(annotationProperties.getNumThreads() > 0
+                    ? annotationProperties.getNumThreads() : AnnotationProperties.DEFAULT_NUM_THREADS,
+                    annotationProperties.getQueueSize() > 0
+                            ? annotationProperties.getQueueSize() : AnnotationProperties.DEFAULT_QUEUE_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Runs the task in the shared pool.
+     *
+     * @param task task to be run
+     * @param <T> result type
+     * @return a CompletableFuture that completes with the task result, or exceptionally with the exception thrown
+     */
+    public <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+        submittedTasks.incrementAndGet();
+        long submitTime = System.currentTimeMillis();
+        return CompletableFuture.supplyAsync(() -> {
+            long startTime = System.currentTimeMillis();
+            queueTime.addAndGet(startTime - submitTime);
+            try {
+                return task.call();
+            } catch (Exception e) {
+                failedTasks.incrementAndGet();
+                throw new CompletionException(e);
+            } finally {
+                runTime.addAndGet(System.currentTimeMillis() - startTime);
+            }
+        }, threadPoolExecutor);
+    }
+
+    public ObjectMap getStats() {
+        long completedTasks = threadPoolExecutor.getCompletedTaskCount();
+        return new ObjectMap()
+                .append("poolSize", threadPoolExecutor.getPoolSize())
+                .append("maxPoolSize", threadPoolExecutor.getMaximumPoolSize())
+                .append("activeThreads", threadPoolExecutor.getActiveCount())
+                .append("queuedTasks", threadPoolExecutor.getQueue().size())
+                .append("submittedTasks", submittedTasks.get())
+                .append("completedTasks", completedTasks)
+                .append("failedTasks", failedTasks.get())
+                .append("avgQueueTimeMs", completedTasks > 0 ? queueTime.get() / completedTasks : 0)
+                .append("avgRunTimeMs", completedTasks > 0 ? runTime.get() / completedTasks : 0);
+    }
+}
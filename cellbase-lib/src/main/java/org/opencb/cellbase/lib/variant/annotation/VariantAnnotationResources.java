@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.opencb.biodata.tools.variant.VariantNormalizer;
+import org.opencb.cellbase.core.exception.CellbaseException;
+import org.opencb.cellbase.lib.managers.*;
+import org.opencb.cellbase.lib.variant.hgvs.HgvsCalculator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Managers, normalizers and calculators used by VariantAnnotationCalculator. None of them keep per-request state, so
+ * one instance per species and assembly is built and shared by all the annotation requests of the JVM, which only
+ * need to create a light VariantAnnotationCalculator with their own options.
+ */
+public final class VariantAnnotationResources {
+
+    private static final Map<String, VariantAnnotationResources> INSTANCES = new ConcurrentHashMap<>();
+
+    private final GenomeManager genomeManager;
+    private final GeneManager geneManager;
+    private final RegulatoryManager regulationManager;
+    private final VariantManager variantManager;
+    private final ClinicalManager clinicalManager;
+    private final RepeatsManager repeatsManager;
+    private final ProteinManager proteinManager;
+    private final VariantAnnotationExecutor executor;
+    private final HgvsCalculator hgvsCalculator;
+    // The normaliser configuration can not be changed per request, one normaliser is kept for each configuration
+    private final VariantNormalizer normalizer;
+    private final VariantNormalizer nonDecomposingNormalizer;
+
+    private static Logger logger = LoggerFactory.getLogger(VariantAnnotationResources.class);
+
+    private VariantAnnotationResources(String species, String assembly, CellBaseManagerFactory cellbaseManagerFactory)
+            throws CellbaseException {
+        long startTime = System.currentTimeMillis();
+        this.genomeManager = cellbaseManagerFactory.getGenomeManager(species, assembly);
+        this.variantManager = cellbaseManagerFactory.getVariantManager(species, assembly);
+        this.geneManager = cellbaseManagerFactory.getGeneManager(species, assembly);
+        this.regulationManager = cellbaseManagerFactory.getRegulatoryManager(species, assembly);
+        this.proteinManager = cellbaseManagerFactory.getProteinManager(species, assembly);
+        this.clinicalManager = cellbaseManagerFactory.getClinicalManager(species, assembly);
+        this.repeatsManager = cellbaseManagerFactory.getRepeatsManager(species, assembly);
+        this.executor = VariantAnnotationExecutor.getInstance(cellbaseManagerFactory.getConfiguration());
+        this.hgvsCalculator = new HgvsCalculator(genomeManager);
+        this.normalizer = new VariantNormalizer(getNormalizerConfig(true));
+        this.nonDecomposingNormalizer = new VariantNormalizer(getNormalizerConfig(false));
+        logger.info("Variant annotation resources for {} {} created in {} ms", species, assembly,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Returns the resources of the species and assembly, creating them on first use.
+     *
+     * @param species species, e.g. hsapiens
+     * @param assembly assembly, e.g. GRCh38
+     * @param cellbaseManagerFactory factory used to create the managers, only used the first time
+     * @return shared resources
+     * @throws CellbaseException if the species or the assembly are not valid
+     */
+    public static VariantAnnotationResources getInstance(String species, String assembly,
+                                                         CellBaseManagerFactory cellbaseManagerFactory)
+            throws CellbaseException {
+        String key = species + "_" + assembly;
+        VariantAnnotationResources resources = INSTANCES.get(key);
+        if (resources == null) {
+            synchronized (INSTANCES) {
+                resources = INSTANCES.get(key);
+                if (resources == null) {
+                    resources = new VariantAnnotationResources(species, assembly, cellbaseManagerFactory);
+                    INSTANCES.put(key, resources);
+                }
+            }
+        }
+        return resources;
+    }
+
+    private VariantNormalizer.VariantNormalizerConfig getNormalizerConfig(boolean decompose) {
+        return (new VariantNormalizer.VariantNormalizerConfig())
+                .setReuseVariants(false)
+                .setNormalizeAlleles(false)
+                .setDecomposeMNVs(decompose)
+                .enableLeftAlign(new CellBaseNormalizerSequenceAdaptor(genomeManager));
+    }
+
+    public GenomeManager getGenomeManager() {
+        return genomeManager;
+    }
+
+    public GeneManager getGeneManager() {
+        return geneManager;
+    }
+
+    public RegulatoryManager getRegulationManager() {
+        return regulationManager;
+    }
+
+    public VariantManager getVariantManager() {
+        return variantManager;
+    }
+
+    public ClinicalManager getClinicalManager() {
+        return clinicalManager;
+    }
+
+    public RepeatsManager getRepeatsManager() {
+        return repeatsManager;
+    }
+
+    public ProteinManager getProteinManager() {
+        return proteinManager;
+    }
+
+    public VariantAnnotationExecutor getExecutor() {
+        return executor;
+    }
+
+    public HgvsCalculator getHgvsCalculator() {
+        return hgvsCalculator;
+    }
+
+    /**
+     * Returns the normaliser to be used.
+     *
+     * @param decompose whether MNVs must be decomposed
+     * @return shared normaliser
+     */
+    public VariantNormalizer getNormalizer(boolean decompose) {
+        return decompose ? normalizer : nonDecomposingNormalizer;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.builders;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencb.biodata.models.core.GenomeSequenceChunk;
+import org.opencb.cellbase.core.serializer.CellBaseSerializer;
+import org.opencb.cellbase.core.utils.PackedSequenceCodec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GenomeSequenceFastaBuilderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static class ListSerializer implements CellBaseSerializer {
+        private final List<Object> objects = new ArrayList<>();
+
+        @Override
+        public void serialize(Object object) {
+            objects.add(object);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Path getOutdir() {
+            return null;
+        }
+
+        @Override
+        public String getFileName() {
+            return null;
+        }
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+        String sequence1 = createSequence(4500, "ACGT");
+        String sequence2 = createSequence(1500, "ACGTN");
+        Path fasta = writeFasta(sequence1, sequence2);
+
+        ListSerializer serializer = new ListSerializer();
+        new GenomeSequenceFastaBuilder(fasta, serializer).parse();
+
+        // 1-1999, 2000-3999, 4000-4500 and 1-1500, patches are skipped
+        assertEquals(4, serializer.objects.size());
+        assertChunk((GenomeSequenceChunk) serializer.objects.get(0), "1", "1_0_2k", 1, 1999, sequence1.substring(0, 1999));
+        assertChunk((GenomeSequenceChunk) serializer.objects.get(1), "1", "1_1_2k", 2000, 3999, sequence1.substring(1999, 3999));
+        assertChunk((GenomeSequenceChunk) serializer.objects.get(2), "1", "1_2_2k", 4000, 4500, sequence1.substring(3999));
+        assertChunk((GenomeSequenceChunk) serializer.objects.get(3), "2", "2_0_2k", 1, 1500, sequence2);
+        assertEquals("chromosome", ((GenomeSequenceChunk) serializer.objects.get(3)).getSequenceType());
+        assertEquals("GRCh38", ((GenomeSequenceChunk) serializer.objects.get(3)).getSequenceAssembly());
+    }
+
+    @Test
+    public void testPackedChunks() throws IOException {
+        String sequence1 = createSequence(4500, "ACGT");
+        String sequence2 = createSequence(1500, "ACGTN");
+        Path fasta = writeFasta(sequence1, sequence2);
+
+        ListSerializer serializer = new ListSerializer();
+        new GenomeSequenceFastaBuilder(fasta, true, serializer).parse();
+
+        assertEquals(4, serializer.objects.size());
+        StringBuilder stringBuilder = new StringBuilder();
+        for (Object object : serializer.objects.subList(0, 3)) {
+            Document chunk = (Document) object;
+            assertEquals("1", chunk.getString("chromosome"));
+            assertFalse(chunk.containsKey("sequence"));
+            byte[] packed = Base64.getDecoder().decode(chunk.get("packedSequence", Document.class).getString("$binary"));
+            assertEquals(PackedSequenceCodec.TWO_BIT, packed[0]);
+            assertEquals(chunk.getInteger("end") - chunk.getInteger("start") + 1, PackedSequenceCodec.getLength(packed));
+            PackedSequenceCodec.decode(packed, 0, PackedSequenceCodec.getLength(packed), stringBuilder);
+        }
+        assertEquals(sequence1, stringBuilder.toString());
+
+        Document chunk = (Document) serializer.objects.get(3);
+        byte[] packed = Base64.getDecoder().decode(chunk.get("packedSequence", Document.class).getString("$binary"));
+        assertEquals(PackedSequenceCodec.FOUR_BIT, packed[0]);
+        // 2 nucleotides per byte plus the header instead of 1500 characters
+        assertEquals(5 + 750, packed.length);
+    }
+
+    private String createSequence(int length, String alphabet) {
+        StringBuilder stringBuilder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            stringBuilder.append(alphabet.charAt((i * 7 + i / 3) % alphabet.length()));
+        }
+        return stringBuilder.toString();
+    }
+
+    private Path writeFasta(String sequence1, String sequence2) throws IOException {
+        StringBuilder fasta = new StringBuilder();
+        appendFastaSequence(fasta, ">1 dna:chromosome chromosome:GRCh38:1:1:4500:1 REF", sequence1);
+        appendFastaSequence(fasta, ">HSCHR1_1_CTG3 dna:scaffold scaffold:GRCh38:HSCHR1_1_CTG3:1:2000:1 REF",
+                createSequence(2000, "ACGT"));
+        appendFastaSequence(fasta, ">2 dna:chromosome chromosome:GRCh38:2:1:1500:1 REF", sequence2);
+        return Files.write(tempDir.resolve("genome.fa"), fasta.toString().getBytes());
+    }
+
+    private void appendFastaSequence(StringBuilder fasta, String header, String sequence) {
+        fasta.append(header).append('\n');
+        // 60 nucleotides per line, same as Ensembl
+        for (int i = 0; i < sequence.length(); i += 60) {
+            fasta.append(sequence, i, Math.min(i + 60, sequence.length())).append('\n');
+        }
+    }
+
+    private void assertChunk(GenomeSequenceChunk chunk, String chromosome, String id, int start, int end, String sequence) {
+        assertEquals(chromosome, chunk.getChromosome());
+        assertEquals(id, chunk.getId());
+        assertEquals(start, chunk.getStart());
+        assertEquals(end, chunk.getEnd());
+        assertEquals(sequence, chunk.getSequence());
+    }
+}
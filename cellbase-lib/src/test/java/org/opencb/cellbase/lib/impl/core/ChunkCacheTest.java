@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedChunkIsEvicted() {
+        ChunkCache<String> chunkCache = new ChunkCache<>(2);
+        Map<String, String> chunks = new HashMap<>();
+        chunks.put("1_0_1k", "a");
+        chunks.put("1_1_1k", "b");
+        chunkCache.putAll(chunks);
+
+        // Touch 1_0_1k so that 1_1_1k becomes the eldest entry
+        assertEquals("a", chunkCache.getAll(Arrays.asList("1_0_1k")).get("1_0_1k"));
+        chunks.clear();
+        chunks.put("1_2_1k", "c");
+        chunkCache.putAll(chunks);
+
+        Map<String, String> found = chunkCache.getAll(Arrays.asList("1_0_1k", "1_1_1k", "1_2_1k"));
+        assertEquals(2, chunkCache.size());
+        assertEquals(2, found.size());
+        assertTrue(found.containsKey("1_0_1k"));
+        assertTrue(found.containsKey("1_2_1k"));
+        assertEquals(3, chunkCache.getHits());
+        assertEquals(1, chunkCache.getMisses());
+    }
+}
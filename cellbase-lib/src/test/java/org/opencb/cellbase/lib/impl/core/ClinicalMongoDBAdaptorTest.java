@@ -28,6 +28,7 @@ import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantBuilder;
 import org.opencb.biodata.models.variant.avro.SampleEntry;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
 import org.opencb.cellbase.core.ParamConstants;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
@@ -447,6 +448,21 @@ public class ClinicalMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
         assertEquals(1, variantCellBaseDataResult.getResults().size());
         assertEquals(3, variantCellBaseDataResult.getResults().get(0).getAnnotation().getTraitAssociation().size());
 
+        // Matching fields not included by the caller must not be returned
+        variantCellBaseDataResultList = clinicalDBAdaptor.getByVariant(
+                Collections.singletonList(new Variant("14", 55369176, "G", "A")),
+                new QueryOptions(QueryOptions.INCLUDE, "annotation.traitAssociation"));
+
+        assertEquals(1, variantCellBaseDataResultList.size());
+        variantCellBaseDataResult = variantCellBaseDataResultList.get(0);
+        assertEquals(1, variantCellBaseDataResult.getNumResults());
+        assertNull(variantCellBaseDataResult.getResults().get(0).getChromosome());
+        assertNull(variantCellBaseDataResult.getResults().get(0).getReference());
+        assertNull(variantCellBaseDataResult.getResults().get(0).getAnnotation().getHgvs());
+        // start is primitive and returned as read
+        assertEquals(55369176, variantCellBaseDataResult.getResults().get(0).getStart().intValue());
+        assertEquals(3, variantCellBaseDataResult.getResults().get(0).getAnnotation().getTraitAssociation().size());
+
         // Two variants with missing phase data (therefore potentially forming an MNV) being queried: in the database,
         // these two variants also form an MNV. Results should be returned for both
         variantCellBaseDataResultList = clinicalDBAdaptor.getByVariant(
@@ -526,6 +542,48 @@ public class ClinicalMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
 
     }
 
+    @Test
+    public void getClinicalVariantsByHgvsInSeveralBatchesTest() {
+        // Two input variants, the second one with more protein HGVS than fit in one batch
+        int numHgvs = ClinicalMongoDBAdaptor.CLINICAL_BATCH_QUERY_SIZE + 500;
+        Map<String, List<Integer>> hgvsPositions = new LinkedHashMap<>();
+        hgvsPositions.put("ENSP00000000001.1:p.Gly12Val", Collections.singletonList(0));
+        for (int i = 1; i < numHgvs; i++) {
+            hgvsPositions.put("ENSP00000000002.1:p.Ala" + i + "Val", Collections.singletonList(1));
+        }
+        List<CellBaseDataResult<Variant>> results = Arrays.asList(
+                new CellBaseDataResult<>("1:100:G:T", 0, new ArrayList<>(), 0, new ArrayList<>(), -1),
+                new CellBaseDataResult<>("1:200:C:T", 0, new ArrayList<>(), 0, new ArrayList<>(), -1));
+
+        // Matches the second input variant by HGVS queried in the first and in the second batch
+        Variant severalBatchesVariant = createClinicalVariant("1:200:C:T", "ENSP00000000002.1:p.Ala1Val",
+                "ENSP00000000002.1:p.Ala" + (numHgvs - 1) + "Val");
+        // Matches both input variants, by HGVS queried in the first batch
+        Variant bothVariantsVariant = createClinicalVariant("1:100:G:T", "ENSP00000000001.1:p.Gly12Val",
+                "ENSP00000000002.1:p.Ala2Val");
+        List<Variant> clinicalVariants = Arrays.asList(severalBatchesVariant, bothVariantsVariant);
+
+        List<Integer> batchSizes = new ArrayList<>();
+        ClinicalMongoDBAdaptor.getClinicalVariantsByHgvs(hgvsPositions, results, hgvsBatch -> {
+            batchSizes.add(hgvsBatch.size());
+            return clinicalVariants.stream()
+                    .filter(variant -> variant.getAnnotation().getHgvs().stream().anyMatch(hgvsBatch::contains))
+                    .collect(Collectors.toList());
+        });
+
+        assertEquals(Arrays.asList(ClinicalMongoDBAdaptor.CLINICAL_BATCH_QUERY_SIZE, 500), batchSizes);
+        assertEquals(Collections.singletonList(bothVariantsVariant), results.get(0).getResults());
+        assertEquals(Arrays.asList(severalBatchesVariant, bothVariantsVariant), results.get(1).getResults());
+    }
+
+    private Variant createClinicalVariant(String variantString, String... hgvs) {
+        Variant variant = new Variant(variantString);
+        VariantAnnotation variantAnnotation = new VariantAnnotation();
+        variantAnnotation.setHgvs(Arrays.asList(hgvs));
+        variant.setAnnotation(variantAnnotation);
+        return variant;
+    }
+
     private List<Gene> loadGeneList() throws URISyntaxException, IOException {
         ObjectMapper jsonObjectMapper = new ObjectMapper();
         jsonObjectMapper.configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Gene;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GeneModelCacheTest {
+
+    @Test
+    public void testGetAll() {
+        GeneModelCache geneModelCache = new GeneModelCache(1000, 1024 * 1024);
+        String key1 = GeneModelCache.getKey("hsapiens", "grch38", "ensembl", "1", 0, Arrays.asList("id", "start"));
+        String key2 = GeneModelCache.getKey("hsapiens", "grch38", "ensembl", "1", 1, Arrays.asList("id", "start"));
+        geneModelCache.putAll(Collections.singletonMap(key1, Collections.singletonList(createGene("G1"))));
+
+        Map<String, List<Gene>> bins = geneModelCache.getAll(Arrays.asList(key1, key2));
+        assertEquals(1, bins.size());
+        assertEquals("G1", bins.get(key1).get(0).getId());
+        assertEquals(1L, geneModelCache.getStats().getLong("hits"));
+        assertEquals(1L, geneModelCache.getStats().getLong("misses"));
+
+        // Same bin with other included fields is a different entry
+        assertTrue(geneModelCache.getAll(Collections.singletonList(GeneModelCache.getKey("hsapiens", "grch38", "ensembl",
+                "1", 0, Collections.singletonList("id")))).isEmpty());
+    }
+
+    @Test
+    public void testEvictionBySize() {
+        List<Gene> genes = Collections.singletonList(createGene("G1"));
+        long binSize = GeneModelCache.estimateSize(genes);
+        GeneModelCache geneModelCache = new GeneModelCache(1000, 3 * binSize);
+        for (int i = 0; i < 3; i++) {
+            geneModelCache.putAll(Collections.singletonMap("bin" + i, genes));
+        }
+        // Touch bin0 so that bin1 is the least recently used
+        geneModelCache.getAll(Collections.singletonList("bin0"));
+        Map<String, List<Gene>> newBins = new HashMap<>();
+        newBins.put("bin3", genes);
+        geneModelCache.putAll(newBins);
+
+        assertEquals(3, geneModelCache.getAll(Arrays.asList("bin0", "bin1", "bin2", "bin3")).size());
+        assertTrue(geneModelCache.getAll(Collections.singletonList("bin1")).isEmpty());
+        assertEquals(1L, geneModelCache.getStats().getLong("evictions"));
+        assertTrue(geneModelCache.getStats().getLong("sizeBytes") <= 3 * binSize);
+    }
+
+    private Gene createGene(String id) {
+        Gene gene = new Gene();
+        gene.setId(id);
+        gene.setChromosome("1");
+        gene.setStart(100);
+        gene.setEnd(200);
+        return gene;
+    }
+}
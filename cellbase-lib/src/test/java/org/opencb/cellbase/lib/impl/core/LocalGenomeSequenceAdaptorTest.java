@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.GenomeSequenceFeature;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LocalGenomeSequenceAdaptorTest {
+
+    @Test
+    public void testGetSequence() throws IOException {
+        Path fastaPath = Files.createTempFile("genome", ".fa");
+        fastaPath.toFile().deleteOnExit();
+        Files.write(fastaPath, Arrays.asList(
+                ">1 dna:chromosome chromosome:GRCh38:1:1:25:1 REF",
+                "ACGTACGTAC",
+                "GTACGTACGT",
+                "NNNNN",
+                ">MT dna:chromosome chromosome:GRCh38:MT:1:12:1 REF",
+                "GATCACAGGT",
+                "CT"), StandardCharsets.US_ASCII);
+        // samtools faidx: name, length, offset, line bases, line width
+        Paths.get(fastaPath.toString() + ".fai").toFile().deleteOnExit();
+        Files.write(Paths.get(fastaPath.toString() + ".fai"), Arrays.asList(
+                "1\t25\t49\t10\t11",
+                "MT\t12\t128\t10\t11"), StandardCharsets.US_ASCII);
+
+        LocalGenomeSequenceAdaptor adaptor = new LocalGenomeSequenceAdaptor(fastaPath);
+
+        GenomeSequenceFeature feature = adaptor.getSequence(new Region("1", 1, 4), QueryOptions.empty()).first();
+        assertEquals("ACGT", feature.getSequence());
+
+        // Across line breaks
+        assertEquals("TACGTA", adaptor.getSequence(new Region("1", 8, 13), QueryOptions.empty()).first().getSequence());
+        assertEquals("GATCACAGGTCT", adaptor.getSequence(new Region("MT", 1, 12), QueryOptions.empty()).first().getSequence());
+        // UCSC chromosome names
+        assertEquals("ACG", adaptor.getSequence(new Region("chr1", 1, 3), QueryOptions.empty()).first().getSequence());
+
+        // End out of the right bound returns the available nucleotides
+        assertEquals("TNNNNN", adaptor.getSequence(new Region("1", 20, 40), QueryOptions.empty()).first().getSequence());
+
+        // Unknown chromosome or start out of bounds return no results
+        assertNoResults(adaptor.getSequence(new Region("2", 1, 4), QueryOptions.empty()));
+        assertNoResults(adaptor.getSequence(new Region("1", 26, 30), QueryOptions.empty()));
+        assertNoResults(adaptor.getSequence(new Region("1", 0, 3), QueryOptions.empty()));
+    }
+
+    private void assertNoResults(CellBaseDataResult<GenomeSequenceFeature> result) {
+        assertTrue(result.getResults() == null || result.getResults().isEmpty());
+        assertNull(result.first());
+    }
+}
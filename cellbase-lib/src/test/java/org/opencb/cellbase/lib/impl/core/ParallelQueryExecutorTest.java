@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.opencb.biodata.models.core.Region;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests of the concurrent execution of multi-query requests, e.g. '/genomic/region/{regions}/gene'. Each test uses its
+ * own executor, not the one shared by the JVM. The latency benchmark only runs with -Dcellbase.benchmark=true.
+ */
+public class ParallelQueryExecutorTest {
+
+    private static final int MAX_PARALLELISM = 4;
+    private static final long QUERY_LATENCY_MS = 5;
+
+    private final Logger logger = LoggerFactory.getLogger(ParallelQueryExecutorTest.class);
+    private final ParallelQueryExecutor queryExecutor = new ParallelQueryExecutor(16, 1000, MAX_PARALLELISM);
+
+    @Test
+    public void testOrderAndPartialFailures() {
+        List<Integer> inputs = IntStream.range(0, 50).boxed().collect(Collectors.toList());
+        List<String> results = queryExecutor.map(inputs, input -> {
+            // Later inputs finish first
+            Thread.sleep(50 - input);
+            if (input % 10 == 3) {
+                throw new IllegalStateException("query " + input + " failed");
+            }
+            return "result " + input;
+        }, (input, e) -> "error " + e.getMessage());
+
+        assertEquals(inputs.size(), results.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(i % 10 == 3 ? "error query " + i + " failed" : "result " + i, results.get(i));
+        }
+    }
+
+    @Test
+    public void testNestedCalls() {
+        // Outer queries run inner multi-queries, the calling threads take part so they never wait for a free thread
+        List<Integer> inputs = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        List<Integer> results = queryExecutor.map(inputs,
+                input -> queryExecutor.map(Arrays.asList(input, input), inner -> inner, (inner, e) -> -1)
+                        .stream().mapToInt(Integer::intValue).sum(),
+                (input, e) -> -1);
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(2 * i, results.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testMaxParallelism() {
+        // Every query waits until MAX_PARALLELISM queries are running, so the call only completes if they run
+        // concurrently, and no more than MAX_PARALLELISM are ever running at the same time
+        CyclicBarrier barrier = new CyclicBarrier(MAX_PARALLELISM);
+        AtomicInteger runningQueries = new AtomicInteger();
+        AtomicInteger maxRunningQueries = new AtomicInteger();
+        List<Integer> inputs = IntStream.range(0, 5 * MAX_PARALLELISM).boxed().collect(Collectors.toList());
+        List<Integer> results = queryExecutor.map(inputs, input -> {
+            maxRunningQueries.accumulateAndGet(runningQueries.incrementAndGet(), Math::max);
+            try {
+                barrier.await(30, TimeUnit.SECONDS);
+            } finally {
+                runningQueries.decrementAndGet();
+            }
+            return input;
+        }, (input, e) -> -1);
+
+        assertEquals(inputs, results);
+        assertEquals(MAX_PARALLELISM, maxRunningQueries.get());
+    }
+
+    @Test
+    public void testSequential() {
+        ParallelQueryExecutor sequentialQueryExecutor = new ParallelQueryExecutor(16, 1000, 1);
+        String callingThread = Thread.currentThread().getName();
+        List<String> threads = sequentialQueryExecutor.map(Arrays.asList(1, 2, 3), input -> Thread.currentThread().getName(),
+                (input, e) -> null);
+        assertEquals(Arrays.asList(callingThread, callingThread, callingThread), threads);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "cellbase.benchmark", matches = "true")
+    public void testLatency() {
+        // Warm up the pool threads
+        queryRegions(createRegions(100));
+
+        for (int numRegions : Arrays.asList(1, 10, 100)) {
+            List<Region> regions = createRegions(numRegions);
+
+            long start = System.nanoTime();
+            for (Region region : regions) {
+                queryRegion(region);
+            }
+            double sequentialMs = (System.nanoTime() - start) / 1_000_000.0;
+
+            start = System.nanoTime();
+            List<String> results = queryRegions(regions);
+            double parallelMs = (System.nanoTime() - start) / 1_000_000.0;
+
+            assertEquals(regions.stream().map(Region::toString).collect(Collectors.toList()), results);
+            logger.info("{} regions: sequential {} ms, parallel {} ms", numRegions, String.format("%.1f", sequentialMs),
+                    String.format("%.1f", parallelMs));
+        }
+        logger.info("{}", queryExecutor.getStats().toJson());
+    }
+    private List<String> queryRegions(List<Region> regions) {
+        return queryExecutor.map(regions, this::queryRegion, (region, e) -> null);
+    }
+
+    private String queryRegion(Region region) {
+        try {
+            Thread.sleep(QUERY_LATENCY_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return region.toString();
+    }
+
+    private List<Region> createRegions(int numRegions) {
+        List<Region> regions = new ArrayList<>(numRegions);
+        for (int i = 0; i < numRegions; i++) {
+            regions.add(new Region("1", i * 100000 + 1, (i + 1) * 100000));
+        }
+        return regions;
+    }
+}
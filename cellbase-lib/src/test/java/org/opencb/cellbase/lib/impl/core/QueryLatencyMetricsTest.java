@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QueryLatencyMetricsTest {
+
+    @Test
+    public void testCollectionNames() {
+        QueryLatencyMetrics queryLatencyMetrics = new QueryLatencyMetrics();
+        queryLatencyMetrics.record(GeneMongoDBAdaptor.class, 1);
+        queryLatencyMetrics.record(XRefMongoDBAdaptor.class, 1);
+        queryLatencyMetrics.record(MongoDBAdaptor.class, 1);
+
+        ObjectMap stats = queryLatencyMetrics.getStats();
+        assertEquals(Arrays.asList("gene", "mongoDBAdaptor", "xRef"), new ArrayList<>(stats.keySet()));
+    }
+
+    @Test
+    public void testBuckets() {
+        QueryLatencyMetrics queryLatencyMetrics = new QueryLatencyMetrics();
+        for (long millis : new long[]{0, 1, 2, 3, 5000, 5001, 60000}) {
+            queryLatencyMetrics.record(GeneMongoDBAdaptor.class, millis);
+        }
+
+        ObjectMap gene = (ObjectMap) queryLatencyMetrics.getStats().get("gene");
+        assertEquals(7L, gene.get("queries"));
+        assertEquals(60000L, gene.get("maxTimeMs"));
+        assertEquals(70007 / 7.0, gene.get("avgTimeMs"));
+
+        // Bucket limits are inclusive
+        ObjectMap histogram = (ObjectMap) gene.get("histogram");
+        assertEquals(13, histogram.size());
+        assertEquals(2L, histogram.get("<=1ms"));
+        assertEquals(1L, histogram.get("<=2ms"));
+        assertEquals(1L, histogram.get("<=5ms"));
+        assertEquals(0L, histogram.get("<=10ms"));
+        assertEquals(1L, histogram.get("<=5000ms"));
+        assertEquals(2L, histogram.get(">5000ms"));
+    }
+}
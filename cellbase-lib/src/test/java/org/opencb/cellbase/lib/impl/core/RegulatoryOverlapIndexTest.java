@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.impl.core;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.RegulatoryFeature;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegulatoryOverlapIndexTest {
+
+    @Test
+    public void testGetOverlaps() {
+        RegulatoryOverlapIndex regulatoryOverlapIndex = new RegulatoryOverlapIndex(Arrays.asList(
+                createRegulatoryFeature("1", 100, 5000, "promoter"),
+                createRegulatoryFeature("1", 300, 320, "TF_binding_site_motif"),
+                createRegulatoryFeature("1", 200, 250, "TF_binding_site"),
+                createRegulatoryFeature("1", 6000, 6100, "enhancer"),
+                createRegulatoryFeature("2", 300, 320, "TF_binding_site")).iterator());
+        assertEquals(5, regulatoryOverlapIndex.size());
+        assertFalse(regulatoryOverlapIndex.isComplete());
+
+        assertArrayEquals(new boolean[]{false, false}, regulatoryOverlapIndex.getOverlaps("1", 50, 99, true));
+        assertArrayEquals(new boolean[]{true, false}, regulatoryOverlapIndex.getOverlaps("1", 100, 100, true));
+        assertArrayEquals(new boolean[]{true, true}, regulatoryOverlapIndex.getOverlaps("1", 250, 250, false));
+        // Motifs only count as binding sites if requested
+        assertArrayEquals(new boolean[]{true, true}, regulatoryOverlapIndex.getOverlaps("1", 310, 310, true));
+        assertArrayEquals(new boolean[]{true, false}, regulatoryOverlapIndex.getOverlaps("1", 310, 310, false));
+        // Long feature starting far before the region
+        assertArrayEquals(new boolean[]{true, false}, regulatoryOverlapIndex.getOverlaps("1", 4000, 4500, true));
+        assertArrayEquals(new boolean[]{false, false}, regulatoryOverlapIndex.getOverlaps("1", 5001, 5999, true));
+        assertArrayEquals(new boolean[]{true, false}, regulatoryOverlapIndex.getOverlaps("1", 5001, 6000, true));
+        assertArrayEquals(new boolean[]{true, true}, regulatoryOverlapIndex.getOverlaps("2", 320, 400, false));
+        assertArrayEquals(new boolean[]{false, false}, regulatoryOverlapIndex.getOverlaps("X", 320, 400, true));
+    }
+
+    @Test
+    public void testComplete() {
+        RegulatoryOverlapIndex regulatoryOverlapIndex = new RegulatoryOverlapIndex(Collections.singletonList(
+                createRegulatoryFeature("1", 100, 5000, "promoter")).iterator(), true);
+        assertTrue(regulatoryOverlapIndex.isComplete());
+        assertArrayEquals(new boolean[]{true, false}, regulatoryOverlapIndex.getOverlaps("1", 1, 1000000, false));
+    }
+
+    private RegulatoryFeature createRegulatoryFeature(String chromosome, int start, int end, String featureType) {
+        RegulatoryFeature regulatoryFeature = new RegulatoryFeature();
+        regulatoryFeature.setChromosome(chromosome);
+        regulatoryFeature.setStart(start);
+        regulatoryFeature.setEnd(end);
+        regulatoryFeature.setFeatureType(featureType);
+        return regulatoryFeature;
+    }
+}
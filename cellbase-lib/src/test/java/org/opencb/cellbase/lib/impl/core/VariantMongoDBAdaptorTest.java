@@ -20,6 +20,7 @@ import org.bson.Document;
 import org.hamcrest.CoreMatchers;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.VariantBuilder;
 import org.opencb.biodata.models.variant.avro.PopulationFrequency;
@@ -30,6 +31,7 @@ import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.lib.GenericMongoDBAdaptorTest;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.mongodb.MongoDataStore;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -42,10 +44,12 @@ import java.util.stream.Collectors;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 
 /**
  * Created by imedina on 12/02/16.
+ * The getByVariant benchmark only runs with -Dcellbase.benchmark=true.
  */
 public class VariantMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
     public VariantMongoDBAdaptorTest() throws Exception {
@@ -213,6 +217,99 @@ public class VariantMongoDBAdaptorTest extends GenericMongoDBAdaptorTest {
 
     }
 
+    @Test
+    public void testGetByVariantBatch() {
+        VariantMongoDBAdaptor variationDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor("hsapiens", "GRCh37");
+        List<Variant> variantList = new ArrayList<>();
+        for (String gene : Arrays.asList("CTA-445C9.14", "CERK")) {
+            for (Variant variant : variationDBAdaptor.get(new Query(ParamConstants.QueryParams.GENE.key(), gene),
+                    new QueryOptions()).getResults()) {
+                variantList.add(new Variant(variant.getChromosome(), variant.getStart(), variant.getReference(),
+                        variant.getAlternate()));
+            }
+        }
+        // Variants missing from the collection must get an empty result at their position
+        variantList.add(1, Variant.parseVariant("22:1:A:T"));
+        variantList.add(Variant.parseVariant("10:118187036:T:C"));
+        variantList.add(Variant.parseVariant("22:17438072:G:-"));
+        QueryOptions queryOptions = new QueryOptions("include", "id,annotation.populationFrequencies");
+
+        // One query per variant vs one query per chromosome
+        List<CellBaseDataResult> singleResultList = new ArrayList<>(variantList.size());
+        for (Variant variant : variantList) {
+            singleResultList.add(variationDBAdaptor.getByVariant(variant, queryOptions));
+        }
+        List<CellBaseDataResult<Variant>> batchResultList = variationDBAdaptor.getByVariant(variantList, queryOptions);
+
+        assertEquals(variantList.size(), batchResultList.size());
+        for (int i = 0; i < variantList.size(); i++) {
+            List<String> singleIds = ((List<Variant>) singleResultList.get(i).getResults()).stream()
+                    .map(Variant::getId).sorted().collect(Collectors.toList());
+            List<String> batchIds = batchResultList.get(i).getResults().stream()
+                    .map(Variant::getId).sorted().collect(Collectors.toList());
+            assertEquals(singleIds, batchIds, variantList.get(i).toString());
+            assertEquals(batchIds.size(), batchResultList.get(i).getNumResults());
+        }
+        assertEquals(0, batchResultList.get(1).getNumResults());
+        assertEquals("rs191078597", batchResultList.get(variantList.size() - 2).first().getId());
+
+        // Fields only included to match the documents are not returned
+        Variant batchVariant = batchResultList.get(0).first();
+        assertNull(batchVariant.getImpl().getChromosome());
+        assertNull(batchVariant.getImpl().getReference());
+        assertNull(batchVariant.getImpl().getAlternate());
+        assertNotNull(batchVariant.getAnnotation());
+        // start and end are primitive and returned as read
+        assertEquals(variantList.get(0).getStart(), batchVariant.getStart());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "cellbase.benchmark", matches = "true")
+    public void testGetByVariantBatchBenchmark() {
+        VariantMongoDBAdaptor variationDBAdaptor = dbAdaptorFactory.getVariationDBAdaptor("hsapiens", "GRCh37");
+        MongoDataStore mongoDataStore = dbAdaptorFactory.getMongoDBDatastore("hsapiens", "GRCh37");
+        List<Variant> variantList = new ArrayList<>();
+        for (String chromosome : Arrays.asList("1", "10", "17", "22")) {
+            for (Variant variant : variationDBAdaptor.get(new Query(ParamConstants.QueryParams.CHROMOSOME.key(), chromosome),
+                    new QueryOptions("include", "chromosome,start,reference,alternate")).getResults()) {
+                variantList.add(new Variant(variant.getChromosome(), variant.getStart(), variant.getReference(),
+                        variant.getAlternate()));
+            }
+        }
+        QueryOptions queryOptions = new QueryOptions("include", "id,annotation.populationFrequencies");
+
+        // Round trips are the queries and getMores counted by the server
+        long roundTrips = getRoundTrips(mongoDataStore);
+        long start = System.currentTimeMillis();
+        int numResults = 0;
+        for (Variant variant : variantList) {
+            numResults += variationDBAdaptor.getByVariant(variant, queryOptions).getNumResults();
+        }
+        logBenchmark("per variant", variantList.size(), getRoundTrips(mongoDataStore) - roundTrips,
+                System.currentTimeMillis() - start);
+
+        roundTrips = getRoundTrips(mongoDataStore);
+        start = System.currentTimeMillis();
+        int numBatchResults = 0;
+        for (CellBaseDataResult<Variant> result : variationDBAdaptor.getByVariant(variantList, queryOptions)) {
+            numBatchResults += result.getNumResults();
+        }
+        logBenchmark("batched", variantList.size(), getRoundTrips(mongoDataStore) - roundTrips,
+                System.currentTimeMillis() - start);
+
+        assertEquals(numResults, numBatchResults);
+    }
+
+    private long getRoundTrips(MongoDataStore mongoDataStore) {
+        Document opCounters = (Document) mongoDataStore.getServerStatus().get("opcounters");
+        return ((Number) opCounters.get("query")).longValue() + ((Number) opCounters.get("getmore")).longValue();
+    }
+
+    private void logBenchmark(String path, int numVariants, long roundTrips, long elapsedMillis) {
+        logger.info("getByVariant {}: {} variants, {} round trips and {} ms per 1k variants", path, numVariants,
+                roundTrips * 1000.0 / Math.max(1, numVariants), elapsedMillis * 1000.0 / Math.max(1, numVariants));
+    }
+
     private List<PopulationFrequency> getPopulationFrequency(List<PopulationFrequency> populationFrequencyList,
                                                              PopulationFrequency populationFrequency) {
         List<PopulationFrequency> populationFrequencyList1 = new ArrayList<>(1);
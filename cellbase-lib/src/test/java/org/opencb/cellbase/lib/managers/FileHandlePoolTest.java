@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.managers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileHandlePoolTest {
+
+    private static final long IDLE_TIMEOUT_MS = 1000;
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicLong clock = new AtomicLong();
+    private Path fasta;
+    private Path bigWig;
+
+    private static class Handle implements Closeable {
+        private final Path path;
+        private boolean closed;
+
+        Handle(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        fasta = Files.write(tempDir.resolve("genome.fa.gz"), new byte[]{1});
+        bigWig = Files.write(tempDir.resolve("coverage.bw"), new byte[]{1});
+    }
+
+    private FileHandlePool<Handle> createPool(int maxOpenHandles) {
+        return new FileHandlePool<>("test", Handle::new, maxOpenHandles, IDLE_TIMEOUT_MS, clock::get);
+    }
+
+    @Test
+    public void testReuse() throws IOException {
+        FileHandlePool<Handle> pool = createPool(4);
+        Handle first = pool.execute(fasta, handle -> handle);
+        Handle second = pool.execute(fasta, handle -> handle);
+        assertSame(first, second);
+        assertFalse(first.closed);
+        assertEquals(fasta.toAbsolutePath(), first.path);
+
+        // A handle in use is not shared, a second one is opened
+        Handle nested = pool.execute(fasta, handle -> pool.execute(fasta, nestedHandle -> {
+            assertNotSame(handle, nestedHandle);
+            return nestedHandle;
+        }));
+        assertNotSame(first, nested);
+        assertEquals(2L, pool.getStats().getLong("openedHandles"));
+        assertEquals(2, pool.getStats().getInt("idleHandles"));
+        assertEquals(0, pool.getStats().getInt("handlesInUse"));
+    }
+
+    @Test
+    public void testMaxOpenHandles() throws IOException {
+        FileHandlePool<Handle> pool = createPool(1);
+        Handle fastaHandle = pool.execute(fasta, handle -> handle);
+        clock.incrementAndGet();
+        Handle bigWigHandle = pool.execute(bigWig, handle -> handle);
+
+        // Least recently used is closed first
+        assertTrue(fastaHandle.closed);
+        assertFalse(bigWigHandle.closed);
+        assertEquals(1, pool.getStats().getInt("idleHandles"));
+    }
+
+    @Test
+    public void testWaitForHandle() throws Exception {
+        FileHandlePool<Handle> pool = createPool(1);
+        CountDownLatch taken = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<Handle> fastaHandle = executorService.submit(() -> pool.execute(fasta, handle -> {
+                taken.countDown();
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return handle;
+            }));
+            assertTrue(taken.await(10, TimeUnit.SECONDS));
+
+            // The only handle is in use, the second thread waits for it to be given back
+            Future<Handle> bigWigHandle = executorService.submit(() -> pool.execute(bigWig, handle -> handle));
+            assertThrows(TimeoutException.class, () -> bigWigHandle.get(200, TimeUnit.MILLISECONDS));
+            assertEquals(1, pool.getStats().getInt("handlesInUse"));
+
+            done.countDown();
+            assertFalse(bigWigHandle.get(10, TimeUnit.SECONDS).closed);
+            assertTrue(fastaHandle.get(10, TimeUnit.SECONDS).closed);
+            assertEquals(1L, pool.getStats().getLong("waits"));
+            assertEquals(1, pool.getStats().getInt("idleHandles"));
+        } finally {
+            done.countDown();
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIdleTimeout() throws IOException {
+        FileHandlePool<Handle> pool = createPool(4);
+        Handle handle = pool.execute(fasta, h -> h);
+        clock.addAndGet(IDLE_TIMEOUT_MS / 2);
+        pool.evictIdleHandles();
+        assertFalse(handle.closed);
+
+        clock.addAndGet(IDLE_TIMEOUT_MS);
+        pool.evictIdleHandles();
+        assertTrue(handle.closed);
+        assertNotSame(handle, pool.execute(fasta, h -> h));
+    }
+
+    @Test
+    public void testModifiedFile() throws IOException {
+        FileHandlePool<Handle> pool = createPool(4);
+        Handle handle = pool.execute(fasta, h -> h);
+        Files.setLastModifiedTime(fasta, FileTime.fromMillis(Files.getLastModifiedTime(fasta).toMillis() + 60000));
+
+        assertNotSame(handle, pool.execute(fasta, h -> h));
+        assertTrue(handle.closed);
+    }
+
+    @Test
+    public void testFailedTask() {
+        FileHandlePool<Handle> pool = createPool(4);
+        Handle[] failedHandle = new Handle[1];
+        assertThrows(IOException.class, () -> pool.execute(fasta, handle -> {
+            failedHandle[0] = handle;
+            throw new IOException("corrupted block");
+        }));
+
+        // Handles of failed tasks may be in an inconsistent state and are not reused
+        assertTrue(failedHandle[0].closed);
+        assertEquals(0, pool.getStats().getInt("idleHandles"));
+        assertEquals(0, pool.getStats().getInt("handlesInUse"));
+        assertThrows(IOException.class, () -> pool.execute(tempDir.resolve("missing.fa.gz"), handle -> handle));
+    }
+}
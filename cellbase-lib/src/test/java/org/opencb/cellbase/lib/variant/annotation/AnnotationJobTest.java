@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.cellbase.core.exception.CellbaseException;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnnotationJobTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testReadGzippedVcf() throws IOException {
+        Path input = tempDir.resolve("input.vcf.gz");
+        try (OutputStream outputStream = new GZIPOutputStream(Files.newOutputStream(input))) {
+            outputStream.write(String.join("\n",
+                    "##fileformat=VCFv4.2",
+                    "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO",
+                    "19\t45411941\trs429358\tT\tC\t.\tPASS\t.",
+                    "1\t6635210\t.\tG\tA,T\t.\tPASS\t.",
+                    "1\t6635300\t.\tG\t.\t.\tPASS\t.",
+                    "2\t114340663\t.\tGC\tG,*\t.\tPASS\t.").getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (BufferedReader reader = AnnotationJob.openInput(input)) {
+            // Multi-allelic lines are not split across batches
+            assertEquals(Arrays.asList("19:45411941:T:C", "1:6635210:G:A", "1:6635210:G:T"),
+                    toStrings(AnnotationJob.readBatch(reader, 2)));
+            assertEquals(Arrays.asList("2:114340663:GC:G"), toStrings(AnnotationJob.readBatch(reader, 2)));
+            assertTrue(AnnotationJob.readBatch(reader, 2).isEmpty());
+        }
+    }
+
+    @Test
+    public void testReadVariantList() throws IOException {
+        Path input = tempDir.resolve("input.txt");
+        Files.write(input, "19:45411941:T:C,14:38679764:-:GATCTG\n1:6635210:G:-\n\n".getBytes(StandardCharsets.UTF_8));
+
+        try (BufferedReader reader = AnnotationJob.openInput(input)) {
+            assertEquals(Arrays.asList("19:45411941:T:C", "14:38679764:-:GATCTG", "1:6635210:G:-"),
+                    toStrings(AnnotationJob.readBatch(reader, 10)));
+            assertTrue(AnnotationJob.readBatch(reader, 10).isEmpty());
+        }
+    }
+
+    @Test
+    public void testCopyInput() throws Exception {
+        byte[] input = "19:45411941:T:C\n".getBytes(StandardCharsets.UTF_8);
+        Path file = tempDir.resolve("input");
+        assertEquals(input.length, AnnotationJob.copyInput(new ByteArrayInputStream(input), file, input.length));
+        assertArrayEquals(input, Files.readAllBytes(file));
+
+        assertThrows(CellbaseException.class, () -> AnnotationJob.copyInput(new ByteArrayInputStream(input), file,
+                input.length - 1));
+    }
+
+    @Test
+    public void testFailedJob() throws IOException {
+        AnnotationJob job = new AnnotationJob("job", "hsapiens", "GRCh38", tempDir, new QueryOptions());
+        Files.write(job.getInputFile(), "19:45411941:T:C\n".getBytes(StandardCharsets.UTF_8));
+
+        // No calculator, the first batch fails
+        job.run(null, 10);
+        assertEquals(AnnotationJob.Status.ERROR, job.getStatus());
+        assertTrue(job.isFinished());
+        assertThrows(IOException.class, () -> job.writeResults(new ByteArrayOutputStream()));
+    }
+
+    private List<String> toStrings(List<Variant> variants) {
+        return variants.stream().map(Variant::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.lib.variant.annotation;
+
+import org.junit.jupiter.api.Test;
+import org.opencb.biodata.models.core.Gene;
+import org.opencb.biodata.models.core.Region;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchGeneIndexTest {
+
+    @Test
+    public void testGetAffectedGenes() {
+        List<Gene> geneList = Arrays.asList(
+                createGene("G1", "19", 100000, 120000),
+                createGene("G2", "19", 50000, 60000),
+                createGene("G3", "19", 125001, 130000),
+                createGene("G4", "6", 100000, 120000),
+                // Long gene starting early must not be missed by the backwards sweep
+                createGene("G5", "19", 1, 500000));
+        BatchGeneIndex batchGeneIndex = new BatchGeneIndex(geneList);
+
+        // Padding is applied on both sides; results keep batch order
+        assertEquals(Arrays.asList("G1", "G3", "G5"),
+                getIds(batchGeneIndex.getAffectedGenes(Collections.singletonList(new Region("19", 125000, 125000)))));
+        assertEquals(Arrays.asList("G2", "G5"),
+                getIds(batchGeneIndex.getAffectedGenes(Collections.singletonList(new Region("19", 65000, 65000)))));
+        assertEquals(Collections.singletonList("G5"),
+                getIds(batchGeneIndex.getAffectedGenes(Collections.singletonList(new Region("19", 65001, 65001)))));
+        assertTrue(batchGeneIndex.getAffectedGenes(Collections.singletonList(new Region("X", 110000, 110000))).isEmpty());
+
+        // One entry per affected region, e.g. both breakpoints of a breakend within the same gene
+        assertEquals(Arrays.asList("G4", "G4"),
+                getIds(batchGeneIndex.getAffectedGenes(Arrays.asList(new Region("6", 101000, 101000),
+                        new Region("6", 119000, 119000)))));
+    }
+
+    @Test
+    public void testDenseBatchMatchesLinearScan() {
+        // Gene-dense region, e.g. chr19 or the HLA locus: many overlapping genes within a few Mb
+        assertSameAsLinearScan(createRandomGenes("19", 2000, 1000000, 3000000, 200000), "19", 1000000, 3000000);
+    }
+
+    @Test
+    public void testSparseBatchMatchesLinearScan() {
+        assertSameAsLinearScan(createRandomGenes("1", 200, 1, 240000000, 50000), "1", 1, 240000000);
+    }
+
+    private void assertSameAsLinearScan(List<Gene> geneList, String chromosome, int start, int end) {
+        BatchGeneIndex batchGeneIndex = new BatchGeneIndex(geneList);
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            int position = start + random.nextInt(end - start);
+            List<Region> regionList = Collections.singletonList(new Region(chromosome, position,
+                    position + random.nextInt(100)));
+            assertEquals(getIds(linearScan(geneList, regionList)), getIds(batchGeneIndex.getAffectedGenes(regionList)));
+        }
+    }
+
+    private List<Gene> linearScan(List<Gene> geneList, List<Region> regionList) {
+        List<Gene> affectedGeneList = new ArrayList<>();
+        for (Gene gene : geneList) {
+            for (Region region : regionList) {
+                if (region.getChromosome().equals(gene.getChromosome()) && gene.getStart() <= (region.getEnd() + 5000)
+                        && gene.getEnd() >= Math.max(1, region.getStart() - 5000)) {
+                    affectedGeneList.add(gene);
+                }
+            }
+        }
+        return affectedGeneList;
+    }
+
+    private List<Gene> createRandomGenes(String chromosome, int numGenes, int start, int end, int maxGeneLength) {
+        Random random = new Random(13);
+        List<Gene> geneList = new ArrayList<>(numGenes);
+        for (int i = 0; i < numGenes; i++) {
+            int geneStart = start + random.nextInt(end - start);
+            geneList.add(createGene("G" + i, chromosome, geneStart, geneStart + random.nextInt(maxGeneLength)));
+        }
+        return geneList;
+    }
+
+    private Gene createGene(String id, String chromosome, int start, int end) {
+        Gene gene = new Gene();
+        gene.setId(id);
+        gene.setChromosome(chromosome);
+        gene.setStart(start);
+        gene.setEnd(end);
+        return gene;
+    }
+
+    private List<String> getIds(List<Gene> geneList) {
+        List<String> ids = new ArrayList<>(geneList.size());
+        for (Gene gene : geneList) {
+            ids.add(gene.getId());
+        }
+        return ids;
+    }
+}
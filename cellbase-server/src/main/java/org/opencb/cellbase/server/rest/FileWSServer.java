@@ -61,14 +61,14 @@ public class FileWSServer extends GenericRestWSServer {
             @ApiImplicitParam(name = "filePath", value = "Full path to the file",
                     required = true, dataType = "java.lang.String", paramType = "query"),
             @ApiImplicitParam(name = "fileType", value = "Fasta files MUST have tabix file. Should be the same file name with suffix 'fai'",
-                    required = true, dataType = "java.lang.String", paramType = "query", allowableValues = "fasta"),
+                    required = true, dataType = "java.lang.String", paramType = "query", allowableValues = "fasta,bigwig"),
             @ApiImplicitParam(name = "region", value = ParamConstants.REGION_DESCRIPTION,
                     required = true, dataType = "java.util.List", paramType = "query")
     })
     public Response getQuery() {
         try {
             FileQuery query = new FileQuery(uriParams);
-            List<CellBaseDataResult<String>> queryResults = fileManager.search(query);
+            List<? extends CellBaseDataResult<?>> queryResults = fileManager.search(query);
             return createOkResponse(queryResults);
         } catch (QueryException | IOException e) {
             return createErrorResponse(e);
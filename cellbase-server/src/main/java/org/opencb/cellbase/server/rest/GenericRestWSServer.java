@@ -21,6 +21,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.module.jsonSchema.JsonSchema;
 import com.fasterxml.jackson.module.jsonSchema.factories.SchemaFactoryWrapper;
 import io.swagger.annotations.ApiOperation;
@@ -33,6 +34,7 @@ import org.opencb.cellbase.core.api.query.QueryException;
 import org.opencb.cellbase.core.config.CellBaseConfiguration;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.iterator.CellBaseIterator;
 import org.opencb.cellbase.lib.managers.CellBaseManagerFactory;
 import org.opencb.cellbase.lib.monitor.Monitor;
 import org.opencb.commons.datastore.core.Event;
@@ -49,11 +51,14 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.*;
 import javax.ws.rs.core.Response.ResponseBuilder;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
 
 @Path("/{version}/{species}")
 @Produces("text/plain")
@@ -65,6 +70,10 @@ public class GenericRestWSServer implements IWSServer {
     protected Query query;
 //    protected QueryOptions queryOptions;
     private static final int MAX_RECORDS = 5000;
+    // Exports stream their results instead of paging them, see createStreamingResponse
+    private static final String EXPORT_PATH = "/export";
+    private static final MediaType NDJSON_TYPE = new MediaType("application", "x-ndjson");
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
     protected Map<String, String> uriParams;
     protected UriInfo uriInfo;
     protected HttpServletRequest httpServletRequest;
@@ -144,6 +153,9 @@ public class GenericRestWSServer implements IWSServer {
 
             // Initialize Monitor
             monitor = new Monitor(cellBaseManagerFactory.getMetaManager());
+
+            // Only the first request enables the cache, ResponseCacheFilter skips the requests received before
+            ResponseCache.getInstance().init(cellBaseConfiguration, cellBaseManagerFactory.getMetaManager());
         }
     }
 
@@ -157,7 +169,10 @@ public class GenericRestWSServer implements IWSServer {
             uriParams.remove("assembly");
         }
 
-        checkLimit();
+        // Exports are not bounded by MAX_RECORDS, nor by the default limit
+        if (!uriInfo.getPath().endsWith(EXPORT_PATH)) {
+            checkLimit();
+        }
 
         // check version. species is validated later
         checkVersion();
@@ -275,8 +290,9 @@ public class GenericRestWSServer implements IWSServer {
     protected Response createErrorResponse(String method, String errorMessage) {
         try {
             logQuery(ERROR);
+            // Sent with status 200, no-store keeps ResponseCacheFilter from caching it
             return buildResponse(Response.ok(jsonObjectWriter.writeValueAsString(new HashMap<>().put("[ERROR] " + method, errorMessage)),
-                    MediaType.APPLICATION_JSON_TYPE));
+                    MediaType.APPLICATION_JSON_TYPE).header(HttpHeaders.CACHE_CONTROL, "no-store"));
         } catch (Exception e) {
             return createErrorResponse(e);
         }
@@ -319,43 +335,166 @@ public class GenericRestWSServer implements IWSServer {
         return buildResponse(Response.ok(obj, mediaType).header("content-disposition", "attachment; filename =" + fileName));
     }
 
+    /**
+     * Streams the results of the iterator as newline-delimited JSON, one object per line. Objects are serialized as
+     * they are read by the client, so neither the number of results nor the server memory are bounded by the size of
+     * the response. The response is gzipped if the client accepts it. The iterator is closed once written.
+     *
+     * @param iterator results to be written
+     * @return chunked NDJSON response
+     */
+    protected Response createStreamingResponse(CellBaseIterator<?> iterator) {
+        boolean gzip = acceptsGzip();
+        String endpoint = getEndpoint();
+        StreamingOutput streamingOutput = outputStream -> {
+            long numResults = 0;
+            long serializationStart = System.nanoTime();
+            boolean error = true;
+            // Writes block while the client does not read, so the cursor is only advanced as fast as the client reads
+            try (CellBaseIterator<?> closeableIterator = iterator;
+                 SequenceWriter sequenceWriter = jsonObjectWriter.withRootValueSeparator("\n")
+                         .writeValues(getOutputStream(outputStream, gzip))) {
+                while (closeableIterator.hasNext()) {
+                    sequenceWriter.write(closeableIterator.next());
+                    numResults++;
+                }
+                error = false;
+            } catch (IOException | RuntimeException e) {
+                logger.error("Export {} aborted after {} results: {}", uriInfo.getAbsolutePath(), numResults, e.getMessage());
+                throw e;
+            } finally {
+                ResponseMetrics.getInstance().record(endpoint, System.nanoTime() - serializationStart, error);
+            }
+            logger.info("Export {} finished, {} results in {} ms", uriInfo.getAbsolutePath(), numResults,
+                    System.currentTimeMillis() - startTime);
+        };
+
+        logQuery(OK);
+        return buildStreamingResponse(streamingOutput, NDJSON_TYPE.withCharset("utf-8"), gzip);
+    }
+
+    /**
+     * Streams the newline-delimited JSON written by ndjsonOutput, gzipped if the client accepts it.
+     *
+     * @param ndjsonOutput writes the NDJSON to the stream provided, it must not close it
+     * @return chunked NDJSON response
+     */
+    protected Response createStreamingResponse(StreamingOutput ndjsonOutput) {
+        boolean gzip = acceptsGzip();
+        String endpoint = getEndpoint();
+        StreamingOutput streamingOutput = outputStream -> {
+            long serializationStart = System.nanoTime();
+            boolean error = true;
+            try (OutputStream responseOutputStream = getOutputStream(outputStream, gzip)) {
+                ndjsonOutput.write(responseOutputStream);
+                error = false;
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error writing response of {}: {}", uriInfo.getAbsolutePath(), e.getMessage());
+                throw e;
+            } finally {
+                ResponseMetrics.getInstance().record(endpoint, System.nanoTime() - serializationStart, error);
+            }
+        };
+
+        logQuery(OK);
+        return buildStreamingResponse(streamingOutput, NDJSON_TYPE.withCharset("utf-8"), gzip);
+    }
+
+    /**
+     * Serializes the object straight to the response output stream as it is written to the client, instead of
+     * building the whole JSON in memory first. The response is gzipped if the client accepts it.
+     *
+     * @param obj object to be serialized
+     * @return JSON response
+     */
+    private Response createStreamingJsonResponse(Object obj) {
+        boolean gzip = acceptsGzip();
+        String endpoint = getEndpoint();
+        StreamingOutput streamingOutput = outputStream -> {
+            long serializationStart = System.nanoTime();
+            boolean error = true;
+            try {
+                // The writer closes the stream, which also finishes the gzip stream
+                jsonObjectWriter.writeValue(getOutputStream(outputStream, gzip), obj);
+                error = false;
+            } catch (IOException | RuntimeException e) {
+                // Status and headers have already been sent, the client will get a truncated response
+                logger.error("Error writing response of {}: {}", uriInfo.getAbsolutePath(), e.getMessage());
+                throw e;
+            } finally {
+                ResponseMetrics.getInstance().record(endpoint, System.nanoTime() - serializationStart, error);
+            }
+        };
+        return buildStreamingResponse(streamingOutput, MediaType.APPLICATION_JSON_TYPE.withCharset("utf-8"), gzip);
+    }
+
+    private Response buildStreamingResponse(StreamingOutput streamingOutput, MediaType mediaType, boolean gzip) {
+        ResponseBuilder responseBuilder = Response.ok(streamingOutput, mediaType)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            responseBuilder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return buildResponse(responseBuilder);
+    }
+
+    private boolean acceptsGzip() {
+        String acceptEncoding = httpServletRequest.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    private OutputStream getOutputStream(OutputStream outputStream, boolean gzip) throws IOException {
+        return gzip
+                ? new GZIPOutputStream(outputStream, STREAM_BUFFER_SIZE)
+                : new BufferedOutputStream(outputStream, STREAM_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the end point of the request with its path parameters, e.g. '{apiVersion}/{species}/feature/gene/{genes}/info',
+     * so that metrics of the same end point are aggregated whatever the ids requested.
+     *
+     * @return end point template
+     */
+    protected String getEndpoint() {
+        MultivaluedMap<String, String> pathParameters = uriInfo.getPathParameters();
+        StringBuilder endpoint = new StringBuilder();
+        for (PathSegment pathSegment : uriInfo.getPathSegments()) {
+            String segment = pathSegment.getPath();
+            for (Map.Entry<String, List<String>> pathParameter : pathParameters.entrySet()) {
+                if (pathParameter.getValue().contains(segment)) {
+                    segment = "{" + pathParameter.getKey() + "}";
+                    break;
+                }
+            }
+            if (endpoint.length() > 0) {
+                endpoint.append('/');
+            }
+            endpoint.append(segment);
+        }
+        return endpoint.toString();
+    }
+
     protected Response createStringResponse(String str) {
         return buildResponse(Response.ok(str));
     }
 
     protected Response createJsonResponse(CellBaseDataResponse queryResponse) {
-        try {
-            if (CollectionUtils.isNotEmpty(queryResponse.getResponses()) && queryResponse.getResponses().get(0) != null) {
-                System.out.println("queryResponse.getResponses().get(0).toString() = " + queryResponse.getResponses().get(0).toString());
-            }
-            String value = jsonObjectWriter.writeValueAsString(queryResponse);
-            ResponseBuilder ok = Response.ok(value, MediaType.APPLICATION_JSON_TYPE.withCharset("utf-8"));
-            return buildResponse(ok);
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            logger.error("Error parsing queryResponse object");
-            return createErrorResponse("", "Error parsing QueryResponse object:\n" + Arrays.toString(e.getStackTrace()));
-        }
+        return createStreamingJsonResponse(queryResponse);
     }
 
     protected Response createJsonResponse(Object obj) {
-        try {
-            return buildResponse(Response.ok(jsonObjectWriter.writeValueAsString(obj),
-                    MediaType.APPLICATION_JSON_TYPE.withCharset("utf-8")));
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            logger.error("Error parsing object");
-            return createErrorResponse("", "Error parsing object:\n" + Arrays.toString(e.getStackTrace()));
-        }
+        return createStreamingJsonResponse(obj);
     }
 
     private Response buildResponse(ResponseBuilder responseBuilder) {
+        return addCorsHeaders(responseBuilder).build();
+    }
+
+    static ResponseBuilder addCorsHeaders(ResponseBuilder responseBuilder) {
         return responseBuilder
                 .header("Access-Control-Allow-Origin", "*")
                 .header("Access-Control-Allow-Headers", "x-requested-with, content-type")
                 .header("Access-Control-Allow-Credentials", "true")
-                .header("Access-Control-Allow-Methods", "GET, POST, OPTIONS")
-                .build();
+                .header("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
     }
 
 
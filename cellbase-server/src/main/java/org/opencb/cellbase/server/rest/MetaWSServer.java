@@ -27,7 +27,10 @@ import org.opencb.cellbase.core.config.SpeciesProperties;
 import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.core.utils.SpeciesUtils;
+import org.opencb.cellbase.lib.impl.core.QueryLatencyMetrics;
+import org.opencb.cellbase.lib.managers.FileManager;
 import org.opencb.cellbase.lib.managers.MetaManager;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationJobManager;
 import org.opencb.cellbase.server.rest.clinical.ClinicalWSServer;
 import org.opencb.cellbase.server.rest.feature.GeneWSServer;
 import org.opencb.cellbase.server.rest.feature.IdWSServer;
@@ -38,6 +41,7 @@ import org.opencb.cellbase.server.rest.genomic.RegionWSServer;
 import org.opencb.cellbase.server.rest.genomic.VariantWSServer;
 import org.opencb.cellbase.server.rest.regulatory.RegulatoryWSServer;
 import org.opencb.cellbase.server.rest.regulatory.TfWSServer;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.monitor.HealthCheckResponse;
 
 import javax.servlet.http.HttpServletRequest;
@@ -197,6 +201,56 @@ public class MetaWSServer extends GenericRestWSServer {
         return createOkResponse(queryResult);
     }
 
+    @GET
+    @Path("/metrics")
+    @ApiOperation(httpMethod = "GET", value = "Returns performance metrics of this server, e.g. the time spent serializing "
+            + "the responses of each end point and the hits of the response cache.", response = Map.class,
+            responseContainer = "QueryResponse")
+    public Response getMetrics() {
+        ObjectMap metrics = new ObjectMap();
+        metrics.put("serialization", ResponseMetrics.getInstance().getStats());
+        metrics.put("responseCache", ResponseCache.getInstance().getStats());
+        metrics.put("annotationJobs", AnnotationJobManager.getInstance(cellBaseConfiguration).getStats());
+        metrics.put("queries", metaManager.getQueryExecutor().getStats());
+        if (isDatabaseMetricsEnabled()) {
+            metrics.put("databaseQueries", QueryLatencyMetrics.getInstance().getStats());
+        }
+        metrics.put("fileHandles", FileManager.getFileHandleStats(cellBaseConfiguration));
+        CellBaseDataResult<ObjectMap> queryResult = new CellBaseDataResult<>("metrics", 0, Collections.emptyList(), 1,
+                Collections.singletonList(metrics), 1);
+        return createOkResponse(queryResult);
+    }
+
+    @GET
+    @Path("/{species}/database/metrics")
+    @ApiOperation(httpMethod = "GET", value = "Returns the connection pool settings in effect, the connections and operation "
+            + "latencies reported by the MongoDB server and the query latencies per collection. Only available if "
+            + "server.databaseMetrics is enabled in the configuration.", response = Map.class,
+            responseContainer = "QueryResponse")
+    public Response getDatabaseMetrics(@PathParam("species") @ApiParam(name = "species", value = ParamConstants.SPECIES_DESCRIPTION,
+                                               required = true) String species,
+                                       @ApiParam(name = "assembly", value = ParamConstants.ASSEMBLY_DESCRIPTION)
+                                       @QueryParam("assembly") String assembly) {
+        if (!isDatabaseMetricsEnabled()) {
+            return createErrorResponse("getDatabaseMetrics", "Database metrics are disabled in this server");
+        }
+        try {
+            if (StringUtils.isEmpty(assembly)) {
+                assembly = SpeciesUtils.getDefaultAssembly(cellBaseConfiguration, species).getName();
+            }
+            if (!SpeciesUtils.validateSpeciesAndAssembly(cellBaseConfiguration, species, assembly)) {
+                return createErrorResponse("getDatabaseMetrics", "Invalid species: '" + species + "' or assembly: '"
+                        + assembly + "'");
+            }
+            ObjectMap metrics = metaManager.getDatabaseMetrics(species, assembly);
+            CellBaseDataResult<ObjectMap> queryResult = new CellBaseDataResult<>("databaseMetrics", 0, Collections.emptyList(), 1,
+                    Collections.singletonList(metrics), 1);
+            return createOkResponse(queryResult);
+        } catch (Exception e) {
+            return createErrorResponse(e);
+        }
+    }
+
     @GET
     @Path("/{species}/status")
     @ApiOperation(httpMethod = "GET", value = "Reports on the overall system status based on the status of such things "
@@ -392,4 +446,8 @@ public class MetaWSServer extends GenericRestWSServer {
         return map;
     }
 
+    private boolean isDatabaseMetricsEnabled() {
+        return cellBaseConfiguration.getServer() != null && cellBaseConfiguration.getServer().isDatabaseMetrics();
+    }
+
 }
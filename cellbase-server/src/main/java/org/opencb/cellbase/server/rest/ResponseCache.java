@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.rest;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.opencb.cellbase.core.config.CellBaseConfiguration;
+import org.opencb.cellbase.core.config.ResponseCacheProperties;
+import org.opencb.cellbase.core.result.CellBaseDataResult;
+import org.opencb.cellbase.lib.managers.MetaManager;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of serialized GET responses shared by the whole server, bounded by the total size of the responses. Keys
+ * are built from the species, assembly and data release, the path and the sorted query parameters, so the same query
+ * sent with the parameters in a different order hits the same entry. The data release is a digest of the metadata
+ * collection of each database, which is checked every few seconds; responses of a database are dropped as soon as its
+ * data changes. See ResponseCacheFilter.
+ */
+public final class ResponseCache {
+
+    private static final ResponseCache INSTANCE = new ResponseCache();
+
+    private volatile boolean enabled;
+    private long maxSize;
+    private int maxEntrySize;
+    private long releaseCheckIntervalMs;
+    private MetaManager metaManager;
+
+    private final LinkedHashMap<String, CachedResponse> responses = new LinkedHashMap<>(1024, 0.75f, true);
+    private long size;
+    private final Map<String, DataRelease> dataReleases = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private ResponseCache() {
+    }
+
+    public static ResponseCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Serialized response, the body is gzipped if contentEncoding is 'gzip'.
+     */
+    public static final class CachedResponse {
+        private final byte[] body;
+        private final String mediaType;
+        private final String contentEncoding;
+
+        public CachedResponse(byte[] body, String mediaType, String contentEncoding) {
+            this.body = body;
+            this.mediaType = mediaType;
+            this.contentEncoding = contentEncoding;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+    }
+
+    private static final class DataRelease {
+        private final String digest;
+        private final long checkTime;
+
+        private DataRelease(String digest, long checkTime) {
+            this.digest = digest;
+            this.checkTime = checkTime;
+        }
+    }
+
+    /**
+     * Enables the cache, the REST servers call this on every request and only the first call is taken into account.
+     *
+     * @param configuration CellBase configuration, the 'server.cache' section is used, defaults are used if absent
+     * @param metaManager manager used to check the data release of each database
+     */
+    public synchronized void init(CellBaseConfiguration configuration, MetaManager metaManager) {
+        if (this.metaManager != null) {
+            return;
+        }
+        ResponseCacheProperties properties = (configuration.getServer() != null && configuration.getServer().getCache() != null)
+                ? configuration.getServer().getCache()
+                : new ResponseCacheProperties();
+        this.maxSize = properties.getMaxSizeMb() * 1024L * 1024L;
+        this.maxEntrySize = properties.getMaxEntrySizeKb() * 1024;
+        this.releaseCheckIntervalMs = TimeUnit.SECONDS.toMillis(properties.getReleaseCheckIntervalSeconds());
+        this.metaManager = metaManager;
+        this.enabled = properties.isEnabled() && maxSize > 0 && maxEntrySize > 0;
+        logger.info("REST response cache {}: {}", enabled ? "enabled" : "disabled", properties);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Builds the key of a request.
+     *
+     * @param species species of the request
+     * @param assembly assembly of the request, null for the default one
+     * @param path request path
+     * @param queryParameters query parameters, they are sorted by name
+     * @param contentEncoding encoding of the response, 'gzip' or 'identity'
+     * @return key, or null if the data release of the database could not be checked
+     */
+    public String createKey(String species, String assembly, String path, Map<String, List<String>> queryParameters,
+                            String contentEncoding) {
+        String dataRelease = getDataRelease(species, assembly);
+        if (dataRelease == null) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(getDatabaseKey(species, assembly))
+                .append('|').append(dataRelease)
+                .append('|').append(contentEncoding)
+                .append('|').append(path).append('?');
+        // Sorted by name and value, the order of the parameters does not change the response
+        queryParameters.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> entry.getValue().stream().sorted()
+                        .forEach(value -> key.append(entry.getKey()).append('=').append(value).append('&')));
+        return key.toString();
+    }
+
+    /**
+     * Entity tag of the responses of a key, the key contains the data release so the tag changes when the data does.
+     * Tags are weak, responses with the same tag only differ in their timing fields.
+     *
+     * @param key key of the request
+     * @return entity tag
+     */
+    public String getEntityTag(String key) {
+        return "W/\"" + DigestUtils.sha1Hex(key) + "\"";
+    }
+
+    public synchronized CachedResponse get(String key) {
+        CachedResponse cachedResponse = responses.get(key);
+        if (cachedResponse != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return cachedResponse;
+    }
+
+    public synchronized void put(String key, CachedResponse cachedResponse) {
+        if (cachedResponse.body.length > maxEntrySize) {
+            return;
+        }
+        CachedResponse previous = responses.put(key, cachedResponse);
+        if (previous != null) {
+            size -= previous.body.length;
+        }
+        size += cachedResponse.body.length;
+        Iterator<CachedResponse> iterator = responses.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().body.length;
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public void countNotModified() {
+        notModified.incrementAndGet();
+    }
+
+    /**
+     * Returns a digest of the metadata collection of the database, checking it if not done in the last few seconds.
+     * Responses of the database are dropped if the metadata changed since the last check.
+     *
+     * @param species species
+     * @param assembly assembly, null for the default one
+     * @return data release, null if the metadata could not be read
+     */
+    private String getDataRelease(String species, String assembly) {
+        String databaseKey = getDatabaseKey(species, assembly);
+        DataRelease dataRelease = dataReleases.get(databaseKey);
+        long now = System.currentTimeMillis();
+        if (dataRelease != null && now - dataRelease.checkTime < releaseCheckIntervalMs) {
+            return dataRelease.digest;
+        }
+
+        String digest;
+        try {
+            CellBaseDataResult versions = metaManager.getVersions(species, assembly);
+            digest = DigestUtils.sha1Hex(String.valueOf(versions.getResults()));
+        } catch (RuntimeException e) {
+            logger.warn("Data release of '{}' could not be checked, responses are not cached: {}", databaseKey, e.getMessage());
+            return null;
+        }
+        if (dataRelease != null && !dataRelease.digest.equals(digest)) {
+            logger.info("Data release of '{}' changed, dropping its cached responses", databaseKey);
+            invalidate(databaseKey);
+        }
+        dataReleases.put(databaseKey, new DataRelease(digest, now));
+        return digest;
+    }
+
+    private synchronized void invalidate(String databaseKey) {
+        String prefix = databaseKey + "|";
+        Iterator<Map.Entry<String, CachedResponse>> iterator = responses.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedResponse> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                size -= entry.getValue().body.length;
+                iterator.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    private static String getDatabaseKey(String species, String assembly) {
+        return species + "_" + assembly;
+    }
+
+    public synchronized ObjectMap getStats() {
+        return new ObjectMap()
+                .append("enabled", enabled)
+                .append("responses", responses.size())
+                .append("sizeMb", size / 1024.0 / 1024.0)
+                .append("maxSizeMb", maxSize / 1024.0 / 1024.0)
+                .append("hits", hits.get())
+                .append("notModified", notModified.get())
+                .append("misses", misses.get())
+                .append("evictions", evictions.get())
+                .append("invalidations", invalidations.get());
+    }
+}
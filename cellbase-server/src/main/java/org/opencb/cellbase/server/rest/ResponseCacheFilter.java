@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.rest;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Serves GET requests of the species end points from the ResponseCache, and stores the responses written otherwise.
+ * Responses are tagged with an ETag built from the request key, so clients sending it back in 'If-None-Match' get a
+ * 304 without the query being run. Meta end points, exports and responses sent with 'Cache-Control: no-store' are
+ * never cached.
+ */
+@Provider
+public class ResponseCacheFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final String CACHE_KEY_PROPERTY = ResponseCacheFilter.class.getName() + ".key";
+    private static final String EXPORT_SEGMENT = "export";
+    private static final String META_SEGMENT = "meta";
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        ResponseCache responseCache = ResponseCache.getInstance();
+        if (!responseCache.isEnabled() || !HttpMethod.GET.equals(requestContext.getMethod())) {
+            return;
+        }
+        MultivaluedMap<String, String> pathParameters = requestContext.getUriInfo().getPathParameters();
+        List<PathSegment> pathSegments = requestContext.getUriInfo().getPathSegments();
+        String species = pathParameters.getFirst("species");
+        if (species == null || pathSegments.size() < 3 || META_SEGMENT.equals(pathSegments.get(1).getPath())
+                || EXPORT_SEGMENT.equals(pathSegments.get(pathSegments.size() - 1).getPath())) {
+            return;
+        }
+
+        MultivaluedMap<String, String> queryParameters = requestContext.getUriInfo().getQueryParameters();
+        String acceptEncoding = requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        // Same rule as GenericRestWSServer, which gzips the response itself
+        String contentEncoding = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip") ? "gzip" : "identity";
+        String key = responseCache.createKey(species, queryParameters.getFirst("assembly"),
+                requestContext.getUriInfo().getPath(), queryParameters, contentEncoding);
+        if (key == null) {
+            return;
+        }
+
+        String entityTag = responseCache.getEntityTag(key);
+        String ifNoneMatch = requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(entityTag) || ifNoneMatch.trim().equals("*"))) {
+            responseCache.countNotModified();
+            requestContext.abortWith(GenericRestWSServer.addCorsHeaders(Response.notModified().header(HttpHeaders.ETAG, entityTag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)).build());
+            return;
+        }
+
+        ResponseCache.CachedResponse cachedResponse = responseCache.get(key);
+        if (cachedResponse != null) {
+            // Same CORS headers as the responses built by GenericRestWSServer
+            Response.ResponseBuilder responseBuilder = GenericRestWSServer.addCorsHeaders(
+                    Response.ok(cachedResponse.getBody(), cachedResponse.getMediaType())
+                            .header(HttpHeaders.ETAG, entityTag)
+                            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING));
+            if (cachedResponse.getContentEncoding() != null) {
+                responseBuilder.header(HttpHeaders.CONTENT_ENCODING, cachedResponse.getContentEncoding());
+            }
+            requestContext.abortWith(responseBuilder.build());
+            return;
+        }
+        requestContext.setProperty(CACHE_KEY_PROPERTY, key);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        String key = (String) requestContext.getProperty(CACHE_KEY_PROPERTY);
+        if (key == null) {
+            return;
+        }
+        String cacheControl = responseContext.getHeaderString(HttpHeaders.CACHE_CONTROL);
+        if (responseContext.getStatus() == Response.Status.OK.getStatusCode() && responseContext.hasEntity()
+                && (cacheControl == null || !cacheControl.contains("no-store"))) {
+            responseContext.getHeaders().putSingle(HttpHeaders.ETAG, ResponseCache.getInstance().getEntityTag(key));
+        } else {
+            // Errors, including those sent with status 200 and no-store, and responses that change over time such as
+            // job status, are not cached
+            requestContext.removeProperty(CACHE_KEY_PROPERTY);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        String key = (String) context.getProperty(CACHE_KEY_PROPERTY);
+        if (key == null) {
+            context.proceed();
+            return;
+        }
+
+        ResponseCache responseCache = ResponseCache.getInstance();
+        CapturingOutputStream capturingOutputStream = new CapturingOutputStream(context.getOutputStream(),
+                responseCache.getMaxEntrySize());
+        context.setOutputStream(capturingOutputStream);
+        context.proceed();
+
+        // Only reached if the whole response was written
+        byte[] body = capturingOutputStream.getCapturedBytes();
+        if (body != null) {
+            Object contentEncoding = context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+            responseCache.put(key, new ResponseCache.CachedResponse(body, String.valueOf(context.getMediaType()),
+                    contentEncoding != null ? contentEncoding.toString() : null));
+        }
+    }
+
+    /**
+     * Writes through to the response and keeps a copy of the bytes written, the copy is dropped once the response is
+     * larger than the max size of the cached responses.
+     */
+    private static final class CapturingOutputStream extends FilterOutputStream {
+
+        private final int maxSize;
+        private ByteArrayOutputStream capturedBytes;
+
+        private CapturingOutputStream(OutputStream outputStream, int maxSize) {
+            super(outputStream);
+            this.maxSize = maxSize;
+            this.capturedBytes = new ByteArrayOutputStream(Math.min(maxSize, 8192));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (capturedBytes != null) {
+                if (capturedBytes.size() + 1 > maxSize) {
+                    capturedBytes = null;
+                } else {
+                    capturedBytes.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            capture(b, off, len);
+        }
+
+        private void capture(byte[] b, int off, int len) {
+            if (capturedBytes != null) {
+                if (capturedBytes.size() + len > maxSize) {
+                    capturedBytes = null;
+                } else {
+                    capturedBytes.write(b, off, len);
+                }
+            }
+        }
+
+        private byte[] getCapturedBytes() {
+            return capturedBytes != null ? capturedBytes.toByteArray() : null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015-2020 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.cellbase.server.rest;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent serializing the responses of each end point, e.g. '{apiVersion}/{species}/feature/gene/{genes}/info'.
+ * Responses are serialized while they are written to the client, so the time includes waiting for slow clients.
+ */
+public final class ResponseMetrics {
+
+    private static final ResponseMetrics INSTANCE = new ResponseMetrics();
+
+    private final Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+    private ResponseMetrics() {
+    }
+
+    public static ResponseMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private static final class EndpointMetrics {
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder serializationNanos = new LongAdder();
+        private final AtomicLong maxSerializationNanos = new AtomicLong();
+    }
+
+    /**
+     * Records the serialization of a response.
+     *
+     * @param endpoint end point template
+     * @param serializationNanos time spent serializing and writing the response
+     * @param error whether the response could not be completely written
+     */
+    public void record(String endpoint, long serializationNanos, boolean error) {
+        EndpointMetrics metrics = endpoints.computeIfAbsent(endpoint, k -> new EndpointMetrics());
+        metrics.responses.increment();
+        if (error) {
+            metrics.errors.increment();
+        }
+        metrics.serializationNanos.add(serializationNanos);
+        metrics.maxSerializationNanos.accumulateAndGet(serializationNanos, Math::max);
+    }
+
+    public ObjectMap getStats() {
+        ObjectMap stats = new ObjectMap();
+        for (Map.Entry<String, EndpointMetrics> entry : new TreeMap<>(endpoints).entrySet()) {
+            EndpointMetrics metrics = entry.getValue();
+            long responses = metrics.responses.sum();
+            stats.put(entry.getKey(), new ObjectMap()
+                    .append("responses", responses)
+                    .append("errors", metrics.errors.sum())
+                    .append("avgSerializationTimeMs", responses > 0 ? metrics.serializationNanos.sum() / responses / 1_000_000.0 : 0)
+                    .append("maxSerializationTimeMs", metrics.maxSerializationNanos.get() / 1_000_000.0));
+        }
+        return stats;
+    }
+}
@@ -122,6 +122,43 @@ public class ClinicalWSServer extends GenericRestWSServer {
         }
     }
 
+    @GET
+    @Path("/variant/export")
+    @Produces("application/x-ndjson")
+    @ApiOperation(httpMethod = "GET", notes = "Streams all the clinical variants matching the query as newline-delimited JSON, one "
+            + "variant per line, without the limit of /search. The response is gzipped if requested with 'Accept-Encoding: gzip'. "
+            + ParamConstants.DOT_NOTATION_NOTE,
+            value = "Exports all clinical variants matching the query", response = Variant.class)
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = ParamConstants.SOURCE_PARAM, value = ParamConstants.SOURCE_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "region", value = ParamConstants.REGION_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = ParamConstants.VARIANT_TYPES_PARAM, value = ParamConstants.VARIANT_TYPES_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = ParamConstants.CLINICAL_SIGNFICANCE_PARAM, value = ParamConstants.CLINICAL_SIGNFICANCE_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "exclude", value = ParamConstants.EXCLUDE_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "include", value = ParamConstants.INCLUDE_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "limit", value = "Max number of results to be exported, all by default",
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "skip", value = ParamConstants.SKIP_DESCRIPTION,
+                    required = false, defaultValue = ParamConstants.DEFAULT_SKIP, dataType = "java.util.List",
+                    paramType = "query")
+    })
+    public Response export() {
+        try {
+            ClinicalVariantQuery query = new ClinicalVariantQuery(uriParams);
+            query.setDefaults();
+            query.validate();
+            return createStreamingResponse(clinicalManager.iterator(query));
+        } catch (Exception e) {
+            return createErrorResponse(e);
+        }
+    }
+
     @GET
     @Path("/variant/alleleOriginLabels")
     @ApiOperation(httpMethod = "GET", notes = "",
@@ -297,6 +297,49 @@ public class GeneWSServer extends GenericRestWSServer {
         }
     }
 
+    @GET
+    @Path("/export")
+    @Produces("application/x-ndjson")
+    @ApiOperation(httpMethod = "GET", notes = "Streams all the genes matching the query as newline-delimited JSON, one gene "
+            + "per line, without the limit of /search. The response is gzipped if requested with 'Accept-Encoding: gzip'. "
+            + ParamConstants.DOT_NOTATION_NOTE,
+            value = "Exports all gene objects matching the query", response = Gene.class)
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = "region", value = ParamConstants.REGION_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "id", value = ParamConstants.GENE_ENSEMBL_IDS,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "name", value = ParamConstants.GENE_NAMES,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "biotype",  value = ParamConstants.GENE_BIOTYPES,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = ParamConstants.GENE_SOURCE, value = ParamConstants.GENE_SOURCE_DESCRIPTION, required = false,
+                    allowableValues="ensembl,refseq", defaultValue = "ensembl", dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = ParamConstants.TRANSCRIPT_BIOTYPES_PARAM,
+                    value = ParamConstants.TRANSCRIPT_BIOTYPES_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "exclude", value = ParamConstants.EXCLUDE_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "include", value = ParamConstants.INCLUDE_DESCRIPTION,
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "limit", value = "Max number of results to be exported, all by default",
+                    required = false, dataType = "java.util.List", paramType = "query"),
+            @ApiImplicitParam(name = "skip", value = ParamConstants.SKIP_DESCRIPTION,
+                    required = false, defaultValue = ParamConstants.DEFAULT_SKIP, dataType = "java.util.List",
+                    paramType = "query")
+    })
+    public Response export() {
+        try {
+            GeneQuery geneQuery = new GeneQuery(uriParams);
+            geneQuery.setDefaults();
+            geneQuery.validate();
+            logger.info("/export GeneQuery: {} ", geneQuery.toString());
+            return createStreamingResponse(geneManager.iterator(geneQuery));
+        } catch (Exception e) {
+            return createErrorResponse(e);
+        }
+    }
+
     /**
      * Only ONE of the identifier fields can be provided. Otherwise we don't know which ID to split on. ONE of these can be
      * not null:
@@ -27,16 +27,21 @@ import org.opencb.cellbase.core.exception.CellbaseException;
 import org.opencb.cellbase.core.result.CellBaseDataResult;
 import org.opencb.cellbase.core.utils.SpeciesUtils;
 import org.opencb.cellbase.lib.managers.VariantManager;
+import org.opencb.cellbase.lib.variant.annotation.AnnotationJob;
 import org.opencb.cellbase.server.rest.GenericRestWSServer;
+import org.opencb.commons.datastore.core.ObjectMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -196,6 +201,109 @@ public class VariantWSServer extends GenericRestWSServer {
                 consequenceTypeSource);
     }
 
+    @POST
+    @Consumes({MediaType.TEXT_PLAIN, MediaType.APPLICATION_OCTET_STREAM, "application/gzip"})
+    @Path("/annotation/jobs")
+    @ApiOperation(httpMethod = "POST",
+            value = "Submits a VCF file or a list of variants, gzipped or not, to be annotated asynchronously. Returns the "
+                    + "job id, the results can be read from /annotation/jobs/{jobId}/results as they are annotated.",
+            response = Map.class, responseContainer = "QueryResponse")
+    public Response submitAnnotationJob(@ApiParam(name = "variants", value = "VCF file, or variants separated by commas or "
+                                                + "new lines, e.g. 19:45411941:T:C", required = true) InputStream variants,
+                                        @QueryParam("normalize")
+                                        @ApiParam(name = "normalize", value = ParamConstants.NORMALISE,
+                                                allowableValues = "false,true",
+                                                defaultValue = "true", required = false) Boolean normalize,
+                                        @QueryParam("skipDecompose")
+                                        @ApiParam(name = "skipDecompose", value = ParamConstants.SKIP_DECOMPOSE,
+                                                allowableValues = "false,true",
+                                                defaultValue = "false", required = false) Boolean skipDecompose,
+                                        @QueryParam("ignorePhase")
+                                        @ApiParam(name = "ignorePhase", value = ParamConstants.IGNORE_PHASE,
+                                                allowableValues = "false,true",
+                                                required = false) Boolean ignorePhase,
+                                        @QueryParam("imprecise")
+                                        @ApiParam(name = "imprecise",
+                                                value = ParamConstants.IMPRECISE, allowableValues = "false,true",
+                                                defaultValue = "true", required = false) Boolean imprecise,
+                                        @QueryParam("svExtraPadding")
+                                        @ApiParam(name = "svExtraPadding",
+                                                value = ParamConstants.SV_EXTRA_PADDING,
+                                                defaultValue = "0", required = false) Integer svExtraPadding,
+                                        @QueryParam("cnvExtraPadding")
+                                        @ApiParam(name = "cnvExtraPadding",
+                                                value = "Integer to optionally provide the size of the extra"
+                                                        + " padding to be used when annotating imprecise (or not)"
+                                                        + " CNVs",
+                                                defaultValue = "0", required = false) Integer cnvExtraPadding,
+                                        @QueryParam("checkAminoAcidChange")
+                                        @ApiParam(name = "checkAminoAcidChange",
+                                                value = "true/false to specify whether variant match in the clinical variant "
+                                                        + "collection should also be performed at the aminoacid change level",
+                                                allowableValues = "false,true", defaultValue = "false", required = false)
+                                                Boolean checkAminoAcidChange,
+                                        @QueryParam("consequenceTypeSource")
+                                        @ApiParam(name = "consequenceTypeSource", value = "Gene set, either ensembl (default) "
+                                                + "or refseq", allowableValues = "ensembl,refseq", defaultValue = "ensembl",
+                                                required = false) String consequenceTypeSource) {
+        try {
+            VariantQuery query = new VariantQuery(uriParams);
+            AnnotationJob job = variantManager.submitAnnotationJob(query.toQueryOptions(), variants, normalize, skipDecompose,
+                    ignorePhase, null, imprecise, svExtraPadding, cnvExtraPadding, checkAminoAcidChange, consequenceTypeSource);
+            return createJobStatusResponse(job);
+        } catch (Exception e) {
+            return createErrorResponse(e);
+        }
+    }
+
+    @GET
+    @Path("/annotation/jobs/{jobId}")
+    @ApiOperation(httpMethod = "GET", value = "Returns the status of an annotation job and the number of variants annotated so far.",
+            response = Map.class, responseContainer = "QueryResponse")
+    public Response getAnnotationJob(@PathParam("jobId") @ApiParam(name = "jobId", value = "Annotation job id",
+            required = true) String jobId) {
+        try {
+            return createJobStatusResponse(getJob(jobId));
+        } catch (Exception e) {
+            return createErrorResponse(e);
+        }
+    }
+
+    @GET
+    @Path("/annotation/jobs/{jobId}/results")
+    @Produces("application/x-ndjson")
+    @ApiOperation(httpMethod = "GET", value = "Streams the annotations of a job as newline-delimited JSON, one VariantAnnotation "
+            + "per line. Annotations are written as batches finish, the response ends once the job is done.",
+            response = VariantAnnotation.class)
+    public Response getAnnotationJobResults(@PathParam("jobId") @ApiParam(name = "jobId", value = "Annotation job id",
+            required = true) String jobId) {
+        try {
+            AnnotationJob job = getJob(jobId);
+            return noStore(createStreamingResponse(job::writeResults));
+        } catch (Exception e) {
+            return createErrorResponse(e);
+        }
+    }
+
+    private AnnotationJob getJob(String jobId) throws CellbaseException {
+        AnnotationJob job = variantManager.getAnnotationJob(jobId);
+        if (job == null) {
+            throw new CellbaseException("Annotation job '" + jobId + "' not found, finished jobs are deleted after a while");
+        }
+        return job;
+    }
+
+    private Response createJobStatusResponse(AnnotationJob job) {
+        CellBaseDataResult<ObjectMap> queryResult = new CellBaseDataResult<>(job.getId(), 0, Collections.emptyList(), 1,
+                Collections.singletonList(job.getStats()), 1);
+        return noStore(createOkResponse(queryResult));
+    }
+
+    // Job status and results change until the job finishes, they must not be cached
+    private Response noStore(Response response) {
+        return Response.fromResponse(response).header(HttpHeaders.CACHE_CONTROL, "no-store").build();
+    }
+
     @GET
     @Path("/{variants}/annotation")
     @ApiOperation(httpMethod = "GET",